@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Uploads static geometry into vertex buffer objects once and hands out their handles.
+ *
+ * <p>Passing client-side buffers to glVertexAttribPointer makes the driver copy the vertex data
+ * on every draw call. Meshes uploaded here are copied to the GPU once, when the surface is
+ * created, and each draw only binds the buffer. Geometry that changes, such as text, goes in a
+ * buffer allocated once at its largest size and updated in place.
+ */
+public final class BufferManager {
+
+  private final GLApi gl;
+  private final int[] name = new int[1];
+  private int[] buffers = new int[16];
+  private int bufferCount;
+  private long uploadedBytes;
+
+  public BufferManager(GLApi gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Uploads the remaining bytes of a buffer, such as a mesh's vertices or indices.
+   *
+   * @param target GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+   * @return The buffer handle, to bind before drawing from it.
+   */
+  public int upload(int target, ByteBuffer data) {
+    return create(target, data, data.remaining(), GLES20.GL_STATIC_DRAW);
+  }
+
+  /**
+   * Allocates a buffer for data that changes, without filling it.
+   *
+   * @param size Size in bytes, the most that {@link #update(int, int, ByteBuffer)} will write.
+   * @return The buffer handle.
+   */
+  public int allocate(int target, int size) {
+    return create(target, null, size, GLES20.GL_DYNAMIC_DRAW);
+  }
+
+  /**
+   * Replaces the start of a buffer from {@link #allocate(int, int)} with the remaining bytes of
+   * data, keeping its storage.
+   */
+  public void update(int target, int buffer, ByteBuffer data) {
+    gl.glBindBuffer(target, buffer);
+    gl.glBufferSubData(target, 0, data.remaining(), data);
+    gl.glBindBuffer(target, 0);
+    uploadedBytes += data.remaining();
+  }
+
+  private int create(int target, Buffer data, int size, int usage) {
+    gl.glGenBuffers(1, name, 0);
+    int buffer = name[0];
+    gl.glBindBuffer(target, buffer);
+    gl.glBufferData(target, size, data, usage);
+    gl.glBindBuffer(target, 0);
+    if (bufferCount == buffers.length) {
+      int[] grown = new int[buffers.length * 2];
+      System.arraycopy(buffers, 0, grown, 0, bufferCount);
+      buffers = grown;
+    }
+    buffers[bufferCount++] = buffer;
+    if (data != null)
+      uploadedBytes += size;
+    return buffer;
+  }
+
+  /**
+   * @return Total bytes copied to the GPU since the manager was created.
+   */
+  public long uploadedBytes() {
+    return uploadedBytes;
+  }
+
+  public int bufferCount() {
+    return bufferCount;
+  }
+
+  /**
+   * Deletes every buffer. Call this while the GL context is still current.
+   */
+  public void release() {
+    gl.glDeleteBuffers(bufferCount, buffers, 0);
+    bufferCount = 0;
+  }
+
+  /**
+   * Drops the handles without deleting them, for when the GL context (and with it the buffers)
+   * has already been destroyed.
+   */
+  public void forget() {
+    bufferCount = 0;
+  }
+}
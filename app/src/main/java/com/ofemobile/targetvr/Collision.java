@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Closed-form intersection tests between the beam or the projectile and the targets.
+ *
+ * <p>Targets are axis aligned boxes given by a centre and a half extent. Positions along the beam
+ * are expressed as a fraction of the segment from its start (0) to its far end (1), which is the
+ * same parameter the old sampled search stepped through.
+ *
+ * <p>The static tests are pure functions. {@link #sweepBeam} keeps its working set in this object
+ * so it does not allocate; use one instance per thread.
+ */
+public final class Collision {
+
+  /** Returned by all tests when there is no contact. */
+  public static final float MISS = -1f;
+
+  // Inside of the room, see WorldLayoutData.FLOOR_COORDS (the floor is drawn at y = -1.5).
+  public static final float ROOM_HALF_WIDTH = 4.0f;
+  public static final float ROOM_FLOOR = -1.5f;
+  public static final float ROOM_CEILING = 4.0f - 1.5f;
+
+  // Bounds on the beam parameter f, each of the form f >= base + slope * s (lower) or
+  // f <= base + slope * s (upper), where s is the time within the frame.
+  private static final int MAX_BOUNDS = 5;
+  private final float[] lowerBase = new float[MAX_BOUNDS];
+  private final float[] lowerSlope = new float[MAX_BOUNDS];
+  private final float[] upperBase = new float[MAX_BOUNDS];
+  private final float[] upperSlope = new float[MAX_BOUNDS];
+  private int lowerCount;
+  private int upperCount;
+  private float timeMin;
+  private float timeMax;
+
+  /**
+   * Finds where a segment first enters a box.
+   *
+   * @param start Start of the segment.
+   * @param end End of the segment.
+   * @param center Centre of the box.
+   * @param halfExtent Half the edge length of the box.
+   * @return The fraction along the segment of the entry point (0 if the segment starts inside
+   *     the box), or {@link #MISS}.
+   */
+  public static float segmentBoxEntry(float[] start, float[] end, float[] center,
+                                      float halfExtent) {
+    float enter = 0;
+    float exit = 1;
+    for (int i = 0; i < 3; i++) {
+      float d = end[i] - start[i];
+      float lo = center[i] - halfExtent - start[i];
+      float hi = center[i] + halfExtent - start[i];
+      if (d == 0) {
+        if (lo > 0 || hi < 0)
+          return MISS;
+        continue;
+      }
+      float t1 = lo / d;
+      float t2 = hi / d;
+      if (t1 > t2) {
+        float t = t1;
+        t1 = t2;
+        t2 = t;
+      }
+      if (t1 > enter) enter = t1;
+      if (t2 < exit) exit = t2;
+      if (enter > exit)
+        return MISS;
+    }
+    return enter;
+  }
+
+  /**
+   * Finds where a segment starting inside the room first reaches a wall, the floor or the ceiling.
+   *
+   * @return The fraction along the segment of the exit point, or {@link #MISS} if the segment
+   *     ends inside the room.
+   */
+  public static float segmentRoomExit(float[] start, float[] end) {
+    float exit = slabExit(start[0], end[0], -ROOM_HALF_WIDTH, ROOM_HALF_WIDTH);
+    exit = Math.min(exit, slabExit(start[1], end[1], ROOM_FLOOR, ROOM_CEILING));
+    exit = Math.min(exit, slabExit(start[2], end[2], -ROOM_HALF_WIDTH, ROOM_HALF_WIDTH));
+    return exit <= 1 ? exit : MISS;
+  }
+
+  private static float slabExit(float from, float to, float lo, float hi) {
+    if (from <= lo || from >= hi)
+      return 0;
+    float d = to - from;
+    if (d > 0)
+      return (hi - from) / d;
+    if (d < 0)
+      return (lo - from) / d;
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Finds the first moment during a frame at which a point on a parabolic arc is inside a box.
+   *
+   * <p>All arguments are relative to the box, so a moving box is handled by subtracting its motion
+   * from the point's. The offset of the point from the box centre at time t (as a fraction of the
+   * frame) is {@code offset + velocity * t + accel * t * t / 2}. Each axis is inside the box
+   * between roots of a quadratic, so the first contact is either the start of the frame or one of
+   * those roots.
+   *
+   * @param offset Position of the point relative to the box centre at the start of the frame.
+   * @param velocity Relative velocity, in units per frame.
+   * @param accel Relative acceleration, in units per frame squared.
+   * @param halfExtent Half the edge length of the box.
+   * @return The time of contact as a fraction of the frame, or {@link #MISS}.
+   */
+  public static float sweepArc(float[] offset, float[] velocity, float[] accel,
+                               float halfExtent) {
+    if (arcInside(offset, velocity, accel, halfExtent, 0))
+      return 0;
+    float first = MISS;
+    for (int i = 0; i < 3; i++) {
+      float a = accel[i] / 2;
+      float b = velocity[i];
+      for (int side = -1; side <= 1; side += 2) {
+        float c = offset[i] + side * halfExtent;
+        if (a == 0) {
+          if (b != 0)
+            first = earlierContact(first, -c / b, offset, velocity, accel, halfExtent);
+          continue;
+        }
+        float disc = b * b - 4 * a * c;
+        if (disc < 0)
+          continue;
+        // Avoids cancellation when b is large compared with a.
+        float q = -0.5f * (b + Math.copySign((float) Math.sqrt(disc), b));
+        first = earlierContact(first, q / a, offset, velocity, accel, halfExtent);
+        if (q != 0)
+          first = earlierContact(first, c / q, offset, velocity, accel, halfExtent);
+      }
+    }
+    return first;
+  }
+
+  private static float earlierContact(float first, float t, float[] offset, float[] velocity,
+                                      float[] accel, float halfExtent) {
+    if (t < 0 || t > 1 || (first != MISS && t >= first))
+      return first;
+    // Roots are computed in float, so allow the axis that produced them a little slack.
+    return arcInside(offset, velocity, accel, halfExtent * 1.0001f, t) ? t : first;
+  }
+
+  private static boolean arcInside(float[] offset, float[] velocity, float[] accel,
+                                   float halfExtent, float t) {
+    for (int i = 0; i < 3; i++) {
+      if (Math.abs(offset[i] + (velocity[i] + accel[i] * t / 2) * t) > halfExtent)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Finds the first moment during the last frame at which the lit part of the beam touched a
+   * moving box.
+   *
+   * <p>The beam is lit between its front and a tail that trails the front by {@code length}. The
+   * front advances linearly from {@code frontFrom} to {@code frontTo} over the frame while the box
+   * moves by {@code step}, which is exactly what the per-frame integration does. Both motions are
+   * linear in time, so the set of (time, position along the beam) pairs in contact is a convex
+   * polygon and the earliest contact is found by eliminating the position, without sampling.
+   *
+   * @param start Start of the beam.
+   * @param end Far end of the beam.
+   * @param frontFrom Fraction of the beam reached by the front at the start of the frame.
+   * @param frontTo Fraction of the beam reached by the front at the end of the frame.
+   * @param length Length of the lit part of the beam, as a fraction of the beam.
+   * @param center Centre of the box at the end of the frame.
+   * @param step Distance the box moved during the frame.
+   * @param halfExtent Half the edge length of the box.
+   * @param hitPoint Receives the point where the beam entered the box.
+   * @return The time of contact as a fraction of the frame, or {@link #MISS}.
+   */
+  public float sweepBeam(float[] start, float[] end, float frontFrom, float frontTo, float length,
+                         float[] center, float[] step, float halfExtent, float[] hitPoint) {
+    lowerCount = 0;
+    upperCount = 0;
+    timeMin = 0;
+    timeMax = 1;
+
+    addLower(0, 0);
+    addUpper(1, 0);
+    addUpper(frontFrom, frontTo - frontFrom);
+    addLower(frontFrom - length, frontTo - frontFrom);
+
+    for (int i = 0; i < 3; i++) {
+      float d = end[i] - start[i];
+      // Offset of the beam start from the box centre at the start of the frame.
+      float e = start[i] - (center[i] - step[i]);
+      if (d == 0) {
+        // The beam does not move along this axis, so only the box motion matters.
+        if (!clampTime(step[i], e - halfExtent, e + halfExtent))
+          return MISS;
+        continue;
+      }
+      float slope = step[i] / d;
+      float a = (-halfExtent - e) / d;
+      float b = (halfExtent - e) / d;
+      addLower(Math.min(a, b), slope);
+      addUpper(Math.max(a, b), slope);
+    }
+
+    for (int l = 0; l < lowerCount; l++) {
+      for (int u = 0; u < upperCount; u++) {
+        if (!clampTime(lowerSlope[l] - upperSlope[u], Float.NEGATIVE_INFINITY,
+            upperBase[u] - lowerBase[l]))
+          return MISS;
+      }
+    }
+    if (timeMin > timeMax)
+      return MISS;
+
+    float f = lowerBase[0] + lowerSlope[0] * timeMin;
+    for (int l = 1; l < lowerCount; l++)
+      f = Math.max(f, lowerBase[l] + lowerSlope[l] * timeMin);
+    for (int i = 0; i < 3; i++)
+      hitPoint[i] = start[i] + f * (end[i] - start[i]);
+    return timeMin;
+  }
+
+  private void addLower(float base, float slope) {
+    lowerBase[lowerCount] = base;
+    lowerSlope[lowerCount] = slope;
+    lowerCount++;
+  }
+
+  private void addUpper(float base, float slope) {
+    upperBase[upperCount] = base;
+    upperSlope[upperCount] = slope;
+    upperCount++;
+  }
+
+  /**
+   * Narrows the time window to the times s for which lo <= k * s <= hi.
+   *
+   * @return false if the window is now empty.
+   */
+  private boolean clampTime(float k, float lo, float hi) {
+    if (k > 0) {
+      timeMin = Math.max(timeMin, lo / k);
+      timeMax = Math.min(timeMax, hi / k);
+    } else if (k < 0) {
+      timeMin = Math.max(timeMin, hi / k);
+      timeMax = Math.min(timeMax, lo / k);
+    } else if (lo > 0 || hi < 0) {
+      return false;
+    }
+    return timeMin <= timeMax;
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * A recording of the GL calls that draw a frame, made once per frame and replayed for each eye.
+ *
+ * <p>The draw code calls the GLDrawApi methods on the list as it would on GL, so the scene is only
+ * walked once per frame. Matrices that differ between eyes are recorded by transform table slot
+ * with {@link #uniformModel(int, int)} and {@link #uniformMvp(int, int)} and looked up when the
+ * list is replayed, after the eye's {@link TransformTable#concatenate(float[], float[])}. Other
+ * uniform values are copied when they are recorded.
+ *
+ * <p>The calls that draw one object can be wrapped in {@link #beginDraw(int)} and
+ * {@link #endDraw()}, and are then skipped for an eye the object's slot is not visible to.
+ *
+ * <p>Only the calls of {@link GLDrawApi} can be recorded, so creating or uploading objects on
+ * the list instead of on GL does not compile. The buffers grow while warming up and are reused
+ * after that, so recording and replaying do not allocate. Not thread safe.
+ */
+public final class DrawList implements GLDrawApi {
+
+  private static final int BIND_BUFFER = 0;
+  private static final int USE_PROGRAM = 1;
+  private static final int ACTIVE_TEXTURE = 2;
+  private static final int BIND_TEXTURE = 3;
+  private static final int ENABLE = 4;
+  private static final int DISABLE = 5;
+  private static final int BLEND_FUNC = 6;
+  private static final int DEPTH_MASK = 7;
+  private static final int LINE_WIDTH = 8;
+  private static final int ENABLE_ATTRIB = 9;
+  private static final int DISABLE_ATTRIB = 10;
+  private static final int ATTRIB_POINTER = 11;
+  private static final int UNIFORM_1I = 12;
+  private static final int UNIFORM_1F = 13;
+  private static final int UNIFORM_3FV = 14;
+  private static final int UNIFORM_MATRIX_4FV = 15;
+  private static final int UNIFORM_MODEL = 16;
+  private static final int UNIFORM_MVP = 17;
+  private static final int CLEAR = 18;
+  private static final int DRAW_ARRAYS = 19;
+  private static final int DRAW_ELEMENTS = 20;
+  private static final int GROUP = 21;
+
+  // Each command is its opcode followed by its int arguments; float arguments go to floats.
+  private int[] ints = new int[256];
+  private int intCount;
+  private float[] floats = new float[256];
+  private int floatCount;
+  private int commandCount;
+  // Where the open group's end offsets go, or -1.
+  private int openGroup = -1;
+
+  /**
+   * Empties the list for a new frame.
+   */
+  public void clear() {
+    intCount = 0;
+    floatCount = 0;
+    commandCount = 0;
+    openGroup = -1;
+  }
+
+  /**
+   * @return The number of calls recorded since {@link #clear()}.
+   */
+  public int size() {
+    return commandCount;
+  }
+
+  // Appends an opcode and makes room for its arguments.
+  private void begin(int opcode, int argCount) {
+    if (intCount + 1 + argCount > ints.length) {
+      int[] grown = new int[Math.max(ints.length * 2, intCount + 1 + argCount)];
+      System.arraycopy(ints, 0, grown, 0, intCount);
+      ints = grown;
+    }
+    ints[intCount++] = opcode;
+    commandCount++;
+  }
+
+  private void floats(float[] v, int offset, int length) {
+    if (floatCount + length > floats.length) {
+      float[] grown = new float[Math.max(floats.length * 2, floatCount + length)];
+      System.arraycopy(floats, 0, grown, 0, floatCount);
+      floats = grown;
+    }
+    System.arraycopy(v, offset, floats, floatCount, length);
+    floatCount += length;
+  }
+
+  private void floatValue(float x) {
+    if (floatCount == floats.length) {
+      float[] grown = new float[floats.length * 2];
+      System.arraycopy(floats, 0, grown, 0, floatCount);
+      floats = grown;
+    }
+    floats[floatCount++] = x;
+  }
+
+  private void command(int opcode, int a) {
+    begin(opcode, 1);
+    ints[intCount++] = a;
+  }
+
+  private void command(int opcode, int a, int b) {
+    begin(opcode, 2);
+    ints[intCount++] = a;
+    ints[intCount++] = b;
+  }
+
+  private void command(int opcode, int a, int b, int c) {
+    begin(opcode, 3);
+    ints[intCount++] = a;
+    ints[intCount++] = b;
+    ints[intCount++] = c;
+  }
+
+  /**
+   * Records setting a mat4 uniform to the model matrix in a slot of the transform table.
+   */
+  public void uniformModel(int location, int slot) {
+    command(UNIFORM_MODEL, location, slot);
+  }
+
+  /**
+   * Records setting a mat4 uniform to the model-view-projection matrix of a slot of the transform
+   * table, for whichever eye the list is replayed for.
+   */
+  public void uniformMvp(int location, int slot) {
+    command(UNIFORM_MVP, location, slot);
+  }
+
+  /**
+   * Starts the calls that draw the object in a slot of the transform table.
+   */
+  public void beginDraw(int slot) {
+    if (openGroup >= 0)
+      throw new IllegalStateException("Draws can't be nested");
+    begin(GROUP, 3);
+    commandCount--; // Not a call.
+    ints[intCount++] = slot;
+    openGroup = intCount;
+    intCount += 2;
+  }
+
+  /**
+   * Ends the calls started by {@link #beginDraw(int)}.
+   */
+  public void endDraw() {
+    if (openGroup < 0)
+      throw new IllegalStateException("No draw to end");
+    ints[openGroup] = intCount;
+    ints[openGroup + 1] = floatCount;
+    openGroup = -1;
+  }
+
+  /**
+   * Issues the recorded calls.
+   *
+   * @param transforms The table the slots refer to, concatenated for the eye being drawn.
+   */
+  public void replay(GLDrawApi gl, TransformTable transforms) {
+    int[] ints = this.ints;
+    int f = 0;
+    int i = 0;
+    while (i < intCount) {
+      switch (ints[i++]) {
+        case BIND_BUFFER:
+          gl.glBindBuffer(ints[i], ints[i + 1]);
+          i += 2;
+          break;
+        case USE_PROGRAM:
+          gl.glUseProgram(ints[i++]);
+          break;
+        case ACTIVE_TEXTURE:
+          gl.glActiveTexture(ints[i++]);
+          break;
+        case BIND_TEXTURE:
+          gl.glBindTexture(ints[i], ints[i + 1]);
+          i += 2;
+          break;
+        case ENABLE:
+          gl.glEnable(ints[i++]);
+          break;
+        case DISABLE:
+          gl.glDisable(ints[i++]);
+          break;
+        case BLEND_FUNC:
+          gl.glBlendFunc(ints[i], ints[i + 1]);
+          i += 2;
+          break;
+        case DEPTH_MASK:
+          gl.glDepthMask(ints[i++] != 0);
+          break;
+        case LINE_WIDTH:
+          gl.glLineWidth(floats[f++]);
+          break;
+        case ENABLE_ATTRIB:
+          gl.glEnableVertexAttribArray(ints[i++]);
+          break;
+        case DISABLE_ATTRIB:
+          gl.glDisableVertexAttribArray(ints[i++]);
+          break;
+        case ATTRIB_POINTER:
+          gl.glVertexAttribPointer(ints[i], ints[i + 1], ints[i + 2], ints[i + 3] != 0,
+              ints[i + 4], ints[i + 5]);
+          i += 6;
+          break;
+        case UNIFORM_1I:
+          gl.glUniform1i(ints[i], ints[i + 1]);
+          i += 2;
+          break;
+        case UNIFORM_1F:
+          gl.glUniform1f(ints[i++], floats[f++]);
+          break;
+        case UNIFORM_3FV:
+          gl.glUniform3fv(ints[i], ints[i + 1], floats, f);
+          f += ints[i + 1] * 3;
+          i += 2;
+          break;
+        case UNIFORM_MATRIX_4FV:
+          gl.glUniformMatrix4fv(ints[i], ints[i + 1], ints[i + 2] != 0, floats, f);
+          f += ints[i + 1] * 16;
+          i += 3;
+          break;
+        case UNIFORM_MODEL:
+          gl.glUniformMatrix4fv(ints[i], 1, false, transforms.models(), ints[i + 1] * 16);
+          i += 2;
+          break;
+        case UNIFORM_MVP:
+          gl.glUniformMatrix4fv(ints[i], 1, false, transforms.mvps(), ints[i + 1] * 16);
+          i += 2;
+          break;
+        case CLEAR:
+          gl.glClear(ints[i++]);
+          break;
+        case DRAW_ARRAYS:
+          gl.glDrawArrays(ints[i], ints[i + 1], ints[i + 2]);
+          i += 3;
+          break;
+        case DRAW_ELEMENTS:
+          gl.glDrawElements(ints[i], ints[i + 1], ints[i + 2], ints[i + 3]);
+          i += 4;
+          break;
+        case GROUP:
+          if (transforms.isVisible(ints[i])) {
+            i += 3;
+          } else {
+            f = ints[i + 2];
+            i = ints[i + 1];
+          }
+          break;
+        default:
+          throw new IllegalStateException("Corrupt draw list");
+      }
+    }
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    command(BIND_BUFFER, target, buffer);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    command(USE_PROGRAM, program);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    command(ACTIVE_TEXTURE, texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    command(BIND_TEXTURE, target, texture);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    command(ENABLE, cap);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    command(DISABLE, cap);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    command(BLEND_FUNC, sfactor, dfactor);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    command(DEPTH_MASK, flag ? 1 : 0);
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    begin(LINE_WIDTH, 0);
+    floatValue(width);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    command(ENABLE_ATTRIB, index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    command(DISABLE_ATTRIB, index);
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                                    int offset) {
+    begin(ATTRIB_POINTER, 6);
+    ints[intCount++] = index;
+    ints[intCount++] = size;
+    ints[intCount++] = type;
+    ints[intCount++] = normalized ? 1 : 0;
+    ints[intCount++] = stride;
+    ints[intCount++] = offset;
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    command(UNIFORM_1I, location, x);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    command(UNIFORM_1F, location);
+    floatValue(x);
+  }
+
+  @Override
+  public void glUniform3fv(int location, int count, float[] v, int offset) {
+    command(UNIFORM_3FV, location, count);
+    floats(v, offset, count * 3);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                 int offset) {
+    command(UNIFORM_MATRIX_4FV, location, count, transpose ? 1 : 0);
+    floats(value, offset, count * 16);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    command(CLEAR, mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    command(DRAW_ARRAYS, mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    begin(DRAW_ELEMENTS, 4);
+    ints[intCount++] = mode;
+    ints[intCount++] = count;
+    ints[intCount++] = type;
+    ints[intCount++] = offset;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Scratch vectors and matrices that live for one frame.
+ *
+ * <p>The render thread calls {@link #reset()} at the start of every frame and then takes as many
+ * temporaries as it needs. The arrays are reused from frame to frame, so once the arena has grown
+ * to the largest frame seen the frame loop stops allocating. Arrays are handed out as they were
+ * left by the previous frame; callers must overwrite them before reading.
+ *
+ * <p>Not thread safe, only use it from the thread that resets it.
+ */
+public final class FrameArena {
+
+  private float[][] vectors = new float[8][];
+  private float[][] matrices = new float[8][];
+  private int vectorsUsed;
+  private int matricesUsed;
+
+  public FrameArena() {
+    for (int i = 0; i < vectors.length; i++)
+      vectors[i] = new float[4];
+    for (int i = 0; i < matrices.length; i++)
+      matrices[i] = new float[16];
+  }
+
+  /**
+   * Releases everything handed out since the last reset.
+   */
+  public void reset() {
+    vectorsUsed = 0;
+    matricesUsed = 0;
+  }
+
+  /**
+   * @return A 4 element vector, valid until the next reset.
+   */
+  public float[] vec4() {
+    if (vectorsUsed == vectors.length)
+      vectors = grow(vectors, 4);
+    return vectors[vectorsUsed++];
+  }
+
+  /**
+   * @return A 4 element vector set to the given values, valid until the next reset.
+   */
+  public float[] vec4(float x, float y, float z, float w) {
+    float[] v = vec4();
+    v[0] = x;
+    v[1] = y;
+    v[2] = z;
+    v[3] = w;
+    return v;
+  }
+
+  /**
+   * @return A 4x4 matrix, valid until the next reset.
+   */
+  public float[] mat4() {
+    if (matricesUsed == matrices.length)
+      matrices = grow(matrices, 16);
+    return matrices[matricesUsed++];
+  }
+
+  /**
+   * @return The number of arrays the arena currently holds; it only grows while warming up.
+   */
+  public int capacity() {
+    return vectors.length + matrices.length;
+  }
+
+  private static float[][] grow(float[][] pool, int size) {
+    float[][] grown = new float[pool.length * 2][];
+    System.arraycopy(pool, 0, grown, 0, pool.length);
+    for (int i = pool.length; i < grown.length; i++)
+      grown[i] = new float[size];
+    return grown;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * The render thread's frame logic: where the reticle goes and what is drawn from a
+ * {@link WorldSnapshot}, with no Android or GL in it, so that it can be run and measured off the
+ * device.
+ *
+ * <p>Every frame {@link #aim} places the reticle and {@link #build} fills the transform table and
+ * the render queue. MainActivity then records the queued items into its draw list. Each kind of
+ * item is sorted on the program and texture or vertex buffer given to
+ * {@link #setItem(int, int, int, float)} and culled with its mesh's bounding sphere.
+ *
+ * <p>Not thread safe, it belongs to the render thread.
+ */
+public final class FrameBuilder {
+
+  /** Where the camera sits on the z axis, looking down -z. */
+  public static final float CAMERA_Z = 0.01f;
+
+  // What a render queue item draws, in the bits above the transform table slot.
+  public static final int ITEM_SHIFT = 24;
+  public static final int ITEM_CUBE = 0;
+  public static final int ITEM_PROJECTILE = 1;
+  public static final int ITEM_FLOOR = 2;
+  public static final int ITEM_AXIS = 3;
+  public static final int ITEM_SIGN = 4;
+  public static final int ITEM_BEAM = 5;
+  public static final int ITEM_FLARE = 6;
+  public static final int ITEM_RETICLE = 7;
+  private static final int ITEM_COUNT = 8;
+
+  private static final float FLOOR_DEPTH = 1.5f;
+
+  // Temporaries, recycled at the start of every frame.
+  private final FrameArena arena = new FrameArena();
+
+  // World transforms of everything drawn this frame.
+  private final TransformTable transforms = new TransformTable(64);
+  // Everything drawn this frame, in the order it is recorded.
+  private final RenderQueue renderQueue = new RenderQueue(64);
+
+  // Sort keys and bounding sphere radius of each kind of item.
+  private final int[] programs = new int[ITEM_COUNT];
+  private final int[] textures = new int[ITEM_COUNT];
+  private final float[] radii = new float[ITEM_COUNT];
+
+  private final float[] modelFloor = new float[16];
+  private final float[] modelAxis = new float[16];
+  // The four signs around the user, one matrix after another.
+  private final float[] modelSigns = new float[4 * 16];
+  private final float[] modelReticle = new float[16];
+
+  // Targets near the reticle's ray, see WorldSnapshot#findTargets.
+  private final int[] candidates = new int[Game.MAX_TARGETS];
+
+  private float signTrans;
+  // Steps since the flare started.
+  private int flareAge;
+
+  public FrameBuilder() {
+    Mat4.setIdentityM(modelFloor, 0);
+    Mat4.translateM(modelFloor, 0, 0, -FLOOR_DEPTH, 0); // Floor appears below user.
+
+    Mat4.setIdentityM(modelAxis, 0);
+    Mat4.translateM(modelAxis, 0, 2, -FLOOR_DEPTH+0.1f, -2);
+
+    float[] scratch = new float[32];
+    for (int i = 0; i < 4; i++) {
+      Mat4.setIdentityM(modelSigns, i * 16);
+      Mat4.rotateM(modelSigns, i * 16, 90 * i, 0, 1, 0, scratch);
+      Mat4.translateM(modelSigns, i * 16, 0.1f, -0.05f, -3.5f);
+      Mat4.scaleM(modelSigns, i * 16, .75f, .75f, .75f);
+    }
+    Mat4.setIdentityM(modelReticle, 0);
+  }
+
+  /**
+   * Sets what a kind of item sorts on and how far its mesh reaches from its origin.
+   *
+   * @param texture The texture it samples, or for untextured items its vertex buffer.
+   */
+  public void setItem(int item, int program, int texture, float radius) {
+    programs[item] = program;
+    textures[item] = texture;
+    radii[item] = radius;
+  }
+
+  public TransformTable transforms() {
+    return transforms;
+  }
+
+  public RenderQueue renderQueue() {
+    return renderQueue;
+  }
+
+  /** How opaque the signs are this frame. */
+  public float signTrans() {
+    return signTrans;
+  }
+
+  /** Steps since the flare started. */
+  public int flareAge() {
+    return flareAge;
+  }
+
+  /**
+   * Starts a frame and places the reticle. From level 2 it sits where the beam's ray first meets
+   * a target, where it is drawn, or a wall; before that it floats in front of the head.
+   *
+   * @param alpha How far between the last two steps the frame is drawn, see
+   *     {@link WorldSnapshot#alpha(long, long)}.
+   * @param invHeadView The head to world pose.
+   * @return true if the reticle is on a target.
+   */
+  public boolean aim(WorldSnapshot world, float alpha, float[] invHeadView) {
+    arena.reset();
+    if (world.mode <= 1) {
+      //We are on level one (or game over screen) Reticle in fixed pos
+      System.arraycopy(invHeadView, 0, modelReticle, 0, 16);
+      Mat4.translateM(modelReticle, 0, 0, 0, -1.5f);
+      Mat4.scaleM(modelReticle, 0, .05f, .05f, .05f);
+      return false;
+    }
+
+    // The beam is fixed while it fires and follows the head otherwise.
+    float[] aimBeam = world.beamFiring ? world.modelBeam : invHeadView;
+    //Check to see if the ray has hit a target
+    //The beam runs between these points in head space:
+    //            0.2f, -0.75f, 0f,
+    //            0, 0, -10f,
+
+    float[] positionVec1 = arena.vec4();
+    float[] positionVec2 = arena.vec4();
+    float[] intPositionVec = arena.vec4();
+
+    Mat4.multiplyMV(positionVec1, 0, aimBeam, 0, Game.BEAM_START, 0);
+    Mat4.multiplyMV(positionVec2, 0, aimBeam, 0, Game.BEAM_END, 0);
+    for (int i=0; i<3; i++)
+      positionVec1[i]=positionVec1[i]/positionVec1[3];
+    for (int i=0; i<3; i++)
+      positionVec2[i]=positionVec2[i]/positionVec2[3];
+
+    //The reticle sits where the ray first meets a target, where it is drawn, or a wall. Only the
+    //targets in the grid cells the ray crosses are tested.
+    float[] drawnPos = arena.vec4();
+    float hitFactor = Collision.MISS;
+    int candidateCount = world.findTargets(positionVec1, positionVec2, candidates);
+    for (int i = 0; i < candidateCount; i++) {
+      world.getTargetPosition(candidates[i], alpha, drawnPos);
+      float factor = Collision.segmentBoxEntry(positionVec1, positionVec2, drawnPos,
+              Game.BEAM_HIT_EXTENT);
+      if (factor != Collision.MISS && (hitFactor == Collision.MISS || factor < hitFactor))
+        hitFactor = factor;
+    }
+    float wallFactor = Collision.segmentRoomExit(positionVec1, positionVec2);
+    boolean hit = hitFactor != Collision.MISS
+            && (wallFactor == Collision.MISS || hitFactor <= wallFactor);
+    float reticleFactor = hit ? hitFactor : wallFactor;
+    for (int i = 0; i < 3; i++)
+      intPositionVec[i] = reticleFactor * (positionVec2[i] - positionVec1[i]) + positionVec1[i];
+
+    if (reticleFactor != Collision.MISS)
+    {
+      Mat4.setBillboardM(modelReticle, 0, intPositionVec[0], intPositionVec[1],
+              intPositionVec[2], .25f/2f);
+      // Off a target, keep the reticle in front of the wall.
+      if (!hit)
+        modelReticle[14] += 0.01f;
+    }
+    return hit;
+  }
+
+  /**
+   * Decides what is drawn this frame, puts its world transforms in the transform table, so that
+   * each eye only has to concatenate them with its view and projection, and submits it to the
+   * render queue, sorted. Call after {@link #aim}.
+   *
+   * @param signReady Whether the sign has a texture yet.
+   * @param reticleTexture The texture of the reticle to show, or {@link TextureCache#NO_TEXTURE}
+   *     for none.
+   */
+  public void build(WorldSnapshot world, float alpha, boolean signReady, int reticleTexture) {
+    transforms.clear();
+    renderQueue.clear();
+    // Moving things are drawn alpha of the way through the last step.
+    float[] position = arena.vec4();
+    if (world.mode>0) {
+      for (int n = 0; n < world.targetCount; n++) {
+        world.getTargetPosition(n, alpha, position);
+        submit(ITEM_CUBE, transforms.addTranslation(position[0], position[1], position[2]),
+                RenderQueue.PASS_OPAQUE);
+      }
+    }
+    for (int i = 0; i < 3; i++)
+      position[i] = world.projectilePrevious[i]
+              + alpha * (world.projectilePos[i] - world.projectilePrevious[i]);
+    submit(ITEM_PROJECTILE, transforms.addTranslated(world.projectileRotation,
+            position[0], position[1], position[2]), RenderQueue.PASS_OPAQUE);
+    submit(ITEM_FLOOR, transforms.add(modelFloor, 0), RenderQueue.PASS_OPAQUE);
+    submit(ITEM_AXIS, transforms.add(modelAxis, 0), RenderQueue.PASS_OPAQUE);
+
+    signTrans = 1f;
+    if (world.stepNo > world.messageFadeStep)
+      signTrans = 1 - (((float) world.stepNo - (float) world.messageFadeStep) / 100f);
+    if (signReady && world.stepNo < (world.messageFadeStep + 100)) {
+      for (int i = 0; i < 4; i++)
+        submit(ITEM_SIGN, transforms.add(modelSigns, i * 16), RenderQueue.PASS_TRANSPARENT);
+    }
+
+    if (world.beamFiring)
+      submit(ITEM_BEAM, transforms.add(world.modelBeam, 0), RenderQueue.PASS_TRANSPARENT);
+    flareAge = world.stepNo - world.flareStartStep;
+    if (flareAge > 0 && flareAge < 51)
+      submit(ITEM_FLARE, transforms.add(world.modelFlare, 0), RenderQueue.PASS_OVERLAY);
+    //The reticle must be drawn last due to transparency
+    if (reticleTexture != TextureCache.NO_TEXTURE) {
+      textures[ITEM_RETICLE] = reticleTexture;
+      submit(ITEM_RETICLE, transforms.add(modelReticle, 0), RenderQueue.PASS_HUD);
+    }
+    renderQueue.sort();
+  }
+
+  /**
+   * Submits a slot of the transform table to the render queue, keyed on its distance from the
+   * camera. Both eyes replay the same order, so the camera stands in for either eye.
+   */
+  private void submit(int item, int slot, int pass) {
+    transforms.setBounds(slot, radii[item]);
+    float depth = transforms.distanceSquared(slot, 0, 0, CAMERA_Z);
+    long key = pass == RenderQueue.PASS_OPAQUE
+            ? RenderQueue.opaqueKey(pass, programs[item], textures[item], depth)
+            : RenderQueue.blendedKey(pass, programs[item], textures[item], depth);
+    renderQueue.submit(key, item << ITEM_SHIFT | slot);
+  }
+}
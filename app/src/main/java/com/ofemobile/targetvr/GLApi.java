@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls used by the renderer's helper classes: those that set state and draw,
+ * from {@link GLDrawApi}, and those that create, fill and query objects.
+ *
+ * <p>On the device this is {@link GLES20Api}, which forwards to {@link android.opengl.GLES20}.
+ * Tests substitute a recording implementation so the helpers can be checked without a GPU. The
+ * methods have the same names and arguments as their GLES20 counterparts, except for the
+ * program binary calls, which are those of GLES30 and only work on an OpenGL ES 3 context.
+ */
+public interface GLApi extends GLDrawApi {
+
+  int glGetError();
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                    int format, int type, Buffer pixels);
+
+  void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                       int format, int type, Buffer pixels);
+
+  int glCreateShader(int type);
+
+  void glShaderSource(int shader, String string);
+
+  void glCompileShader(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glDeleteShader(int shader);
+
+  int glCreateProgram();
+
+  void glAttachShader(int program, int shader);
+
+  void glLinkProgram(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetProgramInfoLog(int program);
+
+  void glDeleteProgram(int program);
+
+  void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                          int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+  void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+  String glGetString(int name);
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+}
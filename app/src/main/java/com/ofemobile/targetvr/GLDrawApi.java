@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * The OpenGL ES 2.0 calls that set state and draw, which is all a frame's {@link DrawList} can
+ * record. Creating, uploading, compiling and querying are in {@link GLApi}.
+ *
+ * <p>The methods have the same names and arguments as their GLES20 counterparts.
+ */
+public interface GLDrawApi {
+
+  void glBindBuffer(int target, int buffer);
+
+  void glUseProgram(int program);
+
+  void glActiveTexture(int texture);
+
+  void glBindTexture(int target, int texture);
+
+  void glEnable(int cap);
+
+  void glDisable(int cap);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glDepthMask(boolean flag);
+
+  void glLineWidth(float width);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                             int offset);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform3fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                          int offset);
+
+  void glClear(int mask);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import android.annotation.TargetApi;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+import java.nio.Buffer;
+
+/**
+ * {@link GLApi} backed by the real OpenGL ES 2.0 bindings.
+ *
+ * <p>The program binary calls go through the GLES30 bindings, which call the OpenGL ES 3.0 core
+ * functions, not the OES_get_program_binary ones; Android has no Java binding for the extension.
+ * Only call them from API level 18, where the bindings exist, on an OpenGL ES 3 context, where
+ * the driver implements them.
+ */
+public final class GLES20Api implements GLApi {
+
+  @Override
+  public int glGetError() {
+    return GLES20.glGetError();
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    GLES20.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    GLES20.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    GLES20.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    GLES20.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    GLES20.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    GLES20.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    GLES20.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                           int border, int format, int type, Buffer pixels) {
+    GLES20.glTexImage2D(target, level, internalformat, width, height, border, format, type,
+        pixels);
+  }
+
+  @Override
+  public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                              int height, int format, int type, Buffer pixels) {
+    GLES20.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return GLES20.glCreateShader(type);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    GLES20.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    GLES20.glCompileShader(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    GLES20.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return GLES20.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    GLES20.glDeleteShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return GLES20.glCreateProgram();
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    GLES20.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    GLES20.glLinkProgram(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    GLES20.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return GLES20.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    GLES20.glDeleteProgram(program);
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  @Override
+  public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                                 int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+    GLES30.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat,
+        binaryFormatOffset, binary);
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    GLES30.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return GLES20.glGetString(name);
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    GLES20.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    GLES20.glUseProgram(program);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    GLES20.glEnable(cap);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    GLES20.glDisable(cap);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    GLES20.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    GLES20.glDepthMask(flag);
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    GLES20.glLineWidth(width);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    GLES20.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    GLES20.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                                    int offset) {
+    GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    GLES20.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    GLES20.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform3fv(int location, int count, float[] v, int offset) {
+    GLES20.glUniform3fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                 int offset) {
+    GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    GLES20.glClear(mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    GLES20.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    GLES20.glDrawElements(mode, count, type, offset);
+  }
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * A {@link GLApi} that remembers the GL state it has set and drops calls that would not change
+ * it.
+ *
+ * <p>Tracked are the current program, the GL_TEXTURE_2D binding of each texture unit, the array
+ * and element buffer bindings, the enabled vertex attributes and their pointers, blending, depth
+ * test, face culling, the blend function, the depth mask, the line width and every uniform value
+ * set per program. Everything else is passed straight through.
+ *
+ * <p>The cache is only right as long as all GL calls go through it. Code that changes GL state
+ * behind its back, like the Cardboard distortion pass between frames, has to be followed by
+ * {@link #beginFrame()}, which forgets the bindings but keeps the uniform values, since those
+ * belong to the program objects. A new GL context needs {@link #reset()}.
+ *
+ * <p>Not thread safe; only use it from the GL thread.
+ */
+public final class GLStateCache implements GLApi {
+
+  private static final int UNKNOWN = -1;
+  private static final int TEXTURE_UNITS = 8;
+  private static final int VERTEX_ATTRIBS = 16;
+  private static final int POINTER_INTS = 6;
+  private static final int EMPTY = -1;
+
+  // Capabilities tracked by glEnable and glDisable.
+  private static final int CAP_BLEND = 0;
+  private static final int CAP_DEPTH_TEST = 1;
+  private static final int CAP_CULL_FACE = 2;
+
+  private final GLApi gl;
+
+  private int program;
+  private int activeUnit;
+  private final int[] textures = new int[TEXTURE_UNITS];
+  private int arrayBuffer;
+  private int elementBuffer;
+  private final int[] caps = new int[3];
+  private int blendSrc;
+  private int blendDst;
+  private int depthMask;
+  private float lineWidth;
+  private final int[] attribEnabled = new int[VERTEX_ATTRIBS];
+  // Per attribute: array buffer, size, type, normalized, stride and offset; the buffer is
+  // UNKNOWN if the pointer is.
+  private final int[] pointers = new int[VERTEX_ATTRIBS * POINTER_INTS];
+
+  // Open addressing table from program and uniform location to a run of values in
+  // uniformValues, stored as raw float bits.
+  private int[] uniformKeys = new int[64];
+  private int[] uniformStart = new int[64];
+  private int[] uniformLength = new int[64];
+  private int uniformCount;
+  private int[] uniformValues = new int[256];
+  private int uniformValuesUsed;
+
+  private int issued;
+  private int elided;
+
+  public GLStateCache(GLApi gl) {
+    this.gl = gl;
+    reset();
+  }
+
+  /**
+   * Forgets everything, for a new GL context.
+   */
+  public void reset() {
+    clearUniforms();
+    beginFrame();
+  }
+
+  private void clearUniforms() {
+    for (int i = 0; i < uniformKeys.length; i++)
+      uniformKeys[i] = EMPTY;
+    uniformCount = 0;
+    uniformValuesUsed = 0;
+  }
+
+  /**
+   * Forgets the bindings and capabilities, which may have been changed by someone else since the
+   * last frame, and starts counting calls for a new frame.
+   */
+  public void beginFrame() {
+    program = UNKNOWN;
+    activeUnit = UNKNOWN;
+    for (int i = 0; i < TEXTURE_UNITS; i++)
+      textures[i] = UNKNOWN;
+    arrayBuffer = UNKNOWN;
+    elementBuffer = UNKNOWN;
+    for (int i = 0; i < caps.length; i++)
+      caps[i] = UNKNOWN;
+    blendSrc = UNKNOWN;
+    blendDst = UNKNOWN;
+    depthMask = UNKNOWN;
+    lineWidth = Float.NaN;
+    for (int i = 0; i < VERTEX_ATTRIBS; i++) {
+      attribEnabled[i] = UNKNOWN;
+      pointers[i * POINTER_INTS] = UNKNOWN;
+    }
+    issued = 0;
+    elided = 0;
+  }
+
+  /**
+   * @return The number of calls passed on to GL since {@link #beginFrame()}.
+   */
+  public int issuedCalls() {
+    return issued;
+  }
+
+  /**
+   * @return The number of calls dropped since {@link #beginFrame()}.
+   */
+  public int elidedCalls() {
+    return elided;
+  }
+
+  // Counts a call and returns true if it should be passed on.
+  private boolean changes(int current, int value) {
+    if (current == value) {
+      elided++;
+      return false;
+    }
+    issued++;
+    return true;
+  }
+
+  @Override
+  public int glGetError() {
+    return gl.glGetError();
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    issued++;
+    gl.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    issued++;
+    gl.glDeleteBuffers(n, buffers, offset);
+    // Deleting a bound buffer unbinds it.
+    arrayBuffer = UNKNOWN;
+    elementBuffer = UNKNOWN;
+    for (int i = 0; i < VERTEX_ATTRIBS; i++)
+      pointers[i * POINTER_INTS] = UNKNOWN;
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    issued++;
+    gl.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] names, int offset) {
+    issued++;
+    gl.glDeleteTextures(n, names, offset);
+    // Deleting a bound texture binds texture 0 in its place.
+    for (int i = 0; i < n; i++) {
+      for (int unit = 0; unit < TEXTURE_UNITS; unit++) {
+        if (textures[unit] == names[offset + i])
+          textures[unit] = 0;
+      }
+    }
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    issued++;
+    return gl.glCreateShader(type);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    issued++;
+    gl.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    issued++;
+    gl.glCompileShader(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    issued++;
+    gl.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    issued++;
+    return gl.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    issued++;
+    gl.glDeleteShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    issued++;
+    return gl.glCreateProgram();
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    issued++;
+    gl.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    issued++;
+    gl.glLinkProgram(program);
+    // Linking sets the program's uniforms back to zero.
+    clearUniforms();
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    issued++;
+    gl.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    issued++;
+    return gl.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    issued++;
+    gl.glDeleteProgram(program);
+    // The name may come back for a new program, which must not inherit the old one's state.
+    if (this.program == program)
+      this.program = UNKNOWN;
+    clearUniforms();
+  }
+
+  @Override
+  public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                                 int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+    issued++;
+    gl.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat,
+        binaryFormatOffset, binary);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    issued++;
+    gl.glProgramBinary(program, binaryFormat, binary, length);
+    // Loading a binary links the program.
+    clearUniforms();
+  }
+
+  @Override
+  public String glGetString(int name) {
+    issued++;
+    return gl.glGetString(name);
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    issued++;
+    gl.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    if (target == GLES20.GL_ARRAY_BUFFER) {
+      if (changes(arrayBuffer, buffer)) {
+        arrayBuffer = buffer;
+        gl.glBindBuffer(target, buffer);
+      }
+    } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+      if (changes(elementBuffer, buffer)) {
+        elementBuffer = buffer;
+        gl.glBindBuffer(target, buffer);
+      }
+    } else {
+      issued++;
+      gl.glBindBuffer(target, buffer);
+    }
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    issued++;
+    gl.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    issued++;
+    gl.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                           int border, int format, int type, Buffer pixels) {
+    issued++;
+    gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                              int height, int format, int type, Buffer pixels) {
+    issued++;
+    gl.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    if (changes(this.program, program)) {
+      this.program = program;
+      gl.glUseProgram(program);
+    }
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    int unit = texture - GLES20.GL_TEXTURE0;
+    if (changes(activeUnit, unit)) {
+      activeUnit = unit;
+      gl.glActiveTexture(texture);
+    }
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    if (target != GLES20.GL_TEXTURE_2D || activeUnit < 0 || activeUnit >= TEXTURE_UNITS) {
+      issued++;
+      gl.glBindTexture(target, texture);
+    } else if (changes(textures[activeUnit], texture)) {
+      textures[activeUnit] = texture;
+      gl.glBindTexture(target, texture);
+    }
+  }
+
+  private static int capIndex(int cap) {
+    switch (cap) {
+      case GLES20.GL_BLEND:
+        return CAP_BLEND;
+      case GLES20.GL_DEPTH_TEST:
+        return CAP_DEPTH_TEST;
+      case GLES20.GL_CULL_FACE:
+        return CAP_CULL_FACE;
+      default:
+        return UNKNOWN;
+    }
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    int i = capIndex(cap);
+    if (i == UNKNOWN) {
+      issued++;
+      gl.glEnable(cap);
+    } else if (changes(caps[i], 1)) {
+      caps[i] = 1;
+      gl.glEnable(cap);
+    }
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    int i = capIndex(cap);
+    if (i == UNKNOWN) {
+      issued++;
+      gl.glDisable(cap);
+    } else if (changes(caps[i], 0)) {
+      caps[i] = 0;
+      gl.glDisable(cap);
+    }
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    if (blendSrc == sfactor && blendDst == dfactor) {
+      elided++;
+      return;
+    }
+    issued++;
+    blendSrc = sfactor;
+    blendDst = dfactor;
+    gl.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    if (changes(depthMask, flag ? 1 : 0)) {
+      depthMask = flag ? 1 : 0;
+      gl.glDepthMask(flag);
+    }
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    if (lineWidth == width) {
+      elided++;
+      return;
+    }
+    issued++;
+    lineWidth = width;
+    gl.glLineWidth(width);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    if (index < 0 || index >= VERTEX_ATTRIBS) {
+      issued++;
+      gl.glEnableVertexAttribArray(index);
+    } else if (changes(attribEnabled[index], 1)) {
+      attribEnabled[index] = 1;
+      gl.glEnableVertexAttribArray(index);
+    }
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    if (index < 0 || index >= VERTEX_ATTRIBS) {
+      issued++;
+      gl.glDisableVertexAttribArray(index);
+    } else if (changes(attribEnabled[index], 0)) {
+      attribEnabled[index] = 0;
+      gl.glDisableVertexAttribArray(index);
+    }
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                                    int offset) {
+    int p = index * POINTER_INTS;
+    int norm = normalized ? 1 : 0;
+    if (index >= 0 && index < VERTEX_ATTRIBS && arrayBuffer != UNKNOWN
+        && pointers[p] == arrayBuffer && pointers[p + 1] == size && pointers[p + 2] == type
+        && pointers[p + 3] == norm && pointers[p + 4] == stride && pointers[p + 5] == offset) {
+      elided++;
+      return;
+    }
+    issued++;
+    gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    if (index >= 0 && index < VERTEX_ATTRIBS) {
+      pointers[p] = arrayBuffer;
+      pointers[p + 1] = size;
+      pointers[p + 2] = type;
+      pointers[p + 3] = norm;
+      pointers[p + 4] = stride;
+      pointers[p + 5] = offset;
+    }
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    int start = uniformSlot(location, 1);
+    if (start >= 0 && uniformValues[start] == x) {
+      elided++;
+      return;
+    }
+    issued++;
+    if (start >= 0)
+      uniformValues[start] = x;
+    gl.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    int start = uniformSlot(location, 1);
+    int bits = Float.floatToRawIntBits(x);
+    if (start >= 0 && uniformValues[start] == bits) {
+      elided++;
+      return;
+    }
+    issued++;
+    if (start >= 0)
+      uniformValues[start] = bits;
+    gl.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform3fv(int location, int count, float[] v, int offset) {
+    if (sameUniform(location, v, offset, count * 3)) {
+      elided++;
+      return;
+    }
+    issued++;
+    gl.glUniform3fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                 int offset) {
+    // ES 2.0 requires transpose to be false, so it does not need to be part of the cached value.
+    if (!transpose && sameUniform(location, value, offset, count * 16)) {
+      elided++;
+      return;
+    }
+    issued++;
+    gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    issued++;
+    gl.glClear(mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    issued++;
+    gl.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    issued++;
+    gl.glDrawElements(mode, count, type, offset);
+  }
+
+  /**
+   * Compares a float uniform with its cached value and stores the new value if it differs.
+   *
+   * @return true if the uniform already had the value.
+   */
+  private boolean sameUniform(int location, float[] v, int offset, int length) {
+    int start = uniformSlot(location, length);
+    if (start < 0)
+      return false;
+    boolean same = true;
+    for (int i = 0; i < length; i++) {
+      int bits = Float.floatToRawIntBits(v[offset + i]);
+      if (uniformValues[start + i] != bits) {
+        uniformValues[start + i] = bits;
+        same = false;
+      }
+    }
+    return same;
+  }
+
+  /**
+   * Finds the cached values of a uniform of the current program, adding room for them the first
+   * time the uniform is set. New entries start out holding values that no float has, so the
+   * first call is always issued.
+   *
+   * @return The index of the first value in uniformValues, or -1 if the uniform can't be cached.
+   */
+  private int uniformSlot(int location, int length) {
+    if (program == UNKNOWN || location < 0 || location > 0xffff || program > 0x7fff)
+      return -1;
+    int key = program << 16 | location;
+    int mask = uniformKeys.length - 1;
+    int i = hash(key) & mask;
+    while (uniformKeys[i] != EMPTY) {
+      if (uniformKeys[i] == key)
+        return uniformLength[i] == length ? uniformStart[i] : -1;
+      i = (i + 1) & mask;
+    }
+    if (uniformValuesUsed + length > uniformValues.length) {
+      int[] grown = new int[Math.max(uniformValues.length * 2, uniformValuesUsed + length)];
+      System.arraycopy(uniformValues, 0, grown, 0, uniformValuesUsed);
+      uniformValues = grown;
+    }
+    int start = uniformValuesUsed;
+    uniformValuesUsed += length;
+    // A NaN bit pattern that floatToRawIntBits of a real value can't produce in practice.
+    for (int n = start; n < uniformValuesUsed; n++)
+      uniformValues[n] = 0x7fbadbad;
+    uniformKeys[i] = key;
+    uniformStart[i] = start;
+    uniformLength[i] = length;
+    if (++uniformCount * 2 > uniformKeys.length)
+      growUniformTable();
+    return start;
+  }
+
+  private void growUniformTable() {
+    int[] keys = uniformKeys;
+    int[] starts = uniformStart;
+    int[] lengths = uniformLength;
+    uniformKeys = new int[keys.length * 2];
+    uniformStart = new int[keys.length * 2];
+    uniformLength = new int[keys.length * 2];
+    for (int i = 0; i < uniformKeys.length; i++)
+      uniformKeys[i] = EMPTY;
+    int mask = uniformKeys.length - 1;
+    for (int n = 0; n < keys.length; n++) {
+      if (keys[n] == EMPTY)
+        continue;
+      int i = hash(keys[n]) & mask;
+      while (uniformKeys[i] != EMPTY)
+        i = (i + 1) & mask;
+      uniformKeys[i] = keys[n];
+      uniformStart[i] = starts[n];
+      uniformLength[i] = lengths[n];
+    }
+  }
+
+  private static int hash(int key) {
+    key *= 0x9e3779b9;
+    return key ^ (key >>> 16);
+  }
+}
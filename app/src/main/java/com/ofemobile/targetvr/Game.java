@@ -0,0 +1,439 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.util.Random;
+
+/**
+ * The game itself: levels, shots and score, the targets, the thrown projectile and the beam, with
+ * no Android or GL in it, so that it can be run and measured off the device.
+ *
+ * <p>The game advances in fixed steps of {@link #STEP_SECONDS}. Each {@link #step()} moves the
+ * beam, the targets and the projectile and tests them against each other; {@link #trigger} shoots
+ * with a given head pose. MainActivity runs it on the simulation thread and draws the
+ * {@link WorldSnapshot}s it copies out; {@link HeadlessRunner} runs it as fast as it goes.
+ *
+ * <p>Level 1 throws a projectile, levels 2 to 4 fire a beam at targets that are still, then
+ * moving, then accelerating. Every level has ten shots. Random numbers come from the generator
+ * passed in, so a game is repeatable from its seed and its inputs.
+ *
+ * <p>Not thread safe.
+ */
+public final class Game {
+
+  public static final int STEPS_PER_SECOND = 60;
+  public static final float STEP_SECONDS = 1f / STEPS_PER_SECOND;
+
+  public static final int MAX_TARGETS = 1024;
+
+  /** The mode after the last level, until the next trigger pull starts a new game. */
+  public static final int GAME_OVER = 0;
+  public static final int SHOTS_PER_LEVEL = 10;
+  /** Enough characters for any message the game shows. */
+  public static final int MESSAGE_CAPACITY = 64;
+
+  // The ends of the beam in head space.
+  static final float[] BEAM_START = new float[] { 0.2f, -0.75f, 0f, 1.0f };
+  static final float[] BEAM_END = new float[] { 0, 0, -10f, 1.0f };
+  // Half the size of the box around the target that the beam has to pass through.
+  static final float BEAM_HIT_EXTENT = 0.12f;
+
+  // The beam front advances this far every step and the lit part of the beam is this long.
+  private static final float BEAM_STEP = 0.4f;
+  private static final float BEAM_LENGTH = 10f;
+  // The projectile counts as a hit when its centre comes this close to the target on every axis.
+  static final float PROJECTILE_HIT_EXTENT = 0.2f;
+  static final float GRAVITY = 9.81f;
+  // Degrees the projectile spins every step.
+  private static final float PROJECTILE_SPIN = 0.9f;
+
+  // Where a thrown projectile starts, and its velocity, in head space.
+  private static final float[] THROW_POSITION = new float[] { 0, -.75f, 0, 1 };
+  private static final float[] THROW_VELOCITY = new float[] { 0, 4, -8, 1 };
+
+  // The broad-phase grid. Targets are entered with a reach covering the projectile's hit box plus
+  // a step of target movement.
+  static final float GRID_CELL_SIZE = 0.5f;
+  static final float GRID_REACH = 0.25f;
+
+  private final Random random;
+
+  private int score;
+  private int shots;
+  private int mode;
+
+  private final float[] projectileRotation = new float[16];
+  // The projectile's orientation, turned by spinStep every step, as a quaternion so that it stays
+  // a rotation however long it spins.
+  private final float[] projectileSpin = new float[4];
+  private final float[] spinStep = new float[4];
+  private final float[] projectilePos = {1,0,0,1};
+  // Where the projectile was before the last step, to draw it in between.
+  private final float[] projectilePrevious = {1,0,0,1};
+  private final float[] projectileVelocity = {1,1,0,0};
+  private boolean out = true;
+
+  private final TargetStore targets = new TargetStore(MAX_TARGETS);
+  private final SpatialHash targetGrid = new SpatialHash(MAX_TARGETS, GRID_CELL_SIZE, GRID_REACH);
+  // Targets near the ray being tested, from targetGrid.
+  private final int[] candidates = new int[MAX_TARGETS];
+  private final float[] projectileNext = new float[3];
+  // Copies of one target's columns, for the collision tests.
+  private final float[] targetPos = new float[3];
+  private final float[] targetStep = new float[3];
+  private final float[] targetHitPoint = new float[3];
+  // Projectile motion relative to the cube over the current step.
+  private final float[] projectileOffset = new float[3];
+  private final float[] projectileSweep = new float[3];
+  private final float[] projectileCurve = new float[3];
+
+  private boolean beamFiring = false;
+  private float beamDist = 0;
+  private boolean beamHit = false;
+  private final float[] modelBeam = new float[16];
+  private final float[] modelFlare = new float[16];
+  private int flareStartStep = -51;
+  private final float[] flarePositionVec = new float[3];
+  private final Collision collision = new Collision();
+
+  // Steps so far. Fades are timed in steps, so they take as long at any frame rate.
+  private int stepNo = 0;
+  // The message on the sign, a serial number that changes with it and when it starts to fade. The
+  // builder is reused, so finishing a shot does not allocate.
+  private final StringBuilder message = new StringBuilder(MESSAGE_CAPACITY);
+  private int messageSerial;
+  private int signFadeStep = -200;
+
+  // Scratch vectors and matrices, reset every step.
+  private final FrameArena arena = new FrameArena();
+
+  public Game(Random random) {
+    this.random = random;
+    Mat4.setIdentityM(projectileRotation, 0);
+    Quat.setIdentity(projectileSpin, 0);
+    Quat.setAxisAngle(spinStep, 0, PROJECTILE_SPIN, 0.5f, 0.5f, 1.0f);
+    Mat4.setIdentityM(modelBeam, 0);
+    Mat4.setIdentityM(modelFlare, 0);
+    reset();
+  }
+
+  /**
+   * Starts a new game at level 1.
+   */
+  public void reset() {
+    shots=SHOTS_PER_LEVEL;
+    mode=1;
+    score=0;
+  }
+
+  /**
+   * Jumps to the start of a level, keeping the score, for benchmarks and tests.
+   */
+  void setLevel(int level) {
+    mode=level;
+    shots=SHOTS_PER_LEVEL;
+  }
+
+  public int mode() {
+    return mode;
+  }
+
+  public int score() {
+    return score;
+  }
+
+  public int shots() {
+    return shots;
+  }
+
+  public int stepNo() {
+    return stepNo;
+  }
+
+  /**
+   * The message on the sign. It changes as the game goes on; copy it to keep it.
+   */
+  public CharSequence message() {
+    return message;
+  }
+
+  /**
+   * The targets, to read. Changing them is up to the game.
+   */
+  public TargetStore targets() {
+    return targets;
+  }
+
+  /**
+   * @return true if a trigger pull now would shoot: no shot is in flight and the level has shots
+   *     left.
+   */
+  public boolean canShoot() {
+    return mode > 0 && out && !beamFiring && shots > 0;
+  }
+
+  /**
+   * Empties the room and spawns a new target.
+   */
+  public void respawn() {
+    for (int n = 0; n < targets.count(); n++)
+      targetGrid.remove(targets.get(n));
+    targets.clear();
+    spawnObject();
+  }
+
+  /**
+   * Puts a message on the sign for a time.
+   */
+  public void showMessage(CharSequence message, int millis) {
+    this.message.setLength(0);
+    this.message.append(message);
+    messageShown(millis);
+  }
+
+  // Shows the message just written into the builder for a time.
+  private void messageShown(int millis) {
+    messageSerial++;
+    signFadeStep=stepNo+(millis*STEPS_PER_SECOND/1000);
+  }
+
+  /**
+   * Shoots, or after the last level starts a new game.
+   *
+   * @param aim The head to world pose the trigger was pulled with.
+   */
+  public void trigger(float[] aim) {
+    if (mode == 1 && out && shots > 0) {
+      System.arraycopy(THROW_POSITION, 0, projectilePos, 0, 4);
+      System.arraycopy(THROW_POSITION, 0, projectilePrevious, 0, 4);
+      Mat4.multiplyMV(projectileVelocity, 0, aim, 0, THROW_VELOCITY, 0);
+      out = false;
+      shots--;
+    }
+    if (mode > 1 && out && shots > 0)
+    {
+      shots--;
+      if (!beamFiring) {
+        beamFiring = true;
+        beamHit = false;
+        System.arraycopy(aim, 0, modelBeam, 0, 16);
+      }
+    }
+    if (mode == GAME_OVER)
+      reset();
+  }
+
+  /**
+   * Advances the game by one step of STEP_SECONDS: the beam, the targets and the projectile move
+   * and are tested against each other.
+   */
+  public void step() {
+    arena.reset();
+    stepNo++;
+
+    if (beamFiring) {
+      beamDist += BEAM_STEP;
+      if (beamDist>15) {
+        beamFiring = false;
+        beamDist=0;
+        if (!beamHit) {
+          shotFinished(-2);
+        }
+      }
+    }
+
+    targets.integrate(STEP_SECONDS);
+    //Walk backwards so replacing a target does not skip any.
+    for (int n = targets.count() - 1; n >= 0; n--) {
+      int target = targets.get(n);
+      if (targets.isOutsideRoom(target))
+        hideObject(target);
+      else
+        targetGrid.update(target, targets.posX[target], targets.posY[target], targets.posZ[target]);
+    }
+
+    Quat.multiply(projectileSpin, 0, projectileSpin, 0, spinStep, 0);
+    Quat.normalize(projectileSpin, 0);
+    Quat.toRotationM(projectileRotation, 0, projectileSpin, 0);
+
+    //Check to see if a projectile has hit a cube at any point along its arc this step.
+    //Everything is relative to the cube, which moved by its step too.
+    projectileCurve[1] = -GRAVITY*STEP_SECONDS*STEP_SECONDS;
+    for (int i=0; i<3; i++)
+      projectileNext[i] = projectilePos[i] + projectileVelocity[i]*STEP_SECONDS + projectileCurve[i]/2;
+    int candidateCount = targetGrid.queryRay(projectilePos, projectileNext, candidates);
+    int projectileHitTarget = TargetStore.NONE;
+    float projectileHitTime = Collision.MISS;
+    for (int n = 0; n < candidateCount; n++) {
+      int target = candidates[n];
+      targets.getPosition(target, targetPos);
+      targets.getStep(target, targetStep);
+      for (int i=0; i<3; i++) {
+        projectileOffset[i] = projectilePos[i] - (targetPos[i] - targetStep[i]);
+        projectileSweep[i] = projectileVelocity[i]*STEP_SECONDS - targetStep[i];
+      }
+      float time = Collision.sweepArc(projectileOffset, projectileSweep, projectileCurve,
+          PROJECTILE_HIT_EXTENT);
+      if (time != Collision.MISS && (projectileHitTime == Collision.MISS || time < projectileHitTime)) {
+        projectileHitTime = time;
+        projectileHitTarget = target;
+      }
+    }
+
+    System.arraycopy(projectilePos, 0, projectilePrevious, 0, 3);
+    for(int i=0; i<3; i++)
+      projectilePos[i]+=projectileVelocity[i]*STEP_SECONDS;
+    projectilePos[1]+=projectileCurve[1]/2;
+    projectileVelocity[1]-=GRAVITY*STEP_SECONDS;
+
+    if (projectileHitTime != Collision.MISS) {
+      shotFinished(2);
+      hideObject(projectileHitTarget);
+      //Setting out here prevents loosing point when this poj hits a wall.
+      out = true;
+    }
+    if (!out) {
+      if (Math.abs(projectilePos[0]) > 4.0f) out = true;
+      if (projectilePos[1] < -1.5f) out = true;
+      if (Math.abs(projectilePos[2]) > 4.0f) out = true;
+      if (out) {
+        shotFinished(-1);
+        score--;
+      }
+    }
+
+    if (mode > 1 && beamFiring)
+      sweepBeam();
+  }
+
+  // Tests the part of the beam that lit up this step against the targets. The beam does not move
+  // while it is firing.
+  private void sweepBeam() {
+    float[] positionVec1 = arena.vec4();
+    float[] positionVec2 = arena.vec4();
+    Mat4.multiplyMV(positionVec1, 0, modelBeam, 0, BEAM_START, 0);
+    Mat4.multiplyMV(positionVec2, 0, modelBeam, 0, BEAM_END, 0);
+    for (int i=0; i<3; i++)
+      positionVec1[i]=positionVec1[i]/positionVec1[3];
+    for (int i=0; i<3; i++)
+      positionVec2[i]=positionVec2[i]/positionVec2[3];
+    int beamCandidateCount = targetGrid.queryRay(positionVec1, positionVec2, candidates);
+    //The lit part of the beam is BEAM_LENGTH long and its front moved BEAM_STEP this step.
+    float frontTo = beamDist / BEAM_LENGTH;
+    float frontFrom = Math.max(0, beamDist - BEAM_STEP) / BEAM_LENGTH;
+    int beamHitTarget = TargetStore.NONE;
+    float beamHitTime = Collision.MISS;
+    for (int n = 0; n < beamCandidateCount; n++) {
+      int target = candidates[n];
+      targets.getPosition(target, targetPos);
+      targets.getStep(target, targetStep);
+      float time = collision.sweepBeam(positionVec1, positionVec2, frontFrom, frontTo, 1.0f,
+          targetPos, targetStep, BEAM_HIT_EXTENT, targetHitPoint);
+      if (time != Collision.MISS && (beamHitTime == Collision.MISS || time < beamHitTime)) {
+        beamHitTime = time;
+        beamHitTarget = target;
+        System.arraycopy(targetHitPoint, 0, flarePositionVec, 0, 3);
+      }
+    }
+    if (beamHitTarget != TargetStore.NONE) {
+      beamHit = true;
+      shotFinished(2);
+      //The flare faces the user, who is at the origin.
+      Mat4.setBillboardM(modelFlare, 0, flarePositionVec[0], flarePositionVec[1],
+          flarePositionVec[2], .5f);
+      flareStartStep=stepNo;
+      hideObject(beamHitTarget);
+    }
+  }
+
+  private void shotFinished(int scoreDelta) {
+    score+=scoreDelta;
+    int messagetime = 1500;
+
+    message.setLength(0);
+    if (scoreDelta>0)
+      message.append("You hit it.\n");
+    else
+      message.append("You missed it.\n");
+    if (shots > 0)
+      message.append("Score: ").append(score).append('\n').append(shots).append(" Shots left");
+    else {
+      mode++;
+      shots=SHOTS_PER_LEVEL;
+      if (mode == 5) {
+        message.append("Game Over\nScore: ").append(score);
+        messagetime=10000;
+        mode=GAME_OVER;
+      } else
+        message.append("Level ").append(mode).append("\nScore: ").append(score);
+    }
+    messageShown(messagetime);
+  }
+
+  /**
+   * Replace a target that has been hit or has left the room with a new one.
+   */
+  private void hideObject(int target) {
+    targetGrid.remove(target);
+    targets.despawn(target);
+    spawnObject();
+  }
+
+  /**
+   * Spawns a target at a random spot in front of the user. From level 3 it moves and from level 4
+   * it accelerates, in random directions.
+   */
+  private void spawnObject() {
+    float x = random.nextFloat() * 1.0f - 0.5f;
+    float y = 0f;
+    float z = -(2f);
+    int target = targets.spawn(x, y, z);
+    if (target == TargetStore.NONE)
+      return;
+    targetGrid.update(target, x, y, z);
+
+    if (mode > 2)
+      targets.setVelocity(target, random.nextFloat() * 2.0f - 1.0f,
+          random.nextFloat() * 2.0f - 1.0f, random.nextFloat() * 2.0f - 1.0f);
+    if (mode == 4)
+      targets.setAcceleration(target, random.nextFloat() * 0.4f - 0.2f,
+          random.nextFloat() * 0.4f - 0.2f, random.nextFloat() * 0.4f - 0.2f);
+  }
+
+  /**
+   * Copies what the renderer needs into a snapshot. The caller sets its time.
+   */
+  public void copyTo(WorldSnapshot world) {
+    world.stepNo = stepNo;
+    world.mode = mode;
+    world.copyTargets(targets, targetGrid);
+    System.arraycopy(projectilePos, 0, world.projectilePos, 0, 3);
+    System.arraycopy(projectilePrevious, 0, world.projectilePrevious, 0, 3);
+    System.arraycopy(projectileRotation, 0, world.projectileRotation, 0, 16);
+    world.beamFiring = beamFiring;
+    world.beamDist = beamDist;
+    System.arraycopy(modelBeam, 0, world.modelBeam, 0, 16);
+    System.arraycopy(modelFlare, 0, world.modelFlare, 0, 16);
+    world.flareStartStep = flareStartStep;
+    if (world.messageSerial != messageSerial) {
+      world.message.setLength(0);
+      world.message.append(message);
+      world.messageSerial = messageSerial;
+    }
+    world.messageFadeStep = signFadeStep;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A signed distance field of the printable ASCII characters, one glyph per cell of a grid.
+ *
+ * <p>Each glyph is rasterized at the atlas's font size with its pen position {@link #SPREAD}
+ * pixels from the left of its cell and its baseline {@link #SPREAD} pixels plus the font's ascent
+ * from the top, so a glyph's quad is its whole cell placed relative to the pen. The size is
+ * {@link #MAX_FONT_SIZE}, or less for a font too tall to fit the cells at that size; see
+ * {@link #fittingSize(float, float, float)}. The atlas is built
+ * once, from coverage rendered by the platform, and drawn with the sdf shaders; see
+ * {@link TextMesh}.
+ */
+public final class GlyphAtlas {
+
+  public static final char FIRST_CHAR = 32;
+  public static final int GLYPH_COUNT = 95;
+  public static final int CELL_SIZE = 64;
+  public static final int COLUMNS = 16;
+  public static final int WIDTH = CELL_SIZE * COLUMNS;
+  public static final int HEIGHT = 512;
+  public static final float MAX_FONT_SIZE = 40;
+  public static final int SPREAD = 8;
+
+  private final float fontSize;
+  private final float[] advances;
+  private final float ascent;
+  private final float descent;
+  private final ByteBuffer pixels;
+
+  /**
+   * @param coverage {@link #WIDTH} x {@link #HEIGHT} bytes of glyph coverage, rows from the top.
+   * @param fontSize The size the glyphs were rasterized at.
+   * @param advances How far the pen moves after each glyph, at fontSize.
+   * @param ascent Distance from the baseline up to the top of the font, positive.
+   * @param descent Distance from the baseline down to the bottom of the font, positive. With the
+   *     ascent it must {@link #fits(float, float) fit} the cells.
+   */
+  public GlyphAtlas(byte[] coverage, float fontSize, float[] advances, float ascent,
+                    float descent) {
+    if (coverage.length != WIDTH * HEIGHT || advances.length != GLYPH_COUNT)
+      throw new IllegalArgumentException("Atlas needs " + WIDTH + "x" + HEIGHT + " pixels and "
+          + GLYPH_COUNT + " advances");
+    if (!fits(ascent, descent))
+      throw new IllegalArgumentException("Font does not fit the cells");
+    this.fontSize = fontSize;
+    this.advances = advances.clone();
+    this.ascent = ascent;
+    this.descent = descent;
+    byte[] field = SignedDistanceField.generate(coverage, WIDTH, HEIGHT, SPREAD);
+    pixels = ByteBuffer.allocateDirect(field.length).order(ByteOrder.nativeOrder());
+    pixels.put(field);
+    pixels.position(0);
+  }
+
+  /**
+   * @return true if glyphs of a font with these metrics, and their spread, fit in a cell.
+   */
+  public static boolean fits(float ascent, float descent) {
+    return SPREAD + ascent + descent <= CELL_SIZE - SPREAD;
+  }
+
+  /**
+   * Picks a smaller whole font size for a font that does not {@link #fits(float, float) fit} the
+   * cells. Metrics only roughly scale with the size, so measure again at the new size and repeat
+   * until it fits.
+   *
+   * @param size A size the font does not fit at.
+   * @param ascent The font's ascent at that size, positive.
+   * @param descent The font's descent at that size, positive.
+   * @return A size at least one smaller, and at least 1.
+   */
+  public static float fittingSize(float size, float ascent, float descent) {
+    float scaled = (float) Math.floor(size * (CELL_SIZE - 2 * SPREAD) / (ascent + descent));
+    return Math.max(1, Math.min(scaled, size - 1));
+  }
+
+  /**
+   * @return The glyph drawn for a character; characters outside the atlas are drawn as '?'.
+   */
+  public static int glyph(char c) {
+    return c >= FIRST_CHAR && c < FIRST_CHAR + GLYPH_COUNT ? c - FIRST_CHAR : '?' - FIRST_CHAR;
+  }
+
+  /** Left pixel of a glyph's cell. */
+  public static int cellX(int glyph) {
+    return (glyph % COLUMNS) * CELL_SIZE;
+  }
+
+  /** Top pixel of a glyph's cell. */
+  public static int cellY(int glyph) {
+    return (glyph / COLUMNS) * CELL_SIZE;
+  }
+
+  /**
+   * @return Where the pen goes for a glyph in its cell, from the left of the cell.
+   */
+  public static float penX() {
+    return SPREAD;
+  }
+
+  /**
+   * @return Where the baseline goes for a glyph in its cell, from the top of the cell.
+   */
+  public float baselineY() {
+    return SPREAD + ascent;
+  }
+
+  /**
+   * @return The size the glyphs were rasterized at.
+   */
+  public float fontSize() {
+    return fontSize;
+  }
+
+  public float advance(int glyph) {
+    return advances[glyph];
+  }
+
+  public float ascent() {
+    return ascent;
+  }
+
+  public float descent() {
+    return descent;
+  }
+
+  /**
+   * @return The distance field, one byte per pixel, for a GL_ALPHA texture.
+   */
+  public ByteBuffer pixels() {
+    return pixels;
+  }
+}
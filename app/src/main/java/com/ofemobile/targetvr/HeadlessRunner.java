@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Plays whole games of {@link Game} without a display, a clock or a user, as fast as the CPU
+ * allows, for soak testing and for measuring the simulation on its own.
+ *
+ * <p>A {@link Script} stands in for the user: every step it gives the head pose and says whether
+ * the trigger is pulled. {@link AimAtTarget} looks at the first target, a little off by a seeded
+ * amount, and shoots whenever it can.
+ *
+ * <p>Run from the command line with {@code java com.ofemobile.targetvr.HeadlessRunner [games]
+ * [seed]}; it prints games and steps per second and the mean score. With
+ * {@code HeadlessRunner replay <file> [times]} it plays an {@link InputRecorder} recording over
+ * and over instead, printing frames and steps per second, to compare the speed of two builds on
+ * exactly the same game.
+ */
+public final class HeadlessRunner {
+
+  /** A game that has not ended by then is abandoned, so that a script that never shoots ends. */
+  public static final int MAX_STEPS_PER_GAME = 60 * Game.STEPS_PER_SECOND * 10;
+
+  /**
+   * Stands in for the user's head and trigger.
+   */
+  public interface Script {
+    /**
+     * Called before every step.
+     *
+     * @param aim Filled with the head to world pose for this step.
+     * @return true to pull the trigger with that pose.
+     */
+    boolean aim(Game game, float[] aim);
+  }
+
+  /**
+   * Looks at the first live target, missing it by up to {@code jitter} in each direction, and
+   * pulls the trigger whenever the game can shoot. The beam starts below and to the right of the
+   * head, so from level 2 the head turns until the beam, rather than the line of sight, passes
+   * through the spot.
+   */
+  public static final class AimAtTarget implements Script {
+    private final Random random;
+    private final float jitter;
+    private final float[] beamView = new float[16];
+    private final float[] pose = new float[16];
+    private final float[] onBeam = new float[3];
+
+    public AimAtTarget(Random random, float jitter) {
+      this.random = random;
+      this.jitter = jitter;
+    }
+
+    @Override
+    public boolean aim(Game game, float[] aim) {
+      if (!game.canShoot())
+        return false;
+      TargetStore targets = game.targets();
+      if (targets.count() == 0)
+        return false;
+      int target = targets.get(0);
+      float x = targets.posX[target] + (random.nextFloat() * 2 - 1) * jitter;
+      float y = targets.posY[target] + (random.nextFloat() * 2 - 1) * jitter;
+      float z = targets.posZ[target] + (random.nextFloat() * 2 - 1) * jitter;
+      if (game.mode() < 2) {
+        Mat4.setLookAtInverseM(aim, 0, 0, 0, 0, x, y, z, 0, 1, 0);
+        return true;
+      }
+      // Turn the point on the beam as far from the head as the spot onto the spot.
+      pointOnBeam((float) Math.sqrt(x * x + y * y + z * z), onBeam);
+      Mat4.setLookAtM(beamView, 0, 0, 0, 0, onBeam[0], onBeam[1], onBeam[2], 0, 1, 0);
+      // The view matrix takes the world to the head, the pose the other way.
+      Mat4.setLookAtInverseM(pose, 0, 0, 0, 0, x, y, z, 0, 1, 0);
+      Mat4.multiplyMM(aim, 0, pose, 0, beamView, 0);
+      return true;
+    }
+
+    // Finds the point on the beam, in head space, at a distance from the head.
+    private static void pointOnBeam(float distance, float[] out) {
+      float[] s = Game.BEAM_START;
+      float[] e = Game.BEAM_END;
+      float dx = e[0] - s[0], dy = e[1] - s[1], dz = e[2] - s[2];
+      // |s + t * d| = distance
+      float a = dx * dx + dy * dy + dz * dz;
+      float b = 2 * (s[0] * dx + s[1] * dy + s[2] * dz);
+      float c = s[0] * s[0] + s[1] * s[1] + s[2] * s[2] - distance * distance;
+      float t = (float) ((-b + Math.sqrt(Math.max(0, b * b - 4 * a * c))) / (2 * a));
+      out[0] = s[0] + t * dx;
+      out[1] = s[1] + t * dy;
+      out[2] = s[2] + t * dz;
+    }
+  }
+
+  private final float[] aim = new float[16];
+  private long steps;
+  private long games;
+  private long totalScore;
+
+  private final float[] headView = new float[16];
+  private final float[] forward = new float[3];
+
+  public HeadlessRunner() {
+    Mat4.setIdentityM(aim, 0);
+  }
+
+  /**
+   * Plays one game from level 1 until it is over, or for {@link #MAX_STEPS_PER_GAME}.
+   *
+   * @return The number of steps played.
+   */
+  public int play(Game game, Script script) {
+    return play(game, script, null);
+  }
+
+  /**
+   * Plays one game and records it, with a frame after every step looking along the last aim.
+   *
+   * @param game A game that has not been stepped, so that the recording replays from its start.
+   * @param recorder Where to record the game, or null.
+   */
+  public int play(Game game, Script script, InputRecorder recorder) {
+    game.reset();
+    if (recorder != null)
+      recorder.respawn(game.stepNo());
+    game.respawn();
+    int played = 0;
+    while (played < MAX_STEPS_PER_GAME) {
+      if (script.aim(game, aim)) {
+        if (recorder != null)
+          recorder.trigger(game.stepNo(), aim, 0);
+        game.trigger(aim);
+      }
+      game.step();
+      played++;
+      if (recorder != null) {
+        Mat4.invertM(headView, 0, aim, 0);
+        for (int i = 0; i < 3; i++)
+          forward[i] = -aim[8 + i];
+        recorder.frame(played * (1000000000L / Game.STEPS_PER_SECOND), game.stepNo(), headView,
+            0, forward, 0);
+      }
+      if (game.mode() == Game.GAME_OVER)
+        break;
+    }
+    steps += played;
+    games++;
+    totalScore += game.score();
+    return played;
+  }
+
+  public long steps() {
+    return steps;
+  }
+
+  public long games() {
+    return games;
+  }
+
+  public long totalScore() {
+    return totalScore;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 1 && args[0].equals("replay")) {
+      replay(new File(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+      return;
+    }
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+    HeadlessRunner runner = new HeadlessRunner();
+    long start = System.nanoTime();
+    for (int g = 0; g < count; g++) {
+      // Each game gets its own seed, so any one of them can be played again on its own.
+      Game game = new Game(new Random(seed + g));
+      runner.play(game, new AimAtTarget(new Random(~(seed + g)), 0.1f));
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d games, %d steps in %.2f s: %.0f games/s, %.0f steps/s, mean score %.2f%n",
+        runner.games(), runner.steps(), seconds, runner.games() / seconds,
+        runner.steps() / seconds, (double) runner.totalScore() / runner.games());
+  }
+
+  private static void replay(File file, int times) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    InputReplay replay;
+    try {
+      replay = InputReplay.map(in.getChannel());
+    } finally {
+      in.close();
+    }
+    long frames = 0;
+    long steps = 0;
+    int score = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < times; i++) {
+      Game game = new Game(new Random(replay.seed()));
+      frames += replay.play(game);
+      steps += game.stepNo();
+      if (i > 0 && game.score() != score)
+        throw new IllegalStateException("Replay " + i + " scored " + game.score() + ", not "
+            + score);
+      score = game.score();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d replays, %d frames, %d steps in %.2f s: %.0f frames/s, %.0f steps/s, "
+        + "score %d%n", times, frames, steps, seconds, frames / seconds, steps / seconds, score);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of timestamped input events that any number of threads can add to and one
+ * thread takes from, without locks and without allocating.
+ *
+ * <p>Events are a type, the {@link System#nanoTime()} they happened at and up to
+ * {@link #MAX_VALUES} floats, such as the pose a shot was aimed with. They are kept in a ring of
+ * preallocated slots. Each slot has a sequence number that says whether it is free for the
+ * producer claiming that position or holds an event for the consumer: producers claim a position
+ * with a compare-and-set on the tail, fill the slot and then publish it by advancing its sequence,
+ * and the consumer frees it again by advancing the sequence a lap further (Vyukov's bounded
+ * queue, with a single consumer).
+ *
+ * <p>A full queue drops new events rather than blocking the thread that produced them, and counts
+ * them in {@link #dropped()}.
+ */
+public final class InputQueue {
+
+  /** The Cardboard trigger was pulled. */
+  public static final int TRIGGER = 1;
+
+  public static final int MAX_VALUES = 16;
+
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final int[] types;
+  private final long[] times;
+  private final float[] values;
+  private final int[] valueCounts;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  // Only touched by the consumer.
+  private long head;
+  private int type;
+  private long nanos;
+  private final float[] polledValues = new float[MAX_VALUES];
+  private int polledCount;
+
+  /**
+   * @param capacity The most events waiting at once, a power of two.
+   */
+  public InputQueue(int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1)
+      throw new IllegalArgumentException("capacity " + capacity + " is not a power of two");
+    mask = capacity - 1;
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++)
+      sequences.set(i, i);
+    types = new int[capacity];
+    times = new long[capacity];
+    values = new float[capacity * MAX_VALUES];
+    valueCounts = new int[capacity];
+  }
+
+  /**
+   * Producer side, from any thread. Adds an event with no values.
+   *
+   * @return false if the queue was full and the event was dropped.
+   */
+  public boolean offer(int type, long nanos) {
+    return offer(type, nanos, null, 0, 0);
+  }
+
+  /**
+   * Producer side, from any thread. Adds an event, copying its values.
+   *
+   * @return false if the queue was full and the event was dropped.
+   */
+  public boolean offer(int type, long nanos, float[] data, int offset, int count) {
+    if (count > MAX_VALUES)
+      throw new IllegalArgumentException(count + " values, at most " + MAX_VALUES);
+    while (true) {
+      long position = tail.get();
+      int slot = (int) position & mask;
+      long lag = sequences.get(slot) - position;
+      if (lag == 0) {
+        if (!tail.compareAndSet(position, position + 1))
+          continue;
+        types[slot] = type;
+        times[slot] = nanos;
+        if (count > 0)
+          System.arraycopy(data, offset, values, slot * MAX_VALUES, count);
+        valueCounts[slot] = count;
+        // Hands the slot to the consumer, and everything written to it before.
+        sequences.set(slot, position + 1);
+        return true;
+      }
+      if (lag < 0) {
+        // The consumer has not freed the slot from the last lap.
+        dropped.incrementAndGet();
+        return false;
+      }
+      // Another producer claimed this position first.
+    }
+  }
+
+  /**
+   * Consumer side. Takes the oldest event, which {@link #type()}, {@link #nanos()} and
+   * {@link #values()} then describe.
+   *
+   * @return false if there were no events.
+   */
+  public boolean poll() {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1)
+      return false;
+    type = types[slot];
+    nanos = times[slot];
+    polledCount = valueCounts[slot];
+    System.arraycopy(values, slot * MAX_VALUES, polledValues, 0, polledCount);
+    // Frees the slot for the producer a lap from now.
+    sequences.set(slot, head + mask + 1);
+    head++;
+    return true;
+  }
+
+  /** Consumer side. The type of the event taken by the last {@link #poll()}. */
+  public int type() {
+    return type;
+  }
+
+  /** Consumer side. When the event taken by the last {@link #poll()} happened. */
+  public long nanos() {
+    return nanos;
+  }
+
+  /**
+   * Consumer side.
+   *
+   * @return The values of the event taken by the last {@link #poll()}, valid until the next poll.
+   *     The array may be longer than {@link #valueCount()}.
+   */
+  public float[] values() {
+    return polledValues;
+  }
+
+  public int valueCount() {
+    return polledCount;
+  }
+
+  /**
+   * @return The number of events dropped because the queue was full.
+   */
+  public long dropped() {
+    return dropped.get();
+  }
+}
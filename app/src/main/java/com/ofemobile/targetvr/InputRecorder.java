@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Records what the player did, so that a session can be played again exactly by
+ * {@link InputReplay}, on the device or by {@link HeadlessRunner}.
+ *
+ * <p>A recording is little endian and consists of
+ * <ul>
+ *   <li>a header of {@link #HEADER_BYTES}: magic, version and the seed of the game's random
+ *   numbers, as a long;</li>
+ *   <li>records of {@link #RECORD_BYTES} each: kind, step, time in nanoseconds as a long, a pose
+ *   of 16 floats, a forward vector of 3 floats and 4 bytes of padding.</li>
+ * </ul>
+ * A {@link #FRAME} has the head view and forward vector of a rendered frame and the step of the
+ * world it drew. A {@link #TRIGGER} has the pose a shot was aimed with and the step it was fired
+ * before. A {@link #RESPAWN} marks the step before which the room was emptied and a new target
+ * spawned. The fields a kind does not use are zero. The game's random numbers come from the seed,
+ * so the triggers and respawns are all a replay needs to reach the same state at every step.
+ *
+ * <p>The render, simulation and UI threads may all record. Records go into a buffer, and a full
+ * buffer is swapped for an empty one and handed to a writer thread of the recorder's own, so that
+ * recording only ever copies a record and never waits for storage, which would show up in the
+ * frame times being recorded. The writer returns each buffer once it is written; if it falls a
+ * whole buffer behind, another buffer is allocated rather than waiting for it. A write that fails
+ * stops the recording and the error is thrown by the next {@link #flush()} or close, so that
+ * recording never throws on the render thread.
+ */
+public final class InputRecorder implements Closeable, Runnable {
+
+  public static final int MAGIC = 0x52525654; // "TVRR" in little endian
+  public static final int VERSION = 1;
+  public static final int HEADER_BYTES = 16;
+  public static final int RECORD_BYTES = 96;
+
+  public static final int FRAME = 1;
+  public static final int TRIGGER = 2;
+  public static final int RESPAWN = 3;
+
+  private final WritableByteChannel channel;
+  private final int bufferBytes;
+  private final Thread writer;
+  // The buffer being recorded into. Everything below is guarded by this.
+  private ByteBuffer buffer;
+  // Buffers waiting for the writer, the first of which it may be writing.
+  private final ArrayDeque<ByteBuffer> full = new ArrayDeque<ByteBuffer>();
+  // Written buffers, ready to record into again.
+  private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+  private boolean closing;
+  private long records;
+  private IOException error;
+
+  /**
+   * Starts the writer thread, which runs until {@link #close()}.
+   *
+   * @param seed The seed of the Random the game was made with.
+   * @param bufferRecords How many records are buffered between writes.
+   */
+  public InputRecorder(WritableByteChannel channel, long seed, int bufferRecords) {
+    if (bufferRecords < 1)
+      throw new IllegalArgumentException(bufferRecords + " records");
+    this.channel = channel;
+    // Only the first buffer holds the header, but any may be the first.
+    bufferBytes = HEADER_BYTES + bufferRecords * RECORD_BYTES;
+    buffer = allocate();
+    free.add(allocate());
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putLong(seed);
+    writer = new Thread(this, "InputRecorder");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private ByteBuffer allocate() {
+    return ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Records a rendered frame.
+   *
+   * @param step The step of the world the frame drew.
+   */
+  public synchronized void frame(long nanos, int step, float[] headView, int headViewOffset,
+                                 float[] forward, int forwardOffset) {
+    if (!reserve())
+      return;
+    put(FRAME, step, nanos, headView, headViewOffset);
+    for (int i = 0; i < 3; i++)
+      buffer.putFloat(forward[forwardOffset + i]);
+    buffer.putInt(0);
+  }
+
+  /**
+   * Records a trigger pull.
+   *
+   * @param step The step the game was on when the shot was fired, before stepping it.
+   * @param aim The head to world pose the shot was aimed with.
+   */
+  public synchronized void trigger(int step, float[] aim, int offset) {
+    if (!reserve())
+      return;
+    put(TRIGGER, step, 0, aim, offset);
+    pad(16);
+  }
+
+  /**
+   * Records a call to {@link Game#respawn()}.
+   */
+  public synchronized void respawn(int step) {
+    if (!reserve())
+      return;
+    put(RESPAWN, step, 0, null, 0);
+    pad(16);
+  }
+
+  /**
+   * @return The number of records so far, written or buffered.
+   */
+  public synchronized long records() {
+    return records;
+  }
+
+  /**
+   * Writes out the buffered records and waits for the writer thread to finish them.
+   *
+   * @throws IOException If this or an earlier write failed.
+   */
+  public synchronized void flush() throws IOException {
+    if (error == null && buffer.position() > 0)
+      handOff();
+    boolean interrupted = false;
+    while (!full.isEmpty()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Flushes, stops the writer thread and closes the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      synchronized (this) {
+        closing = true;
+        notifyAll();
+      }
+      boolean interrupted = false;
+      while (true) {
+        try {
+          writer.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+      channel.close();
+    }
+  }
+
+  // Makes room for a record, handing the buffer to the writer if it is full.
+  private boolean reserve() {
+    if (error != null)
+      return false;
+    if (buffer.remaining() < RECORD_BYTES)
+      handOff();
+    records++;
+    return true;
+  }
+
+  private void handOff() {
+    buffer.flip();
+    full.add(buffer);
+    buffer = free.poll();
+    if (buffer == null)
+      buffer = allocate();
+    notifyAll();
+  }
+
+  /**
+   * The writer thread: writes each full buffer to the channel, outside the lock so that
+   * recording goes on meanwhile.
+   */
+  @Override
+  public void run() {
+    while (true) {
+      ByteBuffer next;
+      synchronized (this) {
+        while (full.isEmpty() && !closing) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // Only close stops the writer.
+          }
+        }
+        if (full.isEmpty())
+          return;
+        next = full.peek();
+      }
+      IOException failed = null;
+      try {
+        while (next.hasRemaining())
+          channel.write(next);
+      } catch (IOException e) {
+        failed = e;
+      }
+      synchronized (this) {
+        if (failed != null && error == null)
+          error = failed;
+        // After a failure the rest is dropped, as the file would have a gap anyway.
+        do {
+          ByteBuffer done = full.poll();
+          done.clear();
+          free.add(done);
+        } while (error != null && !full.isEmpty());
+        notifyAll();
+      }
+    }
+  }
+
+  private void put(int kind, int step, long nanos, float[] pose, int offset) {
+    buffer.putInt(kind);
+    buffer.putInt(step);
+    buffer.putLong(nanos);
+    if (pose == null) {
+      pad(64);
+    } else {
+      for (int i = 0; i < 16; i++)
+        buffer.putFloat(pose[offset + i]);
+    }
+  }
+
+  // Zeroes the unused fields, so that a record never holds what was left in the buffer.
+  private void pad(int bytes) {
+    for (int i = 0; i < bytes; i += 4)
+      buffer.putInt(0);
+  }
+}
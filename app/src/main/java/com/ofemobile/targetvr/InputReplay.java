@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back a recording made by {@link InputRecorder}, straight out of a memory-mapped file, and
+ * plays it into a {@link Game}.
+ *
+ * <p>The records are read with a cursor: {@link #next()} moves to the next record, whose fields
+ * are then read with {@link #kind()}, {@link #step()}, {@link #nanos()}, {@link #pose} and
+ * {@link #forward}. Nothing is copied or allocated, so a replay runs as fast as the game does.
+ *
+ * <p>Not thread safe.
+ */
+public final class InputReplay {
+
+  private final ByteBuffer data;
+  private final long seed;
+  private final int recordCount;
+  private int record = -1;
+  private int position;
+  private final float[] aim = new float[16];
+
+  private InputReplay(ByteBuffer data) {
+    this.data = data;
+    seed = data.getLong(8);
+    recordCount = (data.limit() - InputRecorder.HEADER_BYTES) / InputRecorder.RECORD_BYTES;
+  }
+
+  /**
+   * Maps a whole recording. The mapping stays valid after the channel is closed.
+   */
+  public static InputReplay map(FileChannel channel) throws IOException {
+    return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+  }
+
+  /**
+   * Reads a recording from the buffer's position to its limit, without copying it. A record cut
+   * short at the end, as by a crash while recording, is ignored.
+   */
+  public static InputReplay read(ByteBuffer buffer) throws IOException {
+    ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (data.remaining() < InputRecorder.HEADER_BYTES || data.getInt(0) != InputRecorder.MAGIC)
+      throw new IOException("Not an input recording");
+    if (data.getInt(4) != InputRecorder.VERSION)
+      throw new IOException("Unsupported input recording version " + data.getInt(4));
+    return new InputReplay(data);
+  }
+
+  /**
+   * @return The seed to make the game's Random with.
+   */
+  public long seed() {
+    return seed;
+  }
+
+  public int recordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Moves the cursor back to before the first record.
+   */
+  public void rewind() {
+    record = -1;
+  }
+
+  /**
+   * Moves the cursor to the next record.
+   *
+   * @return false at the end of the recording.
+   */
+  public boolean next() {
+    if (record + 1 >= recordCount)
+      return false;
+    record++;
+    position = InputRecorder.HEADER_BYTES + record * InputRecorder.RECORD_BYTES;
+    return true;
+  }
+
+  /**
+   * @return {@link InputRecorder#FRAME}, {@link InputRecorder#TRIGGER} or
+   *     {@link InputRecorder#RESPAWN}.
+   */
+  public int kind() {
+    return data.getInt(position);
+  }
+
+  public int step() {
+    return data.getInt(position + 4);
+  }
+
+  public long nanos() {
+    return data.getLong(position + 8);
+  }
+
+  /**
+   * Copies out the head view of a frame or the aim of a trigger.
+   */
+  public void pose(float[] out, int offset) {
+    for (int i = 0; i < 16; i++)
+      out[offset + i] = data.getFloat(position + 16 + i * 4);
+  }
+
+  /**
+   * Copies out the forward vector of a frame.
+   */
+  public void forward(float[] out, int offset) {
+    for (int i = 0; i < 3; i++)
+      out[offset + i] = data.getFloat(position + 80 + i * 4);
+  }
+
+  /**
+   * Plays the whole recording into a game made with {@code new Random(seed())} that has not been
+   * stepped. Every trigger and respawn happens just before the step it was recorded at, and the
+   * game is stepped up to the world the last frame drew, so it ends up as the recorded game was
+   * then.
+   *
+   * @return The number of frames played.
+   */
+  public int play(Game game) {
+    rewind();
+    int frames = 0;
+    while (next()) {
+      int step = step();
+      while (game.stepNo() < step)
+        game.step();
+      switch (kind()) {
+        case InputRecorder.FRAME:
+          frames++;
+          break;
+        case InputRecorder.TRIGGER:
+          pose(aim, 0);
+          game.trigger(aim);
+          break;
+        case InputRecorder.RESPAWN:
+          game.respawn();
+          break;
+      }
+    }
+    return frames;
+  }
+}
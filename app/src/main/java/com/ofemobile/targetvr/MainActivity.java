@@ -23,31 +23,30 @@ import com.google.vrtoolkit.cardboard.HeadTransform;
 import com.google.vrtoolkit.cardboard.Viewport;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Vibrator;
-import android.text.Layout;
-import android.text.StaticLayout;
-import android.text.TextPaint;
 import android.util.Log;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Random;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
@@ -61,49 +60,90 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
   private static final float Z_NEAR = 0.1f;
   private static final float Z_FAR = 100.0f;
 
-  private static final float CAMERA_Z = 0.01f;
-  private static final float TIME_DELTA = 0.3f;
-
   private static final float YAW_LIMIT = 0.12f;
   private static final float PITCH_LIMIT = 0.12f;
 
   private static final int COORDS_PER_VERTEX = 3;
 
+  // The game runs in fixed steps of 1 / Game.STEPS_PER_SECOND, see SimulationClock. A simulation
+  // thread running this many steps late drops the rest rather than catching up.
+  private static final int MAX_STEPS_PER_FRAME = 5;
+  private static final int INPUT_QUEUE_SIZE = 16;
+  // Enough frames of head poses to cover the time between a trigger pull and the next frame.
+  private static final int POSE_HISTORY_SIZE = 16;
+  // How long a frame may spend building programs ahead of their first use.
+  private static final long PREWARM_NANOS = 2000000;
+
+  // Sign text, in pixels of the 256 pixel sign texture, which spans two units of the sign's model.
+  private static final float SIGN_TEXT_SIZE = 32;
+  private static final float SIGN_TEXT_WIDTH = 256;
+  private static final float SIGN_TEXT_SCALE = 1 / 128f;
+  // Just in front of the sign, so that it passes the depth test over it.
+  private static final float SIGN_TEXT_Z = 0.01f;
+  private static final int MAX_TEXT_GLYPHS = 128;
+  private static final float[] TEXT_COLOR = new float[] { 0, 0, 0 };
+  // About one atlas pixel of edge.
+  private static final float TEXT_SMOOTHING = 0.5f / GlyphAtlas.SPREAD;
+
   // We keep the light always position just above the user.
   private static final float[] LIGHT_POS_IN_WORLD_SPACE = new float[] { 0.0f, 2.0f, 0.0f, 1.0f };
 
-  private final float[] lightPosInEyeSpace = new float[4];
 
-  private FloatBuffer floorVertices;
-  private FloatBuffer floorColors;
-  private FloatBuffer floorNormals;
+  // What the render thread draws each frame, see FrameBuilder.
+  private final FrameBuilder frame = new FrameBuilder();
+
+  // GL calls that change state go through the cache so that redundant ones are dropped.
+  private final GLStateCache gl = new GLStateCache(new GLES20Api());
+
+  // Vertex buffer objects, see BufferManager.
+  private final BufferManager buffers = new BufferManager(gl);
+
+  // Rendered reticle variants, see TextureCache.
+  private final TextureCache reticleCache = new TextureCache(gl, RETICLE_CACHE_SIZE);
+
+  // Meshes mapped from the APK's assets, see MeshFile, and the buffers they were uploaded to.
+  private MeshFile floorMesh;
+  private MeshFile cubeMesh;
+  private MeshFile beamMesh;
+  private MeshFile rectMesh;
+  private MeshFile axisMesh;
+
+  private int floorVertices;
 
-  private FloatBuffer cubeVertices;
-  private FloatBuffer cubeColors;
-  private FloatBuffer cubeFoundColors;
-  private FloatBuffer cubeNormals;
+  // Both cube variants only differ in color per face, so they share the indices.
+  private int cubeVertices;
+  private int cubeFoundVertices;
+  private int cubeIndices;
 
-  private FloatBuffer beamVertices;
-  private FloatBuffer beamTXCoords;
+  private int beamVertices;
 
-  private FloatBuffer rectVertices;
-  private FloatBuffer rectTXCoords;
+  private int rectVertices;
 
-  private FloatBuffer axisVertices;
-  private FloatBuffer axisColors;
+  private int axisVertices;
 
+  // The sign's text as glyph quads, laid out again only when the message changes.
+  private final TextMesh textMesh = new TextMesh(MAX_TEXT_GLYPHS);
+  private int textVertices;
+  private int textIndices;
+  // Built once; the atlas texture is uploaded again for every new context.
+  private GlyphAtlas glyphAtlas;
+  private int atlasTexture;
+
+  // Shader programs, built when first used, see ProgramManager. The fields below are handles
+  // into it, which double as the render queue's program sort keys.
+  private ProgramManager programs;
   private int cubeProgram;
   private int floorProgram;
   private int beamProgram;
   private int txProgram;
   private int plainProgram;
   private int flareProgram;
+  private int sdfProgram;
 
   private int cubePositionParam;
   private int cubeNormalParam;
   private int cubeColorParam;
   private int cubeModelParam;
-  private int cubeModelViewParam;
   private int cubeModelViewProjectionParam;
   private int cubeLightPosParam;
 
@@ -111,9 +151,7 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
   private int floorCoordParam;
   private int floorColorParam;
   private int floorModelParam;
-  private int floorModelViewParam;
   private int floorModelViewProjectionParam;
-  private int floorLightPosParam;
 
   private int beamModelViewProjectionParam;
   private int beamPositionParam;
@@ -134,81 +172,75 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
   private int flarePositionParam;
   private int flareCoordParam;
 
-  private float[] modelCube;
+  private int sdfModelViewProjectionParam;
+  private int sdfPositionParam;
+  private int sdfCoordParam;
+  private int sdfColorParam;
+  private int sdfTransParam;
+  private int sdfSmoothingParam;
+
   private float[] camera;
   private float[] viewMatrix;
   private float[] headView;
   private float[] invHeadView;
-  private float[] modelViewProjection;
-  private float[] modelViewMatrix;
-  private float[] modelFloor;
-  private float[] modelProjectile;
-  private float[] projectileRotation;
-  private float[] modelBeam;
-  private float[] modelFlare;
-  private float[] modelReticle;
-  private float[] modelMatrix;
-
-  private float[] projectilePos = {1,0,0,1};
-  private float[] projectileVelocity = {1,1,0,0};
-  private float[] cubePos = {0,0,0,0};
-  private float[] cubeVel = {0,0,0,0};
-  private float[] cubeAccel = {0,0,0,0};
-
-
+  // The frame's draw calls, recorded in onNewFrame and replayed by onDrawEye for each eye.
+  private final DrawList drawList = new DrawList();
 
   private float[] forwardVector = {0,0,0};
 
-  private int score = 0;
-  private int shots = 10;
-  private int mode = 1;
   private float objectDistance = 3.5f;
-  private float floorDepth = 1.5f;
-
-  private boolean out = true;
 
   private Vibrator vibrator;
   private CardboardOverlayView overlayView;
 
   private int frameNo = 0;
-  private int signFadeFrame = -200;
-
-  private boolean beamFiring = false;
-  private float beamDist = 0;
-  boolean beamHit = false;
-  int flareStartFrame = -51;
-
-
-  /**
-   * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
-   *
-   * @param type The type of shader we will be creating.
-   * @param resId The resource ID of the raw text file about to be turned into a shader.
-   * @return The shader object handler.
-   */
-  private int loadGLShader(int type, int resId) {
-    String code = readRawTextFile(resId);
-    int shader = GLES20.glCreateShader(type);
-    GLES20.glShaderSource(shader, code);
-    GLES20.glCompileShader(shader);
-
-    // Get the compilation status.
-    final int[] compileStatus = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
-
-    // If the compilation failed, delete the shader.
-    if (compileStatus[0] == 0) {
-      Log.e(TAG, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-      GLES20.glDeleteShader(shader);
-      shader = 0;
+  // The game, which belongs to the simulation thread while it runs. Other threads only see the
+  // world snapshots it publishes.
+  private final long seed = new Random().nextLong();
+  private final Game game = new Game(new Random(seed));
+
+  // Set to record every session's head poses and trigger pulls to the app's external files
+  // directory, to play them again with HeadlessRunner.
+  private static final boolean RECORD_INPUT = false;
+  private static final int RECORDER_BUFFER_RECORDS = 256;
+  // Shared by the UI, simulation and render threads, null when not recording.
+  private InputRecorder recorder;
+
+  // The simulation thread, and what passes between it and the others.
+  private final SimulationClock clock = new SimulationClock(Game.STEPS_PER_SECOND,
+          MAX_STEPS_PER_FRAME);
+  private final SimulationLoop simulation = new SimulationLoop(new SimulationLoop.Simulation() {
+    @Override
+    public void step() {
+      while (aimedShots.poll()) {
+        if (aimedShots.type() == InputQueue.TRIGGER) {
+          if (recorder != null)
+            recorder.trigger(game.stepNo(), aimedShots.values(), 0);
+          game.trigger(aimedShots.values());
+        }
+      }
+      game.step();
     }
 
-    if (shader == 0) {
-      throw new RuntimeException("Error creating shader.");
+    @Override
+    public void publish(long stepNanos) {
+      publishWorld(stepNanos);
     }
+  }, clock);
+  // The game after the latest step, from the simulation thread to the render thread.
+  private final TripleBuffer<WorldSnapshot> worlds = new TripleBuffer<WorldSnapshot>();
+  // Trigger pulls from the UI thread, stamped with when they happened, for the render thread.
+  private final InputQueue input = new InputQueue(INPUT_QUEUE_SIZE);
+  // The head poses of the last frames, on the render thread, to aim shots with the pose the head
+  // had when the trigger was pulled.
+  private final PoseHistory poses = new PoseHistory(POSE_HISTORY_SIZE);
+  private final float[] shotPose = new float[16];
+  // Shots with their aim, from the render thread to the simulation thread.
+  private final InputQueue aimedShots = new InputQueue(INPUT_QUEUE_SIZE);
+
+  // The serial number of the message laid out on the sign.
+  private int signedMessage = -1;
 
-    return shader;
-  }
 
   /**
    * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
@@ -231,32 +263,34 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
 
+    if (RECORD_INPUT)
+      recorder = startRecording();
+
     setContentView(R.layout.common_ui);
     CardboardView cardboardView = (CardboardView) findViewById(R.id.cardboard_view);
     cardboardView.setRestoreGLStateEnabled(false);
     cardboardView.setRenderer(this);
     setCardboardView(cardboardView);
 
-    modelCube = new float[16];
     camera = new float[16];
     viewMatrix = new float[16];
-    modelViewProjection = new float[16];
-    modelViewMatrix = new float[16];
-    modelFloor = new float[16];
     headView = new float[16];
     invHeadView = new float[16];
-    modelProjectile = new float[16];
-    modelBeam = new float[16];
-    modelMatrix = new float[16];
-    modelFlare = new float[16];
-    modelReticle = new float[16];
-    projectileRotation = new float[16];
-    Matrix.setIdentityM(projectileRotation, 0);
     vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
+    // Program binaries are read and written through GLES30, which came with API 18.
+    programs = new ProgramManager(gl, new ProgramManager.Sources() {
+      @Override
+      public String read(int resource) {
+        return readRawTextFile(resource);
+      }
+    }, new File(getCacheDir(), "programs"),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+    definePrograms();
+
 
     overlayView = (CardboardOverlayView) findViewById(R.id.overlay);
-    show3DToast("Pull the magnet when you find a target.", 5000);
+    game.showMessage("Pull the magnet when you find a target.", 5000);
 
     Log.i(TAG, "onCreate");
     if (Looper.myLooper() == Looper.getMainLooper())
@@ -264,11 +298,60 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
     else
       Log.i(TAG, "Not in UI thread");
 
-    reset();
-
     getCardboardView().getCardboardDeviceParams();
   }
 
+  private InputRecorder startRecording() {
+    File file = new File(getExternalFilesDir(null),
+            "input-" + System.currentTimeMillis() + ".tvrr");
+    try {
+      Log.i(TAG, "Recording input to " + file);
+      return new InputRecorder(new FileOutputStream(file).getChannel(), seed,
+              RECORDER_BUFFER_RECORDS);
+    } catch (IOException e) {
+      Log.w(TAG, "Can't record input", e);
+      return null;
+    }
+  }
+
+  @Override
+  protected void onResume() {
+    // The simulation thread is stopped, so the game can be set up from here.
+    if (recorder != null)
+      recorder.respawn(game.stepNo());
+    game.respawn();
+    game.showMessage("Find the target cube then pull the magnet", 10000);
+    // Give the renderer a world to draw before the first step.
+    publishWorld(System.nanoTime());
+    super.onResume();
+    simulation.start();
+  }
+
+  @Override
+  protected void onPause() {
+    simulation.stop();
+    if (recorder != null) {
+      try {
+        recorder.flush();
+      } catch (IOException e) {
+        Log.w(TAG, "Input recording failed", e);
+      }
+    }
+    super.onPause();
+  }
+
+  @Override
+  protected void onDestroy() {
+    if (recorder != null) {
+      try {
+        recorder.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Input recording failed", e);
+      }
+    }
+    super.onDestroy();
+  }
+
   @Override
   public void onRendererShutdown() {
     Log.i(TAG, "onRendererShutdown");
@@ -283,7 +366,7 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
    * Creates the buffers we use to store information about the 3D world.
    *
    * <p>OpenGL doesn't use Java arrays, but rather needs data in a format it can understand.
-   * Hence we use ByteBuffers.
+   * Hence the geometry is uploaded into vertex buffer objects.
    *
    * @param config The EGL configuration used when creating the surface.
    */
@@ -293,238 +376,194 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
 
     GLES20.glClearColor(0.1f, 0.1f, 0.1f, 0.5f); // Dark background so text shows up well.
 
-    ByteBuffer bbBeamVertices = ByteBuffer.allocateDirect(WorldLayoutData.BEAM_VERTS.length * 4);
-    bbBeamVertices.order(ByteOrder.nativeOrder());
-    beamVertices = bbBeamVertices.asFloatBuffer();
-    beamVertices.put(WorldLayoutData.BEAM_VERTS);
-    beamVertices.position(0);
-
-    ByteBuffer bbBeamTXCoords = ByteBuffer.allocateDirect(WorldLayoutData.BEAM_TCCOORDS.length * 4);
-    bbBeamTXCoords.order(ByteOrder.nativeOrder());
-    beamTXCoords = bbBeamTXCoords.asFloatBuffer();
-    beamTXCoords.put(WorldLayoutData.BEAM_TCCOORDS);
-    beamTXCoords.position(0);
-
-    ByteBuffer bbrVertices = ByteBuffer.allocateDirect(WorldLayoutData.RECT_COORDS.length * 4);
-    bbrVertices.order(ByteOrder.nativeOrder());
-    rectVertices = bbrVertices.asFloatBuffer();
-    rectVertices.put(WorldLayoutData.RECT_COORDS);
-    rectVertices.position(0);
-
-    ByteBuffer bbrTxCords = ByteBuffer.allocateDirect(WorldLayoutData.RECT_COORDS.length * 4);
-    bbrTxCords.order(ByteOrder.nativeOrder());
-    rectTXCoords = bbrTxCords.asFloatBuffer();
-    rectTXCoords.put(WorldLayoutData.RECT_TXCOORDS);
-    rectTXCoords.position(0);
-
-    ByteBuffer bbVertices = ByteBuffer.allocateDirect(WorldLayoutData.CUBE_COORDS.length * 4);
-    bbVertices.order(ByteOrder.nativeOrder());
-    cubeVertices = bbVertices.asFloatBuffer();
-    cubeVertices.put(WorldLayoutData.CUBE_COORDS);
-    cubeVertices.position(0);
-
-    ByteBuffer bbColors = ByteBuffer.allocateDirect(WorldLayoutData.CUBE_COLORS.length * 4);
-    bbColors.order(ByteOrder.nativeOrder());
-    cubeColors = bbColors.asFloatBuffer();
-    cubeColors.put(WorldLayoutData.CUBE_COLORS);
-    cubeColors.position(0);
-
-    ByteBuffer bbFoundColors = ByteBuffer.allocateDirect(
-        WorldLayoutData.CUBE_FOUND_COLORS.length * 4);
-    bbFoundColors.order(ByteOrder.nativeOrder());
-    cubeFoundColors = bbFoundColors.asFloatBuffer();
-    cubeFoundColors.put(WorldLayoutData.CUBE_FOUND_COLORS);
-    cubeFoundColors.position(0);
-
-    ByteBuffer bbNormals = ByteBuffer.allocateDirect(WorldLayoutData.CUBE_NORMALS.length * 4);
-    bbNormals.order(ByteOrder.nativeOrder());
-    cubeNormals = bbNormals.asFloatBuffer();
-    cubeNormals.put(WorldLayoutData.CUBE_NORMALS);
-    cubeNormals.position(0);
+    // The old buffers and state went with the old context.
+    buffers.forget();
+    gl.reset();
+
+    // The meshes are mapped rather than read, so their bytes go from the APK to GL without
+    // passing through the Java heap.
+    beamMesh = loadMesh("beam");
+    beamVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, beamMesh.vertices);
+
+    rectMesh = loadMesh("rect");
+    rectVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, rectMesh.vertices);
+
+    cubeMesh = loadMesh("cube");
+    cubeVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, cubeMesh.vertices);
+    cubeIndices = buffers.upload(GLES20.GL_ELEMENT_ARRAY_BUFFER, cubeMesh.indices);
+    cubeFoundVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, loadMesh("cube_found").vertices);
 
     // make a floor
-    ByteBuffer bbFloorVertices = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_COORDS.length * 4);
-    bbFloorVertices.order(ByteOrder.nativeOrder());
-    floorVertices = bbFloorVertices.asFloatBuffer();
-    floorVertices.put(WorldLayoutData.FLOOR_COORDS);
-    floorVertices.position(0);
-
-    ByteBuffer bbFloorCoords = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_COORDSS.length * 4);
-    bbFloorCoords.order(ByteOrder.nativeOrder());
-    floorNormals = bbFloorCoords.asFloatBuffer();
-    floorNormals.put(WorldLayoutData.FLOOR_COORDSS);
-    floorNormals.position(0);
-
-    ByteBuffer bbFloorColors = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_COLORS.length * 4);
-    bbFloorColors.order(ByteOrder.nativeOrder());
-    floorColors = bbFloorColors.asFloatBuffer();
-    floorColors.put(WorldLayoutData.FLOOR_COLORS);
-    floorColors.position(0);
-
-    ByteBuffer bbaxisVertices = ByteBuffer.allocateDirect(WorldLayoutData.AXIS_VERTS.length * 4);
-    bbaxisVertices.order(ByteOrder.nativeOrder());
-    axisVertices = bbaxisVertices.asFloatBuffer();
-    axisVertices.put(WorldLayoutData.AXIS_VERTS);
-    axisVertices.position(0);
-
-    ByteBuffer bbaxisColors = ByteBuffer.allocateDirect(WorldLayoutData.AXIS_COLORS.length * 4);
-    bbaxisColors.order(ByteOrder.nativeOrder());
-    axisColors = bbaxisColors.asFloatBuffer();
-    axisColors.put(WorldLayoutData.AXIS_COLORS);
-    axisColors.position(0);
-
-    int beamVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.beam_vertex);
-    int beamFragShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.beam_fragment);
-    int gridvertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.grid_vertex);
-    int vertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.light_vertex);
-    int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.grid_fragment);
-    int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.passthrough_fragment);
-    int textureFragShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.texture_fragment);
-    int plainvertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.plain_vertex);
-    int flareFragShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.flare_fragment);
-
-    cubeProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(cubeProgram, vertexShader);
-    GLES20.glAttachShader(cubeProgram, passthroughShader);
-    GLES20.glLinkProgram(cubeProgram);
-    GLES20.glUseProgram(cubeProgram);
-
-    checkGLError("Cube program");
-
-    cubePositionParam = GLES20.glGetAttribLocation(cubeProgram, "a_Position");
-    cubeNormalParam = GLES20.glGetAttribLocation(cubeProgram, "a_Normal");
-    cubeColorParam = GLES20.glGetAttribLocation(cubeProgram, "a_Color");
-
-    cubeModelParam = GLES20.glGetUniformLocation(cubeProgram, "u_Model");
-    cubeModelViewParam = GLES20.glGetUniformLocation(cubeProgram, "u_MVMatrix");
-    cubeModelViewProjectionParam = GLES20.glGetUniformLocation(cubeProgram, "u_MVP");
-    cubeLightPosParam = GLES20.glGetUniformLocation(cubeProgram, "u_LightPos");
-
-    GLES20.glEnableVertexAttribArray(cubePositionParam);
-    GLES20.glEnableVertexAttribArray(cubeNormalParam);
-    GLES20.glEnableVertexAttribArray(cubeColorParam);
-
-    checkGLError("Cube program params");
-
-    floorProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(floorProgram, gridvertexShader);
-    GLES20.glAttachShader(floorProgram, gridShader);
-    GLES20.glLinkProgram(floorProgram);
-    GLES20.glUseProgram(floorProgram);
-
-    checkGLError("Floor program");
-
-
-    floorModelParam = GLES20.glGetUniformLocation(floorProgram, "u_Model");
-//    floorModelViewParam = GLES20.glGetUniformLocation(floorProgram, "u_MVMatrix");
-    floorModelViewProjectionParam = GLES20.glGetUniformLocation(floorProgram, "u_MVP");
-    floorLightPosParam = GLES20.glGetUniformLocation(floorProgram, "u_LightPos");
-
-    floorPositionParam = GLES20.glGetAttribLocation(floorProgram, "a_Position");
-    floorCoordParam = GLES20.glGetAttribLocation(floorProgram, "a_Coord");
-//    floorColorParam = GLES20.glGetAttribLocation(floorProgram, "a_Color");
-
-    GLES20.glEnableVertexAttribArray(floorPositionParam);
-    GLES20.glEnableVertexAttribArray(floorCoordParam);
-//    GLES20.glEnableVertexAttribArray(floorColorParam);
-
-    checkGLError("Floor program params");
-
-    beamProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(beamProgram, beamVertexShader);
-    GLES20.glAttachShader(beamProgram, beamFragShader);
-    GLES20.glLinkProgram(beamProgram);
-    GLES20.glUseProgram(beamProgram);
-    checkGLError("Beam program");
-
-    beamModelViewProjectionParam = GLES20.glGetUniformLocation(beamProgram, "u_MVP");
-    beamPositionParam = GLES20.glGetAttribLocation(beamProgram, "a_Position");
-    beamCoordParam = GLES20.glGetAttribLocation(beamProgram, "a_TXCoord");
-    beamMaxDepthParam = GLES20.glGetUniformLocation(beamProgram, "u_maxDepth");
-    GLES20.glEnableVertexAttribArray(beamPositionParam);
-    GLES20.glEnableVertexAttribArray(beamCoordParam);
-    checkGLError("Beam program params");
-
-    txProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(txProgram, gridvertexShader);
-    GLES20.glAttachShader(txProgram, textureFragShader);
-    GLES20.glLinkProgram(txProgram);
-    GLES20.glUseProgram(txProgram);
-    checkGLError("Tx program");
-
-    txModelViewProjectionParam = GLES20.glGetUniformLocation(txProgram, "u_MVP");
-    txTransParam = GLES20.glGetUniformLocation(txProgram, "u_Trans");
-    txPositionParam = GLES20.glGetAttribLocation(txProgram, "a_Position");
-    txCoordParam = GLES20.glGetAttribLocation(txProgram, "a_Coord");
-    GLES20.glEnableVertexAttribArray(txPositionParam);
-    GLES20.glEnableVertexAttribArray(txCoordParam);
-    checkGLError("Tx program params");
-
-
-    plainProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(plainProgram, plainvertexShader);
-    GLES20.glAttachShader(plainProgram, passthroughShader);
-    GLES20.glLinkProgram(plainProgram);
-    GLES20.glUseProgram(plainProgram);
-    checkGLError("Plain program");
-
-    plainModelViewProjectionParam = GLES20.glGetUniformLocation(plainProgram, "u_MVP");
-    plainPositionParam = GLES20.glGetAttribLocation(plainProgram, "a_Position");
-    plainColorParam = GLES20.glGetAttribLocation(plainProgram, "a_Color");
-    GLES20.glEnableVertexAttribArray(plainPositionParam);
-    GLES20.glEnableVertexAttribArray(plainColorParam);
-    checkGLError("Plain program params");
-
-    flareProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(flareProgram, gridvertexShader);
-    GLES20.glAttachShader(flareProgram, flareFragShader);
-    GLES20.glLinkProgram(flareProgram);
-    GLES20.glUseProgram(flareProgram);
-    checkGLError("Flare program");
-
-    flareModelViewProjectionParam = GLES20.glGetUniformLocation(flareProgram, "u_MVP");
-    flareRadiusParam = GLES20.glGetUniformLocation(flareProgram, "u_Radius");
-    flarePositionParam = GLES20.glGetAttribLocation(flareProgram, "a_Position");
-    flareCoordParam = GLES20.glGetAttribLocation(flareProgram, "a_Coord");
-    GLES20.glEnableVertexAttribArray(flarePositionParam);
-    GLES20.glEnableVertexAttribArray(flareCoordParam);
-    checkGLError("Flare program params");
+    floorMesh = loadMesh("floor");
+    floorVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, floorMesh.vertices);
+
+    axisMesh = loadMesh("axis");
+    axisVertices = buffers.upload(GLES20.GL_ARRAY_BUFFER, axisMesh.vertices);
+    Log.i(TAG, "Uploaded " + buffers.bufferCount() + " vertex buffers, "
+            + buffers.uploadedBytes() + " bytes");
+
+    // The programs went with the old context too, and are built again as they are first drawn
+    // with, or by prewarming in onNewFrame.
+    programs.forget();
 
     //Create the textures:
-    int[] textures = new int[2];
-//Generate one signTexture pointer...
-    GLES20.glGenTextures(2, textures, 0);
-
-    for (int i =0; i<2; i++) {
-//...and bind it to our array
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
-
-//Create Nearest Filtered Texture
-      GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-      GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-
-//Different possible signTexture parameters, e.g. GL10.GL_CLAMP_TO_EDGE
-      GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-      GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
-      Log.i(TAG, "Texture created " + textures[i]);
-    }
-    signTexture = textures[0];
-    reticleTexture = textures[1];
+    signTexture = createTexture(GLES20.GL_NEAREST, GLES20.GL_REPEAT);
+    signImage.setTexture(signTexture);
+
+    // Untextured items sort on their vertex buffer in place of a texture.
+    frame.setItem(FrameBuilder.ITEM_CUBE, cubeProgram, cubeVertices, cubeMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_PROJECTILE, cubeProgram, cubeFoundVertices,
+            cubeMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_FLOOR, floorProgram, floorVertices, floorMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_AXIS, plainProgram, axisVertices, axisMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_SIGN, txProgram, signTexture, rectMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_BEAM, beamProgram, beamVertices, beamMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_FLARE, flareProgram, rectVertices, rectMesh.radius());
+    frame.setItem(FrameBuilder.ITEM_RETICLE, txProgram, TextureCache.NO_TEXTURE,
+            rectMesh.radius());
+
+    // The reticles of the old context went with it. Each variant gets a texture of its own when
+    // it is first rendered.
+    reticleCache.forget();
+    reticleTexture = TextureCache.NO_TEXTURE;
+    reticleType = 0;
+    // The sign text buffer is new too.
+    signedMessage = -1;
+
+    // The glyph atlas is sampled between texels, so it is filtered linearly and not repeated.
+    atlasTexture = createTexture(GLES20.GL_LINEAR, GLES20.GL_CLAMP_TO_EDGE);
+    if (glyphAtlas == null)
+      glyphAtlas = buildGlyphAtlas();
+    gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_ALPHA, GlyphAtlas.WIDTH, GlyphAtlas.HEIGHT,
+            0, GLES20.GL_ALPHA, GLES20.GL_UNSIGNED_BYTE, glyphAtlas.pixels());
+    checkGLError("Glyph atlas");
+
+    textVertices = buffers.allocate(GLES20.GL_ARRAY_BUFFER, MAX_TEXT_GLYPHS * 4 * TextMesh.STRIDE);
+    textIndices = buffers.upload(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+            TextMesh.quadIndices(MAX_TEXT_GLYPHS));
+    // The sign itself is the same for every message, so it is only rendered once per context.
+    mainLoopHandler.post(signUpdater);
+
+    selectReticle(RETICLE_CROSS, RETICLE_COLOUR);
 
-    updateReticle(1);
+    checkGLError("onSurfaceCreated");
+  }
 
-    // Object first appears directly in front of user.
-    Matrix.setIdentityM(modelCube, 0);
-    Matrix.translateM(modelCube, 0, 0, 0, -objectDistance);
-    //No it does not.
-    hideObject();
+  /**
+   * Defines the shader programs. Each looks up its attribute and uniform locations whenever it is
+   * built, and enables its attribute arrays, which all draws leave enabled.
+   */
+  private void definePrograms() {
+    cubeProgram = programs.define("cube", R.raw.light_vertex, R.raw.passthrough_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        cubePositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        cubeNormalParam = GLES20.glGetAttribLocation(program, "a_Normal");
+        cubeColorParam = GLES20.glGetAttribLocation(program, "a_Color");
+
+        cubeModelParam = GLES20.glGetUniformLocation(program, "u_Model");
+        cubeModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        cubeLightPosParam = GLES20.glGetUniformLocation(program, "u_LightPos");
+
+        gl.glEnableVertexAttribArray(cubePositionParam);
+        gl.glEnableVertexAttribArray(cubeNormalParam);
+        gl.glEnableVertexAttribArray(cubeColorParam);
+
+        checkGLError("Cube program params");
+      }
+    });
 
-    Matrix.setIdentityM(modelFloor, 0);
-    Matrix.translateM(modelFloor, 0, 0, -floorDepth, 0); // Floor appears below user.
+    floorProgram = programs.define("floor", R.raw.grid_vertex, R.raw.grid_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        floorModelParam = GLES20.glGetUniformLocation(program, "u_Model");
+//        floorModelViewParam = GLES20.glGetUniformLocation(program, "u_MVMatrix");
+        floorModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
 
-    show3DToast("Find the target cube then pull the magnet", 10000);
+        floorPositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        floorCoordParam = GLES20.glGetAttribLocation(program, "a_Coord");
+//        floorColorParam = GLES20.glGetAttribLocation(program, "a_Color");
 
-    checkGLError("onSurfaceCreated");
+        gl.glEnableVertexAttribArray(floorPositionParam);
+        gl.glEnableVertexAttribArray(floorCoordParam);
+//        gl.glEnableVertexAttribArray(floorColorParam);
+
+        checkGLError("Floor program params");
+      }
+    });
+
+    beamProgram = programs.define("beam", R.raw.beam_vertex, R.raw.beam_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        beamModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        beamPositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        beamCoordParam = GLES20.glGetAttribLocation(program, "a_TXCoord");
+        beamMaxDepthParam = GLES20.glGetUniformLocation(program, "u_maxDepth");
+        gl.glEnableVertexAttribArray(beamPositionParam);
+        gl.glEnableVertexAttribArray(beamCoordParam);
+        checkGLError("Beam program params");
+      }
+    });
+
+    txProgram = programs.define("tx", R.raw.grid_vertex, R.raw.texture_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        txModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        txTransParam = GLES20.glGetUniformLocation(program, "u_Trans");
+        txPositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        txCoordParam = GLES20.glGetAttribLocation(program, "a_Coord");
+        gl.glEnableVertexAttribArray(txPositionParam);
+        gl.glEnableVertexAttribArray(txCoordParam);
+        checkGLError("Tx program params");
+      }
+    });
+
+    plainProgram = programs.define("plain", R.raw.plain_vertex, R.raw.passthrough_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        plainModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        plainPositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        plainColorParam = GLES20.glGetAttribLocation(program, "a_Color");
+        gl.glEnableVertexAttribArray(plainPositionParam);
+        gl.glEnableVertexAttribArray(plainColorParam);
+        checkGLError("Plain program params");
+      }
+    });
+
+    flareProgram = programs.define("flare", R.raw.grid_vertex, R.raw.flare_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        flareModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        flareRadiusParam = GLES20.glGetUniformLocation(program, "u_Radius");
+        flarePositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        flareCoordParam = GLES20.glGetAttribLocation(program, "a_Coord");
+        gl.glEnableVertexAttribArray(flarePositionParam);
+        gl.glEnableVertexAttribArray(flareCoordParam);
+        checkGLError("Flare program params");
+      }
+    });
+
+    sdfProgram = programs.define("sdf", R.raw.sdf_vertex, R.raw.sdf_fragment,
+            new ProgramManager.Linked() {
+      @Override
+      public void linked(int program) {
+        sdfModelViewProjectionParam = GLES20.glGetUniformLocation(program, "u_MVP");
+        sdfColorParam = GLES20.glGetUniformLocation(program, "u_Color");
+        sdfTransParam = GLES20.glGetUniformLocation(program, "u_Trans");
+        sdfSmoothingParam = GLES20.glGetUniformLocation(program, "u_Smoothing");
+        sdfPositionParam = GLES20.glGetAttribLocation(program, "a_Position");
+        sdfCoordParam = GLES20.glGetAttribLocation(program, "a_Coord");
+        gl.glEnableVertexAttribArray(sdfPositionParam);
+        gl.glEnableVertexAttribArray(sdfCoordParam);
+        checkGLError("SDF program params");
+      }
+    });
   }
 
   /**
@@ -550,10 +589,23 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
     return null;
   }
 
-  public void reset() {
-    shots=10;
-    mode=1;
-    score=0;
+  /**
+   * Memory-maps one of the meshes that the meshgen module writes into the assets.
+   *
+   * @param name The mesh name, without directory or extension.
+   */
+  private MeshFile loadMesh(String name) {
+    try {
+      AssetFileDescriptor fd = getAssets().openFd("meshes/" + name + ".mesh");
+      FileInputStream in = fd.createInputStream();
+      try {
+        return MeshFile.map(in.getChannel(), fd.getStartOffset(), fd.getLength());
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error loading mesh " + name, e);
+    }
   }
 
   /**
@@ -563,230 +615,142 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
    */
   @Override
   public void onNewFrame(HeadTransform headTransform) {
+    if (frameNo % 600 == 0 && Log.isLoggable(TAG, Log.VERBOSE))
+      Log.v(TAG, "GL calls last frame: " + gl.issuedCalls() + " issued, "
+              + gl.elidedCalls() + " elided, " + frame.transforms().drawn()
+              + " objects drawn and " + frame.transforms().culled()
+              + " culled for both eyes, reticle cache "
+              + reticleCache.hits() + " hits, " + reticleCache.misses() + " misses, "
+              + reticleCache.evictions() + " evictions, programs " + programs.compiledCount()
+              + " compiled, " + programs.loadedCount() + " loaded from cache");
+    // The distortion pass changed the bindings after the last frame.
+    gl.beginFrame();
+    // Build programs that nothing has drawn with yet, such as the beam's, while they fit in the
+    // frame's spare time; in practice that is loading their cached binaries, as a compile takes
+    // longer. Either way the frame that first needs one does not stall on it.
+    programs.prewarm(PREWARM_NANOS);
     frameNo++;
-
-    if (beamFiring) {
-      beamDist += 0.4;
-      if (beamDist>15) {
-        beamFiring = false;
-        beamDist=0;
-        if (!beamHit) {
-          shotFinished(-2);
-        }
-      }
-    }
-
-    for (int i=0; i<3; i++)
-      cubePos[i]=cubePos[i]+cubeVel[i]/60f;
-    for (int i=0; i<3; i++)
-      cubeVel[i]=cubeVel[i]+cubeAccel[i]/60f;
-    boolean cubeOut = false;
-    if (Math.abs(cubePos[0]) > 4.0f) cubeOut = true;
-    if (cubePos[1] < -1.5f) cubeOut = true;
-    if (cubePos[1] > 4f-1.5f) cubeOut = true;
-    if (Math.abs(cubePos[2]) > 4.0f) cubeOut = true;
-    if (cubeOut)
-      hideObject();
-
-    // Build the Model part of the ModelView matrix.
-    Matrix.rotateM(projectileRotation, 0, 3*TIME_DELTA, 0.5f, 0.5f, 1.0f);
+    // Draw the latest step the simulation thread has published, a step behind it so that there
+    // is a step before it to draw in between.
+    worlds.update();
+    WorldSnapshot world = worlds.read();
+    long now = System.nanoTime();
+    // How far this frame is drawn between the last two steps.
+    float alpha = world.alpha(now, clock.stepNanos());
 
     // Build the camera matrix and apply it to the ModelView.
-    Matrix.setLookAtM(camera, 0, 0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+    Matrix.setLookAtM(camera, 0, 0.0f, 0.0f, FrameBuilder.CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f,
+            0.0f);
 
     headTransform.getHeadView(headView, 0);
-    Matrix.invertM(invHeadView, 0, headView, 0);
+    // The head view is a rotation and the neck model's translation.
+    Mat4.invertRigidM(invHeadView, 0, headView, 0);
     headTransform.getForwardVector(forwardVector, 0);
-
-    for(int i=0; i<3; i++)
-      projectilePos[i]+=projectileVelocity[i]/60.0f;
-    projectileVelocity[1]-=9.81/60.0f;
-
-    //Check to see if a projectile has hit a cube:
-    {
-      boolean hit = true;
-      for (int i = 0; i < 3; i++)
-        if (Math.abs(projectilePos[i] - cubePos[i]) > 0.2f) hit = false;
-      if (hit) {
-        shotFinished(2);
-        Log.i(TAG, "Object Hit. Score: " + score);
-        hideObject();
-        //Setting out here prevents loosing point when this poj hits a wall.
-        out = true;
-      }
-      if (!out) {
-        if (Math.abs(projectilePos[0]) > 4.0f) out = true;
-        if (projectilePos[1] < -1.5f) out = true;
-        if (Math.abs(projectilePos[2]) > 4.0f) out = true;
-        if (out) {
-          shotFinished(-1);
-          score--;
-
-          Log.i(TAG, "Object Missed. Score: " + score);
-        }
-      }
+    if (recorder != null)
+      recorder.frame(now, world.stepNo, headView, 0, forwardVector, 0);
+    // Aim every trigger pull since the last frame with the pose of the moment it happened, rather
+    // than whatever pose is newest when it is handled.
+    poses.add(now, invHeadView, 0);
+    while (input.poll()) {
+      if (input.type() == InputQueue.TRIGGER && poses.poseAt(input.nanos(), shotPose))
+        aimedShots.offer(InputQueue.TRIGGER, input.nanos(), shotPose, 0, 16);
     }
 
-    if (!beamFiring) {
-      Matrix.setIdentityM(modelBeam, 0);
-      Matrix.multiplyMM(modelBeam, 0, invHeadView, 0, modelBeam, 0);
-    }
+    boolean onTarget = frame.aim(world, alpha, invHeadView);
+    selectReticle(RETICLE_CROSS, onTarget ? RETICLE_ON_TARGET_COLOUR : RETICLE_COLOUR);
 
-    if (mode > 1) {
-//      Log.i(TAG, "Checking to see if the ray has hit a target");
-      //Check to see if the ray has hit a target
-      //We what to interpollate between these:
-      //            0.2f, -0.75f, 0f,
-      //            0, 0, -10f,
-
-      float[] startVec1 = {0.2f, -0.75f, 0f, 1.0f};
-      float[] startVec2 = {0, 0, -10f, 1.0f};
-      float[] positionVec1 = new float[4];
-      float[] positionVec2 = new float[4];
-      float[] intPositionVec = new float[4];
-
-      Matrix.multiplyMV(positionVec1, 0, modelBeam, 0, startVec1, 0);
-      Matrix.multiplyMV(positionVec2, 0, modelBeam, 0, startVec2, 0);
-      for (int i=0; i<3; i++)
-        positionVec1[i]=positionVec1[i]/positionVec1[3];
-      for (int i=0; i<3; i++)
-        positionVec2[i]=positionVec2[i]/positionVec2[3];
-      for (float roughInteroplateFactor = 0; roughInteroplateFactor < 1; roughInteroplateFactor += 0.01) {
-//          Log.i(TAG, "interoplateFactor " + interoplateFactor + " beamDist " + beamDist);
-        boolean hit = true;
-        for (int i = 0; i < 3; i++) {
-          intPositionVec[i] = roughInteroplateFactor * (positionVec2[i] - positionVec1[i]) + positionVec1[i];
-          if (Math.abs(intPositionVec[i] - cubePos[i]) > 0.12f)
-            hit = false;
-        }
-        if (hit)
-        {
-//          Log.i(TAG, "Rough search made hit at: int:"+roughInteroplateFactor+" X: " + intPositionVec[0] + "  Y: " + intPositionVec[1] + "  Z: " + intPositionVec[2]);
-          for (float interoplateFactor = roughInteroplateFactor-0.005f; interoplateFactor < roughInteroplateFactor+0.005f; interoplateFactor += 0.001f)
-          {
-            hit = true;
-            for (int i = 0; i < 3; i++) {
-              intPositionVec[i] = interoplateFactor * (positionVec2[i] - positionVec1[i]) + positionVec1[i];
-              if (Math.abs(intPositionVec[i] - cubePos[i]) > 0.12f)
-                hit = false;
-            }
-            if (hit) {
-//              Log.i(TAG, "Precise search made hit at: int:"+interoplateFactor+" X: " + intPositionVec[0] + "  Y: " + intPositionVec[1] + "  Z: " + intPositionVec[2]);
-              break;
-            }
-          }
-          if (!hit)
-            Log.e(TAG, "Error: Precise search failed");
-        }
-        boolean wallhit = false;
-          if (Math.abs(intPositionVec[0]) >= 4f)
-            wallhit = true;
-          if (Math.abs(intPositionVec[2]) >= 4f)
-            wallhit = true;
-          if (intPositionVec[1] <= -1.5f)
-            wallhit = true;
-          if (intPositionVec[1] >= 4.0f-1.5f)
-            wallhit = true;
-//          if (beamDist < 0.5)
-//            Log.i(TAG, "Int: " + interoplateFactor + " test point:"
-//                    + intPositionVec[0] + "  " + intPositionVec[1] + "  " + intPositionVec[2] + " Diff: "
-//                    + Math.abs(intPositionVec[0] - cubePos[0]) + "  "
-//                    + Math.abs(intPositionVec[1] - cubePos[1]) + "  "
-//                    + Math.abs(intPositionVec[2] - cubePos[2]));
-          if (beamFiring && hit && roughInteroplateFactor*10.0 < beamDist && roughInteroplateFactor*10.0 > (beamDist-10)) {
-            Log.i(TAG, "Object hit by beam");
-            beamHit = true;
-            shotFinished(2);
-            //Should now create flare effect
-            //This is cheating, will not work if beam coming from another point:
-            float[] billboardt = new float[16];
-            float[] billboardr = new float[16];
-            float[] billboardir = new float[16];
-//            float invHeadView[] = new float[16];
-//            Matrix.invertM(invHeadView, 0, headView, 0);
-            Matrix.setIdentityM(billboardt, 0);
-            Matrix.setLookAtM(billboardr, 0, 0, 0, 0, intPositionVec[0], intPositionVec[1], intPositionVec[2], 0, 1, 0);
-            Matrix.invertM(billboardir, 0, billboardr, 0);
-            Matrix.translateM(billboardt, 0, intPositionVec[0], intPositionVec[1], intPositionVec[2]);
-            Matrix.multiplyMM(modelFlare, 0, billboardt, 0, billboardir, 0);
-//            Matrix.multiplyMM(modelFlare, 0, billboardt, 0, invHeadView, 0);
-            Matrix.scaleM(modelFlare, 0, .5f, .5f, .5f);
-            flareStartFrame=frameNo;
-            hideObject();
-          }
-          if (hit || wallhit)
-          {
-//            Log.i(TAG, "The ray has hit a target " + intPositionVec[0] + " " + intPositionVec[1] + " " +  intPositionVec[2]);
-            float[] billboardt = new float[16];
-            float[] billboardr = new float[16];
-            float[] billboardir = new float[16];
-            Matrix.setIdentityM(billboardt, 0);
-            Matrix.setLookAtM(billboardr, 0, 0, 0, 0, intPositionVec[0], intPositionVec[1], intPositionVec[2], 0, 1, 0);
-            Matrix.invertM(billboardir, 0, billboardr, 0);
-            Matrix.translateM(billboardt, 0, intPositionVec[0], intPositionVec[1], intPositionVec[2]);
-            if (hit)
-              Matrix.translateM(billboardt, 0, 0.0f, 0.0f, 0.0f);
-            else
-              Matrix.translateM(billboardt, 0, 0.0f, 0.0f, 0.01f);
-            Matrix.multiplyMM(modelReticle, 0, billboardt, 0, billboardir, 0);
-//            Matrix.multiplyMM(modelFlare, 0, billboardt, 0, invHeadView, 0);
-            Matrix.scaleM(modelReticle, 0, .25f/2f, .25f/2f, .25f/2f);
-            break;
-          }
-        }
-    }else
-    {
-//      Log.i(TAG, "Set the Reticle in fixed pos");
-      //We are on level one (or game over screen) Reticle in fixed pos
-      Matrix.setIdentityM(modelReticle, 0);
-      Matrix.translateM(modelReticle, 0, 0, 0, -1.5f);
-      Matrix.scaleM(modelReticle, 0, .05f, .05f, .05f);
-      Matrix.multiplyMM(modelReticle, 0, invHeadView, 0, modelReticle, 0);
+    if (textImages.update()) {
+      signTextureReady=true;
+      UpdateTexture(signImage, textImages.read());
     }
 
-    if (textimagelock.tryLock()) {
-      if (textRenderFinished) {
-        signTextureReady=true;
-        UpdateTexture(signTexture, textBitmap);
-        textRenderFinished=false;
-      }
-      textimagelock.unlock();
+    if (world.messageSerial != signedMessage) {
+      // A new message is a few hundred bytes of quads rather than a raster and texture upload.
+      textMesh.layout(glyphAtlas, world.message, SIGN_TEXT_SIZE, SIGN_TEXT_WIDTH, SIGN_TEXT_SCALE,
+              SIGN_TEXT_Z);
+      buffers.update(GLES20.GL_ARRAY_BUFFER, textVertices, textMesh.vertices());
+      signedMessage = world.messageSerial;
     }
 
-    if (reticleBitmaplock.tryLock()) {
-      if (reticleRenderFinished) {
-        UpdateTexture(reticleTexture, reticleBitmap);
-        reticleRenderFinished=false;
-      }
-      reticleBitmaplock.unlock();
-    }
+    if (reticleImages.update())
+      cacheReticle(reticleImages.read());
 
+    frame.build(world, alpha, signTextureReady, reticleTexture);
+    recordFrame();
     checkGLError("onReadyToDraw");
   }
 
-
-  public void shotFinished(int scoreDelta) {
-    score+=scoreDelta;
-    String message;
-    int messagetime = 1500;
-
-    if (scoreDelta>0)
-      message="You hit it.\n";
-    else
-      message="You missed it.\n";
-      if (shots > 0)
-        message=message+"Score: " + score + "\n" + shots + " Shots left";
-      else {
-        mode++;
-        shots=10;
-        if (mode == 5) {
-          message=message+"Game Over\nScore: " + score;
-          messagetime=10000;
-          mode=0;
-        } else
-          message=message+"Level " + mode + "\nScore: " + score;
+  /**
+   * Records the draw calls for this frame's render queue into the draw list, which each eye
+   * replays. The draw methods below record into the list rather than draw.
+   */
+  private void recordFrame() {
+    RenderQueue renderQueue = frame.renderQueue();
+    drawList.clear();
+    drawList.glEnable(GLES20.GL_DEPTH_TEST);
+    drawList.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+    int pass = RenderQueue.PASS_OPAQUE;
+    for (int n = 0; n < renderQueue.size(); n++) {
+      int next = RenderQueue.pass(renderQueue.key(n));
+      if (pass < RenderQueue.PASS_TRANSPARENT && next >= RenderQueue.PASS_TRANSPARENT) {
+        drawList.glEnable(GLES20.GL_BLEND);
+        drawList.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+      }
+      if (pass < RenderQueue.PASS_OVERLAY && next >= RenderQueue.PASS_OVERLAY)
+        drawList.glDisable(GLES20.GL_DEPTH_TEST);
+      pass = next;
+
+      int item = renderQueue.item(n);
+      int slot = item & ((1 << FrameBuilder.ITEM_SHIFT) - 1);
+      // Skipped for an eye that the object's bounding sphere is outside of.
+      drawList.beginDraw(slot);
+      switch (item >>> FrameBuilder.ITEM_SHIFT) {
+        case FrameBuilder.ITEM_CUBE:
+          drawCube(slot);
+          break;
+        case FrameBuilder.ITEM_PROJECTILE:
+          drawProjectile(slot);
+          break;
+        case FrameBuilder.ITEM_FLOOR:
+          drawFloor(slot);
+          break;
+        case FrameBuilder.ITEM_AXIS:
+          drawAxis(slot);
+          break;
+        case FrameBuilder.ITEM_SIGN:
+          drawRect(slot, signTexture, frame.signTrans());
+          drawText(slot, frame.signTrans());
+          break;
+        case FrameBuilder.ITEM_BEAM:
+          drawBeam(slot);
+          break;
+        case FrameBuilder.ITEM_FLARE:
+          drawFlare(slot);
+          break;
+        case FrameBuilder.ITEM_RETICLE:
+          drawRect(slot, reticleTexture, 1);
+          break;
       }
-    show3DToast(message, messagetime);
+      drawList.endDraw();
+    }
+    if (pass >= RenderQueue.PASS_OVERLAY)
+      drawList.glEnable(GLES20.GL_DEPTH_TEST);
+    if (pass >= RenderQueue.PASS_TRANSPARENT)
+      drawList.glDisable(GLES20.GL_BLEND);
+  }
+
+  /**
+   * Copies what the renderer needs from the game into a snapshot and hands it to the render
+   * thread. Called on the simulation thread, or before it starts.
+   */
+  private void publishWorld(long stepNanos) {
+    WorldSnapshot world = worlds.writable();
+    if (world == null)
+      world = new WorldSnapshot(Game.MAX_TARGETS);
+    game.copyTo(world);
+    world.stepNanos = stepNanos;
+    worlds.publish(world);
   }
 
   /**
@@ -796,90 +760,14 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
    */
   @Override
   public void onDrawEye(Eye eye) {
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-
-    checkGLError("colorParam");
-
     // Apply the eye transformation to the camera.
     Matrix.multiplyMM(viewMatrix, 0, eye.getEyeView(), 0, camera, 0);
 
-    // Set the position of the light
-    Matrix.multiplyMV(lightPosInEyeSpace, 0, viewMatrix, 0, LIGHT_POS_IN_WORLD_SPACE, 0);
-
-    // Build the ModelView and ModelViewProjection matrices
-    // for calculating cube position and light.
-    float[] perspective = eye.getPerspective(Z_NEAR, Z_FAR);
-
-    if (mode>0) {
-      Matrix.setIdentityM(modelCube, 0);
-      Matrix.translateM(modelCube, 0, cubePos[0], cubePos[1], cubePos[2]);
-      Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelCube, 0);
-      Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-      drawCube();
-    }
+    // The model-view-projection of everything in the transform table, for this eye.
+    frame.transforms().concatenate(viewMatrix, eye.getPerspective(Z_NEAR, Z_FAR));
 
-    float[] modelProjectilei = new float[16];
-    Matrix.setIdentityM(modelProjectilei, 0);
-    Matrix.translateM(modelProjectilei, 0, projectilePos[0], projectilePos[1], projectilePos[2]);
-    Matrix.multiplyMM(modelProjectile, 0, modelProjectilei, 0, projectileRotation, 0);
-    Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelProjectile, 0);
-    Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-    drawProjectile();
-
-//     Set modelViewMatrix for the floor, so we draw floor in the correct location
-    Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelFloor, 0);
-    Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-    drawFloor();
-
-    Matrix.setIdentityM(modelMatrix, 0);
-    Matrix.translateM(modelMatrix, 0, 2, -floorDepth+0.1f, -2);
-    Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-    drawAxis();
-
-    GLES20.glEnable(GLES20.GL_BLEND);
-    GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-    float trans = 1f;
-    if (frameNo > signFadeFrame)
-      trans = 1 - (((float) frameNo - (float) signFadeFrame) / 100f);
-    if (signTextureReady && frameNo < (signFadeFrame + 100)) {
-      for (int i = 0; i < 4; i++) {
-        //Draw Sign:
-        Matrix.setIdentityM(modelMatrix, 0);
-//    Matrix.rotateM(modelBeam, 0, 45, 0, 1, 0);
-        Matrix.rotateM(modelMatrix, 0, 90 * i, 0, 1, 0);
-        Matrix.translateM(modelMatrix, 0, 0.1f, -0.05f, -3.5f);
-        Matrix.scaleM(modelMatrix, 0, .75f, .75f, .75f);
-        Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-        Matrix.multiplyMM(modelViewProjection, 0, perspective, 0,
-                modelViewMatrix, 0);
-//      Log.v(TAG, "Trans" +trans + " frameNo " + frameNo + " signFadeFrame " + signFadeFrame);
-        drawRect(signTexture, trans);
-      }
-    }
-
-    if (beamFiring) {
-      Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelBeam, 0);
-      Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-      drawBeam();
-    }
-
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    if (frameNo-flareStartFrame > 0 && frameNo-flareStartFrame < 51) {
-      Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelFlare, 0);
-      Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-      drawFlare();
-    }
-
-
-      //Draw the Reticle (this must be done last due to transparency)
-    Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelReticle, 0);
-    Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelViewMatrix, 0);
-    drawRect(reticleTexture, 1);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDisable(GLES20.GL_BLEND);
+    drawList.replay(gl, frame.transforms());
+    checkGLError("onDrawEye");
   }
 
   @Override
@@ -893,130 +781,135 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
    *
    * <p>We've set all of our transformation matrices. Now we simply pass them into the shader.
    */
-  public void drawCube() {
-    GLES20.glUseProgram(cubeProgram);
-
-    GLES20.glUniform3fv(cubeLightPosParam, 1, lightPosInEyeSpace, 0);
-
-    // Set the Model in the shader, used to calculate lighting
-    GLES20.glUniformMatrix4fv(cubeModelParam, 1, false, modelCube, 0);
-
-    // Set the ModelView in the shader, used to calculate lighting
-    GLES20.glUniformMatrix4fv(cubeModelViewParam, 1, false, modelViewMatrix, 0);
-
-    // Set the position of the cube
-    GLES20.glVertexAttribPointer(cubePositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, cubeVertices);
-
-    // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(cubeModelViewProjectionParam, 1, false, modelViewProjection, 0);
-
-    // Set the normal positions of the cube, again for shading
-    GLES20.glVertexAttribPointer(cubeNormalParam, 3, GLES20.GL_FLOAT, false, 0, cubeNormals);
-    GLES20.glVertexAttribPointer(cubeColorParam, 4, GLES20.GL_FLOAT, false, 0, cubeColors);
-//
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
-    checkGLError("Drawing cube");
+  public void drawCube(int slot) {
+    drawCubeMesh(slot, cubeVertices);
   }
 
-  public void drawProjectile() {
+  public void drawProjectile(int slot) {
+    drawCubeMesh(slot, cubeFoundVertices);
+  }
 
-    GLES20.glUseProgram(cubeProgram);
+  /**
+   * Records one of the interleaved cube buffers with the transforms in a slot of the transform
+   * table.
+   */
+  private void drawCubeMesh(int slot, int vertices) {
+    drawList.glUseProgram(programs.program(cubeProgram));
 
-    GLES20.glUniform3fv(cubeLightPosParam, 1, lightPosInEyeSpace, 0);
+    // The light is in world space, lighting is done with the Model matrix.
+    drawList.glUniform3fv(cubeLightPosParam, 1, LIGHT_POS_IN_WORLD_SPACE, 0);
 
     // Set the Model in the shader, used to calculate lighting
-    GLES20.glUniformMatrix4fv(cubeModelParam, 1, false, modelProjectile, 0);
-
-    // Set the ModelView in the shader, used to calculate lighting
-    GLES20.glUniformMatrix4fv(cubeModelViewParam, 1, false, modelViewMatrix, 0);
-
-    // Set the position of the cube
-    GLES20.glVertexAttribPointer(cubePositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, cubeVertices);
+    drawList.uniformModel(cubeModelParam, slot);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(cubeModelViewProjectionParam, 1, false, modelViewProjection, 0);
+    drawList.uniformMvp(cubeModelViewProjectionParam, slot);
 
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertices);
+    meshPointer(cubeMesh, MeshFile.ATTRIBUTE_POSITION, cubePositionParam);
     // Set the normal positions of the cube, again for shading
-    GLES20.glVertexAttribPointer(cubeNormalParam, 3, GLES20.GL_FLOAT, false, 0, cubeNormals);
-    GLES20.glVertexAttribPointer(cubeColorParam, 4, GLES20.GL_FLOAT, false, 0, cubeFoundColors);
+    meshPointer(cubeMesh, MeshFile.ATTRIBUTE_NORMAL, cubeNormalParam);
+    meshPointer(cubeMesh, MeshFile.ATTRIBUTE_COLOR, cubeColorParam);
+
+    drawList.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, cubeIndices);
+    drawList.glDrawElements(GLES20.GL_TRIANGLES, cubeMesh.indexCount, GLES20.GL_UNSIGNED_SHORT,
+            0);
+  }
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
-    checkGLError("Drawing cube");
+  /**
+   * Points a program attribute at one of a mesh's attributes in the bound array buffer.
+   */
+  private void meshPointer(MeshFile mesh, int attribute, int param) {
+    int a = mesh.attribute(attribute);
+    drawList.glVertexAttribPointer(param, mesh.size(a), mesh.type(a), mesh.normalized(a),
+            mesh.stride, mesh.offset(a));
   }
 
-  public void drawBeam() {
-    GLES20.glUseProgram(beamProgram);
+  public void drawBeam(int slot) {
+    drawList.glUseProgram(programs.program(beamProgram));
 
     // Set the position of the beam
-    GLES20.glVertexAttribPointer(beamPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, beamVertices);
-    GLES20.glVertexAttribPointer(beamCoordParam, 1, GLES20.GL_FLOAT,
-            false, 0, beamTXCoords);
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, beamVertices);
+    meshPointer(beamMesh, MeshFile.ATTRIBUTE_POSITION, beamPositionParam);
+    meshPointer(beamMesh, MeshFile.ATTRIBUTE_COORD, beamCoordParam);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(beamModelViewProjectionParam, 1, false, modelViewProjection, 0);
+    drawList.uniformMvp(beamModelViewProjectionParam, slot);
 
-    GLES20.glUniform1f(beamMaxDepthParam, beamDist);
+    drawList.glUniform1f(beamMaxDepthParam, worlds.read().beamDist);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
-    checkGLError("Drawing Beam");
+    drawList.glDrawArrays(GLES20.GL_TRIANGLES, 0, beamMesh.vertexCount);
   }
 
-  public void drawRect(int texture, float trans) {
-    GLES20.glUseProgram(txProgram);
+  public void drawRect(int slot, int texture, float trans) {
+    drawList.glUseProgram(programs.program(txProgram));
 
     // Set the position of the beam
-    GLES20.glVertexAttribPointer(txPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, rectVertices);
-    GLES20.glVertexAttribPointer(txCoordParam, 2, GLES20.GL_FLOAT, false, 0,
-            rectTXCoords);
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, rectVertices);
+    meshPointer(rectMesh, MeshFile.ATTRIBUTE_POSITION, txPositionParam);
+    meshPointer(rectMesh, MeshFile.ATTRIBUTE_COORD, txCoordParam);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(txModelViewProjectionParam, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(txTransParam, trans);
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    checkGLError("Drawing Rect");
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-    checkGLError("Drawing Rect");
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
-    checkGLError("Drawing Rect");
+    drawList.uniformMvp(txModelViewProjectionParam, slot);
+    drawList.glUniform1f(txTransParam, trans);
+
+    drawList.glActiveTexture(GLES20.GL_TEXTURE0);
+    drawList.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    drawList.glDrawArrays(GLES20.GL_TRIANGLES, 0, rectMesh.vertexCount);
+  }
+
+  /**
+   * Records the sign's text, laid out in the sign's model space.
+   */
+  public void drawText(int slot, float trans) {
+    drawList.glUseProgram(programs.program(sdfProgram));
+
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, textVertices);
+    drawList.glVertexAttribPointer(sdfPositionParam, 3, GLES20.GL_FLOAT, false, TextMesh.STRIDE,
+            TextMesh.POSITION_OFFSET);
+    drawList.glVertexAttribPointer(sdfCoordParam, 2, GLES20.GL_FLOAT, false, TextMesh.STRIDE,
+            TextMesh.COORD_OFFSET);
+
+    drawList.uniformMvp(sdfModelViewProjectionParam, slot);
+    drawList.glUniform3fv(sdfColorParam, 1, TEXT_COLOR, 0);
+    drawList.glUniform1f(sdfTransParam, trans);
+    drawList.glUniform1f(sdfSmoothingParam, TEXT_SMOOTHING);
+
+    drawList.glActiveTexture(GLES20.GL_TEXTURE0);
+    drawList.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+    drawList.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, textIndices);
+    drawList.glDrawElements(GLES20.GL_TRIANGLES, textMesh.indexCount(), GLES20.GL_UNSIGNED_SHORT,
+            0);
   }
 
-  public void drawFlare() {
-    GLES20.glUseProgram(flareProgram);
+  public void drawFlare(int slot) {
+    drawList.glUseProgram(programs.program(flareProgram));
 
     // Set the position of the beam
-    GLES20.glVertexAttribPointer(flarePositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, rectVertices);
-    GLES20.glVertexAttribPointer(flareCoordParam, 2, GLES20.GL_FLOAT, false, 0,
-            rectTXCoords);
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, rectVertices);
+    meshPointer(rectMesh, MeshFile.ATTRIBUTE_POSITION, flarePositionParam);
+    meshPointer(rectMesh, MeshFile.ATTRIBUTE_COORD, flareCoordParam);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(flareModelViewProjectionParam, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(flareRadiusParam, ((float) (frameNo - flareStartFrame)) /50f);
+    drawList.uniformMvp(flareModelViewProjectionParam, slot);
+    drawList.glUniform1f(flareRadiusParam, ((float) frame.flareAge()) /50f);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
-    checkGLError("Drawing Rect");
+    drawList.glDrawArrays(GLES20.GL_TRIANGLES, 0, rectMesh.vertexCount);
   }
 
-  public void drawAxis() {
-    GLES20.glUseProgram(plainProgram);
+  public void drawAxis(int slot) {
+    drawList.glUseProgram(programs.program(plainProgram));
 
     // Set the position of the beam
-    GLES20.glVertexAttribPointer(plainPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-            false, 0, axisVertices);
-    GLES20.glVertexAttribPointer(plainColorParam, 3, GLES20.GL_FLOAT, false, 0,
-            axisColors);
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, axisVertices);
+    meshPointer(axisMesh, MeshFile.ATTRIBUTE_POSITION, plainPositionParam);
+    meshPointer(axisMesh, MeshFile.ATTRIBUTE_COLOR, plainColorParam);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(plainModelViewProjectionParam, 1, false, modelViewProjection, 0);
+    drawList.uniformMvp(plainModelViewProjectionParam, slot);
 
-    GLES20.glLineWidth(2);
-    GLES20.glDrawArrays(GLES20.GL_LINES, 0, 18);
-    checkGLError("Drawing Axis");
+    drawList.glLineWidth(2);
+    drawList.glDrawArrays(GLES20.GL_LINES, 0, axisMesh.vertexCount);
   }
 
   /**
@@ -1026,25 +919,19 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
    * position of the light, so if we rewrite our code to draw the floor first, the lighting might
    * look strange.
    */
-  public void drawFloor() {
-    GLES20.glDisable(GLES20.GL_CULL_FACE);
-    GLES20.glUseProgram(floorProgram);
-
-    // Set ModelView, MVP, position, normals, and color.
-    GLES20.glUniform3fv(floorLightPosParam, 1, lightPosInEyeSpace, 0);
-    GLES20.glUniformMatrix4fv(floorModelParam, 1, false, modelFloor, 0);
-    GLES20.glUniformMatrix4fv(floorModelViewParam, 1, false, modelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(floorModelViewProjectionParam, 1, false,
-            modelViewProjection, 0);
-    GLES20.glVertexAttribPointer(floorPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-        false, 0, floorVertices);
-    GLES20.glVertexAttribPointer(floorCoordParam, 2, GLES20.GL_FLOAT, false, 0,
-        floorNormals);
+  public void drawFloor(int slot) {
+    drawList.glDisable(GLES20.GL_CULL_FACE);
+    drawList.glUseProgram(programs.program(floorProgram));
+
+    // Set Model, MVP, position and texture coordinates.
+    drawList.uniformModel(floorModelParam, slot);
+    drawList.uniformMvp(floorModelViewProjectionParam, slot);
+    drawList.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorVertices);
+    meshPointer(floorMesh, MeshFile.ATTRIBUTE_POSITION, floorPositionParam);
+    meshPointer(floorMesh, MeshFile.ATTRIBUTE_COORD, floorCoordParam);
 //    GLES20.glVertexAttribPointer(floorColorParam, 4, GLES20.GL_FLOAT, false, 0, floorColors);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6 * 6);
-
-    checkGLError("drawing floor");
+    drawList.glDrawArrays(GLES20.GL_TRIANGLES, 0, floorMesh.vertexCount);
   }
 
   /**
@@ -1053,174 +940,169 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
   @Override
   public void onCardboardTrigger() {
     Log.i(TAG, "onCardboardTrigger");
-
-//    vibrator.vibrate(50);
-    if (mode == 1 && out && shots > 0) {
-      Log.i(TAG, "Throwing");
-      projectilePos = new float[]{0, -.75f, 0, 1};
-      float[] projectileVelocityVS = new float[]{0, 4, -8, 1};
-      Matrix.multiplyMV(projectileVelocity, 0, invHeadView, 0, projectileVelocityVS, 0);
-
-      Log.i(TAG, "projectileVelocity Vect: " + projectileVelocity[0] + " " + projectileVelocity[1] + " " + projectileVelocity[2]);
-      out = false;
-      shots--;
-    }
-    if (mode > 1 && out && shots > 0)
-    {
-      Log.i(TAG, "Firing");
-      shots--;
-      if (!beamFiring) {
-        beamFiring = true;
-        beamHit = false;
-        Matrix.setIdentityM(modelBeam, 0);
-        Matrix.multiplyMM(modelBeam, 0, invHeadView, 0, modelBeam, 0);
-      }
-    }
-    if (mode == 0)
-      reset();
-      // Always give user feedback.
-      vibrator.vibrate(20);
-  }
-
-  /**
-   * Find a new random position for the object.
-   *
-   * <p>We'll rotate it around the Y-axis so it's out of sight, and then up or down by a little bit.
-   */
-  private void hideObject() {
-    cubePos = new float[3];
-    cubePos[0] = (float)Math.random() * 7.0f - 3.5f;
-    cubePos[1] = (float)Math.random() * 7.0f - 3.5f;
-    cubePos[2] = -((float)Math.random() * 3.0f + 0.5f);
-
-    cubePos[0] = (float)Math.random() * 1.0f - 0.5f;
-    cubePos[1] = 0f;
-    cubePos[2] = -(2f);
-
-    for (int i=0; i<3; i++) {
-      if (mode > 2)
-        cubeVel[i] = (float) Math.random() * 2.0f - 1.0f;
-      else
-        cubeVel[i] = 0;
-      if (mode == 4)
-        cubeAccel[i] = (float) Math.random() * 0.4f - 0.2f;
-      else
-        cubeAccel[i] = 0;
-    }
-    Log.i(TAG, "cubePos:  X: " + cubePos[0] + "  Y: " + cubePos[1] + "  Z: " + cubePos[2]);
-    Log.i(TAG, "cubeVel:  X: " + cubeVel[0] + "  Y: " + cubeVel[1] + "  Z: " + cubeVel[2]);
-
+    // The render thread aims it at its next frame and the simulation thread fires it.
+    input.offer(InputQueue.TRIGGER, System.nanoTime());
+    // Always give user feedback.
+    vibrator.vibrate(20);
   }
 
   Handler mainLoopHandler = new Handler(Looper.getMainLooper());
 
-  //Text Rendering:
-  TextViewUpdater textViewUpdater = new TextViewUpdater();
-  private final ReentrantLock textimagelock = new ReentrantLock();
+  //Sign Rendering:
+  SignUpdater signUpdater = new SignUpdater();
   int signTexture = 0;
   boolean signTextureReady = false;
 
-  //Protected by textimagelock:
-  private Bitmap textBitmap;
-  private boolean textRenderFinished=false;
+  // The rendered sign, from the UI thread to the GL thread.
+  private final TripleBuffer<PixelImage> textImages = new TripleBuffer<PixelImage>();
+  private final SubImageTexture signImage = new SubImageTexture(256, 256, GLES20.GL_RGBA,
+          GLES20.GL_UNSIGNED_SHORT_4_4_4_4);
+
 
-  private class TextViewUpdater implements Runnable{
-    private String txt;
-    private int time;
+  /**
+   * Renders the sign that messages are shown on. The text itself is drawn from the glyph atlas.
+   */
+  private class SignUpdater implements Runnable{
+    // Drawing objects, made on the first run and reused after that.
+    private Bitmap textBitmap;
+    private Canvas canvas;
+    private Paint paint;
+    private final RectF rectF = new RectF(0f,64f,256f,64f+128f);
 
     @Override
     public void run() {
-      Log.i(TAG, "TextViewUpdater");
+      Log.i(TAG, "SignUpdater");
       if (Looper.myLooper() == Looper.getMainLooper())
         Log.i(TAG, "In UI thread");
       else
         Log.i(TAG, "Not in UI thread");
-//      overlayView.show3DToast(txt, time);
 
-      textimagelock.lock();
-      // Create an empty, mutable textBitmap
-      textBitmap = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_4444);
+      if (textBitmap == null) {
+        // Create an empty, mutable textBitmap and a canvas to paint over it
+        textBitmap = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_4444);
+        canvas = new Canvas(textBitmap);
 
-      textBitmap.eraseColor(Color.TRANSPARENT);
-
-      // get a canvas to paint over the textBitmap
-      Canvas canvas = new Canvas(textBitmap);
+        paint=new Paint();
+        paint.setAntiAlias(true);
+        paint.setStrokeWidth(0);
+        paint.setColor(Color.WHITE);
+      }
 
-      Paint paint=new Paint();
-      paint.setAntiAlias(true);
-      paint.setStrokeWidth(0);
-      paint.setColor(Color.WHITE);
-      RectF rectF = new RectF(0f,64f,256f,64f+128f);
+      textBitmap.eraseColor(Color.TRANSPARENT);
       canvas.drawRoundRect(rectF, 7, 7, paint);
 
-      TextPaint mTextPaint=new TextPaint();
-      mTextPaint.setTextSize(32);
-      mTextPaint.setAntiAlias(true);
-      mTextPaint.setARGB(0xff, 0x00, 0x00, 0x00);
-
-      StaticLayout mTextLayout;
-      mTextLayout = new StaticLayout(txt,
-              mTextPaint,
-              canvas.getWidth(),
-              Layout.Alignment.ALIGN_CENTER, 1.0f, 0.0f, false);
-
-      canvas.save();
-
-// calculate x and y position where your text will be placed
-      int textX = 0;
-      int textY = (128-mTextLayout.getHeight())/2 + 64;
-
-      canvas.translate(textX, textY);
-      mTextLayout.draw(canvas);
-      canvas.restore();
-
-      textRenderFinished=true;
-      textimagelock.unlock();
-
+      publish(textImages, textBitmap, 0, 64, 64 + 128);
     }
-    public void setText(String txt){
-      this.txt = txt;
+  }
+
+  /**
+   * Rasterizes the printable ASCII characters into the cells of a glyph atlas.
+   */
+  private static GlyphAtlas buildGlyphAtlas() {
+    long start = System.nanoTime();
+    Bitmap bitmap = Bitmap.createBitmap(GlyphAtlas.WIDTH, GlyphAtlas.HEIGHT,
+            Bitmap.Config.ALPHA_8);
+    Canvas canvas = new Canvas(bitmap);
+    Paint paint = new Paint();
+    paint.setAntiAlias(true);
+    paint.setColor(Color.WHITE);
+    // A device font taller than the cells allow at the largest size is rasterized smaller.
+    float size = GlyphAtlas.MAX_FONT_SIZE;
+    paint.setTextSize(size);
+    Paint.FontMetrics metrics = paint.getFontMetrics();
+    while (size > 1 && !GlyphAtlas.fits(-metrics.ascent, metrics.descent)) {
+      size = GlyphAtlas.fittingSize(size, -metrics.ascent, metrics.descent);
+      paint.setTextSize(size);
+      paint.getFontMetrics(metrics);
     }
-    public void setTime(int time){
-      this.time = time;
+    float ascent = -metrics.ascent;
+    float[] advances = new float[GlyphAtlas.GLYPH_COUNT];
+    char[] glyph = new char[1];
+    for (int g = 0; g < GlyphAtlas.GLYPH_COUNT; g++) {
+      glyph[0] = (char) (GlyphAtlas.FIRST_CHAR + g);
+      advances[g] = paint.measureText(glyph, 0, 1);
+      canvas.drawText(glyph, 0, 1, GlyphAtlas.cellX(g) + GlyphAtlas.penX(),
+              GlyphAtlas.cellY(g) + GlyphAtlas.SPREAD + ascent, paint);
     }
+    ByteBuffer coverage = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+    bitmap.copyPixelsToBuffer(coverage);
+    bitmap.recycle();
+    GlyphAtlas atlas = new GlyphAtlas(coverage.array(), size, advances, ascent, metrics.descent);
+    Log.i(TAG, "Built glyph atlas at size " + size + " in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+    return atlas;
+  }
+
+  /**
+   * Copies a rendered bitmap into a pixel image the GL thread is done with and hands it over.
+   * Called on the UI thread.
+   */
+  private static void publish(TripleBuffer<PixelImage> images, Bitmap bitmap, long key,
+                              int top, int bottom) {
+    PixelImage image = images.writable();
+    if (image == null)
+      image = new PixelImage(bitmap.getWidth(), bitmap.getHeight(), 2);
+    image.pixels.clear();
+    bitmap.copyPixelsToBuffer(image.pixels);
+    image.pixels.clear();
+    image.setContentRows(top, bottom);
+    image.key = key;
+    images.publish(image);
   }
 
-    public void UpdateTexture(int texture, Bitmap bitmap) {
+    public void UpdateTexture(SubImageTexture texture, PixelImage image) {
       Log.i(TAG, "TextViewUpdaterFinished");
       if (Looper.myLooper() == Looper.getMainLooper())
         Log.e(TAG, "In UI thread");
 
-//Use the Android GLUtils to specify a two-dimensional signTexture image from our textBitmap
-
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-      GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+//Upload the changed rows of the image into the texture's existing storage. ARGB_4444 bitmaps
+//hold the same 16-bit pixels as GL_UNSIGNED_SHORT_4_4_4_4.
+      texture.update(gl, image);
       checkGLError("UpdateTextTextureFinished");
     }
 
-  private void show3DToast(String message) {
-    show3DToast(message, 5000);
-  }
-
-  private void show3DToast(String message, int time) {
-    textViewUpdater.setText(message);
-    signFadeFrame=frameNo+(time/16);
-    signTextureReady=false;
-    mainLoopHandler.post(textViewUpdater);
+  /**
+   * Creates a texture for images with a linear magnification filter, and leaves it bound.
+   */
+  private int createTexture(int minFilter, int wrap) {
+    int[] texture = new int[1];
+    gl.glGenTextures(1, texture, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+    GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter);
+    GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, wrap);
+    GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, wrap);
+    Log.i(TAG, "Texture created " + texture[0]);
+    return texture[0];
   }
 
   //Reticle Rendering:
+  private static final int RETICLE_CROSS = 1;
+  private static final int RETICLE_COLOUR = Color.DKGRAY;
+  // Shown while the beam would hit a target.
+  private static final int RETICLE_ON_TARGET_COLOUR = Color.RED;
+  private static final int RETICLE_CACHE_SIZE = 8;
+
   ReticleUpdater reticleUpdater = new ReticleUpdater();
-  private final ReentrantLock reticleBitmaplock = new ReentrantLock();
   int reticleTexture=0;
+  // The variant the GL thread wants to show, and its cache key.
+  private int reticleType;
+  private int reticleColour;
+  private long reticleKey;
 
-  //Protected by reticleimagelock:
-  private Bitmap reticleBitmap;
-  private boolean reticleRenderFinished=false;
+  // Rendered reticles, from the UI thread to the GL thread.
+  private final TripleBuffer<PixelImage> reticleImages = new TripleBuffer<PixelImage>();
+  private final SubImageTexture reticleImage = new SubImageTexture(128, 128, GLES20.GL_RGBA,
+          GLES20.GL_UNSIGNED_SHORT_4_4_4_4);
 
   private class ReticleUpdater implements Runnable{
-    private int type;
-    private Color colour;
+    // Set on the GL thread. Only the latest request is rendered if several are waiting.
+    private volatile int type;
+    private volatile int colour;
+    // Drawing objects, made on the first run and reused after that.
+    private Bitmap reticleBitmap;
+    private Canvas canvas;
+    private Paint paint;
 
     @Override
     public void run() {
@@ -1231,40 +1113,74 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
         Log.i(TAG, "Not in UI thread");
 //      overlayView.show3DToast(txt, time);
 
-      reticleBitmaplock.lock();
-      // Create an empty, mutable textBitmap
       int textSize = 128;
-      reticleBitmap = Bitmap.createBitmap(textSize, textSize, Bitmap.Config.ARGB_4444);
+      if (reticleBitmap == null) {
+        // Create an empty, mutable bitmap and a canvas to paint over it
+        reticleBitmap = Bitmap.createBitmap(textSize, textSize, Bitmap.Config.ARGB_4444);
+        canvas = new Canvas(reticleBitmap);
+        paint=new Paint();
+        paint.setAntiAlias(true);
+        paint.setStrokeWidth(1f/(float)textSize*3f);
+      }
+      int type = this.type;
+      int colour = this.colour;
+      paint.setColor(colour);
 
       reticleBitmap.eraseColor(Color.TRANSPARENT); //White
 
-      // get a canvas to paint over the textBitmap
-      Canvas canvas = new Canvas(reticleBitmap);
-      Paint paint=new Paint();
-      paint.setAntiAlias(true);
-      paint.setStrokeWidth(1f/(float)textSize*3f);
-      paint.setColor(Color.DKGRAY);
-
+      canvas.save();
       canvas.translate(textSize/2, textSize/2);
       canvas.scale((float)textSize/2f,(float)textSize/2f);
       float rectFact = 7f/8f;
       canvas.drawLine(-rectFact, -rectFact, rectFact, rectFact, paint);
       canvas.drawLine(rectFact, -rectFact, -rectFact, rectFact, paint);
+      canvas.restore();
 
-      reticleRenderFinished=true;
-      reticleBitmaplock.unlock();
+      publish(reticleImages, reticleBitmap, TextureCache.key(type, colour), 0, textSize);
 
     }
     public void setType(int type){
       this.type = type;
     }
-    public void setColour(Color colour){
+    public void setColour(int colour){
       this.colour = colour;
     }
   }
 
-  private void updateReticle(int type) {
+  /**
+   * Shows a reticle variant. A variant that was shown before swaps in its cached texture, others
+   * are rendered on the UI thread and shown when {@link #cacheReticle(PixelImage)} gets them.
+   */
+  private void selectReticle(int type, int colour) {
+    if (type == reticleType && colour == reticleColour)
+      return;
+    reticleType = type;
+    reticleColour = colour;
+    reticleKey = TextureCache.key(type, colour);
+    int texture = reticleCache.get(reticleKey);
+    if (texture != TextureCache.NO_TEXTURE)
+      reticleTexture = texture;
+    else
+      updateReticle(type, colour);
+  }
+
+  /**
+   * Uploads a rendered reticle into a new texture and caches it, which deletes the least recently
+   * used variant if the cache is full.
+   */
+  private void cacheReticle(PixelImage image) {
+    int texture = createTexture(GLES20.GL_NEAREST, GLES20.GL_REPEAT);
+    reticleImage.setTexture(texture);
+    UpdateTexture(reticleImage, image);
+    reticleCache.put(image.key, texture);
+    // The GL thread may have moved on to another variant while this one was rendered.
+    if (image.key == reticleKey)
+      reticleTexture = texture;
+  }
+
+  private void updateReticle(int type, int colour) {
     reticleUpdater.setType(type);
+    reticleUpdater.setColour(colour);
     mainLoopHandler.post(reticleUpdater);
   }
 
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Column major 4x4 matrix and vector operations on float arrays, with the same signatures and
+ * results as their android.opengl.Matrix namesakes, for code that has to run off the device.
+ *
+ * <p>Besides those, there are fused builders for the transforms the game makes every frame, which
+ * write the result directly instead of multiplying a chain of matrices together, and inverses
+ * for the rigid transforms that the head view and billboards are, which only need a transpose.
+ *
+ * <p>Matrices are 16 floats from an offset, vectors 4. Unless noted, results must not overlap
+ * the inputs.
+ */
+public final class Mat4 {
+
+  private Mat4() {
+  }
+
+  public static void setIdentityM(float[] m, int offset) {
+    for (int i = 0; i < 16; i++)
+      m[offset + i] = 0;
+    m[offset] = m[offset + 5] = m[offset + 10] = m[offset + 15] = 1;
+  }
+
+  /**
+   * result = lhs * rhs.
+   */
+  public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                float[] rhs, int rhsOffset) {
+    TransformTable.multiply(result, resultOffset, lhs, lhsOffset, rhs, rhsOffset);
+  }
+
+  /**
+   * result = lhs * rhs, for a 4 element vector rhs.
+   */
+  public static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                float[] rhs, int rhsOffset) {
+    float x = rhs[rhsOffset];
+    float y = rhs[rhsOffset + 1];
+    float z = rhs[rhsOffset + 2];
+    float w = rhs[rhsOffset + 3];
+    for (int row = 0; row < 4; row++) {
+      result[resultOffset + row] = lhs[lhsOffset + row] * x + lhs[lhsOffset + 4 + row] * y
+          + lhs[lhsOffset + 8 + row] * z + lhs[lhsOffset + 12 + row] * w;
+    }
+  }
+
+  /**
+   * m = m * translate(x, y, z), in place.
+   */
+  public static void translateM(float[] m, int offset, float x, float y, float z) {
+    for (int row = 0; row < 4; row++) {
+      m[offset + 12 + row] += m[offset + row] * x + m[offset + 4 + row] * y
+          + m[offset + 8 + row] * z;
+    }
+  }
+
+  /**
+   * m = m * scale(x, y, z), in place.
+   */
+  public static void scaleM(float[] m, int offset, float x, float y, float z) {
+    for (int row = 0; row < 4; row++) {
+      m[offset + row] *= x;
+      m[offset + 4 + row] *= y;
+      m[offset + 8 + row] *= z;
+    }
+  }
+
+  /**
+   * Sets a rotation of a number of degrees about an axis, which need not be normalized.
+   */
+  public static void setRotateM(float[] m, int offset, float degrees, float x, float y, float z) {
+    double radians = Math.toRadians(degrees);
+    float s = (float) Math.sin(radians);
+    float c = (float) Math.cos(radians);
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    x /= length;
+    y /= length;
+    z /= length;
+    float nc = 1 - c;
+    m[offset] = x * x * nc + c;
+    m[offset + 1] = x * y * nc + z * s;
+    m[offset + 2] = z * x * nc - y * s;
+    m[offset + 3] = 0;
+    m[offset + 4] = x * y * nc - z * s;
+    m[offset + 5] = y * y * nc + c;
+    m[offset + 6] = y * z * nc + x * s;
+    m[offset + 7] = 0;
+    m[offset + 8] = z * x * nc + y * s;
+    m[offset + 9] = y * z * nc - x * s;
+    m[offset + 10] = z * z * nc + c;
+    m[offset + 11] = 0;
+    m[offset + 12] = m[offset + 13] = m[offset + 14] = 0;
+    m[offset + 15] = 1;
+  }
+
+  /**
+   * m = m * rotate(degrees, x, y, z), in place.
+   *
+   * @param scratch 32 floats of working space.
+   */
+  public static void rotateM(float[] m, int offset, float degrees, float x, float y, float z,
+                             float[] scratch) {
+    setRotateM(scratch, 0, degrees, x, y, z);
+    multiplyMM(scratch, 16, m, offset, scratch, 0);
+    System.arraycopy(scratch, 16, m, offset, 16);
+  }
+
+  /**
+   * Sets a view matrix looking from an eye point at a centre point.
+   */
+  public static void setLookAtM(float[] m, int offset, float eyeX, float eyeY, float eyeZ,
+                                float centerX, float centerY, float centerZ, float upX, float upY,
+                                float upZ) {
+    float fx = centerX - eyeX;
+    float fy = centerY - eyeY;
+    float fz = centerZ - eyeZ;
+    float rlf = 1 / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+    fx *= rlf;
+    fy *= rlf;
+    fz *= rlf;
+    // s = f x up
+    float sx = fy * upZ - fz * upY;
+    float sy = fz * upX - fx * upZ;
+    float sz = fx * upY - fy * upX;
+    float rls = 1 / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    sx *= rls;
+    sy *= rls;
+    sz *= rls;
+    // u = s x f
+    float ux = sy * fz - sz * fy;
+    float uy = sz * fx - sx * fz;
+    float uz = sx * fy - sy * fx;
+    m[offset] = sx;
+    m[offset + 1] = ux;
+    m[offset + 2] = -fx;
+    m[offset + 3] = 0;
+    m[offset + 4] = sy;
+    m[offset + 5] = uy;
+    m[offset + 6] = -fy;
+    m[offset + 7] = 0;
+    m[offset + 8] = sz;
+    m[offset + 9] = uz;
+    m[offset + 10] = -fz;
+    m[offset + 11] = 0;
+    m[offset + 12] = m[offset + 13] = m[offset + 14] = 0;
+    m[offset + 15] = 1;
+    translateM(m, offset, -eyeX, -eyeY, -eyeZ);
+  }
+
+  /**
+   * Sets the inverse of {@link #setLookAtM}'s view matrix, which places something at the eye
+   * point facing the centre point, without building the view and inverting it.
+   */
+  public static void setLookAtInverseM(float[] m, int offset, float eyeX, float eyeY, float eyeZ,
+                                       float centerX, float centerY, float centerZ, float upX,
+                                       float upY, float upZ) {
+    float fx = centerX - eyeX;
+    float fy = centerY - eyeY;
+    float fz = centerZ - eyeZ;
+    float rlf = 1 / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+    fx *= rlf;
+    fy *= rlf;
+    fz *= rlf;
+    float sx = fy * upZ - fz * upY;
+    float sy = fz * upX - fx * upZ;
+    float sz = fx * upY - fy * upX;
+    float rls = 1 / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    sx *= rls;
+    sy *= rls;
+    sz *= rls;
+    // The view's rotation has rows s, u and -f, so its inverse, the transpose, has them as
+    // columns.
+    m[offset] = sx;
+    m[offset + 1] = sy;
+    m[offset + 2] = sz;
+    m[offset + 3] = 0;
+    m[offset + 4] = sy * fz - sz * fy;
+    m[offset + 5] = sz * fx - sx * fz;
+    m[offset + 6] = sx * fy - sy * fx;
+    m[offset + 7] = 0;
+    m[offset + 8] = -fx;
+    m[offset + 9] = -fy;
+    m[offset + 10] = -fz;
+    m[offset + 11] = 0;
+    m[offset + 12] = eyeX;
+    m[offset + 13] = eyeY;
+    m[offset + 14] = eyeZ;
+    m[offset + 15] = 1;
+  }
+
+  /**
+   * Sets translate(x, y, z) * invert(lookAt(origin, (x, y, z))) * scale(size): a square of the
+   * given size at a point, turned to face the origin, where the player is.
+   */
+  public static void setBillboardM(float[] m, int offset, float x, float y, float z,
+                                   float size) {
+    setLookAtInverseM(m, offset, x, y, z, x + x, y + y, z + z, 0, 1, 0);
+    for (int i = 0; i < 3; i++) {
+      m[offset + i] *= size;
+      m[offset + 4 + i] *= size;
+      m[offset + 8 + i] *= size;
+    }
+  }
+
+  /**
+   * Sets translate(tx, ty, tz) * rotation * scale(sx, sy, sz), with the rotation given as a
+   * unit quaternion (see {@link Quat}).
+   */
+  public static void setTranslateRotateScaleM(float[] m, int offset, float tx, float ty,
+                                              float tz, float[] q, int qOffset, float sx,
+                                              float sy, float sz) {
+    Quat.toRotationM(m, offset, q, qOffset);
+    for (int i = 0; i < 3; i++) {
+      m[offset + i] *= sx;
+      m[offset + 4 + i] *= sy;
+      m[offset + 8 + i] *= sz;
+    }
+    m[offset + 12] = tx;
+    m[offset + 13] = ty;
+    m[offset + 14] = tz;
+  }
+
+  /**
+   * Inverts a rigid transform, a rotation followed by a translation, by transposing the rotation.
+   * The result is only the inverse if the matrix is rigid, as a head view is; use
+   * {@link #invertM} for anything scaled or projected.
+   */
+  public static void invertRigidM(float[] inv, int invOffset, float[] m, int offset) {
+    float tx = m[offset + 12];
+    float ty = m[offset + 13];
+    float tz = m[offset + 14];
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < 3; col++)
+        inv[invOffset + col * 4 + row] = m[offset + row * 4 + col];
+      inv[invOffset + row * 4 + 3] = 0;
+    }
+    // -transpose(R) * t
+    inv[invOffset + 12] = -(inv[invOffset] * tx + inv[invOffset + 4] * ty
+        + inv[invOffset + 8] * tz);
+    inv[invOffset + 13] = -(inv[invOffset + 1] * tx + inv[invOffset + 5] * ty
+        + inv[invOffset + 9] * tz);
+    inv[invOffset + 14] = -(inv[invOffset + 2] * tx + inv[invOffset + 6] * ty
+        + inv[invOffset + 10] * tz);
+    inv[invOffset + 15] = 1;
+  }
+
+  /**
+   * Inverts a matrix by cofactors.
+   *
+   * @return false, leaving the result unchanged, if the matrix is singular.
+   */
+  public static boolean invertM(float[] inv, int invOffset, float[] m, int offset) {
+    float a0 = m[offset] * m[offset + 5] - m[offset + 1] * m[offset + 4];
+    float a1 = m[offset] * m[offset + 6] - m[offset + 2] * m[offset + 4];
+    float a2 = m[offset] * m[offset + 7] - m[offset + 3] * m[offset + 4];
+    float a3 = m[offset + 1] * m[offset + 6] - m[offset + 2] * m[offset + 5];
+    float a4 = m[offset + 1] * m[offset + 7] - m[offset + 3] * m[offset + 5];
+    float a5 = m[offset + 2] * m[offset + 7] - m[offset + 3] * m[offset + 6];
+    float b0 = m[offset + 8] * m[offset + 13] - m[offset + 9] * m[offset + 12];
+    float b1 = m[offset + 8] * m[offset + 14] - m[offset + 10] * m[offset + 12];
+    float b2 = m[offset + 8] * m[offset + 15] - m[offset + 11] * m[offset + 12];
+    float b3 = m[offset + 9] * m[offset + 14] - m[offset + 10] * m[offset + 13];
+    float b4 = m[offset + 9] * m[offset + 15] - m[offset + 11] * m[offset + 13];
+    float b5 = m[offset + 10] * m[offset + 15] - m[offset + 11] * m[offset + 14];
+    float det = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+    if (det == 0)
+      return false;
+    float r = 1 / det;
+    float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2], m3 = m[offset + 3];
+    float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6], m7 = m[offset + 7];
+    float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10], m11 = m[offset + 11];
+    float m12 = m[offset + 12], m13 = m[offset + 13], m14 = m[offset + 14];
+    float m15 = m[offset + 15];
+    inv[invOffset] = (m5 * b5 - m6 * b4 + m7 * b3) * r;
+    inv[invOffset + 1] = (-m1 * b5 + m2 * b4 - m3 * b3) * r;
+    inv[invOffset + 2] = (m13 * a5 - m14 * a4 + m15 * a3) * r;
+    inv[invOffset + 3] = (-m9 * a5 + m10 * a4 - m11 * a3) * r;
+    inv[invOffset + 4] = (-m4 * b5 + m6 * b2 - m7 * b1) * r;
+    inv[invOffset + 5] = (m0 * b5 - m2 * b2 + m3 * b1) * r;
+    inv[invOffset + 6] = (-m12 * a5 + m14 * a2 - m15 * a1) * r;
+    inv[invOffset + 7] = (m8 * a5 - m10 * a2 + m11 * a1) * r;
+    inv[invOffset + 8] = (m4 * b4 - m5 * b2 + m7 * b0) * r;
+    inv[invOffset + 9] = (-m0 * b4 + m1 * b2 - m3 * b0) * r;
+    inv[invOffset + 10] = (m12 * a4 - m13 * a2 + m15 * a0) * r;
+    inv[invOffset + 11] = (-m8 * a4 + m9 * a2 - m11 * a0) * r;
+    inv[invOffset + 12] = (-m4 * b3 + m5 * b1 - m6 * b0) * r;
+    inv[invOffset + 13] = (m0 * b3 - m1 * b1 + m2 * b0) * r;
+    inv[invOffset + 14] = (-m12 * a3 + m13 * a1 - m14 * a0) * r;
+    inv[invOffset + 15] = (m8 * a3 - m9 * a1 + m10 * a0) * r;
+    return true;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A mesh stored in the binary layout that GL reads it in, so it can be memory-mapped from an
+ * asset and handed to glBufferData without copying it through the Java heap.
+ *
+ * <p>A file is little endian and consists of
+ * <ul>
+ *   <li>a header of {@link #HEADER_INTS} ints: magic, version, vertex count, stride, index count,
+ *   attribute count, byte offset of the vertices and byte offset of the indices;</li>
+ *   <li>{@link #ATTRIBUTE_INTS} ints per attribute: attribute id, component count, GL component
+ *   type, 1 if normalized and byte offset within a vertex;</li>
+ *   <li>the interleaved vertices, starting on a 4 byte boundary;</li>
+ *   <li>the vertex indices as unsigned shorts, if there are any.</li>
+ * </ul>
+ *
+ * <p>The files are generated at build time by the meshgen module from {@link WorldLayoutData}.
+ */
+public final class MeshFile {
+
+  public static final int MAGIC = 0x4d525654; // "TVRM" in little endian
+  public static final int VERSION = 1;
+  public static final int HEADER_INTS = 8;
+  public static final int ATTRIBUTE_INTS = 5;
+
+  public static final int ATTRIBUTE_POSITION = 0;
+  public static final int ATTRIBUTE_NORMAL = 1;
+  public static final int ATTRIBUTE_COLOR = 2;
+  public static final int ATTRIBUTE_COORD = 3;
+
+  // GL component types, the same values as the GLES20 constants.
+  public static final int TYPE_BYTE = 0x1400;
+  public static final int TYPE_UNSIGNED_BYTE = 0x1401;
+  public static final int TYPE_FLOAT = 0x1406;
+
+  public final int vertexCount;
+  public final int stride;
+  public final int indexCount;
+  /** The vertex bytes, positioned at the first vertex. */
+  public final ByteBuffer vertices;
+  /** The index bytes, or null if the mesh is drawn without indices. */
+  public final ByteBuffer indices;
+
+  private final int[] attributes;
+
+  private MeshFile(int vertexCount, int stride, int indexCount, int[] attributes,
+                   ByteBuffer vertices, ByteBuffer indices) {
+    this.vertexCount = vertexCount;
+    this.stride = stride;
+    this.indexCount = indexCount;
+    this.attributes = attributes;
+    this.vertices = vertices;
+    this.indices = indices;
+  }
+
+  /**
+   * Maps a mesh from part of a file, for example an uncompressed asset inside the APK. The
+   * mapping stays valid after the channel is closed.
+   */
+  public static MeshFile map(FileChannel channel, long offset, long length) throws IOException {
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    return read(mapped);
+  }
+
+  /**
+   * Reads the header of a mesh and slices its vertices and indices out of the buffer, without
+   * copying them.
+   */
+  public static MeshFile read(ByteBuffer buffer) throws IOException {
+    if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN)
+      throw new IOException("Mesh files can only be used on little endian devices");
+    ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (data.remaining() < HEADER_INTS * 4 || data.getInt(0) != MAGIC)
+      throw new IOException("Not a mesh file");
+    if (data.getInt(4) != VERSION)
+      throw new IOException("Unsupported mesh file version " + data.getInt(4));
+    int vertexCount = data.getInt(8);
+    int stride = data.getInt(12);
+    int indexCount = data.getInt(16);
+    int attributeCount = data.getInt(20);
+    int vertexOffset = data.getInt(24);
+    int indexOffset = data.getInt(28);
+    int vertexBytes = vertexCount * stride;
+    if (attributeCount < 0 || vertexOffset < (HEADER_INTS + attributeCount * ATTRIBUTE_INTS) * 4
+        || vertexOffset + vertexBytes > data.limit()
+        || (indexCount > 0 && (indexOffset < vertexOffset + vertexBytes
+            || indexOffset + indexCount * 2 > data.limit())))
+      throw new IOException("Corrupt mesh file");
+
+    int[] attributes = new int[attributeCount * ATTRIBUTE_INTS];
+    for (int i = 0; i < attributes.length; i++)
+      attributes[i] = data.getInt((HEADER_INTS + i) * 4);
+    return new MeshFile(vertexCount, stride, indexCount, attributes,
+        range(data, vertexOffset, vertexBytes),
+        indexCount > 0 ? range(data, indexOffset, indexCount * 2) : null);
+  }
+
+  private static ByteBuffer range(ByteBuffer data, int offset, int length) {
+    ByteBuffer view = data.duplicate();
+    view.limit(offset + length);
+    view.position(offset);
+    return view.slice().order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Interleaves float attribute arrays, one vertex after another, into an unindexed mesh.
+   *
+   * @param ids The attribute id of each array, one of the ATTRIBUTE_ constants.
+   * @param sizes The number of floats per vertex in each array.
+   */
+  public static MeshFile interleave(int[] ids, int[] sizes, float[]... arrays) {
+    int stride = 0;
+    int[] attributes = new int[ids.length * ATTRIBUTE_INTS];
+    for (int a = 0; a < ids.length; a++) {
+      setAttribute(attributes, a, ids[a], sizes[a], TYPE_FLOAT, false, stride);
+      stride += sizes[a] * 4;
+    }
+    int vertexCount = arrays[0].length / sizes[0];
+    for (int a = 0; a < arrays.length; a++) {
+      if (arrays[a].length != vertexCount * sizes[a])
+        throw new IllegalArgumentException("Attribute arrays have different vertex counts");
+    }
+    ByteBuffer vertices = ByteBuffer.allocate(vertexCount * stride).order(ByteOrder.LITTLE_ENDIAN);
+    for (int v = 0; v < vertexCount; v++) {
+      for (int a = 0; a < arrays.length; a++) {
+        for (int c = 0; c < sizes[a]; c++)
+          vertices.putFloat(arrays[a][v * sizes[a] + c]);
+      }
+    }
+    vertices.position(0);
+    return new MeshFile(vertexCount, stride, 0, attributes, vertices, null);
+  }
+
+  /**
+   * Wraps a mesh from {@link MeshPacker}.
+   */
+  public static MeshFile packed(MeshPacker.Mesh mesh) {
+    int[] attributes = new int[3 * ATTRIBUTE_INTS];
+    setAttribute(attributes, 0, ATTRIBUTE_POSITION, 3, TYPE_FLOAT, false,
+        MeshPacker.POSITION_OFFSET);
+    setAttribute(attributes, 1, ATTRIBUTE_NORMAL, 3, TYPE_BYTE, true, MeshPacker.NORMAL_OFFSET);
+    setAttribute(attributes, 2, ATTRIBUTE_COLOR, 4, TYPE_UNSIGNED_BYTE, true,
+        MeshPacker.COLOR_OFFSET);
+    return new MeshFile(mesh.vertexCount, MeshPacker.STRIDE, mesh.indexCount, attributes,
+        mesh.vertices.duplicate(), mesh.indices.duplicate());
+  }
+
+  private static void setAttribute(int[] attributes, int n, int id, int size, int type,
+                                   boolean normalized, int offset) {
+    int i = n * ATTRIBUTE_INTS;
+    attributes[i] = id;
+    attributes[i + 1] = size;
+    attributes[i + 2] = type;
+    attributes[i + 3] = normalized ? 1 : 0;
+    attributes[i + 4] = offset;
+  }
+
+  /**
+   * Writes the mesh in the file layout. Vertex data is written byte for byte, so a mesh built on
+   * a big endian machine would come out wrong; the build only runs on little endian hosts.
+   */
+  public void write(WritableByteChannel out) throws IOException {
+    int attributeCount = attributes.length / ATTRIBUTE_INTS;
+    int vertexOffset = (HEADER_INTS + attributes.length) * 4;
+    int vertexBytes = vertexCount * stride;
+    int indexOffset = indexCount > 0 ? vertexOffset + vertexBytes : 0;
+    ByteBuffer header = ByteBuffer.allocate(vertexOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(stride).putInt(indexCount)
+        .putInt(attributeCount).putInt(vertexOffset).putInt(indexOffset);
+    for (int value : attributes)
+      header.putInt(value);
+    header.flip();
+    writeFully(out, header);
+    writeFully(out, vertices.duplicate());
+    if (indexCount > 0)
+      writeFully(out, indices.duplicate());
+  }
+
+  private static void writeFully(WritableByteChannel out, ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining())
+      out.write(bytes);
+  }
+
+  /**
+   * @return The distance from the model origin to the furthest vertex, which makes a bounding
+   *     sphere around the origin. The positions must be floats.
+   */
+  public float radius() {
+    int a = attribute(ATTRIBUTE_POSITION);
+    if (a < 0 || type(a) != TYPE_FLOAT)
+      throw new IllegalStateException("Mesh has no float positions");
+    int offset = offset(a);
+    int size = size(a);
+    float max = 0;
+    for (int v = 0; v < vertexCount; v++) {
+      float lengthSquared = 0;
+      for (int i = 0; i < size; i++) {
+        float x = vertices.getFloat(v * stride + offset + i * 4);
+        lengthSquared += x * x;
+      }
+      max = Math.max(max, lengthSquared);
+    }
+    return (float) Math.sqrt(max);
+  }
+
+  /**
+   * @return The index of the attribute with the given id, or -1 if the mesh does not have it.
+   */
+  public int attribute(int id) {
+    for (int n = 0; n < attributes.length / ATTRIBUTE_INTS; n++) {
+      if (attributes[n * ATTRIBUTE_INTS] == id)
+        return n;
+    }
+    return -1;
+  }
+
+  public int size(int attribute) {
+    return attributes[attribute * ATTRIBUTE_INTS + 1];
+  }
+
+  public int type(int attribute) {
+    return attributes[attribute * ATTRIBUTE_INTS + 2];
+  }
+
+  public boolean normalized(int attribute) {
+    return attributes[attribute * ATTRIBUTE_INTS + 3] != 0;
+  }
+
+  public int offset(int attribute) {
+    return attributes[attribute * ATTRIBUTE_INTS + 4];
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Packs separate float position, normal and color arrays into one interleaved, indexed vertex
+ * buffer.
+ *
+ * <p>Each vertex takes {@link #STRIDE} bytes: the position as three floats, the normal as three
+ * signed normalized bytes plus a pad byte, and the color as four unsigned normalized bytes. The
+ * float arrays take 40 bytes for the same vertex. Vertices that pack to the same bytes are stored
+ * once and the triangles refer to them through 16-bit indices, so a cube with a color per face
+ * needs 24 vertices instead of 36.
+ *
+ * <p>Normals must be unit length or zero and colors in [0, 1]. OpenGL ES 2.0 has no byte for 0,
+ * so normals decode to within 1/255, with components of -1 and 1 exact; colors decode to within
+ * half of 1/255.
+ */
+public final class MeshPacker {
+
+  public static final int STRIDE = 20;
+  public static final int POSITION_OFFSET = 0;
+  public static final int NORMAL_OFFSET = 12;
+  public static final int COLOR_OFFSET = 16;
+
+  /**
+   * An interleaved vertex buffer and the triangle indices into it, ready for glBufferData.
+   */
+  public static final class Mesh {
+    public final ByteBuffer vertices;
+    public final ByteBuffer indices;
+    public final int vertexCount;
+    public final int indexCount;
+
+    Mesh(ByteBuffer vertices, int vertexCount, ByteBuffer indices, int indexCount) {
+      this.vertices = vertices;
+      this.vertexCount = vertexCount;
+      this.indices = indices;
+      this.indexCount = indexCount;
+    }
+  }
+
+  private MeshPacker() {
+  }
+
+  /**
+   * Converts one of the unindexed triangle lists in {@link WorldLayoutData}.
+   *
+   * @param coords Three floats per vertex.
+   * @param normals Three floats per vertex.
+   * @param colors Four floats (RGBA) per vertex.
+   */
+  public static Mesh pack(float[] coords, float[] normals, float[] colors) {
+    int count = coords.length / 3;
+    if (normals.length != count * 3 || colors.length != count * 4)
+      throw new IllegalArgumentException("Attribute arrays have different vertex counts");
+
+    ByteBuffer packed = ByteBuffer.allocate(count * STRIDE).order(ByteOrder.nativeOrder());
+    short[] indices = new short[count];
+    Map<ByteBuffer, Integer> unique = new HashMap<ByteBuffer, Integer>();
+    int vertexCount = 0;
+    for (int i = 0; i < count; i++) {
+      int start = vertexCount * STRIDE;
+      packed.position(start);
+      packed.putFloat(coords[i * 3]);
+      packed.putFloat(coords[i * 3 + 1]);
+      packed.putFloat(coords[i * 3 + 2]);
+      packed.put(packNormal(normals[i * 3]));
+      packed.put(packNormal(normals[i * 3 + 1]));
+      packed.put(packNormal(normals[i * 3 + 2]));
+      packed.put((byte) 0);
+      for (int c = 0; c < 4; c++)
+        packed.put(packColor(colors[i * 4 + c]));
+
+      // The key views the bytes just written; it is only kept if the vertex is new.
+      ByteBuffer key = ByteBuffer.wrap(packed.array(), start, STRIDE).slice();
+      Integer index = unique.get(key);
+      if (index == null) {
+        if (vertexCount > 0xffff)
+          throw new IllegalArgumentException("Too many vertices for 16-bit indices");
+        index = vertexCount++;
+        unique.put(key, index);
+      }
+      indices[i] = (short) (int) index;
+    }
+
+    ByteBuffer vertexBytes = ByteBuffer.allocateDirect(vertexCount * STRIDE);
+    vertexBytes.order(ByteOrder.nativeOrder());
+    vertexBytes.put(packed.array(), 0, vertexCount * STRIDE);
+    vertexBytes.position(0);
+    ByteBuffer indexBytes = ByteBuffer.allocateDirect(count * 2);
+    indexBytes.order(ByteOrder.nativeOrder());
+    indexBytes.asShortBuffer().put(indices);
+    return new Mesh(vertexBytes, vertexCount, indexBytes, count);
+  }
+
+  /**
+   * @return A normal component as a signed normalized byte, which OpenGL ES 2.0 decodes as
+   *     (2b + 1) / 255. Unlike the ES 3.0 rule of b / 127 that leaves 0 off by 1/255.
+   */
+  static byte packNormal(float n) {
+    return (byte) Math.round((Math.max(-1, Math.min(1, n)) * 255 - 1) / 2);
+  }
+
+  /**
+   * @return A color component as an unsigned normalized byte, which GL decodes as b / 255.
+   */
+  static byte packColor(float c) {
+    return (byte) Math.round(Math.max(0, Math.min(1, c)) * 255);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Raw pixels of an image being handed to the GL thread, and the rows that have anything in them.
+ *
+ * <p>Rows outside {@code top} to {@code bottom} are fully transparent, so a texture that already
+ * holds an image only needs those rows and the ones the old image used uploaded, see
+ * {@link SubImageTexture}. The pixel buffer is allocated once and refilled for every image.
+ */
+public final class PixelImage {
+
+  public final int width;
+  public final int height;
+  public final int bytesPerPixel;
+  /** Direct, in native order, rows from the top. */
+  public final ByteBuffer pixels;
+  /** First row with content. */
+  public int top;
+  /** Row after the last row with content. */
+  public int bottom;
+  /** What the image shows, for images that are cached, see {@link TextureCache#key}. */
+  public long key;
+
+  public PixelImage(int width, int height, int bytesPerPixel) {
+    this.width = width;
+    this.height = height;
+    this.bytesPerPixel = bytesPerPixel;
+    pixels = ByteBuffer.allocateDirect(width * height * bytesPerPixel)
+        .order(ByteOrder.nativeOrder());
+    bottom = height;
+  }
+
+  /**
+   * Sets the rows with content, clamped to the image.
+   */
+  public void setContentRows(int top, int bottom) {
+    this.top = Math.max(0, Math.min(top, height));
+    this.bottom = Math.max(this.top, Math.min(bottom, height));
+  }
+}
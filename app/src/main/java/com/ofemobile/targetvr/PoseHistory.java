@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * The head poses of the last few frames, so that input can be resolved against where the head
+ * pointed when it happened rather than where it points when the input is handled.
+ *
+ * <p>Poses are column major 4x4 matrices from head to world space, each stamped with the
+ * {@link System#nanoTime()} it was sampled at, kept in a ring that overwrites the oldest.
+ * {@link #poseAt(long, float[])} rewinds to any time the ring covers by interpolating between the
+ * two poses either side of it.
+ *
+ * <p>Not thread safe.
+ */
+public final class PoseHistory {
+
+  private final long[] times;
+  private final float[] poses;
+  // The slot the next pose goes in, and how many slots hold one.
+  private int next;
+  private int count;
+
+  public PoseHistory(int capacity) {
+    times = new long[capacity];
+    poses = new float[capacity * 16];
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public void clear() {
+    next = 0;
+    count = 0;
+  }
+
+  /**
+   * Adds a pose. Poses must be added in time order.
+   */
+  public void add(long nanos, float[] pose, int offset) {
+    times[next] = nanos;
+    System.arraycopy(pose, offset, poses, next * 16, 16);
+    next = (next + 1) % times.length;
+    if (count < times.length)
+      count++;
+  }
+
+  /**
+   * Gets the pose at a time. Times before the oldest pose get the oldest, times after the newest
+   * get the newest, and times in between blend the poses either side of them.
+   *
+   * @return false if there are no poses.
+   */
+  public boolean poseAt(long nanos, float[] out) {
+    if (count == 0)
+      return false;
+    // Walk back from the newest to the first pose no later than the time.
+    int newer = -1;
+    for (int n = 1; n <= count; n++) {
+      int slot = (next - n + times.length) % times.length;
+      if (times[slot] <= nanos) {
+        if (newer < 0) {
+          System.arraycopy(poses, slot * 16, out, 0, 16);
+        } else {
+          float t = (float) (nanos - times[slot]) / (times[newer] - times[slot]);
+          blend(slot * 16, newer * 16, t, out);
+        }
+        return true;
+      }
+      newer = slot;
+    }
+    System.arraycopy(poses, newer * 16, out, 0, 16);
+    return true;
+  }
+
+  // Interpolates the rotation columns and the translation linearly, then makes the rotation
+  // orthonormal again, which is close to a slerp for the few degrees the head turns in a frame.
+  private void blend(int from, int to, float t, float[] out) {
+    for (int i = 0; i < 16; i++)
+      out[i] = poses[from + i] + t * (poses[to + i] - poses[from + i]);
+    normalize(out, 0);
+    // The second column without its part along the first, then the third from their cross product.
+    float d = out[0] * out[4] + out[1] * out[5] + out[2] * out[6];
+    for (int i = 0; i < 3; i++)
+      out[4 + i] -= d * out[i];
+    normalize(out, 4);
+    out[8] = out[1] * out[6] - out[2] * out[5];
+    out[9] = out[2] * out[4] - out[0] * out[6];
+    out[10] = out[0] * out[5] - out[1] * out[4];
+    out[3] = out[7] = out[11] = 0;
+    out[15] = 1;
+  }
+
+  private static void normalize(float[] m, int column) {
+    float length = (float) Math.sqrt(m[column] * m[column] + m[column + 1] * m[column + 1]
+        + m[column + 2] * m[column + 2]);
+    for (int i = 0; i < 3; i++)
+      m[column + i] /= length;
+  }
+}
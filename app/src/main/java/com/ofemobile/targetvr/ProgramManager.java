@@ -0,0 +1,431 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds shader programs when they are first used and keeps their linked binaries on disk.
+ *
+ * <p>Programs are defined up front by their shader sources, but nothing is compiled until
+ * {@link #program(int)} is first asked for one, or {@link #prewarm(long)} gets to it in a frame's
+ * spare time. On an OpenGL ES 3 context with at least one binary format, every program linked is
+ * saved to the cache directory, and later contexts, including those of later runs of the app, load it from
+ * there instead of compiling its shaders again. A cached binary is keyed by a hash of the shader
+ * sources and the driver's version and renderer strings, so editing a shader or updating the
+ * driver misses the cache rather than loading something stale. A binary the driver rejects
+ * anyway is deleted and the program compiled from source.
+ *
+ * <p>Only use from the GL thread.
+ */
+public final class ProgramManager {
+
+  /** Reads the source of a shader, for example from a raw resource. */
+  public interface Sources {
+    /**
+     * @return The source, or null if it can't be read.
+     */
+    String read(int resource);
+  }
+
+  /**
+   * Told when a program has been made in the current context, to look up its attribute and
+   * uniform locations.
+   */
+  public interface Linked {
+    void linked(int program);
+  }
+
+  // Program binaries are core in OpenGL ES 3.0, which is what the GLES30 bindings call. An ES 2
+  // driver may list OES_get_program_binary, but Android has no binding for it.
+  private static final String BINARY_VERSION = "OpenGL ES 3";
+  private static final int MAGIC = 0x50525654; // "TVRP" when read little-endian
+  private static final int HEADER_BYTES = 12;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final class Program {
+    final String name;
+    final int vertexSource;
+    final int fragmentSource;
+    final Linked linked;
+    int program;
+
+    Program(String name, int vertexSource, int fragmentSource, Linked linked) {
+      this.name = name;
+      this.vertexSource = vertexSource;
+      this.fragmentSource = fragmentSource;
+      this.linked = linked;
+    }
+  }
+
+  private final GLApi gl;
+  private final Sources sources;
+  private final File cacheDir;
+  private final boolean binaryApi;
+  private final List<Program> programs = new ArrayList<Program>();
+  // The sources don't change with the context, so each is only read once.
+  private final Map<Integer, String> sourceText = new HashMap<Integer, String>();
+  private final int[] status = new int[2];
+  // Whether this context can save and load binaries, and what they are keyed by; checked when
+  // the first program of a context is made.
+  private boolean contextChecked;
+  private boolean binaries;
+  private String driver;
+  // Programs before this index are all built.
+  private int nextUnbuilt;
+  // How long the last build took, to guess whether the next fits in a prewarm budget.
+  private long lastBuildNanos;
+  private int compiled;
+  private int loaded;
+  private int stored;
+  private int rejected;
+
+  /**
+   * @param cacheDir Where to keep program binaries, or null not to keep them.
+   * @param binaryApi Whether the program binary calls may be made at all. They are bound through
+   *     GLES30, so pass false below API 18 whatever the context's version.
+   */
+  public ProgramManager(GLApi gl, Sources sources, File cacheDir, boolean binaryApi) {
+    this.gl = gl;
+    this.sources = sources;
+    this.cacheDir = cacheDir;
+    this.binaryApi = binaryApi;
+  }
+
+  /**
+   * Adds a program, without building it.
+   *
+   * @param name Used in errors.
+   * @param linked Called with the program's GL name whenever it is made, or null.
+   * @return The handle to pass to {@link #program(int)}, which stays the same across contexts.
+   */
+  public int define(String name, int vertexSource, int fragmentSource, Linked linked) {
+    programs.add(new Program(name, vertexSource, fragmentSource, linked));
+    return programs.size() - 1;
+  }
+
+  public int programCount() {
+    return programs.size();
+  }
+
+  /**
+   * Gets a program to draw with, building it now if it has not been yet in this context.
+   *
+   * @return The program's GL name.
+   * @throws RuntimeException If a shader does not compile or the program does not link, as that
+   *     is a bug in the app.
+   */
+  public int program(int handle) {
+    Program p = programs.get(handle);
+    if (p.program == 0)
+      build(p);
+    return p.program;
+  }
+
+  /**
+   * @return Whether the program has been built in this context.
+   */
+  public boolean isBuilt(int handle) {
+    return programs.get(handle).program != 0;
+  }
+
+  /**
+   * Builds programs that have not been used yet, in the order they were defined, as long as the
+   * next build is expected to finish within the time budget. A build is expected to take as long
+   * as the last one did, so a budget smaller than a compile lets only cached binaries load, and
+   * the rest are built when first drawn with. Once every program is built this returns at once.
+   *
+   * @param budgetNanos The time the builds may take.
+   * @return Whether every program is built.
+   */
+  public boolean prewarm(long budgetNanos) {
+    if (nextUnbuilt == programs.size())
+      return true;
+    long start = System.nanoTime();
+    for (int i = nextUnbuilt; i < programs.size(); i++) {
+      Program p = programs.get(i);
+      if (p.program != 0) {
+        if (i == nextUnbuilt)
+          nextUnbuilt++;
+        continue;
+      }
+      if (System.nanoTime() - start + lastBuildNanos > budgetNanos)
+        return false;
+      build(p);
+      if (i == nextUnbuilt)
+        nextUnbuilt++;
+    }
+    return true;
+  }
+
+  /**
+   * Drops the programs without deleting them, for when the GL context (and with them the
+   * programs) has already been destroyed. They are built again as they are next used.
+   */
+  public void forget() {
+    for (int i = 0; i < programs.size(); i++)
+      programs.get(i).program = 0;
+    nextUnbuilt = 0;
+    contextChecked = false;
+  }
+
+  /**
+   * Deletes every program built. Call this while the GL context is still current.
+   */
+  public void release() {
+    for (int i = 0; i < programs.size(); i++) {
+      Program p = programs.get(i);
+      if (p.program != 0)
+        gl.glDeleteProgram(p.program);
+      p.program = 0;
+    }
+    nextUnbuilt = 0;
+  }
+
+  /**
+   * @return The number of programs compiled from source since construction.
+   */
+  public int compiledCount() {
+    return compiled;
+  }
+
+  /**
+   * @return The number of programs loaded from a cached binary since construction.
+   */
+  public int loadedCount() {
+    return loaded;
+  }
+
+  /**
+   * @return The number of program binaries written to the cache since construction.
+   */
+  public int storedCount() {
+    return stored;
+  }
+
+  /**
+   * @return The number of cached binaries the driver would not load, which were then deleted.
+   */
+  public int rejectedCount() {
+    return rejected;
+  }
+
+  private void build(Program p) {
+    long start = System.nanoTime();
+    if (!contextChecked)
+      checkContext();
+    String vertex = source(p, p.vertexSource);
+    String fragment = source(p, p.fragmentSource);
+    File file = binaries ? new File(cacheDir, key(vertex, fragment) + ".bin") : null;
+    int program = file != null ? load(file) : 0;
+    if (program != 0) {
+      loaded++;
+    } else {
+      program = compile(p, vertex, fragment);
+      compiled++;
+      if (file != null)
+        store(program, file);
+    }
+    p.program = program;
+    if (p.linked != null)
+      p.linked.linked(program);
+    lastBuildNanos = System.nanoTime() - start;
+  }
+
+  private void checkContext() {
+    contextChecked = true;
+    binaries = false;
+    String version = gl.glGetString(GLES20.GL_VERSION);
+    driver = version + "\n" + gl.glGetString(GLES20.GL_RENDERER);
+    if (!binaryApi || cacheDir == null || version == null || !version.startsWith(BINARY_VERSION))
+      return;
+    // A driver may support no formats, in which case no binary can be saved.
+    gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, status, 0);
+    if (status[0] <= 0)
+      return;
+    binaries = cacheDir.isDirectory() || cacheDir.mkdirs();
+  }
+
+  private String source(Program p, int resource) {
+    String text = sourceText.get(resource);
+    if (text == null) {
+      text = sources.read(resource);
+      if (text == null)
+        throw new RuntimeException("Can't read the shaders of the " + p.name + " program");
+      sourceText.put(resource, text);
+    }
+    return text;
+  }
+
+  private int compile(Program p, String vertex, String fragment) {
+    int vertexShader = compileShader(p, GLES20.GL_VERTEX_SHADER, vertex);
+    int fragmentShader = compileShader(p, GLES20.GL_FRAGMENT_SHADER, fragment);
+    int program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    // The program keeps the shaders it was linked from until it is deleted itself.
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    if (status[0] == 0) {
+      String log = gl.glGetProgramInfoLog(program);
+      gl.glDeleteProgram(program);
+      throw new RuntimeException("Error linking the " + p.name + " program: " + log);
+    }
+    return program;
+  }
+
+  private int compileShader(Program p, int type, String source) {
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, source);
+    gl.glCompileShader(shader);
+    gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+    if (status[0] == 0) {
+      String log = gl.glGetShaderInfoLog(shader);
+      gl.glDeleteShader(shader);
+      throw new RuntimeException("Error compiling a shader of the " + p.name + " program: "
+          + log);
+    }
+    return shader;
+  }
+
+  /**
+   * @return The program loaded from the file, or 0 if there is no usable binary in it.
+   */
+  private int load(File file) {
+    if (!file.isFile())
+      return 0;
+    ByteBuffer binary;
+    int format;
+    try {
+      FileInputStream in = new FileInputStream(file);
+      try {
+        FileChannel channel = in.getChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+          return reject(file, 0);
+        binary = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        while (binary.hasRemaining())
+          if (channel.read(binary) < 0)
+            return reject(file, 0);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return reject(file, 0);
+    }
+    binary.flip();
+    if (binary.getInt() != MAGIC)
+      return reject(file, 0);
+    format = binary.getInt();
+    int length = binary.getInt();
+    if (length != binary.remaining())
+      return reject(file, 0);
+    int program = gl.glCreateProgram();
+    gl.glProgramBinary(program, format, binary.slice(), length);
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    if (status[0] == 0)
+      return reject(file, program);
+    return program;
+  }
+
+  private int reject(File file, int program) {
+    if (program != 0)
+      gl.glDeleteProgram(program);
+    file.delete();
+    rejected++;
+    return 0;
+  }
+
+  /**
+   * Saves a linked program's binary. The cache is only an optimization, so failing to write it
+   * is not an error.
+   */
+  private void store(int program, File file) {
+    gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, status, 0);
+    int size = status[0];
+    if (size <= 0)
+      return;
+    ByteBuffer binary = ByteBuffer.allocateDirect(HEADER_BYTES + size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    binary.position(HEADER_BYTES);
+    int[] length = new int[1];
+    int[] format = new int[1];
+    gl.glGetProgramBinary(program, size, length, 0, format, 0, binary.slice());
+    if (length[0] <= 0)
+      return;
+    binary.putInt(0, MAGIC);
+    binary.putInt(4, format[0]);
+    binary.putInt(8, length[0]);
+    binary.position(0);
+    binary.limit(HEADER_BYTES + length[0]);
+    // Written beside the real file and renamed, so a crash never leaves half a binary to load.
+    File partial = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream out = new FileOutputStream(partial);
+      try {
+        FileChannel channel = out.getChannel();
+        while (binary.hasRemaining())
+          channel.write(binary);
+      } finally {
+        out.close();
+      }
+      if (partial.renameTo(file))
+        stored++;
+      else
+        partial.delete();
+    } catch (IOException e) {
+      partial.delete();
+    }
+  }
+
+  private String key(String vertex, String fragment) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    // Separated so that moving text from one source to the other changes the key.
+    digest.update(vertex.getBytes(UTF8));
+    digest.update((byte) 0);
+    digest.update(fragment.getBytes(UTF8));
+    digest.update((byte) 0);
+    digest.update(driver.getBytes(UTF8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest())
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    return hex.toString();
+  }
+}
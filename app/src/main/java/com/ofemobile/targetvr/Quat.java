@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Rotation quaternions on float arrays, 4 floats from an offset in the order x, y, z, w.
+ *
+ * <p>A rotation that is built up step by step, such as the thrown projectile's spin, stays a
+ * rotation as a quaternion: renormalizing 4 numbers after each step removes the rounding error
+ * that would otherwise shear and scale a matrix multiplied by itself thousands of times.
+ */
+public final class Quat {
+
+  private Quat() {
+  }
+
+  public static void setIdentity(float[] q, int offset) {
+    q[offset] = q[offset + 1] = q[offset + 2] = 0;
+    q[offset + 3] = 1;
+  }
+
+  /**
+   * Sets a rotation of a number of degrees about an axis, which need not be normalized. The same
+   * rotation as {@link Mat4#setRotateM}.
+   */
+  public static void setAxisAngle(float[] q, int offset, float degrees, float x, float y,
+                                  float z) {
+    double half = Math.toRadians(degrees) / 2;
+    float s = (float) Math.sin(half) / (float) Math.sqrt(x * x + y * y + z * z);
+    q[offset] = x * s;
+    q[offset + 1] = y * s;
+    q[offset + 2] = z * s;
+    q[offset + 3] = (float) Math.cos(half);
+  }
+
+  /**
+   * result = lhs * rhs, the rotation rhs followed by lhs. The result may be either input.
+   */
+  public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                              float[] rhs, int rhsOffset) {
+    float ax = lhs[lhsOffset], ay = lhs[lhsOffset + 1], az = lhs[lhsOffset + 2];
+    float aw = lhs[lhsOffset + 3];
+    float bx = rhs[rhsOffset], by = rhs[rhsOffset + 1], bz = rhs[rhsOffset + 2];
+    float bw = rhs[rhsOffset + 3];
+    result[resultOffset] = aw * bx + ax * bw + ay * bz - az * by;
+    result[resultOffset + 1] = aw * by - ax * bz + ay * bw + az * bx;
+    result[resultOffset + 2] = aw * bz + ax * by - ay * bx + az * bw;
+    result[resultOffset + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  /**
+   * Scales a quaternion back to unit length, in place.
+   */
+  public static void normalize(float[] q, int offset) {
+    float x = q[offset], y = q[offset + 1], z = q[offset + 2], w = q[offset + 3];
+    float r = 1 / (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    q[offset] = x * r;
+    q[offset + 1] = y * r;
+    q[offset + 2] = z * r;
+    q[offset + 3] = w * r;
+  }
+
+  /**
+   * Sets the rotation matrix of a unit quaternion.
+   */
+  public static void toRotationM(float[] m, int offset, float[] q, int qOffset) {
+    float x = q[qOffset], y = q[qOffset + 1], z = q[qOffset + 2], w = q[qOffset + 3];
+    float xx = x * x, yy = y * y, zz = z * z;
+    float xy = x * y, xz = x * z, yz = y * z;
+    float wx = w * x, wy = w * y, wz = w * z;
+    m[offset] = 1 - 2 * (yy + zz);
+    m[offset + 1] = 2 * (xy + wz);
+    m[offset + 2] = 2 * (xz - wy);
+    m[offset + 3] = 0;
+    m[offset + 4] = 2 * (xy - wz);
+    m[offset + 5] = 1 - 2 * (xx + zz);
+    m[offset + 6] = 2 * (yz + wx);
+    m[offset + 7] = 0;
+    m[offset + 8] = 2 * (xz + wy);
+    m[offset + 9] = 2 * (yz - wx);
+    m[offset + 10] = 1 - 2 * (xx + yy);
+    m[offset + 11] = 0;
+    m[offset + 12] = m[offset + 13] = m[offset + 14] = 0;
+    m[offset + 15] = 1;
+  }
+}
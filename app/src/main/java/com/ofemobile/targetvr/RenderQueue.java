@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Draw submissions ordered by a 64-bit sort key.
+ *
+ * <p>A key holds the render pass in its top bits and below that, for opaque passes, the program,
+ * the texture and the depth, so opaque draws are grouped by state and drawn front to back within
+ * a group. Keys for blended passes put the inverted depth above program and texture, so those
+ * draws go back to front, which blending needs, and only share state where depths tie. The keys
+ * are sorted with a stable LSD radix sort, skipping the bytes that all keys share.
+ *
+ * <p>Each submission carries an int that tells the caller what to draw. Not thread safe.
+ */
+public final class RenderQueue {
+
+  public static final int PASS_OPAQUE = 0;
+  public static final int PASS_TRANSPARENT = 1;
+  /** Blended and drawn without depth test. */
+  public static final int PASS_OVERLAY = 2;
+  /** Drawn last, over everything else. */
+  public static final int PASS_HUD = 3;
+
+  private static final int PASS_SHIFT = 60;
+  private static final int PROGRAM_BITS = 14;
+  private static final int TEXTURE_BITS = 15;
+  private static final int DEPTH_BITS = 31;
+
+  private long[] keys;
+  private int[] items;
+  private long[] sortedKeys;
+  private int[] sortedItems;
+  private final int[] counts = new int[256];
+  private int size;
+
+  public RenderQueue(int capacity) {
+    keys = new long[capacity];
+    items = new int[capacity];
+    sortedKeys = new long[capacity];
+    sortedItems = new int[capacity];
+  }
+
+  /**
+   * Builds a key that groups draws by program and texture and orders each group front to back.
+   *
+   * @param depth Distance, or squared distance, from the viewer; must not be negative.
+   */
+  public static long opaqueKey(int pass, int program, int texture, float depth) {
+    return (long) pass << PASS_SHIFT
+        | (long) (program & mask(PROGRAM_BITS)) << (TEXTURE_BITS + DEPTH_BITS)
+        | (long) (texture & mask(TEXTURE_BITS)) << DEPTH_BITS
+        | depthBits(depth);
+  }
+
+  /**
+   * Builds a key that orders draws back to front, then by program and texture.
+   */
+  public static long blendedKey(int pass, int program, int texture, float depth) {
+    return (long) pass << PASS_SHIFT
+        | (depthBits(depth) ^ mask(DEPTH_BITS)) << (PROGRAM_BITS + TEXTURE_BITS)
+        | (long) (program & mask(PROGRAM_BITS)) << TEXTURE_BITS
+        | (texture & mask(TEXTURE_BITS));
+  }
+
+  public static int pass(long key) {
+    return (int) (key >>> PASS_SHIFT);
+  }
+
+  private static int mask(int bits) {
+    return (1 << bits) - 1;
+  }
+
+  // The bits of a non-negative float sort like the float, so they can be used as they are.
+  private static long depthBits(float depth) {
+    return depth > 0 ? Float.floatToIntBits(depth) & mask(DEPTH_BITS) : 0;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void submit(long key, int item) {
+    if (size == keys.length) {
+      int capacity = keys.length * 2;
+      long[] grownKeys = new long[capacity];
+      int[] grownItems = new int[capacity];
+      System.arraycopy(keys, 0, grownKeys, 0, size);
+      System.arraycopy(items, 0, grownItems, 0, size);
+      keys = grownKeys;
+      items = grownItems;
+      sortedKeys = new long[capacity];
+      sortedItems = new int[capacity];
+    }
+    keys[size] = key;
+    items[size] = item;
+    size++;
+  }
+
+  /**
+   * @return The key of the n-th submission, in sorted order after {@link #sort()}.
+   */
+  public long key(int n) {
+    return keys[n];
+  }
+
+  public int item(int n) {
+    return items[n];
+  }
+
+  /**
+   * Sorts the submissions by key, keeping submissions with equal keys in submission order.
+   */
+  public void sort() {
+    for (int shift = 0; shift < 64; shift += 8) {
+      for (int i = 0; i < 256; i++)
+        counts[i] = 0;
+      for (int n = 0; n < size; n++)
+        counts[(int) (keys[n] >>> shift) & 0xff]++;
+      if (size == 0 || counts[(int) (keys[0] >>> shift) & 0xff] == size)
+        continue; // Every key has the same byte here.
+
+      int total = 0;
+      for (int i = 0; i < 256; i++) {
+        int count = counts[i];
+        counts[i] = total;
+        total += count;
+      }
+      for (int n = 0; n < size; n++) {
+        int to = counts[(int) (keys[n] >>> shift) & 0xff]++;
+        sortedKeys[to] = keys[n];
+        sortedItems[to] = items[n];
+      }
+      long[] k = keys;
+      keys = sortedKeys;
+      sortedKeys = k;
+      int[] v = items;
+      items = sortedItems;
+      sortedItems = v;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Turns frame times into fixed-length simulation steps, so that the game runs at the same speed
+ * whatever the display's refresh rate.
+ *
+ * <p>Each frame passes the current {@link System#nanoTime()} to {@link #advance(long)}, which adds
+ * the time since the last frame to an accumulator and returns how many whole steps it now holds.
+ * The caller simulates that many steps, each of {@link #stepSeconds()}, and draws the state
+ * {@link #alpha()} of the way from the previous step to the latest one. A 90 Hz display then
+ * simulates exactly as a 60 Hz one, only drawing in between steps more often.
+ *
+ * <p>After a long stall, such as the app being paused, at most {@code maxSteps} are simulated
+ * and the rest of the backlog is dropped rather than caught up over the following frames.
+ *
+ * <p>Not thread safe.
+ */
+public final class SimulationClock {
+
+  private final long stepNanos;
+  private final float stepSeconds;
+  private final int maxSteps;
+  private boolean started;
+  private long lastNanos;
+  private long accumulator;
+  private long steps;
+  private long droppedSteps;
+
+  /**
+   * @param stepsPerSecond Simulation rate.
+   * @param maxSteps The most steps a single frame may simulate.
+   */
+  public SimulationClock(int stepsPerSecond, int maxSteps) {
+    if (stepsPerSecond < 1 || maxSteps < 1)
+      throw new IllegalArgumentException(stepsPerSecond + " steps per second, " + maxSteps
+          + " per frame");
+    stepNanos = 1000000000L / stepsPerSecond;
+    stepSeconds = 1f / stepsPerSecond;
+    this.maxSteps = maxSteps;
+  }
+
+  public float stepSeconds() {
+    return stepSeconds;
+  }
+
+  /**
+   * Moves the clock to a new frame time.
+   *
+   * @param nowNanos The frame's {@link System#nanoTime()}. The first frame after construction or
+   *     {@link #restart()} only starts the clock.
+   * @return The number of steps to simulate this frame, from 0 to maxSteps.
+   */
+  public int advance(long nowNanos) {
+    if (!started) {
+      started = true;
+      lastNanos = nowNanos;
+      return 0;
+    }
+    // nanoTime never goes backwards, but be safe against callers that pass their own time.
+    accumulator += Math.max(0, nowNanos - lastNanos);
+    lastNanos = nowNanos;
+    long due = accumulator / stepNanos;
+    int run = (int) Math.min(due, maxSteps);
+    droppedSteps += due - run;
+    // Dropped steps are forgotten, keeping only the fraction of a step towards the next one.
+    accumulator -= due * stepNanos;
+    steps += run;
+    return run;
+  }
+
+  /**
+   * @return How far the frame is between the last step simulated and the next, from 0 to just
+   *     under 1.
+   */
+  public float alpha() {
+    return (float) accumulator / stepNanos;
+  }
+
+  /**
+   * @return The length of a step in nanoseconds.
+   */
+  public long stepNanos() {
+    return stepNanos;
+  }
+
+  /**
+   * @return The nanoseconds from the time the last step simulated up to, to the last frame time.
+   */
+  public long nanosSinceStep() {
+    return accumulator;
+  }
+
+  /**
+   * @return The nanoseconds from the last frame time until the next step is due.
+   */
+  public long nanosUntilStep() {
+    return stepNanos - accumulator;
+  }
+
+  /**
+   * @return The number of steps simulated since construction.
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * @return The number of steps skipped because a frame was more than maxSteps late.
+   */
+  public long droppedSteps() {
+    return droppedSteps;
+  }
+
+  /**
+   * Starts timing again from the next frame, for example after the app was paused, so that the
+   * pause is not simulated.
+   */
+  public void restart() {
+    started = false;
+    accumulator = 0;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulation in fixed steps on a thread of its own, so that however long the steps take
+ * they do not come out of the render thread's frame budget.
+ *
+ * <p>The thread sleeps until a step is due by the {@link SimulationClock}, runs the steps that are
+ * due and then asks the simulation to publish what it did, typically a {@link WorldSnapshot} into
+ * a {@link TripleBuffer} the renderer reads. Between {@link #start()} and {@link #stop()} the
+ * simulation's state belongs to the simulation thread; anything else must only read what it
+ * publishes.
+ */
+public final class SimulationLoop implements Runnable {
+
+  /**
+   * The game being simulated. Both methods are called on the simulation thread.
+   */
+  public interface Simulation {
+
+    /**
+     * Advances the simulation by one step of {@link SimulationClock#stepSeconds()}.
+     */
+    void step();
+
+    /**
+     * Publishes the state after the last step.
+     *
+     * @param stepNanos The {@link System#nanoTime()} the last step simulated up to.
+     */
+    void publish(long stepNanos);
+  }
+
+  private final Simulation simulation;
+  private final SimulationClock clock;
+  private volatile boolean running;
+  private Thread thread;
+
+  public SimulationLoop(Simulation simulation, SimulationClock clock) {
+    this.simulation = simulation;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts the simulation thread, if it is not running. Time spent stopped is not simulated.
+   */
+  public synchronized void start() {
+    if (thread != null)
+      return;
+    clock.restart();
+    running = true;
+    thread = new Thread(this, "Simulation");
+    thread.start();
+  }
+
+  /**
+   * Stops the simulation thread and waits for the step it is in to finish.
+   */
+  public synchronized void stop() {
+    if (thread == null)
+      return;
+    running = false;
+    LockSupport.unpark(thread);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        thread.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    thread = null;
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      long now = System.nanoTime();
+      int steps = clock.advance(now);
+      for (int n = 0; n < steps; n++)
+        simulation.step();
+      if (steps > 0)
+        simulation.publish(now - clock.nanosSinceStep());
+      LockSupport.parkNanos(clock.nanosUntilStep());
+    }
+  }
+}
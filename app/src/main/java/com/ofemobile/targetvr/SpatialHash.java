@@ -0,0 +1,280 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * A uniform grid over the room that finds the targets near a ray without testing all of them.
+ *
+ * <p>Each target is entered in every cell touched by a box of half size {@code reach} around it,
+ * where the reach covers the largest hit box used by any query plus how far a target can move in
+ * a frame. Because a cell is at least twice the reach, that is never more than eight cells, and
+ * each target owns eight list entries in the cells' linked lists. Moving a target only relinks it
+ * when the cells it touches change.
+ *
+ * <p>Rays are walked cell by cell (a 3D DDA), so a query only looks at the cells the ray passes
+ * through. Positions outside the room are clamped to the outermost cells.
+ *
+ * <p>Not thread safe.
+ */
+public final class SpatialHash {
+
+  private static final int ENTRIES_PER_TARGET = 8;
+  private static final int NO_ENTRY = -1;
+
+  private final float cellSize;
+  private final float reach;
+  private final int sizeX;
+  private final int sizeY;
+  private final int sizeZ;
+
+  private final int[] cellHead;
+  private final int[] entryNext;
+  private final int[] entryPrev;
+  private final int[] entryCell;
+  // Cell range touched by each target, as min and max cell index per axis; min x of -1 means the
+  // target is not in the grid.
+  private final int[] range;
+  private final int[] visited;
+  private int visitStamp;
+
+  /**
+   * @param capacity Number of target slots, see {@link TargetStore#capacity()}.
+   * @param cellSize Edge length of a cell.
+   * @param reach Half size of the box each target is entered with.
+   */
+  public SpatialHash(int capacity, float cellSize, float reach) {
+    if (2 * reach > cellSize)
+      throw new IllegalArgumentException("Cells must be at least twice the reach");
+    this.cellSize = cellSize;
+    this.reach = reach;
+    sizeX = (int) Math.ceil(2 * Collision.ROOM_HALF_WIDTH / cellSize);
+    sizeY = (int) Math.ceil((Collision.ROOM_CEILING - Collision.ROOM_FLOOR) / cellSize);
+    sizeZ = sizeX;
+    cellHead = new int[sizeX * sizeY * sizeZ];
+    for (int i = 0; i < cellHead.length; i++)
+      cellHead[i] = NO_ENTRY;
+    entryNext = new int[capacity * ENTRIES_PER_TARGET];
+    entryPrev = new int[capacity * ENTRIES_PER_TARGET];
+    entryCell = new int[capacity * ENTRIES_PER_TARGET];
+    range = new int[capacity * 6];
+    for (int id = 0; id < capacity; id++)
+      range[id * 6] = -1;
+    visited = new int[capacity];
+  }
+
+  /**
+   * Enters a target at a new position, or moves it there if it is already in the grid.
+   */
+  public void update(int id, float x, float y, float z) {
+    int minX = cellX(x - reach);
+    int minY = cellY(y - reach);
+    int minZ = cellZ(z - reach);
+    // The box is at most a cell wide, but rounding can put its far side on the boundary after
+    // the next one. Touching a cell only on its boundary is never a hit, so that cell is left out
+    // rather than entering the target in more than ENTRIES_PER_TARGET cells.
+    int maxX = Math.min(cellX(x + reach), minX + 1);
+    int maxY = Math.min(cellY(y + reach), minY + 1);
+    int maxZ = Math.min(cellZ(z + reach), minZ + 1);
+    int r = id * 6;
+    if (range[r] == minX && range[r + 1] == minY && range[r + 2] == minZ
+        && range[r + 3] == maxX && range[r + 4] == maxY && range[r + 5] == maxZ)
+      return;
+    remove(id);
+    range[r] = minX;
+    range[r + 1] = minY;
+    range[r + 2] = minZ;
+    range[r + 3] = maxX;
+    range[r + 4] = maxY;
+    range[r + 5] = maxZ;
+    int entry = id * ENTRIES_PER_TARGET;
+    for (int cx = minX; cx <= maxX; cx++) {
+      for (int cy = minY; cy <= maxY; cy++) {
+        for (int cz = minZ; cz <= maxZ; cz++) {
+          int cell = (cx * sizeY + cy) * sizeZ + cz;
+          int head = cellHead[cell];
+          entryCell[entry] = cell;
+          entryPrev[entry] = NO_ENTRY;
+          entryNext[entry] = head;
+          if (head != NO_ENTRY)
+            entryPrev[head] = entry;
+          cellHead[cell] = entry;
+          entry++;
+        }
+      }
+    }
+    if (entry < (id + 1) * ENTRIES_PER_TARGET)
+      entryCell[entry] = NO_ENTRY;
+  }
+
+  /**
+   * Takes a target out of the grid. Does nothing if it is not in it.
+   */
+  public void remove(int id) {
+    if (range[id * 6] < 0)
+      return;
+    range[id * 6] = -1;
+    int end = (id + 1) * ENTRIES_PER_TARGET;
+    for (int entry = id * ENTRIES_PER_TARGET; entry < end && entryCell[entry] != NO_ENTRY;
+         entry++) {
+      int prev = entryPrev[entry];
+      int next = entryNext[entry];
+      if (prev == NO_ENTRY)
+        cellHead[entryCell[entry]] = next;
+      else
+        entryNext[prev] = next;
+      if (next != NO_ENTRY)
+        entryPrev[next] = prev;
+    }
+  }
+
+  /**
+   * Copies the cells of another grid over the room, to be followed by
+   * {@link #copyTarget(SpatialHash, int)} for every target in it. Together they give another thread
+   * a grid to query while the original carries on changing. Only what queries read is copied, so
+   * the copy cannot be updated.
+   */
+  public void copyCells(SpatialHash grid) {
+    if (grid.cellSize != cellSize || grid.reach != reach)
+      throw new IllegalArgumentException("Grids differ");
+    System.arraycopy(grid.cellHead, 0, cellHead, 0, cellHead.length);
+  }
+
+  /**
+   * Copies where a target is entered in another grid, see {@link #copyCells(SpatialHash)}.
+   */
+  public void copyTarget(SpatialHash grid, int id) {
+    int entry = id * ENTRIES_PER_TARGET;
+    System.arraycopy(grid.entryNext, entry, entryNext, entry, ENTRIES_PER_TARGET);
+  }
+
+  /**
+   * Collects every target entered in a cell that the segment passes through.
+   *
+   * @param start Start of the segment.
+   * @param end End of the segment.
+   * @param out Receives the slots of the targets found, each once.
+   * @return The number of targets written to {@code out}.
+   */
+  public int queryRay(float[] start, float[] end, int[] out) {
+    if (++visitStamp == 0) {
+      for (int i = 0; i < visited.length; i++)
+        visited[i] = 0;
+      visitStamp = 1;
+    }
+
+    // Clip the segment to the grid, plus the reach of the targets in its outer cells.
+    float enter = 0;
+    float exit = 1;
+    for (int i = 0; i < 3; i++) {
+      float lo = i == 1 ? Collision.ROOM_FLOOR : -Collision.ROOM_HALF_WIDTH;
+      float hi = lo + cellSize * (i == 1 ? sizeY : sizeX) + reach;
+      lo -= reach;
+      float d = end[i] - start[i];
+      if (d == 0) {
+        if (start[i] < lo || start[i] > hi)
+          return 0;
+        continue;
+      }
+      float t1 = (lo - start[i]) / d;
+      float t2 = (hi - start[i]) / d;
+      enter = Math.max(enter, Math.min(t1, t2));
+      exit = Math.min(exit, Math.max(t1, t2));
+    }
+    // Written so that a segment with a NaN end, which meets nothing, is rejected here too.
+    if (!(enter <= exit))
+      return 0;
+
+    float dx = end[0] - start[0];
+    float dy = end[1] - start[1];
+    float dz = end[2] - start[2];
+    float px = start[0] + enter * dx;
+    float py = start[1] + enter * dy;
+    float pz = start[2] + enter * dz;
+    int cx = cellX(px);
+    int cy = cellY(py);
+    int cz = cellZ(pz);
+    int stepX = dx > 0 ? 1 : -1;
+    int stepY = dy > 0 ? 1 : -1;
+    int stepZ = dz > 0 ? 1 : -1;
+    // Segment parameter at which the ray crosses the next cell boundary on each axis, and how far
+    // the parameter moves to cross a whole cell.
+    float nextX = boundary(cx, stepX, sizeX, -Collision.ROOM_HALF_WIDTH, px, dx, enter);
+    float nextY = boundary(cy, stepY, sizeY, Collision.ROOM_FLOOR, py, dy, enter);
+    float nextZ = boundary(cz, stepZ, sizeZ, -Collision.ROOM_HALF_WIDTH, pz, dz, enter);
+    float deltaX = dx == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+    float deltaY = dy == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+    float deltaZ = dz == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dz);
+
+    int count = 0;
+    while (true) {
+      count = collect((cx * sizeY + cy) * sizeZ + cz, out, count);
+      if (nextX <= nextY && nextX <= nextZ) {
+        if (nextX > exit)
+          break;
+        cx += stepX;
+        nextX = cx == 0 || cx == sizeX - 1 ? Float.POSITIVE_INFINITY : nextX + deltaX;
+      } else if (nextY <= nextZ) {
+        if (nextY > exit)
+          break;
+        cy += stepY;
+        nextY = cy == 0 || cy == sizeY - 1 ? Float.POSITIVE_INFINITY : nextY + deltaY;
+      } else {
+        if (nextZ > exit)
+          break;
+        cz += stepZ;
+        nextZ = cz == 0 || cz == sizeZ - 1 ? Float.POSITIVE_INFINITY : nextZ + deltaZ;
+      }
+    }
+    return count;
+  }
+
+  private float boundary(int cell, int step, int size, float origin, float p, float d,
+                         float enter) {
+    // The outermost cells stretch beyond the grid, so leaving through them crosses nothing.
+    if (d == 0 || (step > 0 ? cell == size - 1 : cell == 0))
+      return Float.POSITIVE_INFINITY;
+    float edge = origin + (step > 0 ? cell + 1 : cell) * cellSize;
+    return enter + (edge - p) / d;
+  }
+
+  private int collect(int cell, int[] out, int count) {
+    for (int entry = cellHead[cell]; entry != NO_ENTRY; entry = entryNext[entry]) {
+      int id = entry / ENTRIES_PER_TARGET;
+      if (visited[id] != visitStamp && count < out.length) {
+        visited[id] = visitStamp;
+        out[count++] = id;
+      }
+    }
+    return count;
+  }
+
+  private int cellX(float x) {
+    return clamp((int) Math.floor((x + Collision.ROOM_HALF_WIDTH) / cellSize), sizeX);
+  }
+
+  private int cellY(float y) {
+    return clamp((int) Math.floor((y - Collision.ROOM_FLOOR) / cellSize), sizeY);
+  }
+
+  private int cellZ(float z) {
+    return clamp((int) Math.floor((z + Collision.ROOM_HALF_WIDTH) / cellSize), sizeZ);
+  }
+
+  private static int clamp(int cell, int size) {
+    return cell < 0 ? 0 : cell >= size ? size - 1 : cell;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import android.opengl.GLES20;
+
+/**
+ * A texture whose storage is allocated once and then updated with sub-image uploads.
+ *
+ * <p>Re-specifying a texture with glTexImage2D makes the driver reallocate its storage. Here the
+ * storage is allocated on the first update of a context and later images are uploaded into it
+ * with glTexSubImage2D, limited to the band of rows that the new image or the one it replaces has
+ * content in. Every image must have the texture's size.
+ *
+ * <p>Only use it from the GL thread.
+ */
+public final class SubImageTexture {
+
+  private final int width;
+  private final int height;
+  private final int format;
+  private final int type;
+  private int texture;
+  private boolean allocated;
+  // The rows holding content in the texture.
+  private int contentTop;
+  private int contentBottom;
+  private int uploadedBytes;
+
+  /**
+   * @param format Pixel format of the images, for example GL_RGBA.
+   * @param type Pixel type, for example GL_UNSIGNED_SHORT_4_4_4_4.
+   */
+  public SubImageTexture(int width, int height, int format, int type) {
+    this.width = width;
+    this.height = height;
+    this.format = format;
+    this.type = type;
+  }
+
+  /**
+   * Starts using a texture name of a new context. Its storage is allocated on the next update.
+   */
+  public void setTexture(int texture) {
+    this.texture = texture;
+    allocated = false;
+  }
+
+  public int texture() {
+    return texture;
+  }
+
+  /**
+   * @return The number of pixel bytes uploaded so far.
+   */
+  public int uploadedBytes() {
+    return uploadedBytes;
+  }
+
+  /**
+   * Uploads an image, binding the texture to the active unit.
+   */
+  public void update(GLApi gl, PixelImage image) {
+    if (image.width != width || image.height != height)
+      throw new IllegalArgumentException("Image is " + image.width + "x" + image.height
+          + ", texture is " + width + "x" + height);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    if (!allocated) {
+      gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, null);
+      allocated = true;
+      contentTop = 0;
+      contentBottom = height;
+    }
+    int top = Math.min(contentTop, image.top);
+    int bottom = Math.max(contentBottom, image.bottom);
+    contentTop = image.top;
+    contentBottom = image.bottom;
+    if (top >= bottom)
+      return;
+    int rowBytes = width * image.bytesPerPixel;
+    image.pixels.limit(bottom * rowBytes);
+    image.pixels.position(top * rowBytes);
+    gl.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, top, width, bottom - top, format, type,
+        image.pixels);
+    uploadedBytes += (bottom - top) * rowBytes;
+    image.pixels.clear();
+  }
+}
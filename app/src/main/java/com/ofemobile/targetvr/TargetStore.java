@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Holds every target in the room as columns of primitives.
+ *
+ * <p>A target is identified by its slot, which stays the same from spawn to despawn. Free slots
+ * are kept on a stack and the live slots in a dense list, so spawning and despawning are O(1) and
+ * the per-frame loops only touch live targets. The columns are public so that the integration,
+ * hit testing and drawing loops can read them directly.
+ */
+public final class TargetStore {
+
+  /** Returned by {@link #spawn} when every slot is in use. */
+  public static final int NONE = -1;
+
+  public final float[] posX;
+  public final float[] posY;
+  public final float[] posZ;
+  public final float[] velX;
+  public final float[] velY;
+  public final float[] velZ;
+  public final float[] accelX;
+  public final float[] accelY;
+  public final float[] accelZ;
+  // How far each target moved in the last call to integrate, used to sweep it against shots.
+  public final float[] stepX;
+  public final float[] stepY;
+  public final float[] stepZ;
+  public final boolean[] alive;
+
+  private final int[] free;
+  private int freeCount;
+  private final int[] live;
+  private final int[] liveIndex;
+  private int liveCount;
+
+  public TargetStore(int capacity) {
+    posX = new float[capacity];
+    posY = new float[capacity];
+    posZ = new float[capacity];
+    velX = new float[capacity];
+    velY = new float[capacity];
+    velZ = new float[capacity];
+    accelX = new float[capacity];
+    accelY = new float[capacity];
+    accelZ = new float[capacity];
+    stepX = new float[capacity];
+    stepY = new float[capacity];
+    stepZ = new float[capacity];
+    alive = new boolean[capacity];
+    free = new int[capacity];
+    live = new int[capacity];
+    liveIndex = new int[capacity];
+    // Hand out low slots first.
+    for (int i = 0; i < capacity; i++)
+      free[i] = capacity - 1 - i;
+    freeCount = capacity;
+  }
+
+  public int capacity() {
+    return free.length;
+  }
+
+  /**
+   * @return The number of live targets.
+   */
+  public int count() {
+    return liveCount;
+  }
+
+  /**
+   * @param n Index into the live targets, from 0 to {@link #count()} - 1. Despawning changes the
+   *     order of the live targets.
+   * @return The slot of the n-th live target.
+   */
+  public int get(int n) {
+    return live[n];
+  }
+
+  /**
+   * Adds a target at rest at the given position.
+   *
+   * @return The slot of the new target, or {@link #NONE} if the store is full.
+   */
+  public int spawn(float x, float y, float z) {
+    if (freeCount == 0)
+      return NONE;
+    int id = free[--freeCount];
+    posX[id] = x;
+    posY[id] = y;
+    posZ[id] = z;
+    velX[id] = velY[id] = velZ[id] = 0;
+    accelX[id] = accelY[id] = accelZ[id] = 0;
+    stepX[id] = stepY[id] = stepZ[id] = 0;
+    alive[id] = true;
+    liveIndex[id] = liveCount;
+    live[liveCount++] = id;
+    return id;
+  }
+
+  public void setVelocity(int id, float x, float y, float z) {
+    velX[id] = x;
+    velY[id] = y;
+    velZ[id] = z;
+  }
+
+  public void setAcceleration(int id, float x, float y, float z) {
+    accelX[id] = x;
+    accelY[id] = y;
+    accelZ[id] = z;
+  }
+
+  /**
+   * Removes a live target. The last live target takes its place in the live list.
+   */
+  public void despawn(int id) {
+    if (!alive[id])
+      return;
+    alive[id] = false;
+    int index = liveIndex[id];
+    int last = live[--liveCount];
+    live[index] = last;
+    liveIndex[last] = index;
+    free[freeCount++] = id;
+  }
+
+  public void clear() {
+    while (liveCount > 0)
+      despawn(live[liveCount - 1]);
+  }
+
+  /**
+   * Moves every live target by one step: the position advances with the current velocity, then
+   * the velocity with the acceleration.
+   *
+   * @param dt Length of the step in seconds.
+   */
+  public void integrate(float dt) {
+    for (int n = 0; n < liveCount; n++) {
+      int i = live[n];
+      float sx = velX[i] * dt;
+      float sy = velY[i] * dt;
+      float sz = velZ[i] * dt;
+      stepX[i] = sx;
+      stepY[i] = sy;
+      stepZ[i] = sz;
+      posX[i] += sx;
+      posY[i] += sy;
+      posZ[i] += sz;
+      velX[i] += accelX[i] * dt;
+      velY[i] += accelY[i] * dt;
+      velZ[i] += accelZ[i] * dt;
+    }
+  }
+
+  /**
+   * @return true if the target has drifted out through a wall, the floor or the ceiling.
+   */
+  public boolean isOutsideRoom(int id) {
+    return Math.abs(posX[id]) > Collision.ROOM_HALF_WIDTH
+        || posY[id] < Collision.ROOM_FLOOR
+        || posY[id] > Collision.ROOM_CEILING
+        || Math.abs(posZ[id]) > Collision.ROOM_HALF_WIDTH;
+  }
+
+  public void getPosition(int id, float[] out) {
+    out[0] = posX[id];
+    out[1] = posY[id];
+    out[2] = posZ[id];
+  }
+
+  public void getStep(int id, float[] out) {
+    out[0] = stepX[id];
+    out[1] = stepY[id];
+    out[2] = stepZ[id];
+  }
+}
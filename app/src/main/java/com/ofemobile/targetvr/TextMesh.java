@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Lays text out as one quad per glyph of a {@link GlyphAtlas}, ready for a dynamic vertex buffer.
+ *
+ * <p>Lines are broken at newlines and wrapped at spaces to a width, each line is centred, and the
+ * block of lines is centred on the origin, like the centred StaticLayout the signs used to be
+ * rendered with. A vertex is a float3 position and a float2 atlas coordinate; the four vertices
+ * of each quad are drawn with the indices from {@link #quadIndices(int)}. Text past the capacity
+ * is dropped. Laying text out again reuses the same buffers.
+ */
+public final class TextMesh {
+
+  public static final int STRIDE = 20;
+  public static final int POSITION_OFFSET = 0;
+  public static final int COORD_OFFSET = 12;
+
+  private final int maxGlyphs;
+  private final float[] floats;
+  private final ByteBuffer vertices;
+  private final FloatBuffer vertexFloats;
+  private final int[] lineStarts;
+  private final int[] lineEnds;
+  private int lineCount;
+  private int glyphCount;
+
+  public TextMesh(int maxGlyphs) {
+    this.maxGlyphs = maxGlyphs;
+    floats = new float[maxGlyphs * 4 * STRIDE / 4];
+    vertices = ByteBuffer.allocateDirect(floats.length * 4).order(ByteOrder.nativeOrder());
+    vertexFloats = vertices.asFloatBuffer();
+    lineStarts = new int[maxGlyphs];
+    lineEnds = new int[maxGlyphs];
+  }
+
+  /**
+   * @return Indices drawing {@code maxGlyphs} quads as GL_TRIANGLES of unsigned shorts.
+   */
+  public static ByteBuffer quadIndices(int maxGlyphs) {
+    if (maxGlyphs * 4 > 0x10000)
+      throw new IllegalArgumentException("Too many glyphs for 16-bit indices");
+    ByteBuffer indices = ByteBuffer.allocateDirect(maxGlyphs * 6 * 2)
+        .order(ByteOrder.nativeOrder());
+    for (int q = 0; q < maxGlyphs; q++) {
+      int v = q * 4;
+      // Top left, bottom left, top right, then bottom left, bottom right, top right.
+      indices.putShort((short) v).putShort((short) (v + 1)).putShort((short) (v + 2))
+          .putShort((short) (v + 1)).putShort((short) (v + 3)).putShort((short) (v + 2));
+    }
+    indices.position(0);
+    return indices;
+  }
+
+  public int maxGlyphs() {
+    return maxGlyphs;
+  }
+
+  /**
+   * @return The number of quads laid out.
+   */
+  public int glyphCount() {
+    return glyphCount;
+  }
+
+  public int indexCount() {
+    return glyphCount * 6;
+  }
+
+  /**
+   * @return The vertices of the laid out quads, from position 0 to the end of the last quad.
+   */
+  public ByteBuffer vertices() {
+    return vertices;
+  }
+
+  /**
+   * Lays out text, replacing what was laid out before.
+   *
+   * @param size Font size, in the same units as wrapWidth.
+   * @param wrapWidth Lines wider than this are wrapped at a space, if they have one.
+   * @param scale Model units per layout unit. Layout y runs down, model y up.
+   * @param z Model z of every vertex.
+   */
+  public void layout(GlyphAtlas atlas, CharSequence text, float size, float wrapWidth,
+                     float scale, float z) {
+    float s = size / atlas.fontSize();
+    breakLines(atlas, text, s, wrapWidth);
+
+    float lineHeight = (atlas.ascent() + atlas.descent()) * s;
+    float baseline = -lineCount * lineHeight / 2 + atlas.ascent() * s;
+    float cellSize = GlyphAtlas.CELL_SIZE * s;
+    int f = 0;
+    glyphCount = 0;
+    for (int line = 0; line < lineCount; line++) {
+      float pen = -measure(atlas, text, lineStarts[line], lineEnds[line], s) / 2;
+      for (int i = lineStarts[line]; i < lineEnds[line]; i++) {
+        int glyph = GlyphAtlas.glyph(text.charAt(i));
+        if (text.charAt(i) != ' ' && glyphCount < maxGlyphs) {
+          float left = (pen - GlyphAtlas.penX() * s) * scale;
+          float top = -(baseline - atlas.baselineY() * s) * scale;
+          float right = left + cellSize * scale;
+          float bottom = top - cellSize * scale;
+          float u0 = (float) GlyphAtlas.cellX(glyph) / GlyphAtlas.WIDTH;
+          float v0 = (float) GlyphAtlas.cellY(glyph) / GlyphAtlas.HEIGHT;
+          float u1 = u0 + (float) GlyphAtlas.CELL_SIZE / GlyphAtlas.WIDTH;
+          float v1 = v0 + (float) GlyphAtlas.CELL_SIZE / GlyphAtlas.HEIGHT;
+          f = vertex(f, left, top, z, u0, v0);
+          f = vertex(f, left, bottom, z, u0, v1);
+          f = vertex(f, right, top, z, u1, v0);
+          f = vertex(f, right, bottom, z, u1, v1);
+          glyphCount++;
+        }
+        pen += atlas.advance(glyph) * s;
+      }
+      baseline += lineHeight;
+    }
+    vertexFloats.clear();
+    vertexFloats.put(floats, 0, f);
+    vertices.position(0);
+    vertices.limit(f * 4);
+  }
+
+  private int vertex(int f, float x, float y, float z, float u, float v) {
+    floats[f] = x;
+    floats[f + 1] = y;
+    floats[f + 2] = z;
+    floats[f + 3] = u;
+    floats[f + 4] = v;
+    return f + 5;
+  }
+
+  private void breakLines(GlyphAtlas atlas, CharSequence text, float s, float wrapWidth) {
+    lineCount = 0;
+    int start = 0;
+    while (start <= text.length()) {
+      int end = start;
+      while (end < text.length() && text.charAt(end) != '\n')
+        end++;
+      wrap(atlas, text, start, end, s, wrapWidth);
+      start = end + 1;
+    }
+  }
+
+  private void wrap(GlyphAtlas atlas, CharSequence text, int start, int end, float s,
+                    float wrapWidth) {
+    int lineStart = start;
+    int lastSpace = -1;
+    float width = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == ' ')
+        lastSpace = i;
+      width += atlas.advance(GlyphAtlas.glyph(c)) * s;
+      if (width > wrapWidth && c != ' ' && i > lineStart) {
+        int breakAt = lastSpace > lineStart ? lastSpace : i;
+        addLine(lineStart, breakAt);
+        lineStart = lastSpace > lineStart ? lastSpace + 1 : i;
+        lastSpace = -1;
+        width = measure(atlas, text, lineStart, i + 1, s);
+      }
+    }
+    addLine(lineStart, end);
+  }
+
+  private void addLine(int start, int end) {
+    if (lineCount == lineStarts.length)
+      return;
+    lineStarts[lineCount] = start;
+    lineEnds[lineCount] = end;
+    lineCount++;
+  }
+
+  // Width of a line without its trailing spaces.
+  private static float measure(GlyphAtlas atlas, CharSequence text, int start, int end, float s) {
+    while (end > start && text.charAt(end - 1) == ' ')
+      end--;
+    float width = 0;
+    for (int i = start; i < end; i++)
+      width += atlas.advance(GlyphAtlas.glyph(text.charAt(i))) * s;
+    return width;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * A bounded, least recently used cache of textures that were expensive to make, such as
+ * rasterized text or reticle variants, keyed by what they show.
+ *
+ * <p>Showing something that is still cached only swaps a texture handle instead of rendering and
+ * uploading it again. When the cache is full the least recently used texture is deleted from GL
+ * to make room. Hits, misses and evictions are counted for the frame log.
+ *
+ * <p>Keys are primitive, see {@link #key(int, int)}, and the cache holds few enough textures to
+ * be searched in turn, so looking a texture up on the GL thread never allocates.
+ *
+ * <p>Owns the textures put in it. Use on the GL thread only.
+ */
+public final class TextureCache {
+
+  /** Returned by {@link #get(long)} for keys that are not cached. GL never names a texture 0. */
+  public static final int NO_TEXTURE = 0;
+
+  private final GLApi gl;
+  private final int capacity;
+  // The cached entries are the first size of each column.
+  private final long[] keys;
+  private final int[] textures;
+  // When each entry was last used, on the clock below.
+  private final long[] used;
+  private int size;
+  private long clock;
+  private final int[] name = new int[1];
+  private int hits;
+  private int misses;
+  private int evictions;
+
+  public TextureCache(GLApi gl, int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity " + capacity);
+    this.gl = gl;
+    this.capacity = capacity;
+    keys = new long[capacity];
+    textures = new int[capacity];
+    used = new long[capacity];
+  }
+
+  /**
+   * Packs two values that together say what a texture shows, such as a reticle's type and colour,
+   * into a key.
+   */
+  public static long key(int high, int low) {
+    return (long) high << 32 | (low & 0xffffffffL);
+  }
+
+  /**
+   * Looks up a texture and marks it most recently used.
+   *
+   * @return The texture, or {@link #NO_TEXTURE} if it has to be made and {@link #put put} here.
+   */
+  public int get(long key) {
+    int i = indexOf(key);
+    if (i < 0) {
+      misses++;
+      return NO_TEXTURE;
+    }
+    hits++;
+    used[i] = ++clock;
+    return textures[i];
+  }
+
+  /**
+   * Adds a texture, deleting the least recently used one if the cache is full. A texture already
+   * cached under the key is deleted unless it is the same one.
+   */
+  public void put(long key, int texture) {
+    int i = indexOf(key);
+    if (i >= 0) {
+      if (textures[i] != texture)
+        delete(textures[i]);
+    } else if (size < capacity) {
+      i = size++;
+    } else {
+      i = 0;
+      for (int j = 1; j < size; j++) {
+        if (used[j] < used[i])
+          i = j;
+      }
+      delete(textures[i]);
+      evictions++;
+    }
+    keys[i] = key;
+    textures[i] = texture;
+    used[i] = ++clock;
+  }
+
+  public boolean contains(long key) {
+    return indexOf(key) >= 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public int hits() {
+    return hits;
+  }
+
+  public int misses() {
+    return misses;
+  }
+
+  public int evictions() {
+    return evictions;
+  }
+
+  /**
+   * Forgets every texture without deleting it, for when the GL context that owned them is gone.
+   */
+  public void forget() {
+    size = 0;
+  }
+
+  /**
+   * Deletes every cached texture.
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++)
+      delete(textures[i]);
+    size = 0;
+  }
+
+  private int indexOf(long key) {
+    for (int i = 0; i < size; i++) {
+      if (keys[i] == key)
+        return i;
+    }
+    return -1;
+  }
+
+  private void delete(int texture) {
+    name[0] = texture;
+    gl.glDeleteTextures(1, name, 0);
+  }
+}
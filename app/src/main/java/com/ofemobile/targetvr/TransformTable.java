@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * The world transforms of everything drawn in a frame, and their model-view-projection matrices
+ * for the eye being drawn.
+ *
+ * <p>The render thread fills the table once per frame, see {@link FrameBuilder}. Each eye then
+ * calls {@link #concatenate(float[], float[])}, which multiplies its projection and view once and
+ * the result with every model matrix, so drawing an object for an eye costs one matrix multiply.
+ * Matrices are column major, like android.opengl.Matrix, and slot n occupies offsets 16n to
+ * 16n + 15 of both {@link #models()} and {@link #mvps()}.
+ *
+ * <p>A slot can be given a bounding sphere around its model origin with
+ * {@link #setBounds(int, float)}. Concatenating then also tests the sphere against the eye's
+ * view frustum, skips the multiply for slots that are outside it and marks them as not visible,
+ * so their draws can be skipped for that eye. Slots without bounds are always visible.
+ *
+ * <p>Not thread safe.
+ */
+public final class TransformTable {
+
+  private float[] models;
+  private float[] mvps;
+  // Bounding sphere radius of each slot in model units, or -1 for slots without bounds.
+  private float[] radii;
+  private boolean[] visible;
+  private final float[] viewProjection = new float[16];
+  // The six frustum planes of the eye, as normalized a, b, c, d with ax + by + cz + d >= 0 inside.
+  private final float[] planes = new float[24];
+  private int count;
+  private int matrixOps;
+  private int culled;
+  private int drawn;
+
+  public TransformTable(int capacity) {
+    models = new float[capacity * 16];
+    mvps = new float[capacity * 16];
+    radii = new float[capacity];
+    visible = new boolean[capacity];
+  }
+
+  /**
+   * Empties the table for a new frame.
+   */
+  public void clear() {
+    count = 0;
+    matrixOps = 0;
+    culled = 0;
+    drawn = 0;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /**
+   * @return The number of matrix multiplies and transform builds since {@link #clear()}.
+   */
+  public int matrixOps() {
+    return matrixOps;
+  }
+
+  /**
+   * @return The number of slots found outside an eye's frustum since {@link #clear()}, counted
+   *     once per eye.
+   */
+  public int culled() {
+    return culled;
+  }
+
+  /**
+   * @return The number of slots found visible to an eye since {@link #clear()}, counted once per
+   *     eye.
+   */
+  public int drawn() {
+    return drawn;
+  }
+
+  public float[] models() {
+    return models;
+  }
+
+  public float[] mvps() {
+    return mvps;
+  }
+
+  private int next() {
+    if (count * 16 == models.length) {
+      float[] grown = new float[models.length * 2];
+      System.arraycopy(models, 0, grown, 0, models.length);
+      models = grown;
+      mvps = new float[grown.length];
+      float[] grownRadii = new float[radii.length * 2];
+      System.arraycopy(radii, 0, grownRadii, 0, radii.length);
+      radii = grownRadii;
+      visible = new boolean[grownRadii.length];
+    }
+    radii[count] = -1;
+    return count++;
+  }
+
+  /**
+   * Adds a copy of a model matrix.
+   *
+   * @return The slot of the matrix.
+   */
+  public int add(float[] model, int offset) {
+    int slot = next();
+    System.arraycopy(model, offset, models, slot * 16, 16);
+    return slot;
+  }
+
+  /**
+   * Adds a pure translation, built in place.
+   */
+  public int addTranslation(float x, float y, float z) {
+    int slot = next();
+    int m = slot * 16;
+    for (int i = 0; i < 16; i++)
+      models[m + i] = 0;
+    models[m] = 1;
+    models[m + 5] = 1;
+    models[m + 10] = 1;
+    models[m + 12] = x;
+    models[m + 13] = y;
+    models[m + 14] = z;
+    models[m + 15] = 1;
+    matrixOps++;
+    return slot;
+  }
+
+  /**
+   * Adds translate(x, y, z) * rotation, which only needs the rotation's translation replaced.
+   *
+   * @param rotation A matrix whose last row is 0, 0, 0, 1 and translation is zero.
+   */
+  public int addTranslated(float[] rotation, float x, float y, float z) {
+    int slot = add(rotation, 0);
+    int m = slot * 16;
+    models[m + 12] = x;
+    models[m + 13] = y;
+    models[m + 14] = z;
+    matrixOps++;
+    return slot;
+  }
+
+  /**
+   * @return The squared distance from a point to the origin of a slot's model.
+   */
+  public float distanceSquared(int slot, float x, float y, float z) {
+    int m = slot * 16;
+    float dx = models[m + 12] - x;
+    float dy = models[m + 13] - y;
+    float dz = models[m + 14] - z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * Gives a slot a bounding sphere centred on its model origin.
+   *
+   * @param radius Radius in model units, see {@link MeshFile#radius()}. The model's largest scale
+   *     is applied to it.
+   */
+  public void setBounds(int slot, float radius) {
+    radii[slot] = radius;
+  }
+
+  /**
+   * @return false if the slot's bounding sphere was outside the frustum of the eye last
+   *     concatenated, in which case its model-view-projection matrix was not computed.
+   */
+  public boolean isVisible(int slot) {
+    return visible[slot];
+  }
+
+  /**
+   * Computes the model-view-projection matrix of every visible slot for one eye.
+   */
+  public void concatenate(float[] view, float[] projection) {
+    multiply(viewProjection, 0, projection, 0, view, 0);
+    matrixOps++;
+    extractPlanes();
+    for (int slot = 0; slot < count; slot++) {
+      int m = slot * 16;
+      boolean inside = radii[slot] < 0 || insideFrustum(m, radii[slot]);
+      visible[slot] = inside;
+      if (inside) {
+        multiply(mvps, m, viewProjection, 0, models, m);
+        matrixOps++;
+        drawn++;
+      } else {
+        culled++;
+      }
+    }
+  }
+
+  // The planes are sums and differences of the fourth row of the view-projection with the others
+  // (Gribb and Hartmann), in world space because the models are.
+  private void extractPlanes() {
+    for (int p = 0; p < 6; p++) {
+      int row = p / 2;
+      float sign = p % 2 == 0 ? 1 : -1;
+      float length = 0;
+      for (int col = 0; col < 4; col++) {
+        float v = viewProjection[col * 4 + 3] + sign * viewProjection[col * 4 + row];
+        planes[p * 4 + col] = v;
+        if (col < 3)
+          length += v * v;
+      }
+      float scale = 1 / (float) Math.sqrt(length);
+      for (int col = 0; col < 4; col++)
+        planes[p * 4 + col] *= scale;
+    }
+  }
+
+  private boolean insideFrustum(int m, float radius) {
+    float scaleSquared = 0;
+    for (int col = 0; col < 3; col++) {
+      float x = models[m + col * 4];
+      float y = models[m + col * 4 + 1];
+      float z = models[m + col * 4 + 2];
+      scaleSquared = Math.max(scaleSquared, x * x + y * y + z * z);
+    }
+    float r = radius * (float) Math.sqrt(scaleSquared);
+    float x = models[m + 12];
+    float y = models[m + 13];
+    float z = models[m + 14];
+    for (int p = 0; p < 24; p += 4) {
+      if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -r)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * result = lhs * rhs, for column major 4x4 matrices. The result must not overlap the inputs.
+   */
+  static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs,
+                       int rhsOffset) {
+    for (int col = 0; col < 4; col++) {
+      float r0 = rhs[rhsOffset + col * 4];
+      float r1 = rhs[rhsOffset + col * 4 + 1];
+      float r2 = rhs[rhsOffset + col * 4 + 2];
+      float r3 = rhs[rhsOffset + col * 4 + 3];
+      for (int row = 0; row < 4; row++) {
+        result[resultOffset + col * 4 + row] = lhs[lhsOffset + row] * r0
+            + lhs[lhsOffset + 4 + row] * r1
+            + lhs[lhsOffset + 8 + row] * r2
+            + lhs[lhsOffset + 12 + row] * r3;
+      }
+    }
+  }
+}
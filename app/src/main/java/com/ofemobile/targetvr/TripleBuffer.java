@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest of a stream of values from one producer thread to one consumer thread
+ * without either of them ever waiting.
+ *
+ * <p>There are three slots: one the producer writes, one the consumer reads and one in between.
+ * Publishing swaps the producer's slot with the middle one and marks it fresh; updating swaps the
+ * consumer's slot with the middle one if it is fresh. Both swaps are a single atomic exchange, so
+ * neither side can see a slot the other is using, and a publication is only ever overwritten by a
+ * newer one.
+ *
+ * <p>The values in the slots travel around between the threads, so a producer can reuse whatever
+ * {@link #writable()} gives back, such as a bitmap to draw into, instead of making a new one.
+ */
+public final class TripleBuffer<T> {
+
+  private static final int INDEX_MASK = 3;
+  private static final int FRESH = 4;
+
+  private final Object[] slots = new Object[3];
+  // The middle slot's index, plus FRESH if the producer has put a value there the consumer has not
+  // taken.
+  private final AtomicInteger middle = new AtomicInteger(1);
+  // Only touched by the producer.
+  private int writeIndex = 0;
+  // Only touched by the consumer.
+  private int readIndex = 2;
+
+  /**
+   * Producer side.
+   *
+   * @return The value in the producer's slot, which the consumer no longer uses, or null if
+   *     nothing has been published into it yet.
+   */
+  @SuppressWarnings("unchecked")
+  public T writable() {
+    return (T) slots[writeIndex];
+  }
+
+  /**
+   * Producer side. Puts a value in the producer's slot and makes it the latest publication.
+   */
+  public void publish(T value) {
+    slots[writeIndex] = value;
+    writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Consumer side. Takes the latest publication, if there is one the consumer has not taken.
+   *
+   * @return true if {@link #read()} changed.
+   */
+  public boolean update() {
+    if ((middle.get() & FRESH) == 0)
+      return false;
+    readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+    return true;
+  }
+
+  /**
+   * Consumer side.
+   *
+   * @return The publication taken by the last {@link #update()}, or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public T read() {
+    return (T) slots[readIndex];
+  }
+}
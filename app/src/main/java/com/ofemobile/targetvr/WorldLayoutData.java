@@ -18,6 +18,9 @@ package com.ofemobile.targetvr;
 
 /**
  * Contains vertex, normal and color data.
+ *
+ * <p>The app does not load this class; the meshgen module writes these arrays out as mesh assets
+ * at build time, see {@link MeshFile}.
  */
 public final class WorldLayoutData {
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+/**
+ * Everything the renderer needs from one simulation step, copied out of the game state so that
+ * the render thread can draw it while the simulation thread carries on.
+ *
+ * <p>Snapshots travel from the simulation thread to the render thread through a
+ * {@link TripleBuffer}. The simulation fills one completely before publishing it and does not
+ * touch it again until the buffer hands it back, so while the renderer holds a snapshot it does
+ * not change and can be read without locks. Snapshots are recycled rather than made per step.
+ *
+ * <p>A snapshot holds both the last step's state and enough of the one before it, the targets'
+ * steps and the projectile's previous position, to draw anywhere in between.
+ */
+public final class WorldSnapshot {
+
+  /** The step this is a snapshot of, counted from 1. */
+  public int stepNo;
+  /** The {@link System#nanoTime()} the step was simulated up to. */
+  public long stepNanos;
+  public int mode;
+
+  /** The live targets, densely packed. */
+  public int targetCount;
+  public final float[] targetX;
+  public final float[] targetY;
+  public final float[] targetZ;
+  public final float[] targetStepX;
+  public final float[] targetStepY;
+  public final float[] targetStepZ;
+  // The live targets entered in the game's grid by slot, and the index above of each slot.
+  private final SpatialHash targetGrid;
+  private final int[] targetIndex;
+
+  public final float[] projectilePos = new float[3];
+  public final float[] projectilePrevious = new float[3];
+  public final float[] projectileRotation = new float[16];
+
+  public boolean beamFiring;
+  // How far the front of the beam has travelled along it.
+  public float beamDist;
+  public final float[] modelBeam = new float[16];
+  public final float[] modelFlare = new float[16];
+  public int flareStartStep;
+
+  /** The message on the sign, and a serial number that changes with it. */
+  public final StringBuilder message = new StringBuilder(Game.MESSAGE_CAPACITY);
+  public int messageSerial = -1;
+  /** The step from which the sign fades out. */
+  public int messageFadeStep;
+
+  public WorldSnapshot(int capacity) {
+    targetX = new float[capacity];
+    targetY = new float[capacity];
+    targetZ = new float[capacity];
+    targetStepX = new float[capacity];
+    targetStepY = new float[capacity];
+    targetStepZ = new float[capacity];
+    targetGrid = new SpatialHash(capacity, Game.GRID_CELL_SIZE, Game.GRID_REACH);
+    targetIndex = new int[capacity];
+  }
+
+  /**
+   * Copies the positions and last steps of the live targets, and the grid they are entered in.
+   *
+   * @param grid The game's grid, holding the live targets by slot.
+   */
+  public void copyTargets(TargetStore targets, SpatialHash grid) {
+    targetCount = targets.count();
+    targetGrid.copyCells(grid);
+    for (int n = 0; n < targetCount; n++) {
+      int id = targets.get(n);
+      targetIndex[id] = n;
+      targetGrid.copyTarget(grid, id);
+      targetX[n] = targets.posX[id];
+      targetY[n] = targets.posY[id];
+      targetZ[n] = targets.posZ[id];
+      targetStepX[n] = targets.stepX[id];
+      targetStepY[n] = targets.stepY[id];
+      targetStepZ[n] = targets.stepZ[id];
+    }
+  }
+
+  /**
+   * Finds the targets that may be drawn on a segment, without testing all of them. The grid's
+   * reach covers a step of movement, so this includes any target whose box of half size
+   * {@link Game#BEAM_HIT_EXTENT} the segment passes through, wherever between the last two steps
+   * the target is drawn.
+   *
+   * @param out Receives the indices of the targets found, each once.
+   * @return The number of targets written to {@code out}.
+   */
+  public int findTargets(float[] start, float[] end, int[] out) {
+    int count = targetGrid.queryRay(start, end, out);
+    for (int i = 0; i < count; i++)
+      out[i] = targetIndex[out[i]];
+    return count;
+  }
+
+  /**
+   * Gets where the n-th target is drawn between the last two steps.
+   *
+   * @param alpha How far the frame is from the position before the last step, at 0, to the
+   *     current position, at 1. See {@link #alpha(long, long)}.
+   */
+  public void getTargetPosition(int n, float alpha, float[] out) {
+    float back = 1 - alpha;
+    out[0] = targetX[n] - back * targetStepX[n];
+    out[1] = targetY[n] - back * targetStepY[n];
+    out[2] = targetZ[n] - back * targetStepZ[n];
+  }
+
+  /**
+   * @param nowNanos The {@link System#nanoTime()} of the frame being drawn.
+   * @param stepLength Nanoseconds per step.
+   * @return How far from the previous step to this one to draw, for a frame drawn one step behind
+   *     the simulation, from 0 to 1.
+   */
+  public float alpha(long nowNanos, long stepLength) {
+    float alpha = (float) (nowNanos - stepNanos) / stepLength;
+    return Math.max(0, Math.min(alpha, 1));
+  }
+}
@@ -0,0 +1,15 @@
+precision mediump float;
+uniform sampler2D u_Atlas;
+uniform vec3 u_Color;
+uniform float u_Trans;
+// Half the width of the edge, in distance field units; the field is 0.5 on the glyph outline.
+uniform float u_Smoothing;
+varying vec2 v_Coord;
+
+void main() {
+    float distance = texture2D(u_Atlas, v_Coord).a;
+    float alpha = smoothstep(0.5 - u_Smoothing, 0.5 + u_Smoothing, distance);
+    if (alpha < 0.01)
+        discard;
+    gl_FragColor = vec4(u_Color, alpha * u_Trans);
+}
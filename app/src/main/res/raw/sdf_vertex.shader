@@ -0,0 +1,11 @@
+uniform mat4 u_MVP;
+
+attribute vec4 a_Position;
+attribute vec2 a_Coord;
+
+varying vec2 v_Coord;
+
+void main() {
+   v_Coord = a_Coord;
+   gl_Position = u_MVP * a_Position;
+}
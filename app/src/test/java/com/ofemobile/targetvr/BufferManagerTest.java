@@ -0,0 +1,136 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferManagerTest {
+
+  private static final int GL_ARRAY_BUFFER = 0x8892;
+  private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  private static final int GL_TRIANGLES = 4;
+  private static final int GL_UNSIGNED_SHORT = 0x1403;
+
+  // The meshes of the app's assets, built as the meshgen module builds them.
+  private static MeshFile[] meshes() {
+    int[] positionAndCoord = {MeshFile.ATTRIBUTE_POSITION, MeshFile.ATTRIBUTE_COORD};
+    int[] positionAndColor = {MeshFile.ATTRIBUTE_POSITION, MeshFile.ATTRIBUTE_COLOR};
+    return new MeshFile[] {
+        MeshFile.packed(MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+            WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_COLORS)),
+        MeshFile.packed(MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+            WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_FOUND_COLORS)),
+        MeshFile.interleave(positionAndCoord, new int[] {3, 2}, WorldLayoutData.FLOOR_COORDS,
+            WorldLayoutData.FLOOR_COORDSS),
+        MeshFile.interleave(positionAndCoord, new int[] {3, 1}, WorldLayoutData.BEAM_VERTS,
+            WorldLayoutData.BEAM_TCCOORDS),
+        MeshFile.interleave(positionAndCoord, new int[] {3, 2}, WorldLayoutData.RECT_COORDS,
+            WorldLayoutData.RECT_TXCOORDS),
+        MeshFile.interleave(positionAndColor, new int[] {3, 3}, WorldLayoutData.AXIS_VERTS,
+            WorldLayoutData.AXIS_COLORS)};
+  }
+
+  @Test
+  public void meshesAreUploadedOnceRegardlessOfFrames() {
+    RecordingGL backend = new RecordingGL();
+    // As in MainActivity: uploads go through the state cache, frames are recorded into a draw
+    // list and replayed through the cache for each eye.
+    GLStateCache gl = new GLStateCache(backend);
+    BufferManager buffers = new BufferManager(gl);
+    MeshFile[] meshes = meshes();
+    int[] vertices = new int[meshes.length];
+    int[] indices = new int[meshes.length];
+    long meshBytes = 0;
+    int uploads = 0;
+    for (int i = 0; i < meshes.length; i++) {
+      vertices[i] = buffers.upload(GL_ARRAY_BUFFER, meshes[i].vertices);
+      meshBytes += meshes[i].vertices.remaining();
+      uploads++;
+      if (meshes[i].indices != null) {
+        indices[i] = buffers.upload(GL_ELEMENT_ARRAY_BUFFER, meshes[i].indices);
+        meshBytes += meshes[i].indices.remaining();
+        uploads++;
+      }
+    }
+    assertEquals(meshBytes, backend.bufferBytes);
+    assertEquals(meshBytes, buffers.uploadedBytes());
+    assertEquals(uploads, buffers.bufferCount());
+
+    // Draw every mesh for both eyes over many frames. With client-side arrays the driver would
+    // have copied meshBytes per eye per frame.
+    DrawList drawList = new DrawList();
+    TransformTable transforms = new TransformTable(1);
+    for (int frame = 0; frame < 100; frame++) {
+      gl.beginFrame();
+      drawList.clear();
+      for (int i = 0; i < meshes.length; i++) {
+        MeshFile mesh = meshes[i];
+        drawList.glBindBuffer(GL_ARRAY_BUFFER, vertices[i]);
+        int position = mesh.attribute(MeshFile.ATTRIBUTE_POSITION);
+        drawList.glVertexAttribPointer(0, mesh.size(position), mesh.type(position),
+            mesh.normalized(position), mesh.stride, mesh.offset(position));
+        if (mesh.indices != null) {
+          drawList.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indices[i]);
+          drawList.glDrawElements(GL_TRIANGLES, mesh.indexCount, GL_UNSIGNED_SHORT, 0);
+        } else {
+          drawList.glDrawArrays(GL_TRIANGLES, 0, mesh.vertexCount);
+        }
+      }
+      for (int eye = 0; eye < 2; eye++)
+        drawList.replay(gl, transforms);
+    }
+    assertEquals(100 * 2 * meshes.length, backend.drawCalls);
+    assertEquals(meshBytes, backend.bufferBytes);
+    assertEquals(uploads, backend.count("glBufferData"));
+    assertEquals(0, backend.count("glBufferSubData"));
+    // Every draw read from an uploaded buffer rather than from client memory.
+    for (String call : backend.calls) {
+      if (call.startsWith("glBindBuffer " + GL_ARRAY_BUFFER + " ")
+          || call.startsWith("glBindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " ")) {
+        int name = Integer.parseInt(call.substring(call.lastIndexOf(' ') + 1));
+        assertTrue(call, name == 0 || contains(vertices, name) || contains(indices, name));
+      }
+    }
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values)
+      if (v == value)
+        return true;
+    return false;
+  }
+
+  @Test
+  public void uploadsIndexBuffersAndReleases() {
+    RecordingGL gl = new RecordingGL();
+    BufferManager buffers = new BufferManager(gl);
+    for (int i = 0; i < 20; i++)
+      buffers.upload(GL_ARRAY_BUFFER, ByteBuffer.allocateDirect(72));
+    int indices = buffers.upload(GL_ELEMENT_ARRAY_BUFFER, ByteBuffer.allocateDirect(12));
+    assertEquals(21, buffers.bufferCount());
+    assertTrue(gl.calls.contains("glBufferData " + GL_ELEMENT_ARRAY_BUFFER + " 12"));
+    assertTrue(gl.calls.contains("glBindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " " + indices));
+    assertTrue(gl.calls.contains("glBufferData " + GL_ARRAY_BUFFER + " 72"));
+    assertEquals(20 * 72 + 12, buffers.uploadedBytes());
+    buffers.release();
+    assertEquals("glDeleteBuffers 21", gl.calls.get(gl.calls.size() - 1));
+    assertEquals(0, buffers.bufferCount());
+  }
+
+  @Test
+  public void dynamicBuffersKeepTheirStorage() {
+    RecordingGL gl = new RecordingGL();
+    BufferManager buffers = new BufferManager(gl);
+    int text = buffers.allocate(GL_ARRAY_BUFFER, 1024);
+    assertEquals(0, buffers.uploadedBytes());
+    for (int i = 0; i < 10; i++)
+      buffers.update(GL_ARRAY_BUFFER, text, ByteBuffer.allocateDirect(80 + i));
+    assertEquals(1, gl.count("glBufferData"));
+    assertEquals(10, gl.count("glBufferSubData"));
+    assertTrue(gl.calls.contains("glBufferSubData " + GL_ARRAY_BUFFER + " 0 89"));
+    assertEquals(10 * 80 + 45, buffers.uploadedBytes());
+    assertEquals(1, buffers.bufferCount());
+  }
+}
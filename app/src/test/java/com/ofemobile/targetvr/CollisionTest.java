@@ -0,0 +1,213 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CollisionTest {
+
+  private static final float EXTENT = 0.12f;
+
+  // The old ray march from MainActivity.onNewFrame: first factor at which the ray is inside the
+  // box, or -1.
+  private static float sampledEntry(float[] p1, float[] p2, float[] cubePos) {
+    float[] v = new float[3];
+    for (float rough = 0; rough < 1; rough += 0.01) {
+      if (inside(p1, p2, rough, cubePos, v)) {
+        for (float fine = rough - 0.005f; fine < rough + 0.005f; fine += 0.001f) {
+          if (inside(p1, p2, fine, cubePos, v))
+            return fine;
+        }
+        return rough;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean inside(float[] p1, float[] p2, float f, float[] cubePos, float[] v) {
+    boolean hit = true;
+    for (int i = 0; i < 3; i++) {
+      v[i] = f * (p2[i] - p1[i]) + p1[i];
+      if (Math.abs(v[i] - cubePos[i]) > EXTENT)
+        hit = false;
+    }
+    return hit;
+  }
+
+  private static float[] randomBeamEnd(Random random, float[] start, float[] cube) {
+    // Aim somewhere near the cube, like a player hunting for it.
+    float[] end = new float[3];
+    float length = 0;
+    for (int i = 0; i < 3; i++) {
+      end[i] = cube[i] + (random.nextFloat() - 0.5f) * 0.6f - start[i];
+      length += end[i] * end[i];
+    }
+    float scale = 10f / (float) Math.sqrt(length);
+    for (int i = 0; i < 3; i++)
+      end[i] = start[i] + end[i] * scale;
+    return end;
+  }
+
+  @Test
+  public void segmentBoxEntryMatchesSampledSearch() {
+    Random random = new Random(1);
+    float[] start = {0.2f, -0.75f, 0f};
+    int hits = 0;
+    for (int n = 0; n < 20000; n++) {
+      float[] cube = {random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -2f};
+      float[] end = randomBeamEnd(random, start, cube);
+      float sampled = sampledEntry(start, end, cube);
+      float exact = Collision.segmentBoxEntry(start, end, cube, EXTENT);
+      if (sampled >= 0) {
+        hits++;
+        assertTrue("exact test missed a sampled hit", exact != Collision.MISS);
+        // The sampled search is only accurate to its step size.
+        assertEquals(sampled, exact, 0.0101f);
+      } else if (exact != Collision.MISS) {
+        // Only grazing hits shorter than a sample step may be missed by the march.
+        float exit = Collision.segmentBoxEntry(end, start, cube, EXTENT);
+        assertTrue("sampled search missed a long crossing", (1 - exit) - exact < 0.011f);
+      }
+    }
+    assertTrue("too few hits: " + hits, hits > 1000);
+  }
+
+  @Test
+  public void segmentBoxEntryStartingInside() {
+    float[] cube = {0, 0, 0};
+    assertEquals(0f, Collision.segmentBoxEntry(new float[] {0, 0, 0}, new float[] {0, 0, -10},
+        cube, EXTENT), 0f);
+  }
+
+  @Test
+  public void segmentRoomExitFindsWall() {
+    float[] start = {0, 0, 0};
+    assertEquals(0.4f, Collision.segmentRoomExit(start, new float[] {0, 0, -10}), 1e-6f);
+    assertEquals(0.15f, Collision.segmentRoomExit(start, new float[] {0, -10, 0}), 1e-6f);
+    assertEquals(Collision.MISS, Collision.segmentRoomExit(start, new float[] {1, 1, -1}), 0f);
+  }
+
+  @Test
+  public void sweepBeamMatchesSampledWindow() {
+    Random random = new Random(2);
+    Collision collision = new Collision();
+    float[] start = {0.2f, -0.75f, 0f};
+    float[] still = {0, 0, 0};
+    float[] hitPoint = new float[3];
+    for (int n = 0; n < 5000; n++) {
+      float[] cube = {random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -2f};
+      float[] end = randomBeamEnd(random, start, cube);
+      float sampled = sampledEntry(start, end, cube);
+      if (sampled < 0)
+        continue;
+      for (float beamDist = 0.4f; beamDist < 15; beamDist += 0.4f) {
+        float time = collision.sweepBeam(start, end, (beamDist - 0.4f) / 10f, beamDist / 10f, 1f,
+            cube, still, EXTENT, hitPoint);
+        boolean oldHit = sampled * 10 < beamDist && sampled * 10 > beamDist - 10;
+        if (oldHit) {
+          assertTrue(time != Collision.MISS);
+          float exact = Collision.segmentBoxEntry(start, end, cube, EXTENT);
+          for (int i = 0; i < 3; i++)
+            assertEquals(start[i] + exact * (end[i] - start[i]), hitPoint[i], 1e-4f);
+        }
+        if (time != Collision.MISS) {
+          // The lit part of the beam overlapped the stretch of the ray inside the box.
+          float exit = 1 - Collision.segmentBoxEntry(end, start, cube, EXTENT);
+          assertTrue(exit * 10 > (beamDist - 0.4f) - 10 - 0.11f);
+          assertTrue(sampled * 10 < beamDist + 0.11f);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void sweepBeamCatchesTargetCrossingBetweenFrames() {
+    Collision collision = new Collision();
+    float[] start = {0, 0, 0};
+    float[] end = {0, 0, -10};
+    // The target jumps clean across the beam in one frame, so it is never on the ray at a frame.
+    float[] cube = {0.5f, 0, -2};
+    float[] step = {1.0f, 0, 0};
+    float[] hitPoint = new float[3];
+    assertEquals(Collision.MISS, Collision.segmentBoxEntry(start, end, cube, EXTENT), 0f);
+    float time = collision.sweepBeam(start, end, 0.5f, 0.54f, 1f, cube, step, EXTENT, hitPoint);
+    assertEquals(0.38f, time, 1e-5f);
+    assertEquals(-2 + EXTENT, hitPoint[2], 1e-5f);
+  }
+
+  @Test
+  public void sweepBeamWaitsForFront() {
+    Collision collision = new Collision();
+    float[] start = {0, 0, 0};
+    float[] end = {0, 0, -10};
+    float[] cube = {0, 0, -2};
+    float[] still = {0, 0, 0};
+    float[] hitPoint = new float[3];
+    float entry = (2 - EXTENT) / 10;
+    assertEquals(Collision.MISS, collision.sweepBeam(start, end, 0.10f, 0.14f, 1f, cube, still,
+        EXTENT, hitPoint), 0f);
+    float time = collision.sweepBeam(start, end, 0.18f, 0.22f, 1f, cube, still, EXTENT, hitPoint);
+    assertEquals((entry - 0.18f) / 0.04f, time, 1e-4f);
+    // Once the tail has passed the target there is nothing left to hit.
+    assertEquals(Collision.MISS, collision.sweepBeam(start, end, 1.3f, 1.34f, 1f, cube, still,
+        EXTENT, hitPoint), 0f);
+  }
+
+  @Test
+  public void sweepArcCatchesFastProjectile() {
+    // At 12 m/s the projectile moves 0.2 per frame and can clip a corner of the box between frames.
+    float[] velocity = {-0.14f, 0, 0.14f};
+    float[] gravity = {0, -9.81f / 3600f, 0};
+    float[] offset = {0.26f, 0, 0.12f};
+    // The old check only looked at whole frames and saw the projectile outside the box both times.
+    assertTrue(Math.abs(offset[0]) > 0.2f);
+    assertTrue(Math.abs(offset[2] + velocity[2]) > 0.2f);
+    float time = Collision.sweepArc(offset, velocity, gravity, 0.2f);
+    assertEquals(0.06f / 0.14f, time, 1e-4f);
+  }
+
+  @Test
+  public void sweepArcMatchesDenseSampling() {
+    Random random = new Random(3);
+    float[] offset = new float[3];
+    float[] velocity = new float[3];
+    float[] accel = new float[3];
+    int hits = 0;
+    for (int n = 0; n < 20000; n++) {
+      for (int i = 0; i < 3; i++) {
+        offset[i] = (random.nextFloat() - 0.5f) * 1.2f;
+        velocity[i] = (random.nextFloat() - 0.5f) * 1.2f;
+        accel[i] = (random.nextFloat() - 0.5f) * 2f;
+      }
+      float time = Collision.sweepArc(offset, velocity, accel, 0.2f);
+      float sampled = Collision.MISS;
+      for (int step = 0; step <= 10000; step++) {
+        float t = step / 10000f;
+        boolean inside = true;
+        for (int i = 0; i < 3; i++)
+          if (Math.abs(offset[i] + velocity[i] * t + accel[i] * t * t / 2) > 0.2f)
+            inside = false;
+        if (inside) {
+          sampled = t;
+          break;
+        }
+      }
+      if (sampled != Collision.MISS) {
+        hits++;
+        assertTrue(time != Collision.MISS);
+        assertEquals(sampled, time, 1.01e-4f);
+      } else if (time != Collision.MISS) {
+        // A contact shorter than the sampling step.
+        float t = Math.min(1, time + 1e-4f);
+        boolean inside = true;
+        for (int i = 0; i < 3; i++)
+          if (Math.abs(offset[i] + velocity[i] * t + accel[i] * t * t / 2) > 0.201f)
+            inside = false;
+        assertTrue(inside || t == 1);
+      }
+    }
+    assertTrue(hits > 1000);
+  }
+}
@@ -0,0 +1,186 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DrawListTest {
+
+  private static final int GL_ARRAY_BUFFER = 0x8892;
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_TEXTURE0 = 0x84C0;
+  private static final int GL_BLEND = 0x0BE2;
+  private static final int GL_FLOAT = 0x1406;
+  private static final int GL_TRIANGLES = 4;
+  private static final int FRAMES_PER_ROUND = 2000;
+  private static final int ROUNDS = 5;
+
+  private final DrawList list = new DrawList();
+  private final TransformTable transforms = new TransformTable(4);
+
+  private static float[] view(float x) {
+    float[] m = new float[16];
+    m[0] = m[5] = m[10] = m[15] = 1;
+    m[12] = x;
+    return m;
+  }
+
+  // A cube and a textured, blended rectangle, the way MainActivity records them.
+  private void record(float[] light) {
+    list.clear();
+    int cube = transforms.addTranslation(0, 0, -2);
+    int rect = transforms.addTranslation(1, 0, -3);
+    list.glUseProgram(1);
+    list.glUniform3fv(0, 1, light, 0);
+    list.uniformModel(1, cube);
+    list.uniformMvp(2, cube);
+    list.glBindBuffer(GL_ARRAY_BUFFER, 5);
+    list.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+    list.glDrawElements(GL_TRIANGLES, 36, 0x1403, 0);
+    list.glEnable(GL_BLEND);
+    list.glUseProgram(2);
+    list.uniformMvp(0, rect);
+    list.glUniform1f(1, 0.5f);
+    list.glActiveTexture(GL_TEXTURE0);
+    list.glBindTexture(GL_TEXTURE_2D, 9);
+    list.glLineWidth(2);
+    list.glDrawArrays(GL_TRIANGLES, 0, 6);
+    list.glDisable(GL_BLEND);
+  }
+
+  @Test
+  public void replaysTheRecordedCallsWithEachEyesMatrices() {
+    float[] light = {0, 2, 0};
+    record(light);
+    // Recorded values are copies.
+    light[1] = 5;
+    assertEquals(16, list.size());
+
+    RecordingGL left = new RecordingGL();
+    transforms.concatenate(view(-0.03f), view(0));
+    list.replay(left, transforms);
+    RecordingGL right = new RecordingGL();
+    transforms.concatenate(view(0.03f), view(0));
+    list.replay(right, transforms);
+
+    assertEquals(16, left.calls.size());
+    assertEquals("glUseProgram 1", left.calls.get(0));
+    assertEquals("glUniform3fv 0 0.0,2.0,0.0", left.calls.get(1));
+    assertEquals("glUniformMatrix4fv 1 1.0,0.0,0.0,0.0,0.0,1.0,0.0,0.0,0.0,0.0,1.0,0.0,"
+        + "0.0,0.0,-2.0,1.0", left.calls.get(2));
+    assertTrue(left.calls.get(3).endsWith("-0.03,0.0,-2.0,1.0"));
+    assertTrue(right.calls.get(3).endsWith("0.03,0.0,-2.0,1.0"));
+    assertEquals("glUniform1f 1 0.5", left.calls.get(10));
+    assertEquals("glLineWidth 2.0", left.calls.get(13));
+    assertEquals("glDrawArrays 4 0 6", left.calls.get(14));
+    assertEquals(2, left.drawCalls);
+
+    // Apart from the model-view-projection matrices the eyes issue the same calls.
+    List<String> differences = new ArrayList<String>();
+    for (int i = 0; i < left.calls.size(); i++) {
+      if (!left.calls.get(i).equals(right.calls.get(i)))
+        differences.add(left.calls.get(i).split(" ")[0] + " " + left.calls.get(i).split(" ")[1]);
+    }
+    assertEquals(2, differences.size());
+    assertEquals("glUniformMatrix4fv 2", differences.get(0));
+    assertEquals("glUniformMatrix4fv 0", differences.get(1));
+  }
+
+  @Test
+  public void clearEmptiesTheList() {
+    record(new float[3]);
+    list.clear();
+    RecordingGL gl = new RecordingGL();
+    list.replay(gl, transforms);
+    assertEquals(0, list.size());
+    assertTrue(gl.calls.isEmpty());
+  }
+
+  @Test
+  public void skipsDrawsOfSlotsTheEyeCannotSee() {
+    list.clear();
+    int seen = transforms.addTranslation(0, 0, -2);
+    int hidden = transforms.addTranslation(0, 0, 2);
+    transforms.setBounds(seen, 1);
+    transforms.setBounds(hidden, 1);
+    list.glEnable(GL_BLEND);
+    list.beginDraw(hidden);
+    list.glUseProgram(1);
+    list.glUniform1f(0, 0.25f);
+    list.glDrawArrays(GL_TRIANGLES, 0, 6);
+    list.endDraw();
+    list.beginDraw(seen);
+    list.glUseProgram(2);
+    list.glUniform1f(0, 0.75f);
+    list.glDrawArrays(GL_TRIANGLES, 0, 3);
+    list.endDraw();
+    list.glDisable(GL_BLEND);
+    assertEquals(8, list.size());
+
+    // Looking down -z with a frustum of w = -z.
+    float[] projection = new float[16];
+    projection[0] = projection[5] = 1;
+    projection[10] = -1;
+    projection[11] = -1;
+    projection[14] = -0.2f;
+    transforms.concatenate(view(0), projection);
+    RecordingGL gl = new RecordingGL();
+    list.replay(gl, transforms);
+    assertEquals(5, gl.calls.size());
+    assertEquals("glUseProgram 2", gl.calls.get(1));
+    // The floats of the skipped draw are skipped with it.
+    assertEquals("glUniform1f 0 0.75", gl.calls.get(2));
+    assertEquals(1, gl.drawCalls);
+  }
+
+  @Test
+  public void onlyHasCallsThatDraw() {
+    // Creating or uploading on the list instead of on GL does not compile.
+    assertFalse(GLApi.class.isAssignableFrom(DrawList.class));
+    assertTrue(GLDrawApi.class.isAssignableFrom(DrawList.class));
+  }
+
+  @Test
+  public void recordAndReplayDoNotAllocate() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    float[] light = {0, 2, 0};
+    float[] view = view(0);
+    // RecordingGL builds strings, so replay into a second list instead.
+    DrawList sink = new DrawList();
+    for (int round = 0; round < ROUNDS; round++)
+      renderFrames(light, view, sink, threads, thread);
+
+    // A round the JIT chose to recompile in may allocate, so take the quietest one.
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++)
+      allocated = Math.min(allocated, renderFrames(light, view, sink, threads, thread));
+    assertEquals(2 * 16, sink.size());
+    assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+  }
+
+  /**
+   * Records and replays both eyes for a number of frames.
+   *
+   * @return The bytes allocated while doing so.
+   */
+  private long renderFrames(float[] light, float[] view, DrawList sink,
+                            com.sun.management.ThreadMXBean threads, long thread) {
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int frame = 0; frame < FRAMES_PER_ROUND; frame++) {
+      transforms.clear();
+      record(light);
+      sink.clear();
+      for (int eye = 0; eye < 2; eye++) {
+        transforms.concatenate(view, view);
+        list.replay(sink, transforms);
+      }
+    }
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+}
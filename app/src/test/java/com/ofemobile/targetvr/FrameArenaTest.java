@@ -0,0 +1,104 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameArenaTest {
+
+  // Half of the 100000 frames warm up, the other half are measured.
+  private static final int FRAMES_PER_ROUND = 10000;
+  private static final int ROUNDS = 5;
+
+  private final FrameArena arena = new FrameArena();
+
+  @Test
+  public void reusesArraysAfterReset() {
+    arena.reset();
+    float[] first = arena.vec4();
+    float[] matrix = arena.mat4();
+    assertNotSame(first, arena.vec4());
+    arena.reset();
+    assertSame(first, arena.vec4());
+    assertSame(matrix, arena.mat4());
+  }
+
+  @Test
+  public void growsOnlyWhileWarmingUp() {
+    arena.reset();
+    for (int i = 0; i < 20; i++)
+      arena.mat4();
+    int capacity = arena.capacity();
+    for (int frame = 0; frame < 100; frame++) {
+      arena.reset();
+      for (int i = 0; i < 20; i++)
+        arena.mat4();
+    }
+    assertEquals(capacity, arena.capacity());
+  }
+
+  @Test
+  public void framesDoNotAllocate() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    Game game = new Game(new Random(5));
+    game.respawn();
+    HeadlessRunner.Script script = new HeadlessRunner.AimAtTarget(new Random(5), 0.2f);
+    TripleBuffer<WorldSnapshot> worlds = new TripleBuffer<WorldSnapshot>();
+    FrameBuilder frame = new FrameBuilder();
+    float[] aim = new float[16];
+    Mat4.setIdentityM(aim, 0);
+    for (int round = 0; round < ROUNDS; round++)
+      playFrames(game, script, worlds, frame, aim, threads, thread);
+
+    // Reading the counter may cost something of its own, which is not the frames'.
+    long empty = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long before = threads.getThreadAllocatedBytes(thread);
+      empty = Math.min(empty, threads.getThreadAllocatedBytes(thread) - before);
+    }
+    // A round the JIT chose to recompile in may allocate, so take the quietest one.
+    long allocated = Long.MAX_VALUE;
+    int score = game.score();
+    for (int round = 0; round < ROUNDS; round++) {
+      allocated = Math.min(allocated,
+          playFrames(game, script, worlds, frame, aim, threads, thread) - empty);
+    }
+    assertTrue(game.score() != score);
+    assertEquals(0, allocated);
+  }
+
+  /**
+   * Runs FRAMES_PER_ROUND frames of a game that shoots at the targets whenever it can and starts
+   * again when it is over. Every frame steps the game, publishes a snapshot of it and builds what
+   * the render thread would draw from the latest one, looking along the last aim.
+   *
+   * @return The bytes allocated.
+   */
+  private static long playFrames(Game game, HeadlessRunner.Script script,
+                                 TripleBuffer<WorldSnapshot> worlds, FrameBuilder frame,
+                                 float[] aim, com.sun.management.ThreadMXBean threads,
+                                 long thread) {
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int n = 0; n < FRAMES_PER_ROUND; n++) {
+      if (game.mode() == Game.GAME_OVER || script.aim(game, aim))
+        game.trigger(aim);
+      game.step();
+      WorldSnapshot world = worlds.writable();
+      if (world == null)
+        world = new WorldSnapshot(Game.MAX_TARGETS);
+      game.copyTo(world);
+      worlds.publish(world);
+
+      worlds.update();
+      world = worlds.read();
+      frame.aim(world, 0.5f, aim);
+      frame.build(world, 0.5f, true, 1);
+    }
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+}
@@ -0,0 +1,78 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameBuilderTest {
+
+  private final FrameBuilder frame = new FrameBuilder();
+  private final WorldSnapshot world = new WorldSnapshot(4);
+  private final float[] head = new float[16];
+
+  @Before
+  public void setUp() {
+    Mat4.setIdentityM(head, 0);
+    world.mode = 2;
+    world.stepNo = 100;
+    // A target on the beam of a head looking down -z, behind one off it in the store.
+    TargetStore targets = new TargetStore(4);
+    SpatialHash grid = new SpatialHash(4, Game.GRID_CELL_SIZE, Game.GRID_REACH);
+    int off = targets.spawn(-3, 2, 3);
+    int on = targets.spawn(0.16f, -0.6f, -2);
+    grid.update(off, -3, 2, 3);
+    grid.update(on, 0.16f, -0.6f, -2);
+    targets.despawn(off);
+    grid.remove(off);
+    world.copyTargets(targets, grid);
+    Mat4.setIdentityM(world.projectileRotation, 0);
+  }
+
+  private int item(int n) {
+    return frame.renderQueue().item(n) >>> FrameBuilder.ITEM_SHIFT;
+  }
+
+  @Test
+  public void reticleIsOnATargetInTheBeam() {
+    assertTrue(frame.aim(world, 1, head));
+    world.targetX[0] = 2;
+    assertFalse(frame.aim(world, 1, head));
+    // Before level 2 there is no beam to aim.
+    world.targetX[0] = 0.16f;
+    world.mode = 1;
+    assertFalse(frame.aim(world, 1, head));
+  }
+
+  @Test
+  public void queuesWhatIsShownWithTheReticleLast() {
+    frame.aim(world, 1, head);
+    frame.build(world, 1, false, TextureCache.NO_TEXTURE);
+    // The target, the projectile, the floor and the axis.
+    assertEquals(4, frame.renderQueue().size());
+    assertEquals(4, frame.transforms().count());
+
+    world.beamFiring = true;
+    world.flareStartStep = world.stepNo - 10;
+    frame.aim(world, 1, head);
+    frame.build(world, 1, false, 3);
+    assertEquals(7, frame.renderQueue().size());
+    assertEquals(10, frame.flareAge());
+    assertEquals(FrameBuilder.ITEM_RETICLE, item(6));
+    assertEquals(FrameBuilder.ITEM_FLARE, item(5));
+    assertEquals(FrameBuilder.ITEM_BEAM, item(4));
+  }
+
+  @Test
+  public void signsFadeOutAfterTheirMessage() {
+    world.messageFadeStep = world.stepNo - 50;
+    frame.aim(world, 1, head);
+    frame.build(world, 1, true, TextureCache.NO_TEXTURE);
+    assertEquals(0.5f, frame.signTrans(), 1e-6f);
+    assertEquals(8, frame.renderQueue().size());
+
+    world.messageFadeStep = world.stepNo - 100;
+    frame.build(world, 1, true, TextureCache.NO_TEXTURE);
+    assertEquals(4, frame.renderQueue().size());
+  }
+}
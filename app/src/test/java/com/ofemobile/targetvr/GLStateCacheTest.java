@@ -0,0 +1,184 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GLStateCacheTest {
+
+  private static final int GL_BLEND = 0x0BE2;
+  private static final int GL_DEPTH_TEST = 0x0B71;
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_TEXTURE0 = 0x84C0;
+  private static final int GL_ARRAY_BUFFER = 0x8892;
+  private static final int GL_FLOAT = 0x1406;
+  private static final int GL_TRIANGLES = 4;
+
+  private final RecordingGL backend = new RecordingGL();
+  private final GLStateCache gl = new GLStateCache(backend);
+
+  @Test
+  public void dropsRedundantBindings() {
+    gl.glUseProgram(3);
+    gl.glUseProgram(3);
+    gl.glActiveTexture(GL_TEXTURE0);
+    gl.glBindTexture(GL_TEXTURE_2D, 7);
+    gl.glActiveTexture(GL_TEXTURE0);
+    gl.glBindTexture(GL_TEXTURE_2D, 7);
+    gl.glEnable(GL_BLEND);
+    gl.glEnable(GL_BLEND);
+    gl.glBlendFunc(1, 2);
+    gl.glBlendFunc(1, 2);
+    gl.glDisable(GL_DEPTH_TEST);
+    gl.glDisable(GL_DEPTH_TEST);
+    gl.glLineWidth(2);
+    gl.glLineWidth(2);
+    gl.glEnableVertexAttribArray(1);
+    gl.glEnableVertexAttribArray(1);
+    assertEquals(8, gl.issuedCalls());
+    assertEquals(8, gl.elidedCalls());
+    assertEquals(8, backend.calls.size());
+
+    gl.glUseProgram(4);
+    gl.glBindTexture(GL_TEXTURE_2D, 8);
+    gl.glDisable(GL_BLEND);
+    assertEquals(11, backend.calls.size());
+  }
+
+  @Test
+  public void texturesAreTrackedPerUnit() {
+    gl.glActiveTexture(GL_TEXTURE0);
+    gl.glBindTexture(GL_TEXTURE_2D, 7);
+    gl.glActiveTexture(GL_TEXTURE0 + 1);
+    gl.glBindTexture(GL_TEXTURE_2D, 7);
+    gl.glActiveTexture(GL_TEXTURE0);
+    gl.glBindTexture(GL_TEXTURE_2D, 7);
+    assertEquals(2, backend.count("glBindTexture"));
+    assertEquals(3, backend.count("glActiveTexture"));
+  }
+
+  @Test
+  public void uniformsAreCachedPerProgram() {
+    float[] matrix = new float[16];
+    matrix[0] = 1;
+    gl.glUseProgram(1);
+    gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+    gl.glUniformMatrix4fv(0, 1, false, matrix.clone(), 0);
+    gl.glUniform1f(2, 0.5f);
+    gl.glUniform1f(2, 0.5f);
+    // Same location, different program.
+    gl.glUseProgram(2);
+    gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+    gl.glUseProgram(1);
+    gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+    assertEquals(2, backend.count("glUniformMatrix4fv"));
+    assertEquals(1, backend.count("glUniform1f"));
+
+    matrix[5] = 1;
+    gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+    gl.glUniform1f(2, -0.5f);
+    assertEquals(3, backend.count("glUniformMatrix4fv"));
+    assertEquals(2, backend.count("glUniform1f"));
+  }
+
+  @Test
+  public void linkingOrDeletingAProgramForgetsItsUniforms() {
+    gl.glUseProgram(1);
+    gl.glUniform1f(2, 0.5f);
+    gl.glLinkProgram(1);
+    gl.glUniform1f(2, 0.5f);
+    assertEquals(2, backend.count("glUniform1f"));
+
+    // A deleted program's name may be handed out again.
+    gl.glDeleteProgram(1);
+    gl.glUseProgram(1);
+    gl.glUniform1f(2, 0.5f);
+    assertEquals(2, backend.count("glUseProgram"));
+    assertEquals(3, backend.count("glUniform1f"));
+  }
+
+  @Test
+  public void attribPointersDependOnTheBoundBuffer() {
+    gl.glBindBuffer(GL_ARRAY_BUFFER, 1);
+    gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+    gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+    gl.glBindBuffer(GL_ARRAY_BUFFER, 2);
+    gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+    gl.glBindBuffer(GL_ARRAY_BUFFER, 2);
+    gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+    assertEquals(3, backend.count("glVertexAttribPointer"));
+    assertEquals(2, backend.count("glBindBuffer"));
+
+    // Deleting buffers may unbind them.
+    gl.glDeleteBuffers(1, new int[] {2}, 0);
+    gl.glBindBuffer(GL_ARRAY_BUFFER, 2);
+    assertEquals(3, backend.count("glBindBuffer"));
+  }
+
+  @Test
+  public void beginFrameForgetsBindingsButNotUniforms() {
+    float[] light = {1, 2, 3};
+    gl.glUseProgram(1);
+    gl.glEnable(GL_DEPTH_TEST);
+    gl.glUniform3fv(4, 1, light, 0);
+
+    gl.beginFrame();
+    assertEquals(0, gl.issuedCalls());
+    gl.glUseProgram(1);
+    gl.glEnable(GL_DEPTH_TEST);
+    gl.glUniform3fv(4, 1, light, 0);
+    assertEquals(2, backend.count("glUseProgram"));
+    assertEquals(2, backend.count("glEnable"));
+    assertEquals(1, backend.count("glUniform3fv"));
+
+    gl.reset();
+    gl.glUseProgram(1);
+    gl.glUniform3fv(4, 1, light, 0);
+    assertEquals(2, backend.count("glUniform3fv"));
+  }
+
+  @Test
+  public void uncachedUniformsPassThrough() {
+    float[] v = new float[3];
+    // No program is known after beginFrame, so the uniform can't be attributed to one.
+    gl.glUniform3fv(0, 1, v, 0);
+    gl.glUniform3fv(0, 1, v, 0);
+    gl.glUseProgram(1);
+    gl.glUniform1f(-1, 1);
+    gl.glUniform1f(-1, 1);
+    assertEquals(2, backend.count("glUniform3fv"));
+    assertEquals(2, backend.count("glUniform1f"));
+  }
+
+  @Test
+  public void secondEyeOnlyIssuesChangedState() {
+    float[] light = {0, 2, 0};
+    float[] model = new float[16];
+    float[] mvp = new float[16];
+    for (int eye = 0; eye < 2; eye++) {
+      mvp[12] = eye;
+      gl.glEnable(GL_DEPTH_TEST);
+      for (int cube = 0; cube < 10; cube++) {
+        model[12] = cube;
+        gl.glUseProgram(1);
+        gl.glUniform3fv(0, 1, light, 0);
+        gl.glUniformMatrix4fv(1, 1, false, model, 0);
+        gl.glUniformMatrix4fv(2, 1, false, mvp, 0);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 5);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        gl.glDrawArrays(GL_TRIANGLES, 0, 36);
+      }
+    }
+    assertEquals(20, backend.drawCalls);
+    assertEquals(1, backend.count("glUseProgram"));
+    assertEquals(1, backend.count("glUniform3fv"));
+    assertEquals(1, backend.count("glBindBuffer"));
+    assertEquals(1, backend.count("glVertexAttribPointer"));
+    assertEquals(1, backend.count("glEnable"));
+    // The model matrix changes for every cube, the view projection only between eyes.
+    assertEquals(20, backend.count("glUniformMatrix4fv " + 1));
+    assertEquals(2, backend.count("glUniformMatrix4fv " + 2));
+    assertEquals(backend.calls.size(), gl.issuedCalls());
+    assertEquals(2 * 10 * 7 + 2 - backend.calls.size(), gl.elidedCalls());
+  }
+}
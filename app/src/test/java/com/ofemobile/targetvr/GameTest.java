@@ -0,0 +1,107 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GameTest {
+
+  private static float[] lookingAt(float x, float y, float z) {
+    float[] view = new float[16];
+    float[] aim = new float[16];
+    Mat4.setLookAtM(view, 0, 0, 0, 0, x, y, z, 0, 1, 0);
+    Mat4.invertM(aim, 0, view, 0);
+    return aim;
+  }
+
+  private static void stepUntilReady(Game game) {
+    for (int i = 0; i < 1000 && !game.canShoot(); i++)
+      game.step();
+    assertTrue(game.canShoot());
+  }
+
+  @Test
+  public void startsAtLevelOneWithATarget() {
+    Game game = new Game(new Random(1));
+    game.respawn();
+    assertEquals(1, game.mode());
+    assertEquals(Game.SHOTS_PER_LEVEL, game.shots());
+    assertEquals(0, game.score());
+    assertEquals(1, game.targets().count());
+    assertTrue(game.canShoot());
+  }
+
+  @Test
+  public void throwingBackwardsMisses() {
+    Game game = new Game(new Random(1));
+    game.respawn();
+    game.trigger(lookingAt(0, 1, 2));
+    assertEquals(Game.SHOTS_PER_LEVEL - 1, game.shots());
+    assertFalse(game.canShoot());
+    stepUntilReady(game);
+    // A thrown miss costs the point for the miss and one more.
+    assertEquals(-2, game.score());
+    assertEquals(1, game.mode());
+  }
+
+  @Test
+  public void beamAtTheTargetHits() {
+    Game game = new Game(new Random(1));
+    game.respawn();
+    // Throw the first level's shots away behind.
+    for (int i = 0; i < Game.SHOTS_PER_LEVEL; i++) {
+      game.trigger(lookingAt(0, 1, 2));
+      stepUntilReady(game);
+    }
+    assertEquals(2, game.mode());
+    int score = game.score();
+    HeadlessRunner.Script script = new HeadlessRunner.AimAtTarget(new Random(1), 0);
+    float[] aim = new float[16];
+    assertTrue(script.aim(game, aim));
+    game.trigger(aim);
+    stepUntilReady(game);
+    assertEquals(score + 2, game.score());
+    assertEquals("You hit it.", game.message().toString().split("\n")[0]);
+  }
+
+  @Test
+  public void fortyShotsEndTheGameAndTheNextTriggerRestarts() {
+    Game game = new Game(new Random(1));
+    game.respawn();
+    float[] behind = lookingAt(0, 1, 2);
+    for (int i = 0; i < 4 * Game.SHOTS_PER_LEVEL - 1; i++) {
+      game.trigger(behind);
+      stepUntilReady(game);
+    }
+    game.trigger(behind);
+    for (int i = 0; i < 1000 && game.mode() != Game.GAME_OVER; i++)
+      game.step();
+    assertEquals(Game.GAME_OVER, game.mode());
+    assertTrue(game.message().toString().startsWith("You missed it.\nGame Over"));
+    game.trigger(behind);
+    assertEquals(1, game.mode());
+    assertEquals(0, game.score());
+  }
+
+  @Test
+  public void sameSeedAndInputsPlayTheSameGame() {
+    WorldSnapshot first = play(7);
+    WorldSnapshot second = play(7);
+    assertEquals(first.stepNo, second.stepNo);
+    assertEquals(first.message.toString(), second.message.toString());
+    assertEquals(first.targetCount, second.targetCount);
+    assertArrayEquals(first.targetX, second.targetX, 0f);
+    assertArrayEquals(first.targetY, second.targetY, 0f);
+    assertArrayEquals(first.projectilePos, second.projectilePos, 0f);
+  }
+
+  private static WorldSnapshot play(long seed) {
+    Game game = new Game(new Random(seed));
+    new HeadlessRunner().play(game, new HeadlessRunner.AimAtTarget(new Random(seed), 0.2f));
+    WorldSnapshot world = new WorldSnapshot(Game.MAX_TARGETS);
+    game.copyTo(world);
+    return world;
+  }
+}
@@ -0,0 +1,55 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HeadlessRunnerTest {
+
+  @Test
+  public void playsGamesToTheEnd() {
+    HeadlessRunner runner = new HeadlessRunner();
+    for (int seed = 0; seed < 20; seed++) {
+      Game game = new Game(new Random(seed));
+      int steps = runner.play(game, new HeadlessRunner.AimAtTarget(new Random(seed), 0));
+      assertTrue(steps < HeadlessRunner.MAX_STEPS_PER_GAME);
+      assertEquals(Game.GAME_OVER, game.mode());
+    }
+    assertEquals(20, runner.games());
+    // Aiming straight at the targets hits most of them.
+    assertTrue(runner.totalScore() / runner.games() > 40);
+  }
+
+  @Test
+  public void scriptThatNeverShootsIsCutOff() {
+    HeadlessRunner runner = new HeadlessRunner();
+    HeadlessRunner.Script idle = new HeadlessRunner.Script() {
+      @Override
+      public boolean aim(Game game, float[] aim) {
+        return false;
+      }
+    };
+    assertEquals(HeadlessRunner.MAX_STEPS_PER_GAME, runner.play(new Game(new Random(1)), idle));
+    assertEquals(1, runner.games());
+  }
+
+  @Test
+  public void gamesAreDeterminedByTheirSeeds() {
+    HeadlessRunner runner = new HeadlessRunner();
+    Game game = new Game(new Random(3));
+    assertEquals(1248, runner.play(game, new HeadlessRunner.AimAtTarget(new Random(3), 0.1f)));
+    assertEquals(98, game.score());
+
+    // The same seeds play the same game again, step for step.
+    for (int seed = 0; seed < 5; seed++) {
+      Game first = new Game(new Random(seed));
+      Game second = new Game(new Random(seed));
+      int steps = runner.play(first, new HeadlessRunner.AimAtTarget(new Random(seed), 0.1f));
+      assertEquals(steps,
+          runner.play(second, new HeadlessRunner.AimAtTarget(new Random(seed), 0.1f)));
+      assertEquals(first.score(), second.score());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputQueueTest {
+
+  @Test
+  public void deliversEventsInOrderWithTheirValues() {
+    InputQueue queue = new InputQueue(4);
+    assertFalse(queue.poll());
+    assertTrue(queue.offer(InputQueue.TRIGGER, 100));
+    assertTrue(queue.offer(7, 200, new float[] {9, 1, 2, 3}, 1, 3));
+
+    assertTrue(queue.poll());
+    assertEquals(InputQueue.TRIGGER, queue.type());
+    assertEquals(100, queue.nanos());
+    assertEquals(0, queue.valueCount());
+    assertTrue(queue.poll());
+    assertEquals(7, queue.type());
+    assertEquals(200, queue.nanos());
+    assertEquals(3, queue.valueCount());
+    assertEquals(1f, queue.values()[0], 0f);
+    assertEquals(3f, queue.values()[2], 0f);
+    assertFalse(queue.poll());
+  }
+
+  @Test
+  public void dropsEventsWhenFull() {
+    InputQueue queue = new InputQueue(2);
+    assertTrue(queue.offer(1, 1));
+    assertTrue(queue.offer(2, 2));
+    assertFalse(queue.offer(3, 3));
+    assertEquals(1, queue.dropped());
+    assertTrue(queue.poll());
+    // The freed slot is reused on the next lap.
+    assertTrue(queue.offer(4, 4));
+    assertTrue(queue.poll());
+    assertEquals(2, queue.type());
+    assertTrue(queue.poll());
+    assertEquals(4, queue.type());
+    assertFalse(queue.poll());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsCapacitiesThatAreNotPowersOfTwo() {
+    new InputQueue(12);
+  }
+
+  @Test
+  public void manyProducersOneConsumer() throws InterruptedException {
+    final int producers = 4;
+    final int events = 200000;
+    final InputQueue queue = new InputQueue(64);
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads[p] = new Thread() {
+        @Override
+        public void run() {
+          float[] values = new float[2];
+          for (int i = 0; i < events; i++) {
+            values[0] = producer;
+            values[1] = i;
+            // The value travels in the time stamp too, to check it against the values.
+            while (!queue.offer(producer, i, values, 0, 2))
+              Thread.yield();
+          }
+        }
+      };
+      threads[p].start();
+    }
+    int[] next = new int[producers];
+    int received = 0;
+    while (received < producers * events) {
+      if (!queue.poll()) {
+        // Give the producers the CPU, which they may be sharing.
+        Thread.yield();
+        continue;
+      }
+      int producer = queue.type();
+      // Each producer's events arrive in order, none lost and none duplicated.
+      assertEquals(next[producer], queue.nanos());
+      assertEquals(producer, (int) queue.values()[0]);
+      assertEquals(next[producer], (int) queue.values()[1]);
+      next[producer]++;
+      received++;
+    }
+    for (Thread thread : threads)
+      thread.join();
+    assertFalse(queue.poll());
+  }
+}
@@ -0,0 +1,211 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class InputReplayTest {
+
+  private static float[] sequence(int start, int count) {
+    float[] values = new float[count];
+    for (int i = 0; i < count; i++)
+      values[i] = start + i;
+    return values;
+  }
+
+  @Test
+  public void readsBackWhatWasRecorded() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // A small buffer, so that it is written out several times.
+    InputRecorder recorder = new InputRecorder(Channels.newChannel(bytes), 1234L, 1);
+    recorder.respawn(0);
+    recorder.frame(100L, 3, sequence(10, 20), 2, sequence(50, 4), 1);
+    recorder.trigger(4, sequence(60, 16), 0);
+    assertEquals(3, recorder.records());
+    recorder.close();
+    assertEquals(InputRecorder.HEADER_BYTES + 3 * InputRecorder.RECORD_BYTES, bytes.size());
+
+    InputReplay replay = InputReplay.read(ByteBuffer.wrap(bytes.toByteArray()));
+    assertEquals(1234L, replay.seed());
+    assertEquals(3, replay.recordCount());
+    float[] pose = new float[16];
+    float[] forward = new float[3];
+
+    assertTrue(replay.next());
+    assertEquals(InputRecorder.RESPAWN, replay.kind());
+    assertEquals(0, replay.step());
+    replay.pose(pose, 0);
+    assertArrayEquals(new float[16], pose, 0);
+
+    assertTrue(replay.next());
+    assertEquals(InputRecorder.FRAME, replay.kind());
+    assertEquals(3, replay.step());
+    assertEquals(100L, replay.nanos());
+    replay.pose(pose, 0);
+    assertArrayEquals(sequence(12, 16), pose, 0);
+    replay.forward(forward, 0);
+    assertArrayEquals(sequence(51, 3), forward, 0);
+
+    assertTrue(replay.next());
+    assertEquals(InputRecorder.TRIGGER, replay.kind());
+    assertEquals(4, replay.step());
+    replay.pose(pose, 0);
+    assertArrayEquals(sequence(60, 16), pose, 0);
+    replay.forward(forward, 0);
+    assertArrayEquals(new float[3], forward, 0);
+    assertFalse(replay.next());
+
+    replay.rewind();
+    assertTrue(replay.next());
+    assertEquals(InputRecorder.RESPAWN, replay.kind());
+  }
+
+  @Test
+  public void ignoresARecordCutShort() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InputRecorder recorder = new InputRecorder(Channels.newChannel(bytes), 1, 4);
+    recorder.respawn(0);
+    recorder.respawn(1);
+    recorder.close();
+    byte[] cut = new byte[bytes.size() - 1];
+    System.arraycopy(bytes.toByteArray(), 0, cut, 0, cut.length);
+    assertEquals(1, InputReplay.read(ByteBuffer.wrap(cut)).recordCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    InputReplay.read(ByteBuffer.wrap(new byte[64]));
+  }
+
+  @Test
+  public void recordingDoesNotWaitForTheChannel() throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final CountDownLatch stalled = new CountDownLatch(1);
+    final CountDownLatch resume = new CountDownLatch(1);
+    WritableByteChannel slow = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        stalled.countDown();
+        try {
+          resume.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        int n = src.remaining();
+        byte[] copy = new byte[n];
+        src.get(copy);
+        bytes.write(copy);
+        return n;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    InputRecorder recorder = new InputRecorder(slow, 1, 2);
+    float[] pose = sequence(0, 16);
+    for (int i = 0; i < 3; i++)
+      recorder.frame(i, i, pose, 0, pose, 0);
+    // The first buffer is stuck in the channel, yet many more buffers' worth still record.
+    stalled.await();
+    for (int i = 3; i < 100; i++)
+      recorder.frame(i, i, pose, 0, pose, 0);
+    assertEquals(100, recorder.records());
+    assertEquals(0, bytes.size());
+    resume.countDown();
+    recorder.close();
+    assertEquals(InputRecorder.HEADER_BYTES + 100 * InputRecorder.RECORD_BYTES, bytes.size());
+    InputReplay replay = InputReplay.read(ByteBuffer.wrap(bytes.toByteArray()));
+    for (int i = 0; i < 100; i++) {
+      assertTrue(replay.next());
+      assertEquals(i, replay.step());
+    }
+    assertFalse(replay.next());
+  }
+
+  @Test
+  public void failedWriteStopsRecordingAndIsThrownOnFlush() {
+    WritableByteChannel broken = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    InputRecorder recorder = new InputRecorder(broken, 1, 1);
+    recorder.respawn(0);
+    recorder.respawn(1);
+    recorder.respawn(2);
+    try {
+      recorder.flush();
+      fail();
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    // Recording has stopped, and the error is kept for close.
+    long records = recorder.records();
+    recorder.respawn(3);
+    assertEquals(records, recorder.records());
+    try {
+      recorder.close();
+      fail();
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+  }
+
+  @Test
+  public void replayReachesTheRecordedGame() throws IOException {
+    File file = File.createTempFile("input", ".tvrr");
+    file.deleteOnExit();
+    Game recorded = new Game(new Random(42));
+    InputRecorder recorder = new InputRecorder(new FileOutputStream(file).getChannel(), 42, 64);
+    int steps = new HeadlessRunner().play(recorded,
+        new HeadlessRunner.AimAtTarget(new Random(7), 0.2f), recorder);
+    recorder.close();
+
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    InputReplay replay = InputReplay.map(in.getChannel());
+    in.close();
+    WorldSnapshot expected = new WorldSnapshot(Game.MAX_TARGETS);
+    recorded.copyTo(expected);
+    for (int i = 0; i < 3; i++) {
+      Game replayed = new Game(new Random(replay.seed()));
+      assertEquals(steps, replay.play(replayed));
+      WorldSnapshot actual = new WorldSnapshot(Game.MAX_TARGETS);
+      replayed.copyTo(actual);
+      assertEquals(expected.stepNo, actual.stepNo);
+      assertEquals(expected.mode, actual.mode);
+      assertEquals(recorded.score(), replayed.score());
+      assertEquals(expected.message.toString(), actual.message.toString());
+      assertEquals(expected.targetCount, actual.targetCount);
+      assertArrayEquals(expected.targetX, actual.targetX, 0);
+      assertArrayEquals(expected.targetZ, actual.targetZ, 0);
+      assertArrayEquals(expected.projectilePos, actual.projectilePos, 0);
+    }
+  }
+}
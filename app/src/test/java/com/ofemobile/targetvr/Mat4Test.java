@@ -0,0 +1,159 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Mat4Test {
+
+  private static final float[] IDENTITY = {1,0,0,0, 0,1,0,0, 0,0,1,0, 0,0,0,1};
+
+  @Test
+  public void rotatesAboutAnAxis() {
+    float[] m = new float[16];
+    Mat4.setRotateM(m, 0, 90, 0, 0, 1);
+    float[] v = new float[4];
+    Mat4.multiplyMV(v, 0, m, 0, new float[] {1, 0, 0, 1}, 0);
+    assertArrayEquals(new float[] {0, 1, 0, 1}, v, 1e-6f);
+
+    // An unnormalised axis turns the same way.
+    float[] scaled = new float[16];
+    Mat4.setRotateM(scaled, 0, 90, 0, 0, 5);
+    assertArrayEquals(m, scaled, 1e-6f);
+  }
+
+  @Test
+  public void rotateMAppliesTheRotationFirst() {
+    float[] m = new float[16];
+    Mat4.setIdentityM(m, 0);
+    Mat4.translateM(m, 0, 1, 2, 3);
+    Mat4.rotateM(m, 0, 90, 0, 1, 0, new float[32]);
+    float[] v = new float[4];
+    Mat4.multiplyMV(v, 0, m, 0, new float[] {0, 0, -1, 1}, 0);
+    assertArrayEquals(new float[] {0, 2, 3, 1}, v, 1e-6f);
+  }
+
+  @Test
+  public void lookAtPutsTheCentreDownNegativeZ() {
+    float[] view = new float[16];
+    Mat4.setLookAtM(view, 0, 0, 0, 0, 3, 0, -4, 0, 1, 0);
+    float[] v = new float[4];
+    Mat4.multiplyMV(v, 0, view, 0, new float[] {3, 0, -4, 1}, 0);
+    assertArrayEquals(new float[] {0, 0, -5, 1}, v, 1e-5f);
+  }
+
+  @Test
+  public void inverseTimesMatrixIsIdentity() {
+    Random random = new Random(3);
+    float[] m = new float[16];
+    float[] inv = new float[16];
+    float[] product = new float[16];
+    for (int i = 0; i < 100; i++) {
+      Mat4.setRotateM(m, 0, random.nextFloat() * 360, random.nextFloat(), random.nextFloat(), 1);
+      Mat4.scaleM(m, 0, 1 + random.nextFloat(), 1 + random.nextFloat(), 1 + random.nextFloat());
+      Mat4.translateM(m, 0, random.nextFloat() * 10, random.nextFloat() * 10, -5);
+      assertTrue(Mat4.invertM(inv, 0, m, 0));
+      Mat4.multiplyMM(product, 0, inv, 0, m, 0);
+      assertArrayEquals(IDENTITY, product, 1e-4f);
+    }
+  }
+
+  @Test
+  public void singularMatrixDoesNotInvert() {
+    float[] m = new float[16];
+    Mat4.setIdentityM(m, 0);
+    Mat4.scaleM(m, 0, 1, 0, 1);
+    assertFalse(Mat4.invertM(new float[16], 0, m, 0));
+  }
+
+  // Random rigid transforms and points, the same for every run.
+  private static void randomRigid(Random random, float[] m) {
+    Mat4.setRotateM(m, 0, random.nextFloat() * 360, random.nextFloat() - 0.5f,
+        random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+    m[12] = (random.nextFloat() - 0.5f) * 10;
+    m[13] = (random.nextFloat() - 0.5f) * 10;
+    m[14] = (random.nextFloat() - 0.5f) * 10;
+  }
+
+  private static float[] randomPoint(Random random, float scale) {
+    return new float[] {(random.nextFloat() - 0.5f) * scale, (random.nextFloat() - 0.5f) * scale,
+        (random.nextFloat() - 0.5f) * scale};
+  }
+
+  @Test
+  public void rigidInverseMatchesTheGeneralInverse() {
+    Random random = new Random(5);
+    float[] m = new float[16];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < 1000; i++) {
+      randomRigid(random, m);
+      assertTrue(Mat4.invertM(expected, 0, m, 0));
+      Mat4.invertRigidM(actual, 0, m, 0);
+      assertArrayEquals(expected, actual, 1e-4f);
+    }
+  }
+
+  @Test
+  public void lookAtInverseMatchesInvertingTheLookAt() {
+    Random random = new Random(6);
+    float[] view = new float[16];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < 1000; i++) {
+      float[] eye = randomPoint(random, 10);
+      float[] center = randomPoint(random, 10);
+      Mat4.setLookAtM(view, 0, eye[0], eye[1], eye[2], center[0], center[1], center[2], 0, 1, 0);
+      assertTrue(Mat4.invertM(expected, 0, view, 0));
+      Mat4.setLookAtInverseM(actual, 0, eye[0], eye[1], eye[2], center[0], center[1], center[2],
+          0, 1, 0);
+      assertArrayEquals(expected, actual, 1e-4f);
+    }
+  }
+
+  @Test
+  public void billboardMatchesTheChainItReplaces() {
+    Random random = new Random(7);
+    float[] translation = new float[16];
+    float[] view = new float[16];
+    float[] inverse = new float[16];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < 1000; i++) {
+      float[] p = randomPoint(random, 8);
+      float size = 0.1f + random.nextFloat();
+      Mat4.setIdentityM(translation, 0);
+      Mat4.setLookAtM(view, 0, 0, 0, 0, p[0], p[1], p[2], 0, 1, 0);
+      Mat4.invertM(inverse, 0, view, 0);
+      Mat4.translateM(translation, 0, p[0], p[1], p[2]);
+      Mat4.multiplyMM(expected, 0, translation, 0, inverse, 0);
+      Mat4.scaleM(expected, 0, size, size, size);
+      Mat4.setBillboardM(actual, 0, p[0], p[1], p[2], size);
+      assertArrayEquals(expected, actual, 1e-4f);
+    }
+  }
+
+  @Test
+  public void translateRotateScaleMatchesTheChainItReplaces() {
+    Random random = new Random(8);
+    float[] q = new float[4];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    float[] scratch = new float[32];
+    for (int i = 0; i < 1000; i++) {
+      float[] t = randomPoint(random, 10);
+      float[] s = {0.1f + random.nextFloat(), 0.1f + random.nextFloat(), 0.1f + random.nextFloat()};
+      float[] axis = randomPoint(random, 1);
+      float degrees = random.nextFloat() * 720 - 360;
+      Mat4.setIdentityM(expected, 0);
+      Mat4.translateM(expected, 0, t[0], t[1], t[2]);
+      Mat4.rotateM(expected, 0, degrees, axis[0], axis[1], axis[2], scratch);
+      Mat4.scaleM(expected, 0, s[0], s[1], s[2]);
+      Quat.setAxisAngle(q, 0, degrees, axis[0], axis[1], axis[2]);
+      Mat4.setTranslateRotateScaleM(actual, 0, t[0], t[1], t[2], q, 0, s[0], s[1], s[2]);
+      assertArrayEquals(expected, actual, 1e-4f);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class MeshFileTest {
+
+  private static MeshFile roundTrip(MeshFile mesh) throws IOException {
+    File file = File.createTempFile("test", ".mesh");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        mesh.write(out.getChannel());
+      } finally {
+        out.close();
+      }
+      FileInputStream in = new FileInputStream(file);
+      try {
+        return MeshFile.map(in.getChannel(), 0, file.length());
+      } finally {
+        in.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void interleavedFloatsMapBackUnchanged() throws IOException {
+    MeshFile mesh = roundTrip(MeshFile.interleave(
+        new int[] {MeshFile.ATTRIBUTE_POSITION, MeshFile.ATTRIBUTE_COORD}, new int[] {3, 2},
+        WorldLayoutData.RECT_COORDS, WorldLayoutData.RECT_TXCOORDS));
+    assertEquals(6, mesh.vertexCount);
+    assertEquals(20, mesh.stride);
+    assertEquals(0, mesh.indexCount);
+    assertNull(mesh.indices);
+    assertTrue(mesh.vertices.isDirect());
+    assertEquals(ByteOrder.nativeOrder(), mesh.vertices.order());
+
+    int position = mesh.attribute(MeshFile.ATTRIBUTE_POSITION);
+    int coord = mesh.attribute(MeshFile.ATTRIBUTE_COORD);
+    assertEquals(-1, mesh.attribute(MeshFile.ATTRIBUTE_NORMAL));
+    assertEquals(MeshFile.TYPE_FLOAT, mesh.type(coord));
+    assertFalse(mesh.normalized(coord));
+    assertEquals(12, mesh.offset(coord));
+    for (int v = 0; v < mesh.vertexCount; v++) {
+      for (int c = 0; c < 3; c++) {
+        assertEquals(WorldLayoutData.RECT_COORDS[v * 3 + c],
+            mesh.vertices.getFloat(v * mesh.stride + mesh.offset(position) + c * 4), 0f);
+      }
+      for (int c = 0; c < 2; c++) {
+        assertEquals(WorldLayoutData.RECT_TXCOORDS[v * 2 + c],
+            mesh.vertices.getFloat(v * mesh.stride + mesh.offset(coord) + c * 4), 0f);
+      }
+    }
+  }
+
+  @Test
+  public void packedCubeMapsBackByteForByte() throws IOException {
+    MeshPacker.Mesh cube = MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+        WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_COLORS);
+    MeshFile mesh = roundTrip(MeshFile.packed(cube));
+    assertEquals(cube.vertexCount, mesh.vertexCount);
+    assertEquals(cube.indexCount, mesh.indexCount);
+    assertEquals(cube.vertices, mesh.vertices);
+    assertEquals(cube.indices, mesh.indices);
+    int normal = mesh.attribute(MeshFile.ATTRIBUTE_NORMAL);
+    assertEquals(MeshFile.TYPE_BYTE, mesh.type(normal));
+    assertTrue(mesh.normalized(normal));
+    assertEquals(MeshPacker.NORMAL_OFFSET, mesh.offset(normal));
+    // The corners of a cube of half size 0.1.
+    assertEquals(0.1f * (float) Math.sqrt(3), mesh.radius(), 1e-6f);
+  }
+
+  @Test
+  public void rejectsOtherFiles() {
+    ByteBuffer bytes = ByteBuffer.allocate(64);
+    try {
+      MeshFile.read(bytes);
+      fail();
+    } catch (IOException expected) {
+    }
+    // A header whose vertices run past the end of the file.
+    bytes.order(ByteOrder.LITTLE_ENDIAN).putInt(0, MeshFile.MAGIC).putInt(4, MeshFile.VERSION)
+        .putInt(8, 100).putInt(12, 12).putInt(24, 32);
+    try {
+      MeshFile.read(bytes);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MeshPackerTest {
+
+  // Expands the indexed mesh back into a triangle list, decoding the attributes the way
+  // OpenGL ES 2.0 does.
+  private static void unpack(MeshPacker.Mesh mesh, float[] coords, float[] normals,
+                             float[] colors) {
+    ByteBuffer v = mesh.vertices;
+    for (int i = 0; i < mesh.indexCount; i++) {
+      int index = mesh.indices.getShort(i * 2) & 0xffff;
+      assertTrue(index < mesh.vertexCount);
+      int base = index * MeshPacker.STRIDE;
+      for (int c = 0; c < 3; c++) {
+        coords[i * 3 + c] = v.getFloat(base + MeshPacker.POSITION_OFFSET + c * 4);
+        normals[i * 3 + c] = (2 * v.get(base + MeshPacker.NORMAL_OFFSET + c) + 1) / 255f;
+      }
+      for (int c = 0; c < 4; c++)
+        colors[i * 4 + c] = (v.get(base + MeshPacker.COLOR_OFFSET + c) & 0xff) / 255f;
+    }
+  }
+
+  private static void assertRoundTrip(float[] coords, float[] normals, float[] colors) {
+    MeshPacker.Mesh mesh = MeshPacker.pack(coords, normals, colors);
+    float[] outCoords = new float[coords.length];
+    float[] outNormals = new float[normals.length];
+    float[] outColors = new float[colors.length];
+    unpack(mesh, outCoords, outNormals, outColors);
+    assertArrayEquals(coords, outCoords, 0f);
+    assertArrayEquals(normals, outNormals, 1f / 255);
+    assertArrayEquals(colors, outColors, 0.5f / 255);
+  }
+
+  @Test
+  public void cubeDecodesToTheSameTriangles() {
+    assertRoundTrip(WorldLayoutData.CUBE_COORDS, WorldLayoutData.CUBE_NORMALS,
+        WorldLayoutData.CUBE_COLORS);
+    assertRoundTrip(WorldLayoutData.CUBE_COORDS, WorldLayoutData.CUBE_NORMALS,
+        WorldLayoutData.CUBE_FOUND_COLORS);
+  }
+
+  @Test
+  public void unitNormalsDecodeExactly() {
+    assertEquals(1f, (2 * MeshPacker.packNormal(1) + 1) / 255f, 0f);
+    assertEquals(-1f, (2 * MeshPacker.packNormal(-1) + 1) / 255f, 0f);
+    // ES 2.0 can't represent 0, so it comes back as the nearest value.
+    assertEquals(1f / 255, (2 * MeshPacker.packNormal(0) + 1) / 255f, 0f);
+  }
+
+  @Test
+  public void cubeTakesLessThanHalfTheMemory() {
+    MeshPacker.Mesh mesh = MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+        WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_COLORS);
+    assertEquals(24, mesh.vertexCount);
+    assertEquals(36, mesh.indexCount);
+    int packed = mesh.vertices.capacity() + mesh.indices.capacity();
+    int floats = (WorldLayoutData.CUBE_COORDS.length + WorldLayoutData.CUBE_NORMALS.length
+        + WorldLayoutData.CUBE_COLORS.length) * 4;
+    assertEquals(552, packed);
+    assertEquals(1440, floats);
+    assertTrue(packed * 2 < floats);
+  }
+
+  @Test
+  public void keepsVerticesThatDifferOnlyInColor() {
+    float[] coords = {0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0};
+    float[] normals = new float[18];
+    float[] colors = new float[24];
+    for (int i = 12; i < 24; i++)
+      colors[i] = 1;
+    MeshPacker.Mesh mesh = MeshPacker.pack(coords, normals, colors);
+    assertEquals(6, mesh.vertexCount);
+    assertRoundTrip(coords, normals, colors);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMismatchedArrays() {
+    MeshPacker.pack(new float[9], new float[9], new float[8]);
+  }
+}
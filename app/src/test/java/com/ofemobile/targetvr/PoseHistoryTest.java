@@ -0,0 +1,69 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PoseHistoryTest {
+
+  private static float[] yaw(float degrees, float x) {
+    double a = Math.toRadians(degrees);
+    float[] m = new float[16];
+    m[0] = (float) Math.cos(a);
+    m[2] = (float) -Math.sin(a);
+    m[5] = 1;
+    m[8] = (float) Math.sin(a);
+    m[10] = (float) Math.cos(a);
+    m[12] = x;
+    m[15] = 1;
+    return m;
+  }
+
+  @Test
+  public void rewindsToThePoseAtATime() {
+    PoseHistory history = new PoseHistory(4);
+    float[] pose = new float[16];
+    assertFalse(history.poseAt(0, pose));
+    history.add(1000, yaw(0, 0), 0);
+    history.add(2000, yaw(10, 1), 0);
+    history.add(3000, yaw(20, 3), 0);
+
+    assertTrue(history.poseAt(2000, pose));
+    assertArrayEquals(yaw(10, 1), pose, 1e-6f);
+    // Half way between two poses is half way round and along.
+    history.poseAt(2500, pose);
+    assertArrayEquals(yaw(15, 2), pose, 1e-3f);
+    history.poseAt(1250, pose);
+    assertArrayEquals(yaw(2.5f, 0.25f), pose, 1e-3f);
+    // Outside the history the nearest pose is used.
+    history.poseAt(500, pose);
+    assertArrayEquals(yaw(0, 0), pose, 1e-6f);
+    history.poseAt(9000, pose);
+    assertArrayEquals(yaw(20, 3), pose, 1e-6f);
+  }
+
+  @Test
+  public void blendedPosesAreRotations() {
+    PoseHistory history = new PoseHistory(2);
+    history.add(0, yaw(0, 0), 0);
+    history.add(100, yaw(90, 0), 0);
+    float[] pose = new float[16];
+    history.poseAt(50, pose);
+    // A straight blend would shrink the rotation to 0.71 of its length.
+    assertArrayEquals(yaw(45, 0), pose, 1e-5f);
+  }
+
+  @Test
+  public void overwritesTheOldestPose() {
+    PoseHistory history = new PoseHistory(2);
+    history.add(1000, yaw(0, 0), 0);
+    history.add(2000, yaw(10, 0), 0);
+    history.add(3000, yaw(20, 0), 0);
+    assertEquals(2, history.size());
+    float[] pose = new float[16];
+    history.poseAt(1000, pose);
+    assertArrayEquals(yaw(10, 0), pose, 1e-6f);
+    history.clear();
+    assertFalse(history.poseAt(1000, pose));
+  }
+}
@@ -0,0 +1,218 @@
+package com.ofemobile.targetvr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProgramManagerTest {
+
+  private static final int VERTEX = 1;
+  private static final int FRAGMENT = 2;
+  private static final int OTHER_FRAGMENT = 3;
+
+  private final Map<Integer, String> sources = new HashMap<Integer, String>();
+  private final ProgramManager.Sources loader = new ProgramManager.Sources() {
+    @Override
+    public String read(int resource) {
+      reads++;
+      return sources.get(resource);
+    }
+  };
+  private int reads;
+  private int linkedProgram;
+  private final ProgramManager.Linked linked = new ProgramManager.Linked() {
+    @Override
+    public void linked(int program) {
+      linkedProgram = program;
+    }
+  };
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    sources.put(VERTEX, "vertex");
+    sources.put(FRAGMENT, "fragment");
+    sources.put(OTHER_FRAGMENT, "other fragment");
+    dir = File.createTempFile("programs", "");
+    assertTrue(dir.delete());
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null)
+      for (File file : files)
+        file.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void compilesOnFirstUseOnly() {
+    RecordingGL gl = new RecordingGL();
+    ProgramManager programs = new ProgramManager(gl, loader, dir, true);
+    int a = programs.define("a", VERTEX, FRAGMENT, linked);
+    int b = programs.define("b", VERTEX, OTHER_FRAGMENT, null);
+    assertTrue(gl.calls.isEmpty());
+    assertEquals(0, reads);
+
+    int program = programs.program(a);
+    assertEquals(program, linkedProgram);
+    assertEquals(program, programs.program(a));
+    assertEquals(1, gl.count("glLinkProgram"));
+    assertEquals(2, gl.count("glCompileShader"));
+    assertTrue(programs.isBuilt(a));
+    assertFalse(programs.isBuilt(b));
+
+    // The vertex shader's source is only read once.
+    programs.program(b);
+    assertEquals(3, reads);
+    assertEquals(2, programs.compiledCount());
+  }
+
+  @Test
+  public void laterContextsLoadTheCachedBinary() {
+    RecordingGL gl = new RecordingGL();
+    ProgramManager programs = new ProgramManager(gl, loader, dir, true);
+    int a = programs.define("a", VERTEX, FRAGMENT, linked);
+    programs.program(a);
+    assertEquals(1, programs.storedCount());
+    assertEquals(1, gl.count("glGetProgramBinary"));
+    assertEquals(1, dir.listFiles().length);
+
+    // A new context of the same run.
+    gl.calls.clear();
+    programs.forget();
+    assertFalse(programs.isBuilt(a));
+    int program = programs.program(a);
+    assertEquals(program, linkedProgram);
+    assertEquals(1, programs.loadedCount());
+    assertEquals(0, gl.count("glCompileShader"));
+    assertEquals(1, gl.count("glProgramBinary"));
+
+    // And a later run of the app.
+    RecordingGL next = new RecordingGL();
+    ProgramManager again = new ProgramManager(next, loader, dir, true);
+    again.program(again.define("a", VERTEX, FRAGMENT, linked));
+    assertEquals(1, again.loadedCount());
+    assertEquals(0, again.compiledCount());
+    assertEquals(0, next.count("glCompileShader"));
+  }
+
+  @Test
+  public void changedSourcesOrDriverMissTheCache() {
+    ProgramManager programs = new ProgramManager(new RecordingGL(), loader, dir, true);
+    programs.program(programs.define("a", VERTEX, FRAGMENT, linked));
+
+    sources.put(FRAGMENT, "edited fragment");
+    ProgramManager edited = new ProgramManager(new RecordingGL(), loader, dir, true);
+    edited.program(edited.define("a", VERTEX, FRAGMENT, linked));
+    assertEquals(1, edited.compiledCount());
+    assertEquals(0, edited.loadedCount());
+
+    RecordingGL updated = new RecordingGL();
+    updated.version = "OpenGL ES 3.0 Recording 2";
+    ProgramManager driver = new ProgramManager(updated, loader, dir, true);
+    driver.program(driver.define("a", VERTEX, FRAGMENT, linked));
+    assertEquals(1, driver.compiledCount());
+    assertEquals(3, dir.listFiles().length);
+  }
+
+  @Test
+  public void compilesWithoutBinariesBelowOpenGLES3() {
+    // The GLES30 bindings would reach unimplemented functions, even with the ES 2 extension.
+    RecordingGL gl = new RecordingGL();
+    gl.version = "OpenGL ES 2.0 Recording";
+    gl.extensions = "GL_OES_get_program_binary";
+    assertCompilesWithoutBinaries(gl, true);
+
+    RecordingGL noFormats = new RecordingGL();
+    noFormats.binaryFormats = 0;
+    assertCompilesWithoutBinaries(noFormats, true);
+
+    // Below API 18 there are no bindings.
+    RecordingGL old = new RecordingGL();
+    assertCompilesWithoutBinaries(old, false);
+  }
+
+  private void assertCompilesWithoutBinaries(RecordingGL gl, boolean binaryApi) {
+    for (int run = 0; run < 2; run++) {
+      ProgramManager programs = new ProgramManager(gl, loader, dir, binaryApi);
+      programs.program(programs.define("a", VERTEX, FRAGMENT, linked));
+      assertEquals(1, programs.compiledCount());
+    }
+    assertEquals(0, gl.count("glGetProgramBinary"));
+    assertEquals(0, gl.count("glProgramBinary"));
+    assertFalse(dir.exists());
+  }
+
+  @Test
+  public void rejectedBinariesAreCompiledAndReplaced() throws IOException {
+    RecordingGL gl = new RecordingGL();
+    ProgramManager programs = new ProgramManager(gl, loader, dir, true);
+    programs.program(programs.define("a", VERTEX, FRAGMENT, linked));
+
+    // The driver no longer takes the format it wrote, as after an update that kept its version.
+    RecordingGL changed = new RecordingGL();
+    changed.binaryFormat = 8;
+    ProgramManager again = new ProgramManager(changed, loader, dir, true);
+    int program = again.program(again.define("a", VERTEX, FRAGMENT, linked));
+    assertEquals(1, again.rejectedCount());
+    assertEquals(1, again.compiledCount());
+    assertEquals(1, again.storedCount());
+    assertEquals(program, linkedProgram);
+    assertTrue(changed.calls.contains("glDeleteProgram " + (program - 3)));
+
+    // A truncated file is rejected before it gets to the driver.
+    File file = dir.listFiles()[0];
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    out.setLength(out.length() - 1);
+    out.close();
+    RecordingGL next = new RecordingGL();
+    ProgramManager truncated = new ProgramManager(next, loader, dir, true);
+    truncated.program(truncated.define("a", VERTEX, FRAGMENT, linked));
+    assertEquals(1, truncated.rejectedCount());
+    assertEquals(0, next.count("glProgramBinary"));
+    assertEquals(1, truncated.storedCount());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void shadersThatDoNotCompileThrow() {
+    sources.put(FRAGMENT, "syntax error");
+    ProgramManager programs = new ProgramManager(new RecordingGL(), loader, dir, true);
+    programs.program(programs.define("a", VERTEX, FRAGMENT, linked));
+  }
+
+  @Test
+  public void prewarmKeepsWithinItsBudget() {
+    ProgramManager programs = new ProgramManager(new RecordingGL(), loader, null, true);
+    int a = programs.define("a", VERTEX, FRAGMENT, linked);
+    int b = programs.define("b", VERTEX, OTHER_FRAGMENT, linked);
+    // No time to build anything.
+    assertFalse(programs.prewarm(-1));
+    assertFalse(programs.isBuilt(a));
+
+    // Drawing with one builds it, and tells how long a build takes.
+    programs.program(b);
+    assertFalse(programs.prewarm(0));
+    assertFalse(programs.isBuilt(a));
+    assertTrue(programs.prewarm(1000000000L));
+    assertTrue(programs.isBuilt(a));
+    assertEquals(2, programs.compiledCount());
+
+    // Once everything is built it costs nothing, whatever the budget.
+    assertTrue(programs.prewarm(-1));
+    programs.forget();
+    assertFalse(programs.prewarm(-1));
+    assertTrue(programs.prewarm(1000000000L));
+    assertTrue(programs.isBuilt(a));
+    assertTrue(programs.isBuilt(b));
+  }
+}
@@ -0,0 +1,87 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuatTest {
+
+  // How far a matrix's upper 3x3 is from orthonormal.
+  private static float orthonormalError(float[] m) {
+    float error = 0;
+    for (int a = 0; a < 3; a++) {
+      for (int b = 0; b < 3; b++) {
+        float dot = m[a * 4] * m[b * 4] + m[a * 4 + 1] * m[b * 4 + 1] + m[a * 4 + 2] * m[b * 4 + 2];
+        error = Math.max(error, Math.abs(dot - (a == b ? 1 : 0)));
+      }
+    }
+    return error;
+  }
+
+  @Test
+  public void axisAngleMatchesSetRotateM() {
+    Random random = new Random(1);
+    float[] q = new float[4];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < 1000; i++) {
+      float degrees = random.nextFloat() * 720 - 360;
+      float x = random.nextFloat() - 0.5f;
+      float y = random.nextFloat() - 0.5f;
+      float z = random.nextFloat() - 0.5f;
+      Mat4.setRotateM(expected, 0, degrees, x, y, z);
+      Quat.setAxisAngle(q, 0, degrees, x, y, z);
+      Quat.toRotationM(actual, 0, q, 0);
+      assertArrayEquals(expected, actual, 1e-5f);
+    }
+  }
+
+  @Test
+  public void multiplyComposesLikeMatrices() {
+    Random random = new Random(2);
+    float[] a = new float[4];
+    float[] b = new float[4];
+    float[] ab = new float[4];
+    float[] ma = new float[16];
+    float[] mb = new float[16];
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < 1000; i++) {
+      Quat.setAxisAngle(a, 0, random.nextFloat() * 360, random.nextFloat(), random.nextFloat(), 1);
+      Quat.setAxisAngle(b, 0, random.nextFloat() * 360, 1, random.nextFloat(), random.nextFloat());
+      Quat.toRotationM(ma, 0, a, 0);
+      Quat.toRotationM(mb, 0, b, 0);
+      Mat4.multiplyMM(expected, 0, ma, 0, mb, 0);
+      Quat.multiply(ab, 0, a, 0, b, 0);
+      Quat.toRotationM(actual, 0, ab, 0);
+      assertArrayEquals(expected, actual, 1e-5f);
+      // In place.
+      Quat.multiply(a, 0, a, 0, b, 0);
+      assertArrayEquals(ab, a, 0);
+    }
+  }
+
+  @Test
+  public void spinStaysARotation() {
+    float[] step = new float[4];
+    float[] spin = new float[4];
+    float[] m = new float[16];
+    float[] matrixSpin = new float[16];
+    float[] scratch = new float[32];
+    Quat.setIdentity(spin, 0);
+    Quat.setAxisAngle(step, 0, 0.9f, 0.5f, 0.5f, 1);
+    Mat4.setIdentityM(matrixSpin, 0);
+    // An hour of spinning at 60 steps a second.
+    for (int i = 0; i < 60 * 60 * 60; i++) {
+      Quat.multiply(spin, 0, spin, 0, step, 0);
+      Quat.normalize(spin, 0);
+      Mat4.rotateM(matrixSpin, 0, 0.9f, 0.5f, 0.5f, 1, scratch);
+    }
+    Quat.toRotationM(m, 0, spin, 0);
+    assertTrue(orthonormalError(m) < 1e-5f);
+    // The same rotation, give or take the matrix's drift.
+    assertArrayEquals(matrixSpin, m, 0.05f);
+  }
+}
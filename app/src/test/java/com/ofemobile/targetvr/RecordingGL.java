@@ -0,0 +1,329 @@
+package com.ofemobile.targetvr;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GLApi that hands out object names and records what it is asked to do.
+ */
+public class RecordingGL implements GLApi {
+
+  static final int GL_VERSION = 0x1F02;
+  static final int GL_RENDERER = 0x1F01;
+  static final int GL_EXTENSIONS = 0x1F03;
+  static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+  static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+
+  public final List<String> calls = new ArrayList<String>();
+  public long bufferBytes;
+  public int drawCalls;
+  private int nextName = 1;
+
+  // Shaders fail to compile if their source contains "error". A program's binary is its shaders'
+  // sources, and loads only if it comes back with the same format.
+  public String version = "OpenGL ES 3.0 Recording";
+  public String renderer = "RecordingGL";
+  public String extensions = "GL_OES_get_program_binary";
+  public int binaryFormats = 1;
+  public int binaryFormat = 7;
+  private final Map<Integer, String> shaderSources = new HashMap<Integer, String>();
+  private final Map<Integer, Boolean> compiled = new HashMap<Integer, Boolean>();
+  private final Map<Integer, String> programSources = new HashMap<Integer, String>();
+  private final Map<Integer, Boolean> linked = new HashMap<Integer, Boolean>();
+
+  protected void record(String call) {
+    calls.add(call);
+  }
+
+  public int count(String prefix) {
+    int n = 0;
+    for (String call : calls)
+      if (call.startsWith(prefix))
+        n++;
+    return n;
+  }
+
+  @Override
+  public int glGetError() {
+    return 0;
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    for (int i = 0; i < n; i++)
+      buffers[offset + i] = nextName++;
+    record("glGenBuffers " + n);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    record("glDeleteBuffers " + n);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    for (int i = 0; i < n; i++)
+      textures[offset + i] = nextName++;
+    record("glGenTextures " + n);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    StringBuilder names = new StringBuilder();
+    for (int i = 0; i < n; i++)
+      names.append(' ').append(textures[offset + i]);
+    record("glDeleteTextures" + names);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    record("glBindBuffer " + target + " " + buffer);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    bufferBytes += size;
+    record("glBufferData " + target + " " + size);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    bufferBytes += size;
+    record("glBufferSubData " + target + " " + offset + " " + size);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                           int border, int format, int type, Buffer pixels) {
+    record("glTexImage2D " + target + " " + level + " " + width + "x" + height + " "
+        + (pixels == null ? "null" : pixels.remaining()));
+  }
+
+  @Override
+  public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                              int height, int format, int type, Buffer pixels) {
+    record("glTexSubImage2D " + target + " " + level + " " + xoffset + "," + yoffset + " "
+        + width + "x" + height + " " + pixels.position());
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    record("glUseProgram " + program);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    record("glActiveTexture " + texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    record("glBindTexture " + target + " " + texture);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    record("glEnable " + cap);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    record("glDisable " + cap);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    record("glBlendFunc " + sfactor + " " + dfactor);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    record("glDepthMask " + flag);
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    record("glLineWidth " + width);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    record("glEnableVertexAttribArray " + index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    record("glDisableVertexAttribArray " + index);
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                                    int offset) {
+    record("glVertexAttribPointer " + index + " " + size + " " + type + " " + normalized + " "
+        + stride + " " + offset);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    record("glUniform1i " + location + " " + x);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    record("glUniform1f " + location + " " + x);
+  }
+
+  @Override
+  public void glUniform3fv(int location, int count, float[] v, int offset) {
+    record("glUniform3fv " + location + " " + values(v, offset, count * 3));
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                 int offset) {
+    record("glUniformMatrix4fv " + location + " " + values(value, offset, count * 16));
+  }
+
+  private static String values(float[] v, int offset, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++)
+      sb.append(i == 0 ? "" : ",").append(v[offset + i]);
+    return sb.toString();
+  }
+
+  @Override
+  public void glClear(int mask) {
+    record("glClear " + mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    drawCalls++;
+    record("glDrawArrays " + mode + " " + first + " " + count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    drawCalls++;
+    record("glDrawElements " + mode + " " + count + " " + type + " " + offset);
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    int shader = nextName++;
+    record("glCreateShader " + type);
+    return shader;
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    shaderSources.put(shader, string);
+    record("glShaderSource " + shader);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    compiled.put(shader, !shaderSources.get(shader).contains("error"));
+    record("glCompileShader " + shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    params[offset] = Boolean.TRUE.equals(compiled.get(shader)) ? 1 : 0;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return "shader " + shader + " has an error";
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    record("glDeleteShader " + shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    int program = nextName++;
+    record("glCreateProgram");
+    return program;
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    programSources.put(program, programSource(program) + shaderSources.get(shader) + ";");
+    record("glAttachShader " + program + " " + shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    linked.put(program, !programSource(program).contains("error"));
+    record("glLinkProgram " + program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    if (pname == GL_PROGRAM_BINARY_LENGTH)
+      params[offset] = programSource(program).length();
+    else
+      params[offset] = Boolean.TRUE.equals(linked.get(program)) ? 1 : 0;
+  }
+
+  private String programSource(int program) {
+    String source = programSources.get(program);
+    return source == null ? "" : source;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return "program " + program + " did not link";
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    record("glDeleteProgram " + program);
+  }
+
+  @Override
+  public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                                 int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+    byte[] bytes = programSource(program).getBytes();
+    ((ByteBuffer) binary).put(bytes, 0, Math.min(bufSize, bytes.length));
+    length[lengthOffset] = Math.min(bufSize, bytes.length);
+    binaryFormat[binaryFormatOffset] = this.binaryFormat;
+    record("glGetProgramBinary " + program);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    ByteBuffer bytes = (ByteBuffer) binary;
+    byte[] sources = new byte[length];
+    bytes.duplicate().get(sources);
+    programSources.put(program, new String(sources));
+    linked.put(program, binaryFormat == this.binaryFormat);
+    record("glProgramBinary " + program + " " + binaryFormat + " " + length);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    switch (name) {
+      case GL_VERSION:
+        return version;
+      case GL_RENDERER:
+        return renderer;
+      case GL_EXTENSIONS:
+        return extensions;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    params[offset] = pname == GL_NUM_PROGRAM_BINARY_FORMATS ? binaryFormats : 0;
+  }
+}
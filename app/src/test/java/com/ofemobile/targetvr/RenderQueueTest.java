@@ -0,0 +1,123 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RenderQueueTest {
+
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_TEXTURE0 = 0x84C0;
+  private static final int GL_TRIANGLES = 4;
+
+  private final RenderQueue queue = new RenderQueue(4);
+
+  @Test
+  public void sortsLikeArraysSort() {
+    Random random = new Random(12);
+    long[] keys = new long[1000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong() & Long.MAX_VALUE;
+      queue.submit(keys[i], i);
+    }
+    queue.sort();
+    Arrays.sort(keys);
+    for (int n = 0; n < keys.length; n++)
+      assertEquals(keys[n], queue.key(n));
+  }
+
+  @Test
+  public void equalKeysKeepSubmissionOrder() {
+    for (int i = 0; i < 10; i++)
+      queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 2, 3), i);
+    queue.sort();
+    for (int n = 0; n < 10; n++)
+      assertEquals(n, queue.item(n));
+  }
+
+  @Test
+  public void opaqueGoesFrontToBackAndBlendedBackToFront() {
+    queue.submit(RenderQueue.blendedKey(RenderQueue.PASS_TRANSPARENT, 1, 1, 2f), 0);
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 1, 5f), 1);
+    queue.submit(RenderQueue.blendedKey(RenderQueue.PASS_HUD, 1, 1, 9f), 2);
+    queue.submit(RenderQueue.blendedKey(RenderQueue.PASS_TRANSPARENT, 1, 1, 7f), 3);
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 1, 0.5f), 4);
+    queue.submit(RenderQueue.blendedKey(RenderQueue.PASS_OVERLAY, 2, 1, 0f), 5);
+    queue.sort();
+    int[] expected = {4, 1, 3, 0, 5, 2};
+    for (int n = 0; n < expected.length; n++)
+      assertEquals(expected[n], queue.item(n));
+    assertEquals(RenderQueue.PASS_HUD, RenderQueue.pass(queue.key(5)));
+  }
+
+  @Test
+  public void opaqueGroupsByProgramThenTexture() {
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 2, 1, 1f), 0);
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 2, 1f), 1);
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 1, 9f), 2);
+    queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, 1, 1, 3f), 3);
+    queue.sort();
+    int[] expected = {3, 2, 1, 0};
+    for (int n = 0; n < expected.length; n++)
+      assertEquals(expected[n], queue.item(n));
+  }
+
+  @Test
+  public void clearReusesStorage() {
+    for (int i = 0; i < 100; i++)
+      queue.submit(i, i);
+    queue.clear();
+    assertEquals(0, queue.size());
+    queue.submit(7, 1);
+    queue.sort();
+    assertEquals(1, queue.size());
+    assertEquals(7, queue.key(0));
+  }
+
+  /**
+   * Draws entities with four programs and four textures in a random order, and counts the program
+   * and texture changes that reach GL through the state cache. Sorted, the changes stay bounded by
+   * the number of state combinations however many entities there are.
+   */
+  @Test
+  public void stateChangesPerEntityDropWithEntityCount() {
+    int[] counts = {10, 100, 1000, 10000};
+    float previous = Float.MAX_VALUE;
+    for (int entities : counts) {
+      int unsorted = stateChanges(entities, false);
+      int sorted = stateChanges(entities, true);
+      float perEntity = (float) sorted / entities;
+      assertTrue(sorted <= 4 + 16);
+      assertTrue(perEntity < previous);
+      if (entities >= 100)
+        assertTrue(sorted * 4 < unsorted);
+      previous = perEntity;
+    }
+  }
+
+  private int stateChanges(int entities, boolean sort) {
+    Random random = new Random(entities);
+    queue.clear();
+    for (int i = 0; i < entities; i++) {
+      int program = 1 + random.nextInt(4);
+      int texture = 1 + random.nextInt(4);
+      queue.submit(RenderQueue.opaqueKey(RenderQueue.PASS_OPAQUE, program, texture,
+          random.nextFloat() * 20), program << 8 | texture);
+    }
+    if (sort)
+      queue.sort();
+    RecordingGL backend = new RecordingGL();
+    GLStateCache gl = new GLStateCache(backend);
+    gl.glActiveTexture(GL_TEXTURE0);
+    for (int n = 0; n < queue.size(); n++) {
+      int item = queue.item(n);
+      gl.glUseProgram(item >> 8);
+      gl.glBindTexture(GL_TEXTURE_2D, item & 0xff);
+      gl.glDrawArrays(GL_TRIANGLES, 0, 6);
+    }
+    return backend.count("glUseProgram") + backend.count("glBindTexture");
+  }
+}
@@ -0,0 +1,55 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SignedDistanceFieldTest {
+
+  private static final int SIZE = 32;
+  private static final int SPREAD = 4;
+
+  // A filled square from 8 to 23 on both axes.
+  private static byte[] square() {
+    byte[] coverage = new byte[SIZE * SIZE];
+    for (int y = 8; y < 24; y++) {
+      for (int x = 8; x < 24; x++)
+        coverage[y * SIZE + x] = (byte) 255;
+    }
+    return coverage;
+  }
+
+  private static int at(byte[] field, int x, int y) {
+    return field[y * SIZE + x] & 0xff;
+  }
+
+  @Test
+  public void encodesDistanceFromTheEdge() {
+    byte[] field = SignedDistanceField.generate(square(), SIZE, SIZE, SPREAD);
+    assertEquals(255, at(field, 16, 16));
+    assertEquals(0, at(field, 0, 0));
+    // Half a pixel either side of the edge, at one eighth of the spread per half pixel.
+    assertEquals(Math.round((0.5f + 0.5f / 8) * 255), at(field, 8, 16));
+    assertEquals(Math.round((0.5f - 0.5f / 8) * 255), at(field, 7, 16));
+    // Diagonally off a corner the distance is Euclidean.
+    float corner = (float) Math.sqrt(2) - 0.5f;
+    assertEquals(Math.round((0.5f - corner / 8) * 255), at(field, 7, 7));
+  }
+
+  @Test
+  public void risesSteadilyIntoTheShape() {
+    byte[] field = SignedDistanceField.generate(square(), SIZE, SIZE, SPREAD);
+    for (int x = 1; x <= 16; x++)
+      assertTrue("x = " + x, at(field, x, 16) >= at(field, x - 1, 16));
+    // Symmetric about the middle of the square.
+    for (int x = 0; x < SIZE; x++)
+      assertEquals(at(field, x, 16), at(field, SIZE - 1 - x, 16));
+  }
+
+  @Test
+  public void emptyImageIsOutsideEverywhere() {
+    byte[] field = SignedDistanceField.generate(new byte[SIZE * SIZE], SIZE, SIZE, SPREAD);
+    for (byte b : field)
+      assertEquals(0, b);
+  }
+}
@@ -0,0 +1,104 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SimulationClockTest {
+
+  private static final long SECOND = 1000000000L;
+
+  // Runs just over two seconds of a falling, drifting target at a display rate and returns where
+  // it is drawn on the last frame.
+  private static float[] run(double hz, long jitterNanos, long seed) {
+    Random random = new Random(seed);
+    SimulationClock clock = new SimulationClock(60, 5);
+    TargetStore targets = new TargetStore(1);
+    int id = targets.spawn(0, 0, 0);
+    targets.setVelocity(id, 1, 0, 0);
+    targets.setAcceleration(id, 0, -9.81f, 0);
+    long start = 123456789L;
+    clock.advance(start);
+    long end = start + 2 * SECOND + SECOND / 200;
+    long frame = (long) (SECOND / hz);
+    long now = start;
+    while (now < end) {
+      now = Math.min(end, now + frame
+          + (jitterNanos > 0 ? (long) (random.nextGaussian() * jitterNanos) : 0));
+      for (int n = clock.advance(now); n > 0; n--)
+        targets.integrate(clock.stepSeconds());
+    }
+    WorldSnapshot world = new WorldSnapshot(1);
+    world.copyTargets(targets, new SpatialHash(1, Game.GRID_CELL_SIZE, Game.GRID_REACH));
+    float[] drawn = new float[4];
+    world.getTargetPosition(0, clock.alpha(), drawn);
+    drawn[3] = clock.steps() + clock.alpha();
+    return drawn;
+  }
+
+  @Test
+  public void simulatesTheSameStepsAtAnyRefreshRate() {
+    float[] at60 = run(60, 0, 0);
+    assertEquals(120.3f, at60[3], 1e-3f);
+    for (double hz : new double[] {72, 90, 120, 144}) {
+      for (long jitter : new long[] {0, SECOND / 1000}) {
+        float[] other = run(hz, jitter, 5);
+        assertEquals(at60[3], other[3], 1e-3f);
+        assertEquals(at60[0], other[0], 1e-5f);
+        assertEquals(at60[1], other[1], 1e-5f);
+      }
+    }
+  }
+
+  @Test
+  public void stepsAreIdenticalWhateverTheFramePacing() {
+    // Whole steps are bit-for-bit the same however the frames fall between them.
+    SimulationClock smooth = new SimulationClock(60, 5);
+    SimulationClock jittery = new SimulationClock(60, 5);
+    Random random = new Random(3);
+    smooth.advance(0);
+    jittery.advance(0);
+    long t = 0;
+    for (int frame = 0; frame < 90; frame++) {
+      t += SECOND / 90;
+      smooth.advance(t);
+    }
+    long u = 0;
+    while (u < t) {
+      u = Math.min(t, u + 1 + (long) (random.nextDouble() * SECOND / 30));
+      jittery.advance(u);
+    }
+    assertEquals(smooth.steps(), jittery.steps());
+    assertEquals(smooth.alpha(), jittery.alpha(), 1e-4f);
+    assertEquals(0, jittery.droppedSteps());
+  }
+
+  @Test
+  public void alphaIsTheFractionOfTheNextStep() {
+    SimulationClock clock = new SimulationClock(100, 5);
+    assertEquals(0, clock.advance(0));
+    assertEquals(0, clock.advance(SECOND / 400));
+    assertEquals(0.25f, clock.alpha(), 1e-6f);
+    assertEquals(1, clock.advance(SECOND / 400 + SECOND / 100));
+    assertEquals(0.25f, clock.alpha(), 1e-6f);
+    assertEquals(1, clock.steps());
+    assertEquals(0.01f, clock.stepSeconds(), 0f);
+  }
+
+  @Test
+  public void dropsTheBacklogAfterAStall() {
+    SimulationClock clock = new SimulationClock(60, 5);
+    clock.advance(0);
+    assertEquals(5, clock.advance(SECOND));
+    assertEquals(55, clock.droppedSteps());
+    // Frames after the stall run at the normal rate again.
+    assertEquals(1, clock.advance(SECOND + SECOND / 60));
+
+    clock.restart();
+    assertEquals(0, clock.advance(100 * SECOND));
+    assertEquals(1, clock.advance(100 * SECOND + SECOND / 60 + 1));
+    assertEquals(55, clock.droppedSteps());
+  }
+}
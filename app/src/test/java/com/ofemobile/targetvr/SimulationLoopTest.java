@@ -0,0 +1,90 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SimulationLoopTest {
+
+  // Steps a target along x by one unit a step and publishes snapshots of it, like MainActivity.
+  private static class Mover implements SimulationLoop.Simulation {
+    final TargetStore targets = new TargetStore(8);
+    final SpatialHash grid = new SpatialHash(8, Game.GRID_CELL_SIZE, Game.GRID_REACH);
+    final TripleBuffer<WorldSnapshot> worlds = new TripleBuffer<WorldSnapshot>();
+    volatile Thread thread;
+    int steps;
+    volatile int publications;
+
+    Mover() {
+      for (int i = 0; i < 8; i++)
+        targets.setVelocity(targets.spawn(0, i, 0), 100, 0, 0);
+    }
+
+    @Override
+    public void step() {
+      thread = Thread.currentThread();
+      targets.integrate(0.01f);
+      steps++;
+    }
+
+    @Override
+    public void publish(long stepNanos) {
+      WorldSnapshot world = worlds.writable();
+      if (world == null)
+        world = new WorldSnapshot(8);
+      world.stepNo = steps;
+      world.stepNanos = stepNanos;
+      world.copyTargets(targets, grid);
+      worlds.publish(world);
+      publications++;
+    }
+  }
+
+  @Test
+  public void stepsOnItsOwnThreadAtTheClocksRate() throws InterruptedException {
+    Mover mover = new Mover();
+    SimulationLoop loop = new SimulationLoop(mover, new SimulationClock(100, 5));
+    long start = System.nanoTime();
+    loop.start();
+    assertTrue(loop.isRunning());
+    Thread.sleep(300);
+    loop.stop();
+    long elapsedMillis = (System.nanoTime() - start) / 1000000;
+    assertFalse(loop.isRunning());
+    assertNotSame(Thread.currentThread(), mover.thread);
+    assertFalse(mover.thread.isAlive());
+    // About one step every 10 ms; a loaded machine can only make it fewer.
+    assertTrue(mover.steps + " steps in " + elapsedMillis + " ms",
+        mover.steps > 10 && mover.steps <= elapsedMillis / 10 + 1);
+    assertTrue(mover.publications > 0 && mover.publications <= mover.steps);
+
+    // Nothing is simulated while stopped.
+    int steps = mover.steps;
+    Thread.sleep(50);
+    assertEquals(steps, mover.steps);
+  }
+
+  @Test
+  public void theRendererOnlySeesWholeSteps() throws InterruptedException {
+    Mover mover = new Mover();
+    SimulationLoop loop = new SimulationLoop(mover, new SimulationClock(1000, 5));
+    loop.start();
+    int seen = 0;
+    int lastStep = 0;
+    long end = System.nanoTime() + 200 * 1000000L;
+    while (System.nanoTime() < end) {
+      if (!mover.worlds.update())
+        continue;
+      WorldSnapshot world = mover.worlds.read();
+      // Every target of a snapshot is from the same step, and steps only go forwards.
+      assertTrue(world.stepNo >= lastStep);
+      lastStep = world.stepNo;
+      assertEquals(8, world.targetCount);
+      for (int n = 0; n < world.targetCount; n++)
+        assertEquals(world.stepNo, world.targetX[n], 1e-3f * world.stepNo);
+      seen++;
+    }
+    loop.stop();
+    assertTrue(seen > 0);
+  }
+}
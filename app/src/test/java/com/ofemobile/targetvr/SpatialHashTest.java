@@ -0,0 +1,133 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialHashTest {
+
+  private static final float EXTENT = 0.2f;
+
+  private static float[] randomPoint(Random random, float margin) {
+    return new float[] {
+        (random.nextFloat() * 2 - 1) * (4 + margin),
+        -1.5f - margin + random.nextFloat() * (4 + 2 * margin),
+        (random.nextFloat() * 2 - 1) * (4 + margin)};
+  }
+
+  @Test
+  public void rayQueryFindsEveryTargetOnTheRay() {
+    Random random = new Random(4);
+    TargetStore targets = new TargetStore(2000);
+    SpatialHash grid = new SpatialHash(targets.capacity(), 0.5f, 0.25f);
+    float[] pos = new float[3];
+    for (int i = 0; i < 2000; i++) {
+      float[] p = randomPoint(random, 0);
+      grid.update(targets.spawn(p[0], p[1], p[2]), p[0], p[1], p[2]);
+    }
+    // Move some targets a little and some a long way so both update paths are used.
+    for (int n = 0; n < 2000; n += 3) {
+      int id = targets.get(n);
+      targets.posX[id] += n % 2 == 0 ? 0.01f : 2f;
+      targets.posX[id] = Math.max(-3.9f, Math.min(3.9f, targets.posX[id]));
+      grid.update(id, targets.posX[id], targets.posY[id], targets.posZ[id]);
+    }
+    for (int n = 0; n < 2000; n += 7) {
+      int id = targets.get(n);
+      grid.remove(id);
+      targets.despawn(id);
+    }
+
+    int[] found = new int[targets.capacity()];
+    boolean[] inFound = new boolean[targets.capacity()];
+    long visitedTotal = 0;
+    for (int q = 0; q < 2000; q++) {
+      float[] start = randomPoint(random, 1);
+      float[] end = randomPoint(random, 1);
+      if (q % 4 == 0)
+        end[0] = start[0];
+      int count = grid.queryRay(start, end, found);
+      visitedTotal += count;
+      for (int i = 0; i < inFound.length; i++)
+        inFound[i] = false;
+      for (int i = 0; i < count; i++) {
+        assertFalse("reported twice", inFound[found[i]]);
+        inFound[found[i]] = true;
+        assertTrue(targets.alive[found[i]]);
+      }
+      for (int n = 0; n < targets.count(); n++) {
+        int id = targets.get(n);
+        targets.getPosition(id, pos);
+        if (Collision.segmentBoxEntry(start, end, pos, EXTENT) != Collision.MISS)
+          assertTrue("missed target " + id, inFound[id]);
+      }
+    }
+    // The point of the grid: far fewer candidates than targets.
+    assertTrue(visitedTotal / 2000 < targets.count() / 4);
+  }
+
+  @Test
+  public void removedTargetsAreNotFound() {
+    SpatialHash grid = new SpatialHash(4, 0.5f, 0.25f);
+    int[] found = new int[4];
+    grid.update(1, 0, 0, -2);
+    grid.update(2, 0.1f, 0, -3);
+    assertEquals(2, grid.queryRay(new float[] {0, 0, 0}, new float[] {0, 0, -10}, found));
+    grid.remove(1);
+    grid.remove(1);
+    assertEquals(1, grid.queryRay(new float[] {0, 0, 0}, new float[] {0, 0, -10}, found));
+    assertEquals(2, found[0]);
+  }
+
+  @Test
+  public void targetsJustOffACellBoundaryStayInTwoCellsAnAxis() {
+    // Rounding puts x + reach on the boundary after the next, three cells from x - reach. A target
+    // entered in more than eight cells would take over the next slot's list entries.
+    SpatialHash grid = new SpatialHash(2, 0.5f, 0.25f);
+    grid.update(1, 0, 0.1f, -3);
+    grid.update(0, 0.24999976f, 0, -2);
+    grid.remove(1);
+    int[] found = new int[2];
+    assertEquals(1, grid.queryRay(new float[] {-4, 0, -2}, new float[] {4, 0, -2}, found));
+    assertEquals(0, found[0]);
+    grid.remove(0);
+    assertEquals(0, grid.queryRay(new float[] {-4, 0, -2}, new float[] {4, 0, -2}, found));
+    assertEquals(0, grid.queryRay(new float[] {-0.1f, 0.1f, 0}, new float[] {-0.1f, 0.1f, -10},
+        found));
+  }
+
+  @Test
+  public void segmentsThatAreNotFiniteFindNothing() {
+    SpatialHash grid = new SpatialHash(4, 0.5f, 0.25f);
+    grid.update(1, 0, 0, -2);
+    float nan = Float.NaN;
+    assertEquals(0, grid.queryRay(new float[] {0, 0, 0}, new float[] {nan, nan, nan},
+        new int[4]));
+  }
+
+  @Test
+  public void copiesCanBeQueriedWhileTheOriginalChanges() {
+    SpatialHash grid = new SpatialHash(4, 0.5f, 0.25f);
+    SpatialHash copy = new SpatialHash(4, 0.5f, 0.25f);
+    grid.update(1, 0, 0, -2);
+    grid.update(3, 3, 2, 3);
+    copy.copyCells(grid);
+    copy.copyTarget(grid, 1);
+    copy.copyTarget(grid, 3);
+    grid.update(1, 3, 2, -3);
+    grid.remove(3);
+    int[] found = new int[4];
+    assertEquals(1, copy.queryRay(new float[] {0, 0, 0}, new float[] {0, 0, -10}, found));
+    assertEquals(1, found[0]);
+    assertEquals(1, copy.queryRay(new float[] {3, 2, 0}, new float[] {3, 2, 10}, found));
+    assertEquals(3, found[0]);
+    assertEquals(0, grid.queryRay(new float[] {0, 0, 0}, new float[] {0, 0, -10}, found));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsReachLargerThanHalfACell() {
+    new SpatialHash(4, 0.5f, 0.3f);
+  }
+}
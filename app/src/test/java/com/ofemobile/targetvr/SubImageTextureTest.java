@@ -0,0 +1,69 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SubImageTextureTest {
+
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_RGBA = 0x1908;
+  private static final int GL_UNSIGNED_SHORT_4_4_4_4 = 0x8033;
+
+  private final RecordingGL gl = new RecordingGL();
+  private final SubImageTexture texture =
+      new SubImageTexture(256, 256, GL_RGBA, GL_UNSIGNED_SHORT_4_4_4_4);
+  private final PixelImage image = new PixelImage(256, 256, 2);
+
+  @Test
+  public void allocatesStorageOnceAndUploadsChangedRows() {
+    texture.setTexture(7);
+    image.setContentRows(64, 192);
+    texture.update(gl, image);
+    assertEquals("glBindTexture " + GL_TEXTURE_2D + " 7", gl.calls.get(0));
+    assertEquals("glTexImage2D " + GL_TEXTURE_2D + " 0 256x256 null", gl.calls.get(1));
+    // The new storage holds garbage, so all of it is uploaded the first time.
+    assertEquals("glTexSubImage2D " + GL_TEXTURE_2D + " 0 0,0 256x256 0", gl.calls.get(2));
+
+    image.setContentRows(70, 180);
+    texture.update(gl, image);
+    // The rows of the old image are cleared along with the new one's.
+    assertEquals("glTexSubImage2D " + GL_TEXTURE_2D + " 0 0,64 256x128 " + 64 * 512,
+        gl.calls.get(gl.calls.size() - 1));
+
+    image.setContentRows(100, 120);
+    texture.update(gl, image);
+    assertEquals("glTexSubImage2D " + GL_TEXTURE_2D + " 0 0,70 256x110 " + 70 * 512,
+        gl.calls.get(gl.calls.size() - 1));
+
+    assertEquals(1, gl.count("glTexImage2D"));
+    assertEquals(3, gl.count("glTexSubImage2D"));
+    assertEquals((256 + 128 + 110) * 512, texture.uploadedBytes());
+    assertEquals(0, image.pixels.position());
+    assertEquals(image.pixels.capacity(), image.pixels.limit());
+  }
+
+  @Test
+  public void newContextAllocatesAgain() {
+    texture.setTexture(7);
+    texture.update(gl, image);
+    texture.setTexture(9);
+    texture.update(gl, image);
+    assertEquals(2, gl.count("glTexImage2D"));
+  }
+
+  @Test
+  public void contentRowsAreClamped() {
+    image.setContentRows(-5, 300);
+    assertEquals(0, image.top);
+    assertEquals(256, image.bottom);
+    image.setContentRows(200, 100);
+    assertEquals(200, image.top);
+    assertEquals(200, image.bottom);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsImagesOfAnotherSize() {
+    texture.update(gl, new PixelImage(128, 128, 2));
+  }
+}
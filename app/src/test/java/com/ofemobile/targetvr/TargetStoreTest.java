@@ -0,0 +1,61 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TargetStoreTest {
+
+  @Test
+  public void spawnAndDespawnReuseSlots() {
+    TargetStore targets = new TargetStore(3);
+    int a = targets.spawn(0, 0, 0);
+    int b = targets.spawn(1, 0, 0);
+    int c = targets.spawn(2, 0, 0);
+    assertEquals(TargetStore.NONE, targets.spawn(3, 0, 0));
+    assertEquals(3, targets.count());
+
+    targets.despawn(a);
+    assertFalse(targets.alive[a]);
+    assertEquals(2, targets.count());
+    // The last live target moves into the hole.
+    assertEquals(c, targets.get(0));
+    assertEquals(b, targets.get(1));
+
+    assertEquals(a, targets.spawn(4, 0, 0));
+    assertEquals(4f, targets.posX[a], 0f);
+    assertEquals(0f, targets.velX[a], 0f);
+
+    targets.clear();
+    assertEquals(0, targets.count());
+  }
+
+  @Test
+  public void integrateMatchesPerAxisLoop() {
+    TargetStore targets = new TargetStore(1000);
+    for (int i = 0; i < 1000; i++) {
+      int id = targets.spawn(i, 0, 0);
+      targets.setVelocity(id, 1, 2, 3);
+      targets.setAcceleration(id, 0.6f, 0, -0.6f);
+    }
+    targets.integrate(1 / 60f);
+    targets.integrate(1 / 60f);
+    int id = targets.get(500);
+    // Position moves with the velocity from before the acceleration is applied.
+    assertEquals(500 + 2 * (1 / 60f) + 0.6f / 3600f, targets.posX[id], 1e-4f);
+    assertEquals(2 * 2 / 60f, targets.posY[id], 1e-6f);
+    assertEquals((2.99f) / 60f, targets.stepZ[id], 1e-6f);
+    assertEquals(2.98f, targets.velZ[id], 1e-6f);
+  }
+
+  @Test
+  public void detectsTargetsLeavingTheRoom() {
+    TargetStore targets = new TargetStore(4);
+    int inside = targets.spawn(0, 0, -2);
+    int wall = targets.spawn(4.1f, 0, 0);
+    int floor = targets.spawn(0, -1.6f, 0);
+    assertFalse(targets.isOutsideRoom(inside));
+    assertTrue(targets.isOutsideRoom(wall));
+    assertTrue(targets.isOutsideRoom(floor));
+  }
+}
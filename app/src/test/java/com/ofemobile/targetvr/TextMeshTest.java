@@ -0,0 +1,182 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TextMeshTest {
+
+  private static final float SIZE = GlyphAtlas.MAX_FONT_SIZE;
+  private static final float ADVANCE = 20;
+  private static final float ASCENT = 30;
+  private static final float DESCENT = 10;
+  private static final int FLOATS_PER_GLYPH = 4 * TextMesh.STRIDE / 4;
+
+  private static final GlyphAtlas atlas = buildAtlas();
+  private final TextMesh mesh = new TextMesh(16);
+
+  private static GlyphAtlas buildAtlas() {
+    // Every glyph is a block between its pen position and advance, from ascent to descent.
+    byte[] coverage = new byte[GlyphAtlas.WIDTH * GlyphAtlas.HEIGHT];
+    for (int g = 1; g < GlyphAtlas.GLYPH_COUNT; g++) {
+      int x0 = GlyphAtlas.cellX(g) + GlyphAtlas.SPREAD;
+      int y0 = GlyphAtlas.cellY(g) + GlyphAtlas.SPREAD;
+      for (int y = y0; y < y0 + ASCENT + DESCENT; y++) {
+        for (int x = x0; x < x0 + ADVANCE; x++)
+          coverage[y * GlyphAtlas.WIDTH + x] = (byte) 255;
+      }
+    }
+    float[] advances = new float[GlyphAtlas.GLYPH_COUNT];
+    Arrays.fill(advances, ADVANCE);
+    return new GlyphAtlas(coverage, SIZE, advances, ASCENT, DESCENT);
+  }
+
+  private float[] floats() {
+    FloatBuffer buffer = mesh.vertices().asFloatBuffer();
+    float[] floats = new float[buffer.remaining()];
+    buffer.get(floats);
+    return floats;
+  }
+
+  @Test
+  public void atlasHoldsADistanceField() {
+    ByteBuffer pixels = atlas.pixels();
+    int a = GlyphAtlas.glyph('A');
+    int inside = (GlyphAtlas.cellY(a) + GlyphAtlas.SPREAD + 20) * GlyphAtlas.WIDTH
+        + GlyphAtlas.cellX(a) + GlyphAtlas.SPREAD + 10;
+    assertTrue((pixels.get(inside) & 0xff) > 128);
+    int blankSpace = (GlyphAtlas.cellY(0) + 32) * GlyphAtlas.WIDTH + GlyphAtlas.cellX(0) + 32;
+    assertEquals(0, pixels.get(blankSpace));
+    assertEquals(GlyphAtlas.WIDTH * GlyphAtlas.HEIGHT, pixels.remaining());
+  }
+
+  @Test
+  public void placesCellQuadsAroundTheCentredLine() {
+    mesh.layout(atlas, "AB", SIZE, 1000, 1, 0.5f);
+    assertEquals(2, mesh.glyphCount());
+    assertEquals(12, mesh.indexCount());
+    assertEquals(2 * FLOATS_PER_GLYPH * 4, mesh.vertices().remaining());
+    float[] v = floats();
+    // The line is 40 wide and starts at -20; the cell starts SPREAD before the pen.
+    assertEquals(-20 - GlyphAtlas.SPREAD, v[0], 1e-5f);
+    // One line of 40 centred on 0 puts the baseline at 10 below the middle, y down, so the top of
+    // the cell is at 10 - (SPREAD + ASCENT) = -28, which is 28 up.
+    assertEquals(28, v[1], 1e-5f);
+    assertEquals(0.5f, v[2], 0f);
+    int a = GlyphAtlas.glyph('A');
+    assertEquals((float) GlyphAtlas.cellX(a) / GlyphAtlas.WIDTH, v[3], 1e-6f);
+    assertEquals((float) GlyphAtlas.cellY(a) / GlyphAtlas.HEIGHT, v[4], 1e-6f);
+    // Bottom right of the first quad.
+    assertEquals(-28 + GlyphAtlas.CELL_SIZE, v[15], 1e-5f);
+    assertEquals(28 - GlyphAtlas.CELL_SIZE, v[16], 1e-5f);
+    // The second glyph is one advance along.
+    assertEquals(v[0] + ADVANCE, v[FLOATS_PER_GLYPH], 1e-5f);
+  }
+
+  @Test
+  public void scalesWithSizeAndModelScale() {
+    mesh.layout(atlas, "A", SIZE / 2, 1000, 0.1f, 0);
+    float[] v = floats();
+    assertEquals((-5 - GlyphAtlas.SPREAD / 2f) * 0.1f, v[0], 1e-5f);
+    assertEquals(GlyphAtlas.CELL_SIZE / 2f * 0.1f, v[10] - v[0], 1e-5f);
+  }
+
+  @Test
+  public void scalesWithTheAtlasFontSize() {
+    // Glyphs rasterized at half the size are drawn twice as large for the same text size.
+    byte[] coverage = new byte[GlyphAtlas.WIDTH * GlyphAtlas.HEIGHT];
+    float[] advances = new float[GlyphAtlas.GLYPH_COUNT];
+    Arrays.fill(advances, ADVANCE / 2);
+    GlyphAtlas half = new GlyphAtlas(coverage, SIZE / 2, advances, ASCENT / 2, DESCENT / 2);
+    assertEquals(SIZE / 2, half.fontSize(), 0f);
+    mesh.layout(half, "A", SIZE, 1000, 1, 0);
+    float[] v = floats();
+    assertEquals(-10 - GlyphAtlas.SPREAD * 2, v[0], 1e-5f);
+    assertEquals(GlyphAtlas.CELL_SIZE * 2, v[10] - v[0], 1e-5f);
+  }
+
+  @Test
+  public void tallFontsShrinkToFitTheCells() {
+    assertTrue(GlyphAtlas.fits(ASCENT, DESCENT));
+    // A font whose metrics grow with its size, too tall at the largest size.
+    float size = SIZE;
+    while (!GlyphAtlas.fits(0.95f * size, 0.35f * size))
+      size = GlyphAtlas.fittingSize(size, 0.95f * size, 0.35f * size);
+    assertEquals(36, size, 0f);
+    // One whose metrics do not shrink with it still makes progress.
+    size = SIZE;
+    int steps = 0;
+    while (size > 1 && !GlyphAtlas.fits(60, 10)) {
+      float smaller = GlyphAtlas.fittingSize(size, 60, 10);
+      assertTrue(smaller < size);
+      size = smaller;
+      steps++;
+    }
+    assertEquals(1, size, 0f);
+    assertTrue(steps < SIZE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAFontThatDoesNotFit() {
+    new GlyphAtlas(new byte[GlyphAtlas.WIDTH * GlyphAtlas.HEIGHT], SIZE,
+        new float[GlyphAtlas.GLYPH_COUNT], 40, 10);
+  }
+
+  @Test
+  public void wrapsAtSpacesAndBreaksAtNewlines() {
+    // Each word is 60 wide, two with the space between are 140.
+    mesh.layout(atlas, "aaa bbb\nc", SIZE, 100, 1, 0);
+    assertEquals(7, mesh.glyphCount());
+    float[] v = floats();
+    float firstTop = v[1];
+    float secondTop = v[3 * FLOATS_PER_GLYPH + 1];
+    float thirdTop = v[6 * FLOATS_PER_GLYPH + 1];
+    assertEquals(ASCENT + DESCENT, firstTop - secondTop, 1e-5f);
+    assertEquals(ASCENT + DESCENT, secondTop - thirdTop, 1e-5f);
+    // Three lines centred vertically: the middle line's cell is where a single line's would be.
+    assertEquals(28, secondTop, 1e-5f);
+    // Every line is centred on its own width.
+    assertEquals(-30 - GlyphAtlas.SPREAD, v[3 * FLOATS_PER_GLYPH], 1e-5f);
+    assertEquals(-10 - GlyphAtlas.SPREAD, v[6 * FLOATS_PER_GLYPH], 1e-5f);
+  }
+
+  @Test
+  public void longWordsBreakAnywhere() {
+    mesh.layout(atlas, "abcdefgh", SIZE, 100, 1, 0);
+    float[] v = floats();
+    assertEquals(8, mesh.glyphCount());
+    assertEquals(v[1], v[4 * FLOATS_PER_GLYPH + 1], 1e-5f);
+    assertEquals(ASCENT + DESCENT, v[4 * FLOATS_PER_GLYPH + 1] - v[5 * FLOATS_PER_GLYPH + 1],
+        1e-5f);
+  }
+
+  @Test
+  public void unknownCharactersAreDrawnAsQuestionMarks() {
+    mesh.layout(atlas, "\u00e9", SIZE, 1000, 1, 0);
+    int q = GlyphAtlas.glyph('?');
+    assertEquals(q, GlyphAtlas.glyph('\u00e9'));
+    assertEquals((float) GlyphAtlas.cellX(q) / GlyphAtlas.WIDTH, floats()[3], 1e-6f);
+  }
+
+  @Test
+  public void dropsGlyphsPastCapacity() {
+    mesh.layout(atlas, "aaaaaaaaaaaaaaaaaaaaaaaaa", SIZE, 10000, 1, 0);
+    assertEquals(16, mesh.glyphCount());
+    mesh.layout(atlas, "a b", SIZE, 10000, 1, 0);
+    assertEquals(2, mesh.glyphCount());
+    assertEquals(2 * FLOATS_PER_GLYPH * 4, mesh.vertices().remaining());
+  }
+
+  @Test
+  public void quadIndicesShareVertices() {
+    ByteBuffer indices = TextMesh.quadIndices(2);
+    short[] expected = {0, 1, 2, 1, 3, 2, 4, 5, 6, 5, 7, 6};
+    assertEquals(expected.length * 2, indices.remaining());
+    for (short index : expected)
+      assertEquals(index, indices.getShort());
+  }
+}
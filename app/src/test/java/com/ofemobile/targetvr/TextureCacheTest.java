@@ -0,0 +1,91 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TextureCacheTest {
+
+  private static final long RETICLE = TextureCache.key(1, 0xff444444);
+
+  private final RecordingGL gl = new RecordingGL();
+  private final TextureCache cache = new TextureCache(gl, 2);
+
+  @Test
+  public void repeatedKeysHitWithoutMakingTheTextureAgain() {
+    assertEquals(TextureCache.NO_TEXTURE, cache.get(RETICLE));
+    cache.put(RETICLE, 7);
+    assertEquals(7, cache.get(RETICLE));
+    assertEquals(7, cache.get(RETICLE));
+    assertEquals(2, cache.hits());
+    assertEquals(1, cache.misses());
+    assertEquals(0, cache.evictions());
+    assertTrue(gl.calls.isEmpty());
+  }
+
+  @Test
+  public void evictsAndDeletesTheLeastRecentlyUsedTexture() {
+    cache.put(1L, 1);
+    cache.put(2L, 2);
+    // Using key 1 makes key 2 the least recently used.
+    assertEquals(1, cache.get(1L));
+    cache.put(3L, 3);
+    assertEquals(2, cache.size());
+    assertFalse(cache.contains(2L));
+    assertTrue(cache.contains(1L));
+    assertEquals(1, cache.evictions());
+    assertEquals("glDeleteTextures 2", gl.calls.get(0));
+
+    cache.put(4L, 4);
+    assertEquals("glDeleteTextures 1", gl.calls.get(1));
+    assertEquals(2, cache.evictions());
+  }
+
+  @Test
+  public void keysTellEveryTypeAndColourApart() {
+    cache.put(TextureCache.key(1, 0xff444444), 1);
+    cache.put(TextureCache.key(1, 0x00444444), 2);
+    assertEquals(1, cache.get(RETICLE));
+    assertFalse(cache.contains(TextureCache.key(2, 0xff444444)));
+    assertFalse(cache.contains(TextureCache.key(0, 0xff444444)));
+  }
+
+  @Test
+  public void replacingAKeyDeletesTheOldTexture() {
+    cache.put(1L, 1);
+    cache.put(1L, 1);
+    assertTrue(gl.calls.isEmpty());
+    cache.put(1L, 5);
+    assertEquals(1, gl.calls.size());
+    assertEquals("glDeleteTextures 1", gl.calls.get(0));
+    assertEquals(5, cache.get(1L));
+    assertEquals(0, cache.evictions());
+  }
+
+  @Test
+  public void forgetDropsTexturesWithoutDeletingThem() {
+    cache.put(1L, 1);
+    cache.put(2L, 2);
+    cache.forget();
+    assertEquals(0, cache.size());
+    assertTrue(gl.calls.isEmpty());
+    cache.put(1L, 3);
+    cache.clear();
+    assertEquals(1, gl.calls.size());
+    assertEquals("glDeleteTextures 3", gl.calls.get(0));
+  }
+
+  @Test
+  public void deletingABoundTextureForgetsTheBinding() {
+    GLStateCache state = new GLStateCache(gl);
+    state.glActiveTexture(0x84C0);
+    state.glBindTexture(0x0DE1, 1);
+    TextureCache bound = new TextureCache(state, 1);
+    bound.put(1L, 1);
+    bound.put(2L, 2);
+    // GL binds texture 0 in place of a deleted texture, so binding 1 again must not be elided.
+    gl.calls.clear();
+    state.glBindTexture(0x0DE1, 1);
+    assertEquals("glBindTexture 3553 1", gl.calls.get(0));
+  }
+}
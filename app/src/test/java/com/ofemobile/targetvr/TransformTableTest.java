@@ -0,0 +1,249 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TransformTableTest {
+
+  private static final int FRAMES = 2000;
+
+  // Straightforward column major matrix helpers that count what they do, standing in for the
+  // android.opengl.Matrix calls onDrawEye used to make for every eye.
+  private int ops;
+
+  private float[] identity() {
+    float[] m = new float[16];
+    m[0] = m[5] = m[10] = m[15] = 1;
+    return m;
+  }
+
+  private float[] multiply(float[] lhs, float[] rhs) {
+    ops++;
+    float[] result = new float[16];
+    for (int col = 0; col < 4; col++) {
+      for (int row = 0; row < 4; row++) {
+        float sum = 0;
+        for (int k = 0; k < 4; k++)
+          sum += lhs[k * 4 + row] * rhs[col * 4 + k];
+        result[col * 4 + row] = sum;
+      }
+    }
+    return result;
+  }
+
+  private float[] translation(float x, float y, float z) {
+    ops++;
+    float[] m = identity();
+    m[12] = x;
+    m[13] = y;
+    m[14] = z;
+    return m;
+  }
+
+  private float[] rotationY(float degrees) {
+    ops++;
+    float[] m = identity();
+    double a = Math.toRadians(degrees);
+    m[0] = (float) Math.cos(a);
+    m[2] = (float) -Math.sin(a);
+    m[8] = (float) Math.sin(a);
+    m[10] = (float) Math.cos(a);
+    return m;
+  }
+
+  private float[] scale(float s) {
+    ops++;
+    float[] m = identity();
+    m[0] = m[5] = m[10] = s;
+    return m;
+  }
+
+  private static float[] randomMatrix(Random random) {
+    float[] m = new float[16];
+    for (int i = 0; i < 16; i++)
+      m[i] = random.nextFloat() * 2 - 1;
+    return m;
+  }
+
+  @Test
+  public void concatenateMatchesProjectionTimesViewTimesModel() {
+    Random random = new Random(1);
+    TransformTable table = new TransformTable(2);
+    float[] view = randomMatrix(random);
+    float[] projection = randomMatrix(random);
+    float[] rotation = rotationY(30);
+    float[] models = new float[5 * 16];
+    for (int i = 0; i < 3; i++) {
+      float[] model = randomMatrix(random);
+      System.arraycopy(model, 0, models, i * 16, 16);
+      assertEquals(i, table.add(model, 0));
+    }
+    table.addTranslation(1, 2, 3);
+    System.arraycopy(translation(1, 2, 3), 0, models, 3 * 16, 16);
+    table.addTranslated(rotation, 4, 5, 6);
+    System.arraycopy(multiply(translation(4, 5, 6), rotation), 0, models, 4 * 16, 16);
+    assertEquals(5, table.count());
+
+    table.concatenate(view, projection);
+    float[] viewProjection = multiply(projection, view);
+    for (int slot = 0; slot < table.count(); slot++) {
+      float[] model = new float[16];
+      System.arraycopy(models, slot * 16, model, 0, 16);
+      float[] expected = multiply(viewProjection, model);
+      for (int i = 0; i < 16; i++) {
+        assertEquals(model[i], table.models()[slot * 16 + i], 1e-6f);
+        assertEquals(expected[i], table.mvps()[slot * 16 + i], 1e-5f);
+      }
+    }
+  }
+
+  // Column major like android.opengl.Matrix.perspectiveM.
+  private static float[] perspective(float fovy, float aspect, float near, float far) {
+    float f = 1 / (float) Math.tan(Math.toRadians(fovy) / 2);
+    float[] m = new float[16];
+    m[0] = f / aspect;
+    m[5] = f;
+    m[10] = (far + near) / (near - far);
+    m[11] = -1;
+    m[14] = 2 * far * near / (near - far);
+    return m;
+  }
+
+  @Test
+  public void cullsSlotsOutsideTheFrustum() {
+    TransformTable table = new TransformTable(2);
+    float[] projection = perspective(90, 1, 0.1f, 100);
+    int ahead = table.addTranslation(0, 0, -3);
+    int behind = table.addTranslation(0, 0, 3);
+    int left = table.addTranslation(-50, 0, -3);
+    int straddlingNear = table.addTranslation(0, 0, 0.3f);
+    int unbounded = table.addTranslation(0, 0, 3);
+    // Scaled by ten, so its sphere reaches in front of the viewer.
+    int scaled = table.add(multiply(translation(0, 0, 4), scale(10)), 0);
+    for (int slot = 0; slot < table.count(); slot++) {
+      if (slot != unbounded)
+        table.setBounds(slot, 0.5f);
+    }
+    int opsBefore = table.matrixOps();
+    table.concatenate(identity(), projection);
+
+    assertTrue(table.isVisible(ahead));
+    assertFalse(table.isVisible(behind));
+    assertFalse(table.isVisible(left));
+    assertTrue(table.isVisible(straddlingNear));
+    assertTrue(table.isVisible(unbounded));
+    assertTrue(table.isVisible(scaled));
+    assertEquals(4, table.drawn());
+    assertEquals(2, table.culled());
+    // No model-view-projection for the culled slots.
+    assertEquals(1 + 4, table.matrixOps() - opsBefore);
+
+    // The counters add up over both eyes and start again with the next frame.
+    table.concatenate(identity(), projection);
+    assertEquals(8, table.drawn());
+    table.clear();
+    assertEquals(0, table.culled());
+    assertEquals(0, table.drawn());
+  }
+
+  @Test
+  public void signsBehindTheViewerAreCulled() {
+    TransformTable table = new TransformTable(4);
+    for (int i = 0; i < 4; i++) {
+      float[] sign = multiply(multiply(rotationY(90 * i), translation(0.1f, -0.05f, -3.5f)),
+          scale(0.75f));
+      table.setBounds(table.add(sign, 0), (float) Math.sqrt(2));
+    }
+    table.concatenate(identity(), perspective(90, 1, 0.1f, 100));
+    assertTrue(table.isVisible(0));
+    assertFalse(table.isVisible(2));
+    assertTrue(table.culled() >= 2);
+  }
+
+  // The transforms onDrawEye used to build for one eye, with every sign, beam and flare visible.
+  private float checksum(float[] m) {
+    return m[0] + m[12];
+  }
+
+  private float legacyEye(float[] eyeView, float[] camera, float[] perspective, float[][] targets,
+                          float[] projectileRotation) {
+    float sum = 0;
+    float[] view = multiply(eyeView, camera);
+    ops++; // Light position into eye space.
+    for (float[] target : targets) {
+      float[] model = translation(target[0], target[1], target[2]);
+      sum += checksum(multiply(perspective, multiply(view, model)));
+    }
+    float[] projectile = multiply(translation(1, 0, 0), projectileRotation);
+    sum += checksum(multiply(perspective, multiply(view, projectile)));
+    float[] floor = translation(0, -1.7f, 0);
+    ops--; // The floor matrix was built once.
+    sum += checksum(multiply(perspective, multiply(view, floor)));
+    float[] axis = translation(2, -1.6f, -2);
+    sum += checksum(multiply(perspective, multiply(view, axis)));
+    for (int i = 0; i < 4; i++) {
+      float[] sign = multiply(multiply(rotationY(90 * i), translation(0.1f, -0.05f, -3.5f)),
+          scale(.75f));
+      ops -= 2; // Counted as rotate, translate and scale in place.
+      sum += checksum(multiply(perspective, multiply(view, sign)));
+    }
+    // Beam, flare and reticle matrices come from onNewFrame.
+    for (int i = 0; i < 3; i++)
+      sum += checksum(multiply(perspective, multiply(view, floor)));
+    return sum;
+  }
+
+  private float tableFrame(TransformTable table, float[] eyeView, float[] camera,
+                           float[] perspective, float[][] targets, float[] projectileRotation,
+                           float[] fixed, float[] view) {
+    table.clear();
+    for (float[] target : targets)
+      table.addTranslation(target[0], target[1], target[2]);
+    table.addTranslated(projectileRotation, 1, 0, 0);
+    // Floor, axis, four signs, beam, flare and reticle.
+    for (int i = 0; i < 9; i++)
+      table.add(fixed, 0);
+    float sum = 0;
+    for (int eye = 0; eye < 2; eye++) {
+      TransformTable.multiply(view, 0, eyeView, 0, camera, 0);
+      table.concatenate(view, perspective);
+      sum += table.mvps()[(table.count() - 1) * 16];
+    }
+    return sum;
+  }
+
+  @Test
+  public void reportsMatrixOpsPerFrame() {
+    Random random = new Random(2);
+    float[] eyeView = randomMatrix(random);
+    float[] camera = translation(0, 0, 0.01f);
+    float[] perspective = randomMatrix(random);
+    float[] rotation = rotationY(10);
+    float[] view = new float[16];
+    for (int targetCount : new int[] {1, 10, 100}) {
+      float[][] targets = new float[targetCount][];
+      for (int i = 0; i < targetCount; i++)
+        targets[i] = new float[] {random.nextFloat(), random.nextFloat(), -2};
+
+      ops = 0;
+      float sum = 0;
+      for (int frame = 0; frame < FRAMES; frame++)
+        sum += legacyEye(eyeView, camera, perspective, targets, rotation)
+            + legacyEye(eyeView, camera, perspective, targets, rotation);
+      int legacyOps = ops / FRAMES;
+
+      TransformTable table = new TransformTable(16);
+      for (int frame = 0; frame < FRAMES; frame++)
+        sum += tableFrame(table, eyeView, camera, perspective, targets, rotation, camera, view);
+      // The table counts everything but the view multiply of each eye.
+      int tableOps = table.matrixOps() + 2;
+
+      assertFalse(Float.isNaN(sum));
+      assertEquals(74 + 6 * targetCount, legacyOps);
+      assertEquals(3 * targetCount + 25, tableOps);
+    }
+  }
+}
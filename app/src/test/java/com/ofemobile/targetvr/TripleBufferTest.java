@@ -0,0 +1,119 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+  private static final int PUBLICATIONS = 1000000;
+  private static final int PAYLOAD = 16;
+
+  @Test
+  public void consumerSeesNothingUntilPublished() {
+    TripleBuffer<String> buffer = new TripleBuffer<String>();
+    assertFalse(buffer.update());
+    assertNull(buffer.read());
+    buffer.publish("a");
+    assertTrue(buffer.update());
+    assertEquals("a", buffer.read());
+    assertFalse(buffer.update());
+    assertEquals("a", buffer.read());
+  }
+
+  @Test
+  public void consumerGetsTheLatestPublication() {
+    TripleBuffer<String> buffer = new TripleBuffer<String>();
+    buffer.publish("a");
+    buffer.publish("b");
+    buffer.publish("c");
+    assertTrue(buffer.update());
+    assertEquals("c", buffer.read());
+  }
+
+  @Test
+  public void slotsAreHandedBackToTheProducer() {
+    TripleBuffer<Object> buffer = new TripleBuffer<Object>();
+    Object[] values = {new Object(), new Object(), new Object()};
+    for (Object value : values) {
+      assertNull(buffer.writable());
+      buffer.publish(value);
+      buffer.update();
+    }
+    // Every value has been made once; from now on they come round again and the one being read
+    // is never handed out.
+    for (int i = 0; i < 100; i++) {
+      Object reused = buffer.writable();
+      assertNotNull(reused);
+      assertNotSame(buffer.read(), reused);
+      buffer.publish(reused);
+      if (i % 3 != 0)
+        buffer.update();
+    }
+  }
+
+  /**
+   * A producer fills reused payloads with a sequence number, one element at a time, while a
+   * consumer polls update. The consumer must never see a payload with mixed numbers, which
+   * would mean both threads had the same slot, or numbers going backwards, and must end on the
+   * last publication.
+   */
+  @Test
+  public void noTornOrLostPublicationsUnderContention() throws InterruptedException {
+    final TripleBuffer<long[]> buffer = new TripleBuffer<long[]>();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (long seq = 1; seq <= PUBLICATIONS; seq++) {
+          long[] payload = buffer.writable();
+          if (payload == null)
+            payload = new long[PAYLOAD];
+          for (int i = 0; i < PAYLOAD; i++)
+            payload[i] = seq;
+          buffer.publish(payload);
+          // Let the consumer in now and then, so that it takes a good share of them.
+          if (seq % 16 == 0)
+            Thread.yield();
+        }
+      }
+    });
+    producer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread t, Throwable e) {
+        failure.set(e);
+      }
+    });
+
+    producer.start();
+    long last = 0;
+    while (last < PUBLICATIONS) {
+      // Checked before the update, so that a producer that published and then finished or died
+      // has its last publication taken first.
+      boolean stopped = !producer.isAlive();
+      if (!buffer.update()) {
+        if (stopped)
+          break;
+        // Give the producer the CPU, which it may be sharing.
+        Thread.yield();
+        continue;
+      }
+      long[] payload = buffer.read();
+      long seq = payload[0];
+      // Read twice, so a producer writing into this slot would show up even if it had finished
+      // one pass before the first read.
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < PAYLOAD; i++)
+          assertEquals("torn publication", seq, payload[i]);
+      }
+      assertTrue("publication went backwards", seq > last);
+      last = seq;
+    }
+    producer.join();
+    assertNull(failure.get());
+    assertEquals("last publication lost", PUBLICATIONS, last);
+    assertFalse(buffer.update());
+  }
+}
@@ -0,0 +1,111 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WorldSnapshotTest {
+
+  // A grid with the live targets entered, as the game keeps one.
+  private static SpatialHash grid(TargetStore targets) {
+    SpatialHash grid = new SpatialHash(targets.capacity(), Game.GRID_CELL_SIZE, Game.GRID_REACH);
+    for (int n = 0; n < targets.count(); n++) {
+      int id = targets.get(n);
+      grid.update(id, targets.posX[id], targets.posY[id], targets.posZ[id]);
+    }
+    return grid;
+  }
+
+  @Test
+  public void copiesTheLiveTargetsDensely() {
+    TargetStore targets = new TargetStore(4);
+    int a = targets.spawn(1, 2, 3);
+    int b = targets.spawn(4, 5, 6);
+    int c = targets.spawn(7, 8, 9);
+    targets.setVelocity(c, 2, 0, 0);
+    targets.despawn(a);
+    targets.integrate(0.5f);
+
+    WorldSnapshot world = new WorldSnapshot(4);
+    world.copyTargets(targets, grid(targets));
+    assertEquals(2, world.targetCount);
+    float[] expected = new float[3];
+    float[] actual = new float[3];
+    for (int n = 0; n < world.targetCount; n++) {
+      for (float alpha : new float[] {0, 0.5f, 1}) {
+        int id = targets.get(n);
+        expected[0] = targets.posX[id] - (1 - alpha) * targets.stepX[id];
+        expected[1] = targets.posY[id] - (1 - alpha) * targets.stepY[id];
+        expected[2] = targets.posZ[id] - (1 - alpha) * targets.stepZ[id];
+        world.getTargetPosition(n, alpha, actual);
+        assertArrayEquals(expected, actual, 0f);
+      }
+    }
+    assertEquals(b, targets.get(1));
+    assertEquals(4f, world.targetX[1], 0f);
+
+    // Later changes to the store do not show.
+    targets.integrate(0.5f);
+    world.getTargetPosition(0, 1, actual);
+    assertEquals(8f, actual[0], 0f);
+  }
+
+  @Test
+  public void interpolatesAlongTheLastStep() {
+    TargetStore targets = new TargetStore(1);
+    targets.setVelocity(targets.spawn(1, 0, 0), 2, 0, -4);
+    targets.integrate(0.5f);
+    WorldSnapshot world = new WorldSnapshot(1);
+    world.copyTargets(targets, grid(targets));
+    float[] position = new float[3];
+    world.getTargetPosition(0, 0, position);
+    assertEquals(1f, position[0], 1e-6f);
+    assertEquals(0f, position[2], 1e-6f);
+    world.getTargetPosition(0, 0.25f, position);
+    assertEquals(1.25f, position[0], 1e-6f);
+    assertEquals(-0.5f, position[2], 1e-6f);
+    world.getTargetPosition(0, 1, position);
+    assertEquals(2f, position[0], 1e-6f);
+    assertEquals(-2f, position[2], 1e-6f);
+  }
+
+  @Test
+  public void findsTheTargetsOnASegmentByIndex() {
+    TargetStore targets = new TargetStore(4);
+    int gone = targets.spawn(0, 0, -1);
+    targets.spawn(0, 0, -2);
+    targets.spawn(3, 2, 3);
+    targets.spawn(0, 0.1f, -3.5f);
+    targets.despawn(gone);
+    WorldSnapshot world = new WorldSnapshot(4);
+    world.copyTargets(targets, grid(targets));
+
+    // The snapshot's grid does not change with the game's.
+    SpatialHash moved = grid(targets);
+    world.copyTargets(targets, moved);
+    moved.update(targets.get(0), 3, 2, -3);
+
+    int[] found = new int[4];
+    float[] start = {0, 0, 0};
+    float[] end = {0, 0, -10};
+    int count = world.findTargets(start, end, found);
+    assertEquals(2, count);
+    float[] position = new float[3];
+    for (int i = 0; i < count; i++) {
+      world.getTargetPosition(found[i], 1, position);
+      assertEquals(0f, position[0], 0f);
+      assertTrue(position[2] < -1);
+    }
+  }
+
+  @Test
+  public void alphaRunsOverTheStepAfterTheSnapshot() {
+    WorldSnapshot world = new WorldSnapshot(0);
+    world.stepNanos = 1000;
+    assertEquals(0f, world.alpha(900, 100), 0f);
+    assertEquals(0f, world.alpha(1000, 100), 0f);
+    assertEquals(0.25f, world.alpha(1025, 100), 1e-6f);
+    // A late snapshot is drawn as it is rather than extrapolated.
+    assertEquals(1f, world.alpha(1500, 100), 0f);
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH run's CSV results with a baseline from an earlier run.
+ *
+ * <p>Each benchmark, with its parameters, is matched by name. One whose score is worse than the
+ * baseline by more than the threshold, as a fraction of the baseline, is a regression: longer
+ * for the time modes, lower for throughput. A benchmark that was run but has no baseline to compare
+ * with, or one measured in another mode or unit, is reported, and fails the check only when a
+ * baseline is required, as then an empty or stale baseline must not pass everything. Benchmarks
+ * in the baseline that were not run are only reported, so that a run of some of the benchmarks
+ * can still be checked.
+ *
+ * <p>Run by the benchmark module's checkBenchmarks task with the results file, the baseline file,
+ * the threshold and whether every benchmark needs a baseline as arguments. Exits with 1 if
+ * anything regressed, or is missing from a required baseline.
+ */
+public final class BaselineCheck {
+
+  /**
+   * One benchmark's score.
+   */
+  static final class Score {
+    final String mode;
+    final double score;
+    final String unit;
+
+    Score(String mode, double score, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.unit = unit;
+    }
+
+    boolean higherIsBetter() {
+      return mode.equals("thrpt");
+    }
+  }
+
+  private BaselineCheck() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    File results = new File(args[0]);
+    File baseline = new File(args[1]);
+    double threshold = Double.parseDouble(args[2]);
+    boolean requireBaseline = args.length > 3 && Boolean.parseBoolean(args[3]);
+    Map<String, Score> scores;
+    if (baseline.exists()) {
+      scores = read(baseline);
+    } else {
+      System.out.println("No baseline at " + baseline + ".");
+      scores = new LinkedHashMap<String, Score>();
+    }
+    List<String> failures = compare(scores, read(results), threshold, requireBaseline,
+        System.out);
+    if (!failures.isEmpty()) {
+      System.out.println(failures.size() + " benchmarks regressed by more than "
+          + Math.round(threshold * 100) + "%" + (requireBaseline ? " or have no baseline" : "")
+          + ". Run recordBaseline on the reference machine to add new benchmarks.");
+      System.exit(1);
+    }
+  }
+
+  private static Map<String, Score> read(File file) throws IOException {
+    Reader reader = new FileReader(file);
+    try {
+      return read(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads JMH's CSV output.
+   *
+   * @return The scores, by benchmark name followed by its parameters in braces, such as
+   *     {@code CollisionBenchmark.beamSweep{targets=100}}.
+   */
+  static Map<String, Score> read(Reader csv) throws IOException {
+    BufferedReader lines = new BufferedReader(csv);
+    Map<String, Score> scores = new LinkedHashMap<String, Score>();
+    String line = lines.readLine();
+    if (line == null)
+      return scores;
+    List<String> header = split(line);
+    int name = header.indexOf("Benchmark");
+    int mode = header.indexOf("Mode");
+    int score = header.indexOf("Score");
+    int unit = header.indexOf("Unit");
+    if (name < 0 || mode < 0 || score < 0 || unit < 0)
+      throw new IOException("Not JMH results: " + line);
+    while ((line = lines.readLine()) != null) {
+      if (line.trim().isEmpty())
+        continue;
+      List<String> fields = split(line);
+      // Parameters are in columns named "Param: <name>", empty for benchmarks without them.
+      Map<String, String> params = new TreeMap<String, String>();
+      for (int i = 0; i < header.size() && i < fields.size(); i++) {
+        if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty())
+          params.put(header.get(i).substring("Param: ".length()), fields.get(i));
+      }
+      String key = fields.get(name);
+      key = key.substring(key.lastIndexOf('.', key.lastIndexOf('.') - 1) + 1);
+      if (!params.isEmpty())
+        key += params.toString();
+      scores.put(key, new Score(fields.get(mode), Double.parseDouble(fields.get(score)),
+          fields.get(unit)));
+    }
+    return scores;
+  }
+
+  /**
+   * Prints every benchmark's change from the baseline.
+   *
+   * @param requireBaseline Whether a benchmark with no comparable baseline fails.
+   * @return A line for each regression, and for each benchmark without a baseline if
+   *     requireBaseline.
+   */
+  static List<String> compare(Map<String, Score> baseline, Map<String, Score> results,
+                              double threshold, boolean requireBaseline, Appendable out)
+      throws IOException {
+    List<String> failures = new ArrayList<String>();
+    for (Map.Entry<String, Score> entry : results.entrySet()) {
+      Score now = entry.getValue();
+      Score then = baseline.get(entry.getKey());
+      String missing = null;
+      if (then == null)
+        missing = entry.getKey() + ": " + format(now) + ", not in baseline";
+      else if (!then.mode.equals(now.mode) || !then.unit.equals(now.unit))
+        missing = entry.getKey() + ": measured as " + now.mode + " " + now.unit
+            + ", baseline as " + then.mode + " " + then.unit;
+      if (missing != null) {
+        if (requireBaseline) {
+          missing += " MISSING";
+          failures.add(missing);
+        }
+        out.append(missing).append('\n');
+        continue;
+      }
+      double change = (now.score - then.score) / then.score;
+      double worse = now.higherIsBetter() ? -change : change;
+      String line = entry.getKey() + ": " + format(now) + ", baseline " + format(then) + ", "
+          + String.format(Locale.ROOT, "%+.1f%%", change * 100);
+      if (worse > threshold) {
+        line += " REGRESSION";
+        failures.add(line);
+      }
+      out.append(line).append('\n');
+    }
+    for (String key : baseline.keySet()) {
+      if (!results.containsKey(key))
+        out.append(key).append(": in baseline, not run\n");
+    }
+    return failures;
+  }
+
+  private static String format(Score score) {
+    return String.format(Locale.ROOT, "%.3f %s", score.score, score.unit);
+  }
+
+  // Splits a CSV line, with fields optionally in double quotes.
+  private static List<String> split(String line) {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+}
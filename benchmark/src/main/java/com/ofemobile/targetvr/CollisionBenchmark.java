@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ray and sweep tests against a room of targets: the render thread's reticle ray march
+ * through a snapshot's copy of the spatial hash, the simulation's beam and projectile sweeps
+ * through the hash itself, and moving the targets and the hash along by a step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CollisionBenchmark {
+
+  @Param({"1", "100", "10000"})
+  public int targets;
+
+  private TargetStore store;
+  private SpatialHash grid;
+  private WorldSnapshot world;
+  private final Collision collision = new Collision();
+  private int[] candidates;
+  private final float[] beamStart = new float[4];
+  private final float[] beamEnd = new float[4];
+  private final float[] projectilePos = {0, -0.75f, 0};
+  private final float[] projectileNext = new float[3];
+  private final float[] projectileVelocity = {0.5f, 4, -8};
+  private final float[] projectileOffset = new float[3];
+  private final float[] projectileSweep = new float[3];
+  private final float[] projectileCurve =
+      {0, -Game.GRAVITY * Game.STEP_SECONDS * Game.STEP_SECONDS, 0};
+  private final float[] targetPos = new float[3];
+  private final float[] targetStep = new float[3];
+  private final float[] hitPoint = new float[3];
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    store = new TargetStore(targets);
+    grid = new SpatialHash(targets, Game.GRID_CELL_SIZE, Game.GRID_REACH);
+    candidates = new int[targets];
+    // The first target is where the game spawns them, the rest anywhere in the room.
+    float half = Collision.ROOM_HALF_WIDTH - 0.5f;
+    for (int i = 0; i < targets; i++) {
+      float x = i == 0 ? 0.1f : (random.nextFloat() * 2 - 1) * half;
+      float y = i == 0 ? 0 : Collision.ROOM_FLOOR + 0.5f
+          + random.nextFloat() * (Collision.ROOM_CEILING - Collision.ROOM_FLOOR - 1);
+      float z = i == 0 ? -2 : (random.nextFloat() * 2 - 1) * half;
+      int id = store.spawn(x, y, z);
+      store.setVelocity(id, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+          random.nextFloat() * 2 - 1);
+      grid.update(id, x, y, z);
+    }
+    store.integrate(Game.STEP_SECONDS);
+    world = new WorldSnapshot(targets);
+    world.copyTargets(store, grid);
+
+    // The beam of a head looking a little to the right of straight ahead.
+    float[] view = new float[16];
+    float[] pose = new float[16];
+    Mat4.setLookAtM(view, 0, 0, 0, 0, 0.3f, 0, -2, 0, 1, 0);
+    Mat4.invertM(pose, 0, view, 0);
+    Mat4.multiplyMV(beamStart, 0, pose, 0, Game.BEAM_START, 0);
+    Mat4.multiplyMV(beamEnd, 0, pose, 0, Game.BEAM_END, 0);
+    for (int i = 0; i < 3; i++)
+      projectileNext[i] = projectilePos[i] + projectileVelocity[i] * Game.STEP_SECONDS
+          + projectileCurve[i] / 2;
+  }
+
+  /**
+   * The reticle's ray against the targets a snapshot's grid puts near it and the walls, as
+   * FrameBuilder.aim does it.
+   */
+  @Benchmark
+  public float reticleRayMarch() {
+    int count = world.findTargets(beamStart, beamEnd, candidates);
+    float hitFactor = Collision.MISS;
+    for (int i = 0; i < count; i++) {
+      world.getTargetPosition(candidates[i], 0.5f, targetPos);
+      float factor = Collision.segmentBoxEntry(beamStart, beamEnd, targetPos,
+          Game.BEAM_HIT_EXTENT);
+      if (factor != Collision.MISS && (hitFactor == Collision.MISS || factor < hitFactor))
+        hitFactor = factor;
+    }
+    float wallFactor = Collision.segmentRoomExit(beamStart, beamEnd);
+    return hitFactor != Collision.MISS && hitFactor <= wallFactor ? hitFactor : wallFactor;
+  }
+
+  /**
+   * The lit part of the beam swept against the targets the spatial hash puts near it.
+   */
+  @Benchmark
+  public float beamSweep() {
+    int count = grid.queryRay(beamStart, beamEnd, candidates);
+    float hitTime = Collision.MISS;
+    for (int n = 0; n < count; n++) {
+      store.getPosition(candidates[n], targetPos);
+      store.getStep(candidates[n], targetStep);
+      float time = collision.sweepBeam(beamStart, beamEnd, 0.2f, 0.24f, 1.0f, targetPos,
+          targetStep, Game.BEAM_HIT_EXTENT, hitPoint);
+      if (time != Collision.MISS && (hitTime == Collision.MISS || time < hitTime))
+        hitTime = time;
+    }
+    return hitTime;
+  }
+
+  /**
+   * One step of the projectile's arc swept against the targets the spatial hash puts near it.
+   */
+  @Benchmark
+  public float projectileSweep() {
+    int count = grid.queryRay(projectilePos, projectileNext, candidates);
+    float hitTime = Collision.MISS;
+    for (int n = 0; n < count; n++) {
+      store.getPosition(candidates[n], targetPos);
+      store.getStep(candidates[n], targetStep);
+      for (int i = 0; i < 3; i++) {
+        projectileOffset[i] = projectilePos[i] - (targetPos[i] - targetStep[i]);
+        projectileSweep[i] = projectileVelocity[i] * Game.STEP_SECONDS - targetStep[i];
+      }
+      float time = Collision.sweepArc(projectileOffset, projectileSweep, projectileCurve,
+          Game.PROJECTILE_HIT_EXTENT);
+      if (time != Collision.MISS && (hitTime == Collision.MISS || time < hitTime))
+        hitTime = time;
+    }
+    return hitTime;
+  }
+
+  /**
+   * Moves the targets by a step and updates their cells, turning back any that reach a wall so
+   * that the room stays full.
+   */
+  @Benchmark
+  public void integrate() {
+    store.integrate(Game.STEP_SECONDS);
+    for (int n = 0; n < store.count(); n++) {
+      int id = store.get(n);
+      if (store.isOutsideRoom(id))
+        store.setVelocity(id, -store.velX[id], -store.velY[id], -store.velZ[id]);
+      grid.update(id, store.posX[id], store.posY[id], store.posZ[id]);
+    }
+  }
+}
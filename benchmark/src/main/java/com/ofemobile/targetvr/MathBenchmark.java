@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fused and rigid transforms in {@link Mat4} and {@link Quat} against the general chains they
+ * replace. The general ones are Mat4's ports of android.opengl.Matrix, whose own code is native or
+ * a stub on a desktop JVM, so they stand in for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MathBenchmark {
+
+  private final float[] headView = new float[16];
+  private final float[] inverse = new float[16];
+  private final float[] translation = new float[16];
+  private final float[] view = new float[16];
+  private final float[] model = new float[16];
+  private final float[] scratch = new float[32];
+  private final float[] spin = new float[4];
+  private final float[] spinStep = new float[4];
+  private final float[] position = {0.4f, 0.3f, -2};
+
+  @Setup
+  public void setUp() {
+    Mat4.setRotateM(headView, 0, 30, 0.2f, 1, 0.1f);
+    Mat4.translateM(headView, 0, 0, -0.075f, 0.08f);
+    Mat4.setIdentityM(model, 0);
+    Quat.setIdentity(spin, 0);
+    Quat.setAxisAngle(spinStep, 0, 0.9f, 0.5f, 0.5f, 1);
+  }
+
+  @Benchmark
+  public float invertHeadViewGeneral() {
+    Mat4.invertM(inverse, 0, headView, 0);
+    return inverse[12];
+  }
+
+  @Benchmark
+  public float invertHeadViewRigid() {
+    Mat4.invertRigidM(inverse, 0, headView, 0);
+    return inverse[12];
+  }
+
+  /**
+   * The billboard as the game used to build it: look at, invert, translate, multiply, scale.
+   */
+  @Benchmark
+  public float billboardChain() {
+    Mat4.setIdentityM(translation, 0);
+    Mat4.setLookAtM(view, 0, 0, 0, 0, position[0], position[1], position[2], 0, 1, 0);
+    Mat4.invertM(inverse, 0, view, 0);
+    Mat4.translateM(translation, 0, position[0], position[1], position[2]);
+    Mat4.multiplyMM(model, 0, translation, 0, inverse, 0);
+    Mat4.scaleM(model, 0, .5f, .5f, .5f);
+    return model[0];
+  }
+
+  @Benchmark
+  public float billboardFused() {
+    Mat4.setBillboardM(model, 0, position[0], position[1], position[2], .5f);
+    return model[0];
+  }
+
+  /**
+   * A step of the projectile's spin as a matrix rotated by rotateM.
+   */
+  @Benchmark
+  public float spinMatrix() {
+    Mat4.rotateM(model, 0, 0.9f, 0.5f, 0.5f, 1, scratch);
+    return model[0];
+  }
+
+  /**
+   * A step of the projectile's spin as a quaternion, and the matrix to draw it with.
+   */
+  @Benchmark
+  public float spinQuaternion() {
+    Quat.multiply(spin, 0, spin, 0, spinStep, 0);
+    Quat.normalize(spin, 0);
+    Quat.toRotationM(model, 0, spin, 0);
+    return model[0];
+  }
+
+  @Benchmark
+  public float translateRotateScaleChain() {
+    Mat4.setIdentityM(model, 0);
+    Mat4.translateM(model, 0, position[0], position[1], position[2]);
+    Mat4.rotateM(model, 0, 45, 0.5f, 0.5f, 1, scratch);
+    Mat4.scaleM(model, 0, .75f, .75f, .75f);
+    return model[0];
+  }
+
+  @Benchmark
+  public float translateRotateScaleFused() {
+    Mat4.setTranslateRotateScaleM(model, 0, position[0], position[1], position[2], spinStep, 0,
+        .75f, .75f, .75f);
+    return model[0];
+  }
+}
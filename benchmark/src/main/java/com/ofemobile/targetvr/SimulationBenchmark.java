@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The simulation thread's work: one {@link Game#step()}, and a whole shot from the trigger pull
+ * until the game can shoot again, in every mode.
+ *
+ * <p>Mode 1 throws the projectile, 2 to 4 fire the beam at still, moving and accelerating targets
+ * and 0 is the game over screen, where the trigger starts a new game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimulationBenchmark {
+
+  @Param({"0", "1", "2", "3", "4"})
+  public int mode;
+
+  private Game game;
+  private HeadlessRunner.Script script;
+  private final float[] aim = new float[16];
+
+  @Setup
+  public void setUp() {
+    game = new Game(new Random(1));
+    script = new HeadlessRunner.AimAtTarget(new Random(1), 0.1f);
+    game.setLevel(mode);
+    game.respawn();
+  }
+
+  /**
+   * A step with whatever is in flight, which after the first shot is the projectile falling away.
+   */
+  @Benchmark
+  public int step() {
+    game.step();
+    return game.score();
+  }
+
+  /**
+   * A shot at the target, stepped until it hits or misses.
+   */
+  @Benchmark
+  public int shot() {
+    // Stay on the level however many shots it takes.
+    game.setLevel(mode);
+    if (mode == Game.GAME_OVER)
+      game.trigger(aim);
+    else if (script.aim(game, aim))
+      game.trigger(aim);
+    int steps = 0;
+    do {
+      game.step();
+      steps++;
+    } while (!game.canShoot() && steps < HeadlessRunner.MAX_STEPS_PER_GAME);
+    return steps;
+  }
+}
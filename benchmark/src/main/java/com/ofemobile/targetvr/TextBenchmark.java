@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sign text: building the signed distance field atlas, once at startup, and laying out a
+ * message on it, every time the message changes.
+ *
+ * <p>The glyphs are drawn by Android's Paint in the app, so here every cell gets a ring of the
+ * same extent instead, which costs the distance transform the same.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TextBenchmark {
+
+  private static final String MESSAGE = "You missed it.\nGame Over\nScore: 42";
+  // As in MainActivity.
+  private static final float SIGN_TEXT_SIZE = 32;
+  private static final float SIGN_TEXT_WIDTH = 256;
+  private static final float SIGN_TEXT_SCALE = 1 / 128f;
+  private static final float SIGN_TEXT_Z = 0.01f;
+  private static final float ASCENT = 30;
+  private static final float DESCENT = 10;
+
+  private byte[] coverage;
+  private float[] advances;
+  private GlyphAtlas atlas;
+  private final TextMesh mesh = new TextMesh(128);
+
+  @Setup
+  public void setUp() {
+    coverage = new byte[GlyphAtlas.WIDTH * GlyphAtlas.HEIGHT];
+    advances = new float[GlyphAtlas.GLYPH_COUNT];
+    for (int glyph = 0; glyph < GlyphAtlas.GLYPH_COUNT; glyph++) {
+      advances[glyph] = 24;
+      int left = GlyphAtlas.cellX(glyph) + GlyphAtlas.SPREAD;
+      int top = GlyphAtlas.cellY(glyph) + GlyphAtlas.SPREAD;
+      int size = (int) (ASCENT + DESCENT);
+      for (int y = 0; y < size; y++) {
+        for (int x = 0; x < size; x++) {
+          float dx = x - size / 2f;
+          float dy = y - size / 2f;
+          float r = (float) Math.sqrt(dx * dx + dy * dy);
+          if (r < size / 2f && r > size / 4f)
+            coverage[(top + y) * GlyphAtlas.WIDTH + left + x] = (byte) 255;
+        }
+      }
+    }
+    atlas = new GlyphAtlas(coverage, GlyphAtlas.MAX_FONT_SIZE, advances, ASCENT, DESCENT);
+  }
+
+  @Benchmark
+  public GlyphAtlas buildAtlas() {
+    return new GlyphAtlas(coverage, GlyphAtlas.MAX_FONT_SIZE, advances, ASCENT, DESCENT);
+  }
+
+  @Benchmark
+  public int layout() {
+    mesh.layout(atlas, MESSAGE, SIGN_TEXT_SIZE, SIGN_TEXT_WIDTH, SIGN_TEXT_SCALE, SIGN_TEXT_Z);
+    return mesh.glyphCount();
+  }
+}
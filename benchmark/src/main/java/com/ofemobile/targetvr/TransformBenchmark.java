@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The matrix work of a stereo frame: a model matrix for every target and the scenery, then the
+ * view-projection, frustum culling and model-view-projection of everything visible for each eye,
+ * as onNewFrame and onDrawEye do it. The matrix chains the render thread builds the reticle and
+ * flare billboards with are measured on their own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransformBenchmark {
+
+  // The cube mesh's bounding radius and the scenery besides the targets.
+  private static final float TARGET_RADIUS = 0.35f;
+  private static final int SCENERY = 6;
+
+  @Param({"1", "100", "10000"})
+  public int targets;
+
+  private final TransformTable table = new TransformTable(64);
+  private float[] positions;
+  private final float[] scenery = new float[16];
+  private final float[] headView = new float[16];
+  private final float[] invHeadView = new float[16];
+  private final float[] camera = new float[16];
+  private final float[][] eyeViews = new float[2][16];
+  private final float[] view = new float[16];
+  private final float[] projection = new float[16];
+  private final float[] reticle = new float[16];
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    positions = new float[targets * 3];
+    for (int i = 0; i < positions.length; i++)
+      positions[i] = (random.nextFloat() * 2 - 1) * Collision.ROOM_HALF_WIDTH;
+    Mat4.setIdentityM(scenery, 0);
+    Mat4.setLookAtM(headView, 0, 0, 0, 0, 0.3f, 0.1f, -1, 0, 1, 0);
+    Mat4.setLookAtM(camera, 0, 0, 0, 0.01f, 0, 0, 0, 0, 1, 0);
+    // Eyes 64mm apart.
+    for (int eye = 0; eye < 2; eye++) {
+      Mat4.setIdentityM(eyeViews[eye], 0);
+      Mat4.translateM(eyeViews[eye], 0, eye == 0 ? 0.032f : -0.032f, 0, 0);
+      Mat4.multiplyMM(eyeViews[eye], 0, eyeViews[eye], 0, headView, 0);
+    }
+    perspective(projection, 90, 1, 0.1f, 100);
+  }
+
+  /**
+   * Every model matrix of a frame, then both eyes' culling and concatenation.
+   */
+  @Benchmark
+  public int stereoFrame() {
+    table.clear();
+    for (int i = 0; i < targets; i++) {
+      int slot = table.addTranslation(positions[i * 3], positions[i * 3 + 1],
+          positions[i * 3 + 2]);
+      table.setBounds(slot, TARGET_RADIUS);
+    }
+    for (int i = 0; i < SCENERY; i++)
+      table.add(scenery, 0);
+    for (int eye = 0; eye < 2; eye++) {
+      Mat4.multiplyMM(view, 0, eyeViews[eye], 0, camera, 0);
+      table.concatenate(view, projection);
+    }
+    return table.drawn();
+  }
+
+  /**
+   * Inverting the head view and building the reticle's billboard where the ray meets a target.
+   */
+  @Benchmark
+  public float reticleBillboard() {
+    Mat4.invertRigidM(invHeadView, 0, headView, 0);
+    Mat4.setBillboardM(reticle, 0, invHeadView[8] * -2, invHeadView[9] * -2,
+        invHeadView[10] * -2, .125f);
+    return reticle[0];
+  }
+
+  // A symmetric perspective projection, as the Cardboard eyes give for an undistorted lens.
+  private static void perspective(float[] m, float fovy, float aspect, float near, float far) {
+    float f = 1 / (float) Math.tan(Math.toRadians(fovy) / 2);
+    for (int i = 0; i < 16; i++)
+      m[i] = 0;
+    m[0] = f / aspect;
+    m[5] = f;
+    m[10] = (far + near) / (near - far);
+    m[11] = -1;
+    m[14] = 2 * far * near / (near - far);
+  }
+}
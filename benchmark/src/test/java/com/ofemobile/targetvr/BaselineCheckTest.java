@@ -0,0 +1,84 @@
+package com.ofemobile.targetvr;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BaselineCheckTest {
+
+  private static final String HEADER = "\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\","
+      + "\"Score Error (99.9%)\",\"Unit\",\"Param: mode\",\"Param: targets\"\n";
+
+  private static Map<String, BaselineCheck.Score> read(String rows) throws IOException {
+    return BaselineCheck.read(new StringReader(HEADER + rows));
+  }
+
+  @Test
+  public void readsScoresByNameAndParameters() throws IOException {
+    Map<String, BaselineCheck.Score> scores = read(
+        "\"com.ofemobile.targetvr.CollisionBenchmark.beamSweep\",\"avgt\",1,10,123.5,1.5,\"ns/op\",,100\n"
+        + "\"com.ofemobile.targetvr.TextBenchmark.layout\",\"avgt\",1,10,2.25,0.1,\"us/op\",,\n");
+    assertEquals(2, scores.size());
+    BaselineCheck.Score sweep = scores.get("CollisionBenchmark.beamSweep{targets=100}");
+    assertEquals("avgt", sweep.mode);
+    assertEquals(123.5, sweep.score, 0);
+    assertEquals("ns/op", sweep.unit);
+    assertEquals(2.25, scores.get("TextBenchmark.layout").score, 0);
+  }
+
+  @Test
+  public void slowerThanTheThresholdIsARegression() throws IOException {
+    Map<String, BaselineCheck.Score> baseline = read(
+        "\"a.B.fast\",\"avgt\",1,10,100,1,\"ns/op\",1,\n"
+        + "\"a.B.slow\",\"avgt\",1,10,100,1,\"ns/op\",1,\n"
+        + "\"a.B.gone\",\"avgt\",1,10,100,1,\"ns/op\",1,\n");
+    Map<String, BaselineCheck.Score> results = read(
+        "\"a.B.fast\",\"avgt\",1,10,109,1,\"ns/op\",1,\n"
+        + "\"a.B.slow\",\"avgt\",1,10,111,1,\"ns/op\",1,\n"
+        + "\"a.B.new\",\"avgt\",1,10,5,1,\"ns/op\",1,\n");
+    StringBuilder report = new StringBuilder();
+    List<String> regressions = BaselineCheck.compare(baseline, results, 0.1, false, report);
+    assertEquals(1, regressions.size());
+    assertTrue(regressions.get(0).startsWith("B.slow{mode=1}"));
+    assertTrue(report.toString().contains("B.new{mode=1}: 5.000 ns/op, not in baseline"));
+    assertTrue(report.toString().contains("B.gone{mode=1}: in baseline, not run"));
+  }
+
+  @Test
+  public void benchmarksWithoutABaselineFailWhenOneIsRequired() throws IOException {
+    Map<String, BaselineCheck.Score> results = read(
+        "\"a.B.c\",\"avgt\",1,10,100,1,\"ns/op\",,\n"
+        + "\"a.B.d\",\"avgt\",1,10,100,1,\"ns/op\",,\n");
+    // A header-only baseline must not pass everything when one is required.
+    Map<String, BaselineCheck.Score> empty = read("");
+    List<String> failures = BaselineCheck.compare(empty, results, 0.1, true,
+        new StringBuilder());
+    assertEquals(2, failures.size());
+    assertTrue(failures.get(0).endsWith("not in baseline MISSING"));
+    StringBuilder report = new StringBuilder();
+    assertEquals(0, BaselineCheck.compare(empty, results, 0.1, false, report).size());
+    assertTrue(report.toString().contains("B.c: 100.000 ns/op, not in baseline"));
+
+    // Nor one that measured in another unit.
+    Map<String, BaselineCheck.Score> other = read(
+        "\"a.B.c\",\"avgt\",1,10,0.1,1,\"us/op\",,\n"
+        + "\"a.B.d\",\"avgt\",1,10,100,1,\"ns/op\",,\n");
+    failures = BaselineCheck.compare(other, results, 0.1, true, new StringBuilder());
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(0).startsWith("B.c: measured as avgt ns/op, baseline as avgt us/op"));
+  }
+
+  @Test
+  public void lowerThroughputIsARegression() throws IOException {
+    Map<String, BaselineCheck.Score> baseline = read("\"a.B.c\",\"thrpt\",1,10,100,1,\"ops/s\",,\n");
+    assertEquals(0, BaselineCheck.compare(baseline,
+        read("\"a.B.c\",\"thrpt\",1,10,200,1,\"ops/s\",,\n"), 0.1, false, new StringBuilder()).size());
+    assertEquals(1, BaselineCheck.compare(baseline,
+        read("\"a.B.c\",\"thrpt\",1,10,80,1,\"ops/s\",,\n"), 0.1, false, new StringBuilder()).size());
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ofemobile.targetvr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the meshes in {@link WorldLayoutData} out as {@link MeshFile} assets.
+ *
+ * <p>Run by the meshgen module's generateMeshes task before every app build, with the output
+ * directory as the only argument.
+ */
+public final class MeshGenerator {
+
+  private static final int[] POSITION_AND_COORD =
+      {MeshFile.ATTRIBUTE_POSITION, MeshFile.ATTRIBUTE_COORD};
+  private static final int[] POSITION_AND_COLOR =
+      {MeshFile.ATTRIBUTE_POSITION, MeshFile.ATTRIBUTE_COLOR};
+
+  private MeshGenerator() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    File dir = new File(args[0]);
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Could not create " + dir);
+
+    write(dir, "cube", MeshFile.packed(MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+        WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_COLORS)));
+    write(dir, "cube_found", MeshFile.packed(MeshPacker.pack(WorldLayoutData.CUBE_COORDS,
+        WorldLayoutData.CUBE_NORMALS, WorldLayoutData.CUBE_FOUND_COLORS)));
+    write(dir, "floor", MeshFile.interleave(POSITION_AND_COORD, new int[] {3, 2},
+        WorldLayoutData.FLOOR_COORDS, WorldLayoutData.FLOOR_COORDSS));
+    write(dir, "beam", MeshFile.interleave(POSITION_AND_COORD, new int[] {3, 1},
+        WorldLayoutData.BEAM_VERTS, WorldLayoutData.BEAM_TCCOORDS));
+    write(dir, "rect", MeshFile.interleave(POSITION_AND_COORD, new int[] {3, 2},
+        WorldLayoutData.RECT_COORDS, WorldLayoutData.RECT_TXCOORDS));
+    write(dir, "axis", MeshFile.interleave(POSITION_AND_COLOR, new int[] {3, 3},
+        WorldLayoutData.AXIS_VERTS, WorldLayoutData.AXIS_COLORS));
+  }
+
+  private static void write(File dir, String name, MeshFile mesh) throws IOException {
+    FileOutputStream out = new FileOutputStream(new File(dir, name + ".mesh"));
+    try {
+      mesh.write(out.getChannel());
+    } finally {
+      out.close();
+    }
+  }
+}